@@ -0,0 +1,65 @@
+package kd.benchmark;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import kd.bike.Bike;
+import kd.bike.BikeFactory;
+import kd.customer.CustomerRecord;
+
+/**
+ * Benchmarks the BikeFactory and CustomerNumber registries. The *Contended
+ * variants run on all available cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegistryBenchmark {
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+
+        String nextSerialNumber(RentalState state) {
+            String serialNumber = state.serialNumbers[next];
+            next = (next + 1) % state.size;
+            return serialNumber;
+        }
+    }
+
+    @Benchmark
+    public Bike getExistingBikeInstance(RentalState state, Cursor cursor) {
+        return BikeFactory.getInstance(BikeFactory.ROAD_BIKE, cursor.nextSerialNumber(state));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Bike getExistingBikeInstanceContended(RentalState state, Cursor cursor) {
+        return getExistingBikeInstance(state, cursor);
+    }
+
+    @Benchmark
+    public CustomerRecord newCustomerRecord() throws ParseException {
+        return new CustomerRecord("Jane", "Doe", "01/02/1993", true);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public CustomerRecord newCustomerRecordContended() throws ParseException {
+        return newCustomerRecord();
+    }
+}
@@ -0,0 +1,105 @@
+package kd.benchmark;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import kd.RentalManager;
+import kd.bike.Bike;
+import kd.bike.BikeFactory;
+import kd.customer.CustomerRecord;
+import kd.rental.RentalResult;
+
+/**
+ * Benchmarks the RentalManager hot paths at fleet and customer sizes from 1k
+ * to 1M. The *Contended variants run on all available cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RentalManagerBenchmark {
+
+    /**
+     * Each thread walks its own slice of the customers, so threads never issue
+     * to the same customer
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int from;
+        private int length;
+        private int next;
+
+        @Setup
+        public void setUp(RentalState state, ThreadParams threads) {
+            length = Math.max(state.size / threads.getThreadCount(), 1);
+            from = (threads.getThreadIndex() * length) % state.size;
+        }
+
+        String nextCustomer(RentalState state) {
+            String customerNumber = state.customerNumbers[from + next];
+            next = (next + 1) % length;
+            return customerNumber;
+        }
+    }
+
+    @Benchmark
+    public Bike issueAndTerminate(RentalState state, Cursor cursor) {
+        String customerNumber = cursor.nextCustomer(state);
+        Bike bike = RentalManager.issueBike(customerNumber, BikeFactory.ROAD_BIKE).getBike();
+        RentalManager.terminateRental(customerNumber);
+        return bike;
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Bike issueAndTerminateContended(RentalState state, Cursor cursor) {
+        return issueAndTerminate(state, cursor);
+    }
+
+    @Benchmark
+    public RentalResult terminateRentalWithoutContract(RentalState state, Cursor cursor) {
+        return RentalManager.terminateRental(cursor.nextCustomer(state));
+    }
+
+    @Benchmark
+    public int getNumOfAvailableBikes() {
+        return RentalManager.getNumOfAvailableBikes(BikeFactory.ELECTRIC_BIKE);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int getNumOfAvailableBikesContended() {
+        return getNumOfAvailableBikes();
+    }
+
+    @Benchmark
+    public CustomerRecord getCustomerRecord(RentalState state, Cursor cursor) {
+        return RentalManager.getCustomerRecord(cursor.nextCustomer(state));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public CustomerRecord getCustomerRecordContended(RentalState state, Cursor cursor) {
+        return getCustomerRecord(state, cursor);
+    }
+
+    @Benchmark
+    public Set<Bike> getRentedBikes() {
+        return RentalManager.getRentedBikes();
+    }
+}
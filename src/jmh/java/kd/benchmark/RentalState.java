@@ -0,0 +1,65 @@
+package kd.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.text.ParseException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import kd.RentalManager;
+import kd.bike.BikeFactory;
+import kd.customer.CustomerRecord;
+
+/**
+ * Shared benchmark state: a fleet of road and electric bikes and an equal
+ * number of Gold Class customers registered with the RentalManager.
+ */
+@State(Scope.Benchmark)
+public class RentalState {
+
+    /* Serial numbers are registered globally, so every fleet gets fresh ones */
+    private static final AtomicInteger FLEETS = new AtomicInteger();
+
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int size;
+
+    public String[] customerNumbers;
+    public String[] serialNumbers;
+
+    private PrintStream out;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ParseException {
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        RentalManager.reset();
+        int fleet = FLEETS.incrementAndGet();
+
+        serialNumbers = new String[size];
+        for (int i = 0; i < size; i++) {
+            String type = i % 2 == 0 ? BikeFactory.ROAD_BIKE : BikeFactory.ELECTRIC_BIKE;
+            serialNumbers[i] = "f" + fleet + "-" + i;
+            RentalManager.addBike(BikeFactory.getInstance(type, serialNumbers[i]));
+        }
+
+        customerNumbers = new String[size];
+        for (int i = 0; i < size; i++) {
+            CustomerRecord record = new CustomerRecord("Customer", "Benchmark", "01/01/1980", true);
+            RentalManager.addCustomerRecord(record);
+            customerNumbers[i] = record.getCustomerNumber().toString();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        RentalManager.reset();
+        System.setOut(out);
+    }
+}
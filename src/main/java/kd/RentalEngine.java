@@ -0,0 +1,1056 @@
+package kd;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import kd.bike.*;
+import kd.bike.allocation.AllocationStrategy;
+import kd.billing.BillingEngine;
+import kd.billing.Invoice;
+import kd.billing.TariffTable;
+import kd.customer.*;
+import kd.feed.ChangeFeed;
+import kd.journal.RentalJournal;
+import kd.metrics.Metrics;
+import kd.metrics.OperationMetrics;
+import kd.rental.*;
+import kd.util.ConcurrentLongMap;
+
+/**
+ * The RentalEngine class is responsible for managing the bike rentals of one
+ * fleet. The RentalManager runs a single engine behind its static methods, and
+ * a {@link kd.depot.ShardedRentalEngine} runs one engine per depot, so any
+ * number of engines can live in one process, e.g. for testing.
+ *
+ * All operations are safe to call concurrently from several counters or
+ * kiosks. Free bikes are handed out through per-type pools, so a bike is only
+ * issued to the customer that won its rented status, and each customer holds
+ * at most one rental contract.
+ */
+public final class RentalEngine {
+
+    private static final OperationMetrics ISSUE_METRICS = Metrics.operation("RentalManager.issueBike");
+    private static final OperationMetrics TERMINATE_METRICS = Metrics.operation("RentalManager.terminateRental");
+    private static final OperationMetrics LOOKUP_METRICS = Metrics.operation("RentalManager.getCustomerRecord");
+
+    private final Set<CustomerRecord> customerRecords = ConcurrentHashMap.newKeySet();
+    private final Set<Bike> bikes = ConcurrentHashMap.newKeySet();
+    private final ConcurrentLongMap<Bike> rentedBikes = new ConcurrentLongMap<Bike>();
+    private final Set<Bike> rentedBikeSet = ConcurrentHashMap.newKeySet();
+    private volatile CustomerIndex customerIndex = new CustomerIndex();
+    private volatile NameIndex nameIndex = new NameIndex();
+    private volatile BikePool bikePool = new BikePool();
+    private volatile FleetStatistics statistics = new FleetStatistics();
+    private volatile ContractStore contracts = new ContractStore();
+    private volatile Waitlists waitlists = new Waitlists(this::reservationLeft);
+    private final SnapshotPublisher snapshots = new SnapshotPublisher(bikes::contains, code -> rentedBikes.get(code));
+    private volatile BillingEngine billing = new BillingEngine(TariffTable.standard());
+    private volatile RentalEventSink eventSink;
+    private volatile RentalJournal journal;
+    private volatile ChangeFeed changeFeed;
+    private volatile ChargingScheduler chargingScheduler;
+
+    /**
+     * Sets the sink that receives an event for every bike issued or returned and
+     * every rejected request. Without a sink no events are built at all.
+     *
+     * @param sink The sink to report events to, or null to stop reporting
+     */
+    public void setEventSink(RentalEventSink sink) {
+        eventSink = sink;
+    }
+
+    /**
+     * Sets the journal that every bike and customer record added and every bike
+     * issued or returned is appended to
+     *
+     * @param rentalJournal The journal to append to, or null to stop journaling
+     *
+     * @throws IllegalArgumentException if the journal was opened for another
+     *                                  engine
+     */
+    public void setJournal(RentalJournal rentalJournal) {
+        if (rentalJournal != null && rentalJournal.getEngine() != this) {
+            throw new IllegalArgumentException("Journal was opened for another rental engine");
+        }
+        journal = rentalJournal;
+    }
+
+    /**
+     * Sets the feed that every bike and customer record added and every bike
+     * issued or returned is published to
+     *
+     * @param feed The feed to publish to, or null to stop publishing
+     */
+    public void setChangeFeed(ChangeFeed feed) {
+        changeFeed = feed;
+    }
+
+    /**
+     * Sets the billing engine that charges every rental when the bike is
+     * returned. The default engine uses {@link TariffTable#standard()}.
+     *
+     * @param engine The billing engine
+     *
+     * @throws IllegalArgumentException if engine is null
+     */
+    public void setBillingEngine(BillingEngine engine) {
+        if (engine == null) {
+            throw new IllegalArgumentException("Empty billing engine");
+        }
+        billing = engine;
+    }
+
+    /**
+     * @return the billing engine that charges every rental when the bike is
+     *         returned
+     */
+    public BillingEngine getBillingEngine() {
+        return billing;
+    }
+
+    /**
+     * Starts simulating the charging of returned electric bikes. Until charging
+     * is started, returned bikes are fully charged straight away.
+     *
+     * @param percentPerMinute The battery percentage charged per minute
+     * @param dockCapacity     The number of bikes that can charge at the same
+     *                         time
+     * @param tickMillis       The interval between battery level updates, in
+     *                         milliseconds
+     */
+    public synchronized void startCharging(double percentPerMinute, int dockCapacity, long tickMillis) {
+        stopCharging();
+        chargingScheduler = new ChargingScheduler(percentPerMinute, dockCapacity, tickMillis, (bike, level) -> {
+            bikePool.batteryLevelChanged(bike);
+            if (level == 100) {
+                statistics.batteryCharged(bike);
+            }
+        });
+    }
+
+    /**
+     * Stops simulating the charging of returned electric bikes. Bikes keep the
+     * charge they have reached.
+     */
+    public synchronized void stopCharging() {
+        ChargingScheduler scheduler = chargingScheduler;
+        if (scheduler != null) {
+            chargingScheduler = null;
+            scheduler.close();
+        }
+    }
+
+    /**
+     * Sets the strategy deciding which free bike of a type is issued next, see
+     * {@link kd.bike.allocation.StandardAllocation} for the built-in strategies.
+     * The free bikes are re-indexed for the new strategy, keeping the usage
+     * history the previous indexes collected, so this is meant to be called
+     * while no bikes are being issued or returned.
+     *
+     * @param strategy The allocation strategy
+     */
+    public synchronized void setAllocationStrategy(AllocationStrategy strategy) {
+        BikePool pool = new BikePool(strategy, bikePool);
+        for (Bike bike : bikes) {
+            pool.add(bike);
+        }
+        bikePool = pool;
+    }
+
+    /**
+     * Adds a new bike to the bikes collection
+     *
+     * @param bike The new bike to be added to the collection
+     */
+    public void addBike(Bike bike) {
+        if (restoreBike(bike)) {
+            RentalJournal j = journal;
+            if (j != null) {
+                j.appendAddBike(bike);
+            }
+
+            ChangeFeed feed = changeFeed;
+            if (feed != null) {
+                feed.bikeAdded(bike);
+            }
+        }
+    }
+
+    /**
+     * Adds a customer record to the records collection
+     *
+     * @param record The customer record to be added to the collection
+     */
+    public void addCustomerRecord(CustomerRecord record) {
+        if (restoreCustomerRecord(record)) {
+            RentalJournal j = journal;
+            if (j != null) {
+                j.appendAddCustomerRecord(record);
+            }
+
+            ChangeFeed feed = changeFeed;
+            if (feed != null) {
+                feed.customerAdded(record);
+            }
+        }
+    }
+
+    /**
+     * Adds a bike read back from a journal, without journaling or publishing it
+     * again
+     *
+     * @param bike The bike to be added to the collection
+     *
+     * @return true if the bike was added
+     * @return false if the bike is in the collection already
+     */
+    public boolean restoreBike(Bike bike) {
+        if (!bikes.add(bike)) {
+            return false;
+        }
+        snapshots.bikeChanged(bike);
+        bikePool.add(bike);
+        statistics.bikeAdded(bike);
+        if (bike.getIsRented()) {
+            rentedBikeSet.add(bike);
+        }
+        return true;
+    }
+
+    /**
+     * Adds a customer record read back from a journal, without journaling or
+     * publishing it again
+     *
+     * @param record The customer record to be added to the collection
+     *
+     * @return true if the record was added
+     * @return false if the record is in the collection already
+     */
+    public boolean restoreCustomerRecord(CustomerRecord record) {
+        if (!customerRecords.add(record)) {
+            return false;
+        }
+        customerIndex.add(record);
+        nameIndex.add(record);
+        snapshots.customerRecordAdded(record);
+        return true;
+    }
+
+    /**
+     * Imports customer records from CSV input and adds them to the records
+     * collection, see {@link CustomerImporter} for the format
+     *
+     * @param in The CSV input
+     * 
+     * @return the number of customer records imported
+     * @throws IOException    if the input cannot be read
+     * @throws ParseException if a line is not a valid customer
+     */
+    public int importCustomerRecords(Reader in) throws IOException, ParseException {
+        return new CustomerImporter().importRecords(in, this::addCustomerRecord);
+    }
+
+    /**
+     * @return an immutable snapshot of all bikes in the collection
+     */
+    public Set<Bike> getAllBikes() {
+        return snapshots.get().getBikes();
+    }
+
+    /**
+     * @return an immutable snapshot of all customer records
+     */
+    public Set<CustomerRecord> getAllCustomerRecords() {
+        return snapshots.get().getCustomerRecords();
+    }
+
+    /**
+     * Returns a consistent, immutable view of the bikes, customer records and
+     * rentals at this point in time. Taking a snapshot only applies the changes
+     * made since the last one and does not copy the collections.
+     *
+     * @return the current snapshot
+     */
+    public RentalSnapshot getSnapshot() {
+        return snapshots.get();
+    }
+
+    /**
+     * Counts the number of bikes of a specific type available to rent
+     *
+     * @param typeOfBike The type of bike to check availability for
+     * 
+     * @return the number of bikes of the specified type available to rent
+     */
+    public int getNumOfAvailableBikes(String typeOfBike) {
+        BikeType type = BikeType.of(typeOfBike);
+        if (type == null) {
+            report(RentalStatus.INVALID_BIKE_TYPE, null, typeOfBike, null);
+            return 0;
+        }
+        return bikePool.getNumOfFreeBikes(type);
+    }
+
+    /**
+     * @return a live, unmodifiable view of all bikes that are currently rented out
+     */
+    public Set<Bike> getRentedBikes() {
+        return Collections.unmodifiableSet(rentedBikeSet);
+    }
+
+    /**
+     * @return the per bike type counts of the fleet, kept up to date as bikes are
+     *         added, issued and returned
+     */
+    public FleetStatistics getFleetStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return the store of active and terminated rental contracts
+     */
+    public ContractStore getContracts() {
+        return contracts;
+    }
+
+    /**
+     * Returns the rental contract under which a bike was rented at a point in time
+     *
+     * @param serialNumber The bike's serial number
+     * @param time         The point in time
+     *
+     * @return the contract, or null if the bike was not rented at that time
+     */
+    public RentalContract getContract(String serialNumber, Instant time) {
+        return contracts.getContract(serialNumber, time);
+    }
+
+    /**
+     * Returns the rental contracts that were active at any time from one point in
+     * time up to, but not including, another
+     *
+     * @param from The start of the time range
+     * @param to   The end of the time range
+     *
+     * @return the contracts overlapping the time range
+     */
+    public List<RentalContract> getContracts(Instant from, Instant to) {
+        return contracts.getContracts(from, to);
+    }
+
+    /**
+     * Invoices a month from the charges added up as rentals were returned, and
+     * clears them. The month is journaled as invoiced, so its charges are not
+     * restored after a restart.
+     *
+     * @param month The month to invoice
+     *
+     * @return the invoices, ordered by customer number
+     */
+    public List<Invoice> closeMonth(YearMonth month) {
+        List<Invoice> invoices = billing.closeMonth(month);
+
+        RentalJournal j = journal;
+        if (j != null) {
+            j.appendCloseMonth(month);
+        }
+        return invoices;
+    }
+
+    /**
+     * Invoices a month in bulk from the rental contracts that ended in it,
+     * pricing them in parallel with the billing engine's current tariffs. The
+     * contracts must not have been evicted from the contract store.
+     *
+     * @param month The month to invoice
+     *
+     * @return the invoices, ordered by customer number
+     */
+    public List<Invoice> runInvoices(YearMonth month) {
+        BillingEngine engine = billing;
+        Instant from = month.atDay(1).atStartOfDay(engine.getZone()).toInstant();
+        Instant to = month.plusMonths(1).atDay(1).atStartOfDay(engine.getZone()).toInstant();
+        return engine.runInvoices(contracts.getContracts(from, to), month, code -> {
+            CustomerRecord record = customerIndex.get(code);
+            return record != null && record.isGoldClass();
+        });
+    }
+
+    /**
+     * @return an immutable snapshot of the bikes currently rented out, keyed by
+     *         the number of the customer renting them
+     */
+    public Map<String, Bike> getRentals() {
+        return snapshots.get().getRentals();
+    }
+
+    /**
+     * Returns the bike rented out by the specified customer if any
+     *
+     * @param customerNumber The number of the customer that has rented the bike
+     * 
+     * @return the bike rented by the specified customer
+     */
+    public Bike getBike(String customerNumber) {
+        long code = CustomerNumber.parse(customerNumber);
+        return code == CustomerNumber.INVALID ? null : rentedBikes.get(code);
+    }
+
+    /**
+     * Returns the customer record for the specified customer number
+     *
+     * @param customerNumber The number of the customer to get the record for
+     * 
+     * @return the customer record the specified customer
+     */
+    public CustomerRecord getCustomerRecord(String customerNumber) {
+        long start = Metrics.start();
+        CustomerRecord record = customerIndex.get(customerNumber);
+        LOOKUP_METRICS.record(record == null ? "NOT_FOUND" : "FOUND", start);
+        return record;
+    }
+
+    /**
+     * Returns the customer record for the specified encoded customer number
+     *
+     * @param customerNumber The code of the customer number, see
+     *                       {@link CustomerNumber#longValue()}
+     * 
+     * @return the customer record the specified customer, or null if there is none
+     */
+    public CustomerRecord getCustomerRecord(long customerNumber) {
+        long start = Metrics.start();
+        CustomerRecord record = customerIndex.get(customerNumber);
+        LOOKUP_METRICS.record(record == null ? "NOT_FOUND" : "FOUND", start);
+        return record;
+    }
+
+    /**
+     * Returns the customer records with the specified initials and year of birth
+     *
+     * @param initials  The customer's first and last name initials, e.g. "JD"
+     * @param birthYear The customer's year of birth
+     * 
+     * @return the customer records matching the initials and year of birth
+     */
+    public Set<CustomerRecord> getCustomerRecords(String initials, int birthYear) {
+        return customerIndex.getByInitialsAndYear(initials, birthYear);
+    }
+
+    /**
+     * Finds customer records by the beginning of the first or last name, or of
+     * both, e.g. "doe", "jan" or "jan do"; case is ignored
+     *
+     * @param query The beginning of the name
+     * @param limit The maximum number of records to return
+     *
+     * @return the matching customer records, ordered by name
+     */
+    public List<CustomerRecord> findCustomerRecords(String query, int limit) {
+        return nameIndex.findByPrefix(query, limit);
+    }
+
+    /**
+     * Finds customer records whose first or last name is within a number of
+     * typing errors of a name, e.g. "jonh" finds John with one edit
+     *
+     * @param name     The name as typed
+     * @param maxEdits The maximum number of inserted, deleted or substituted
+     *                 characters
+     * @param limit    The maximum number of records to return
+     *
+     * @return the matching customer records, closest names first
+     */
+    public List<CustomerRecord> findSimilarCustomerRecords(String name, int maxEdits, int limit) {
+        return nameIndex.findSimilar(name, maxEdits, limit);
+    }
+
+    /**
+     * @return a list of all Gold Class customer records
+     */
+    public Set<CustomerRecord> getGoldClassCustomerRecords() {
+        return customerIndex.getGoldClass();
+    }
+
+    /**
+     * Issues a bike of a given type to the specified customer
+     *
+     * @param customerNumber The number of the customer to issue the bike to
+     * @param typeOfBike     The type of bike to be issued
+     * 
+     * @return the outcome of the request, with the issued bike if successful
+     */
+    public RentalResult issueBike(String customerNumber, String typeOfBike) {
+        return issueBike(getCustomerRecord(customerNumber), customerNumber, typeOfBike, null, Allocation.WALK_IN);
+    }
+
+    /**
+     * Issues a specific bike to the specified customer, for example the bike the
+     * customer picked at the counter
+     *
+     * @param customerNumber The number of the customer to issue the bike to
+     * @param bike           The bike to be issued
+     * 
+     * @return the outcome of the request, with the issued bike if successful
+     */
+    public RentalResult issueBike(String customerNumber, Bike bike) {
+        return issueBike(getCustomerRecord(customerNumber), customerNumber, bike.getType(), bike, Allocation.WALK_IN);
+    }
+
+    /**
+     * Issues bikes for a batch of rental requests. Customers are resolved once
+     * for the whole batch and requests are grouped by bike type, so bikes of
+     * each type are allocated in a single pass in request order.
+     *
+     * @param requests The rental requests to be handled
+     * @param parallel Whether the groups of different bike types may be handled
+     *                 in parallel
+     * 
+     * @return the outcome of each request, in the order of the requests
+     */
+    public List<RentalResult> issueBikes(Collection<RentalRequest> requests, boolean parallel) {
+        RentalRequest[] batch = requests.toArray(new RentalRequest[0]);
+        RentalResult[] results = new RentalResult[batch.length];
+
+        /* Resolve customer records and group request indexes by bike type */
+        CustomerRecord[] records = new CustomerRecord[batch.length];
+        Map<String, List<Integer>> byBikeType = new LinkedHashMap<String, List<Integer>>();
+        for (int i = 0; i < batch.length; i++) {
+            records[i] = getCustomerRecord(batch[i].getCustomerNumber());
+            byBikeType.computeIfAbsent(batch[i].getBikeType(), k -> new ArrayList<Integer>()).add(i);
+        }
+
+        /* Allocate bikes per bike type */
+        (parallel ? byBikeType.values().parallelStream() : byBikeType.values().stream()).forEach(group -> {
+            for (int i : group) {
+                results[i] = issueBike(records[i], batch[i].getCustomerNumber(), batch[i].getBikeType(), null,
+                        Allocation.WALK_IN);
+            }
+        });
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Issues a bike read back from a journal to the specified customer, with the
+     * rental starting at the recorded time. Only the rental is restored: it is
+     * not journaled, published or reported, and the waitlists are not served.
+     *
+     * @param customerNumber The number of the customer the bike was issued to
+     * @param bike           The bike that was issued
+     * @param startMillis    When the rental started, in epoch milliseconds
+     *
+     * @return the restored contract, or null if the customer is unknown, already
+     *         rents a bike or the bike is not free
+     */
+    public RentalContract restoreIssue(String customerNumber, Bike bike, long startMillis) {
+        long code = CustomerNumber.parse(customerNumber);
+        if (code == CustomerNumber.INVALID || customerIndex.get(code) == null || rentedBikes.containsKey(code)
+                || !bikePool.take(bike)) {
+            return null;
+        }
+        RentalContract contract = rented(code, customerNumber, bike, startMillis);
+        if (contract == null) {
+            bikePool.release(bike);
+        }
+        return contract;
+    }
+
+    /*
+     * Where the bike for a request comes from. Walk-in requests queue behind
+     * customers on the waitlist, waitlist requests take a free bike from the
+     * pool and hand overs issue a returned bike that never went back to the pool.
+     */
+    private enum Allocation {
+        WALK_IN, WAITLIST, HAND_OVER
+    }
+
+    /*
+     * Issue a bike of a given type, or the requested bike if not null, to the
+     * customer with an already resolved customer record, and record the outcome
+     */
+    private RentalResult issueBike(CustomerRecord toIssueCustomerRecord, String customerNumber,
+            String typeOfBike, Bike requestedBike, Allocation allocation) {
+
+        long start = Metrics.start();
+        RentalResult result = tryIssueBike(toIssueCustomerRecord, customerNumber, typeOfBike, requestedBike,
+                allocation);
+        ISSUE_METRICS.record(result.getStatus(), start);
+        return result;
+    }
+
+    private RentalResult tryIssueBike(CustomerRecord toIssueCustomerRecord, String customerNumber,
+            String typeOfBike, Bike requestedBike, Allocation allocation) {
+
+        /* Check the customer record was found based on customer number */
+        if (toIssueCustomerRecord == null) {
+            return report(RentalStatus.NO_CUSTOMER_RECORD, customerNumber, typeOfBike, null);
+        }
+
+        /* Check if customer does not have a bike on loan already */
+        long code = toIssueCustomerRecord.getCustomerNumber().longValue();
+        if (rentedBikes.containsKey(code)) {
+            return report(RentalStatus.ALREADY_HAS_BIKE, customerNumber, typeOfBike, null);
+        }
+
+        /* Validate bike type, resolving it once for the checks below */
+        BikeType type = requestedBike == null ? BikeType.of(typeOfBike) : requestedBike.getBikeType();
+        if (type == null) {
+            return report(RentalStatus.INVALID_BIKE_TYPE, customerNumber, typeOfBike, null);
+        }
+
+        /* Check if customer is eligbile to rent the bike type specified */
+        if (!toIssueCustomerRecord.isEligibleFor(type, Today.epochDay())) {
+            return report(RentalStatus.NOT_ELIGIBLE, customerNumber, typeOfBike, null);
+        }
+
+        /* Customers waiting for the bike type are served before walk-ins */
+        if (allocation == Allocation.WALK_IN && waitlists.getNumOfWaiting(type.getName()) > 0) {
+            serveWaitlist(type.getName());
+            if (waitlists.getNumOfWaiting(type.getName()) > 0) {
+                return report(RentalStatus.NO_BIKES_AVAILABLE, customerNumber, typeOfBike, null);
+            }
+        }
+
+        /* Take a bike to issue from the available bikes of the specified type */
+        Bike bikeToIssue;
+        if (allocation == Allocation.HAND_OVER) {
+            bikeToIssue = requestedBike;
+        } else if (requestedBike == null) {
+            bikeToIssue = bikePool.take(type);
+        } else {
+            bikeToIssue = bikePool.take(requestedBike) ? requestedBike : null;
+        }
+        if (bikeToIssue == null) {
+            return report(RentalStatus.NO_BIKES_AVAILABLE, customerNumber, typeOfBike, null);
+        }
+
+        /* Another counter may have issued a bike to the customer in the meantime */
+        RentalContract contract = rented(code, customerNumber, bikeToIssue, System.currentTimeMillis());
+        if (contract == null) {
+            if (allocation != Allocation.HAND_OVER) {
+                bikePool.release(bikeToIssue);
+            }
+            return report(RentalStatus.ALREADY_HAS_BIKE, customerNumber, typeOfBike, null);
+        }
+
+        RentalJournal j = journal;
+        if (j != null) {
+            j.appendIssue(customerNumber, bikeToIssue, contract.getStartMillis());
+        }
+
+        ChangeFeed feed = changeFeed;
+        if (feed != null) {
+            feed.bikeIssued(code, bikeToIssue);
+        }
+
+        return report(RentalStatus.ISSUED, contract);
+    }
+
+    /*
+     * Open the contract for a bike taken for a customer, record the rental in
+     * the fleet statistics and empty the bike's battery. The rental is published
+     * last, so a return racing with the issue finds it fully recorded. Returns
+     * null, recording nothing, if the customer holds a contract already.
+     */
+    private RentalContract rented(long code, String customerNumber, Bike bike, long millis) {
+        RentalContract contract = contracts.open(customerNumber, bike, millis);
+        if (contract == null) {
+            return null;
+        }
+        statistics.bikeRented(bike);
+        rentedBikeSet.add(bike);
+
+        /* If bike is electric, unplug it if charging and set battery to empty */
+        if (bike instanceof BatteryPowered) {
+            BatteryPowered e = (BatteryPowered) bike;
+            ChargingScheduler scheduler = chargingScheduler;
+            if (scheduler != null) {
+                scheduler.unplug(bike);
+            }
+            if (e.getBatteryFull()) {
+                statistics.batteryEmptied(bike);
+            }
+            e.setBatteryEmpty();
+        }
+
+        snapshots.rentalChanged(code, () -> rentedBikes.put(code, bike));
+        return contract;
+    }
+
+    /**
+     * Issues a bike of a given type to the specified customer, or puts the
+     * customer on the waitlist for the bike type if none is available. Waiting
+     * customers are served first come, first served as bikes are returned.
+     *
+     * @param customerNumber The number of the customer to issue the bike to
+     * @param typeOfBike     The type of bike to be issued
+     * @param timeoutMillis  How long the customer is willing to wait, in
+     *                       milliseconds
+     * 
+     * @return the reservation, which has already ended if a bike was issued
+     *         straight away or the request was rejected
+     *
+     * @throws IllegalArgumentException if timeoutMillis is not positive
+     */
+    public Reservation reserveBike(String customerNumber, String typeOfBike, long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Reservation timeout must be positive");
+        }
+
+        Reservation existing = waitlists.getReservation(customerNumber);
+        if (existing != null) {
+            return existing;
+        }
+
+        RentalResult result = issueBike(customerNumber, typeOfBike);
+        if (result.getStatus() != RentalStatus.NO_BIKES_AVAILABLE) {
+            return Reservation.ended(customerNumber, typeOfBike, result);
+        }
+
+        Reservation reservation = waitlists.add(customerNumber, typeOfBike, timeoutMillis);
+        report(RentalStatus.RESERVED, customerNumber, typeOfBike, null);
+
+        /* A bike may have been returned before the customer joined the waitlist */
+        if (bikePool.getNumOfFreeBikes(typeOfBike) > 0) {
+            serveWaitlist(typeOfBike);
+        }
+        return reservation;
+    }
+
+    /*
+     * Issue free bikes of a type to the customers waiting for one, in order
+     */
+    private void serveWaitlist(String typeOfBike) {
+        waitlists.serve(typeOfBike, r -> issueBike(getCustomerRecord(r.getCustomerNumber()), r.getCustomerNumber(),
+                typeOfBike, null, Allocation.WAITLIST));
+    }
+
+    /*
+     * Issue a returned bike that has not been released to the pool to the first
+     * waiting customer that can rent it
+     *
+     * @return true if the bike was issued
+     */
+    private boolean handOver(Bike bike) {
+        boolean[] handedOver = { false };
+        waitlists.serve(bike.getType(), r -> {
+            if (handedOver[0]) {
+                return RentalResult.of(RentalStatus.NO_BIKES_AVAILABLE);
+            }
+            RentalResult result = issueBike(getCustomerRecord(r.getCustomerNumber()), r.getCustomerNumber(),
+                    bike.getType(), bike, Allocation.HAND_OVER);
+            handedOver[0] = result.isSuccess();
+            return result;
+        });
+        return handedOver[0];
+    }
+
+    /**
+     * Takes the specified customer off the waitlist
+     *
+     * @param customerNumber The number of the customer
+     * 
+     * @return <code>true</code> if the customer's reservation was cancelled
+     *         <code>false</code> if the customer was not waiting
+     */
+    public boolean cancelReservation(String customerNumber) {
+        return waitlists.cancel(customerNumber);
+    }
+
+    /**
+     * @param typeOfBike The type of bike
+     * 
+     * @return the number of customers waiting for a bike of the specified type
+     */
+    public int getNumOfReservations(String typeOfBike) {
+        return waitlists.getNumOfWaiting(typeOfBike);
+    }
+
+    /**
+     * Terminates the rental contract associated with the given customer number
+     *
+     * @param customerNumber The number of the customer to terminate the rental
+     *                       contract for
+     * 
+     * @return the outcome of the request, with the returned bike if successful
+     */
+    public RentalResult terminateRental(String customerNumber) {
+        return terminateRental(customerNumber, this);
+    }
+
+    /**
+     * Terminates the rental contract of the specified customer, with the bike
+     * returned to another engine, for example at another depot. The contract
+     * and its charge stay with this engine, while the bike leaves this fleet
+     * and joins the other one, where it is handed to the first customer waiting
+     * for one or else made available.
+     *
+     * @param customerNumber The number of the customer to terminate the rental
+     *                       contract for
+     * @param destination    The engine the bike is returned to, which may be
+     *                       this engine
+     * 
+     * @return the outcome of the request, with the returned bike if successful
+     *
+     * @throws IllegalArgumentException if destination is null
+     */
+    public RentalResult terminateRental(String customerNumber, RentalEngine destination) {
+        if (destination == null) {
+            throw new IllegalArgumentException("Empty destination engine");
+        }
+
+        long start = Metrics.start();
+        RentalResult result = tryTerminateRental(customerNumber, destination);
+        TERMINATE_METRICS.record(result.getStatus(), start);
+        return result;
+    }
+
+    /**
+     * Terminates a rental contract read back from a journal, with the rental
+     * ending at the recorded time, and adds the fee charged for it to the
+     * customer's account unless the account has it already. The rental is not
+     * priced, journaled, published or reported again, and the waitlists are not
+     * served.
+     *
+     * @param customerNumber The number of the customer that returned the bike
+     * @param startMillis    When the rental started, in epoch milliseconds
+     * @param endMillis      When the rental ended, in epoch milliseconds
+     * @param fee            The fee charged, in cents, or -1 if the rental was
+     *                       not charged
+     *
+     * @return the terminated contract, or null if the customer has no rental
+     */
+    public RentalContract restoreTermination(String customerNumber, long startMillis, long endMillis,
+            long fee) {
+
+        long code = CustomerNumber.parse(customerNumber);
+        if (code == CustomerNumber.INVALID) {
+            return null;
+        }
+
+        /* The rental may have ended before the snapshot, while its charge was not saved with it */
+        Bike b = snapshots.rentalChanged(code, () -> rentedBikes.remove(code));
+        RentalContract contract = b == null ? null : returned(customerNumber, b, endMillis);
+        if (fee >= 0) {
+            if (contract != null) {
+                contract.bill(fee);
+            }
+            billing.charge(code, startMillis, endMillis, fee);
+        }
+        if (b != null) {
+            bikePool.release(b);
+        }
+        return contract;
+    }
+
+    private RentalResult tryTerminateRental(String customerNumber, RentalEngine destination) {
+        long code = CustomerNumber.parse(customerNumber);
+        Bike b = code == CustomerNumber.INVALID ? null : snapshots.rentalChanged(code, () -> rentedBikes.remove(code));
+        if (b == null) {
+            return report(RentalStatus.NO_RENTAL_CONTRACT, customerNumber, null, null);
+        }
+        long millis = System.currentTimeMillis();
+        RentalContract contract = destination == this ? returned(customerNumber, b, millis)
+                : returnedElsewhere(customerNumber, b, millis);
+
+        /* Charge the rental by its duration, bike type and the customer's class */
+        if (contract != null) {
+            CustomerRecord record = customerIndex.get(code);
+            billing.bill(contract, record != null && record.isGoldClass());
+        }
+
+        RentalJournal j = journal;
+        if (j != null) {
+            if (contract != null) {
+                j.appendTerminate(customerNumber, contract.getStartMillis(), millis, contract.getFee());
+            } else {
+                j.appendTerminate(customerNumber, millis, millis, -1);
+            }
+        }
+
+        ChangeFeed feed = changeFeed;
+        if (feed != null) {
+            feed.bikeReturned(code, b);
+        }
+
+        RentalResult result = contract == null ? report(RentalStatus.RETURNED, customerNumber, b.getType(), b)
+                : report(RentalStatus.RETURNED, contract);
+
+        /*
+         * Hand the returned bike to the first customer waiting for one, or else
+         * make it available, here or at the engine it was returned to. Either
+         * only happens once the return is fully recorded, so the next rental
+         * finds the bike docked, counted as returned and journaled.
+         */
+        if (destination != this) {
+            destination.received(b);
+        } else if (waitlists.getNumOfWaiting(b.getType()) == 0 || !handOver(b)) {
+            bikePool.release(b);
+        }
+        return result;
+    }
+
+    /*
+     * Record a bike that has just been returned by a customer in the contracts
+     * and fleet statistics, and plug it in to charge
+     */
+    private RentalContract returned(String customerNumber, Bike bike, long millis) {
+        RentalContract contract = contracts.terminate(customerNumber, millis);
+        docked(bike);
+        return contract;
+    }
+
+    /*
+     * Record a bike that has just been returned by a customer to another engine
+     * in the contracts, and remove it from the fleet while it still counts as
+     * rented
+     */
+    private RentalContract returnedElsewhere(String customerNumber, Bike bike, long millis) {
+        RentalContract contract = contracts.terminate(customerNumber, millis);
+        rentedBikeSet.remove(bike);
+        statistics.bikeRemoved(bike);
+        bikes.remove(bike);
+        snapshots.bikeChanged(bike);
+        return contract;
+    }
+
+    /*
+     * Add a bike returned here that was rented from another engine, and hand it
+     * to the first customer waiting for one, or else make it available
+     */
+    private void received(Bike bike) {
+        if (bikes.add(bike)) {
+            snapshots.bikeChanged(bike);
+            statistics.bikeAdded(bike);
+
+            RentalJournal j = journal;
+            if (j != null) {
+                j.appendAddBike(bike);
+            }
+
+            ChangeFeed feed = changeFeed;
+            if (feed != null) {
+                feed.bikeAdded(bike);
+            }
+        }
+        docked(bike);
+
+        if (waitlists.getNumOfWaiting(bike.getType()) == 0 || !handOver(bike)) {
+            bikePool.release(bike);
+        }
+    }
+
+    /*
+     * Count a returned bike as no longer rented, and plug it in to charge if it
+     * is electric
+     */
+    private void docked(Bike bike) {
+
+        /* If bike is electric, plug it in to charge, or charge it instantly */
+        ChargingScheduler scheduler = chargingScheduler;
+        if (bike instanceof BatteryPowered && scheduler == null) {
+            BatteryPowered e = (BatteryPowered) bike;
+            if (!e.getBatteryFull()) {
+                statistics.batteryCharged(bike);
+            }
+            e.setBatteryFull();
+        }
+
+        rentedBikeSet.remove(bike);
+        statistics.bikeReturned(bike);
+        if (bike instanceof BatteryPowered && scheduler != null) {
+            scheduler.plugIn(bike);
+        }
+    }
+
+    /**
+     * Terminates the rental contracts of a batch of customers
+     *
+     * @param customerNumbers The numbers of the customers to terminate the rental
+     *                        contracts for
+     * @param parallel        Whether the returns may be handled in parallel
+     * 
+     * @return the outcome of each return, in the order of the customer numbers
+     */
+    public List<RentalResult> terminateRentals(Collection<String> customerNumbers, boolean parallel) {
+        String[] batch = customerNumbers.toArray(new String[0]);
+        RentalResult[] results = new RentalResult[batch.length];
+
+        if (parallel) {
+            Arrays.parallelSetAll(results, i -> terminateRental(batch[i]));
+        } else {
+            Arrays.setAll(results, i -> terminateRental(batch[i]));
+        }
+
+        return Arrays.asList(results);
+    }
+
+    /*
+     * Report the outcome of a request to the event sink, if any, and return it as
+     * a result
+     */
+    private RentalResult report(RentalStatus status, String customerNumber, String typeOfBike, Bike bike) {
+        RentalEventSink sink = eventSink;
+        if (sink != null) {
+            sink.accept(new RentalEvent(status, customerNumber, typeOfBike, bike));
+        }
+        return bike == null ? RentalResult.of(status) : RentalResult.of(status, bike);
+    }
+
+    /*
+     * Report the outcome of a request that opened or terminated a rental contract
+     */
+    private RentalResult report(RentalStatus status, RentalContract contract) {
+        RentalEventSink sink = eventSink;
+        if (sink != null) {
+            sink.accept(new RentalEvent(status, contract.getCustomerNumber(), contract.getBikeType(),
+                    contract.getBike()));
+        }
+        return RentalResult.of(status, contract);
+    }
+
+    /*
+     * Report a reservation that expired or was cancelled
+     */
+    private void reservationLeft(Reservation reservation) {
+        RentalStatus status = reservation.getResult().join().getStatus();
+        report(status, reservation.getCustomerNumber(), reservation.getBikeType(), null);
+    }
+
+    /**
+     * Removes all bikes, customer records and rental contracts. Reservations
+     * still waiting end as expired, without being reported. Must not be called
+     * while other operations are in progress.
+     */
+    public void reset() {
+        Waitlists old = waitlists;
+        waitlists = new Waitlists(this::reservationLeft);
+        old.close();
+
+        rentedBikes.clear();
+        rentedBikeSet.clear();
+        bikes.clear();
+        customerRecords.clear();
+        snapshots.reset();
+        customerIndex = new CustomerIndex();
+        nameIndex = new NameIndex();
+        bikePool = new BikePool(bikePool.getStrategy());
+        statistics = new FleetStatistics();
+        contracts = new ContractStore();
+        billing = new BillingEngine(billing.getTariffs(), billing.getZone());
+    }
+}
@@ -1,22 +1,135 @@
 package kd;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.text.ParseException;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import kd.bike.*;
+import kd.bike.allocation.AllocationStrategy;
+import kd.billing.BillingEngine;
+import kd.billing.Invoice;
+import kd.billing.TariffTable;
 import kd.customer.*;
+import kd.feed.ChangeFeed;
+import kd.journal.RentalJournal;
+import kd.metrics.Metrics;
+import kd.rental.*;
 
 /**
  * The RentalManager class is responsible for managing the bike rentals.
+ *
+ * The static methods all delegate to a single {@link RentalEngine}, see
+ * {@link #getEngine()}; create engines of your own to run several fleets in
+ * one process. All operations are safe to call concurrently from several
+ * counters or kiosks. Free bikes are handed out through per-type pools, so a
+ * bike is only issued to the customer that won its rented status, and each
+ * customer holds at most one rental contract.
  */
 public abstract class RentalManager {
 
-    private static Set<CustomerRecord> customerRecords = new HashSet<CustomerRecord>();
-    private static Set<Bike> bikes = new HashSet<Bike>();
-    private static Map<String, Bike> rentedBikes = new HashMap<String, Bike>();
+    private static final RentalEngine ENGINE = new RentalEngine();
+
+    /**
+     * @return the engine behind the static methods of the RentalManager
+     */
+    public static RentalEngine getEngine() {
+        return ENGINE;
+    }
+
+    /**
+     * Sets the sink that receives an event for every bike issued or returned and
+     * every rejected request. Without a sink no events are built at all.
+     *
+     * @param sink The sink to report events to, or null to stop reporting
+     */
+    public static void setEventSink(RentalEventSink sink) {
+        ENGINE.setEventSink(sink);
+    }
+
+    /**
+     * Sets the journal that every bike and customer record added and every bike
+     * issued or returned is appended to
+     *
+     * @param rentalJournal The journal to append to, or null to stop journaling
+     *
+     * @throws IllegalArgumentException if the journal was opened for another
+     *                                  engine
+     */
+    public static void setJournal(RentalJournal rentalJournal) {
+        ENGINE.setJournal(rentalJournal);
+    }
+
+    /**
+     * Sets the feed that every bike and customer record added and every bike
+     * issued or returned is published to
+     *
+     * @param feed The feed to publish to, or null to stop publishing
+     */
+    public static void setChangeFeed(ChangeFeed feed) {
+        ENGINE.setChangeFeed(feed);
+    }
+
+    /**
+     * Sets the billing engine that charges every rental when the bike is
+     * returned. The default engine uses {@link TariffTable#standard()}.
+     *
+     * @param engine The billing engine
+     *
+     * @throws IllegalArgumentException if engine is null
+     */
+    public static void setBillingEngine(BillingEngine engine) {
+        ENGINE.setBillingEngine(engine);
+    }
+
+    /**
+     * @return the billing engine that charges every rental when the bike is
+     *         returned
+     */
+    public static BillingEngine getBillingEngine() {
+        return ENGINE.getBillingEngine();
+    }
+
+    /**
+     * Starts simulating the charging of returned electric bikes. Until charging
+     * is started, returned bikes are fully charged straight away.
+     *
+     * @param percentPerMinute The battery percentage charged per minute
+     * @param dockCapacity     The number of bikes that can charge at the same
+     *                         time
+     * @param tickMillis       The interval between battery level updates, in
+     *                         milliseconds
+     */
+    public static void startCharging(double percentPerMinute, int dockCapacity, long tickMillis) {
+        ENGINE.startCharging(percentPerMinute, dockCapacity, tickMillis);
+    }
+
+    /**
+     * Stops simulating the charging of returned electric bikes. Bikes keep the
+     * charge they have reached.
+     */
+    public static void stopCharging() {
+        ENGINE.stopCharging();
+    }
+
+    /**
+     * Sets the strategy deciding which free bike of a type is issued next, see
+     * {@link kd.bike.allocation.StandardAllocation} for the built-in strategies.
+     * The free bikes are re-indexed for the new strategy, keeping the usage
+     * history the previous indexes collected, so this is meant to be called
+     * while no bikes are being issued or returned.
+     *
+     * @param strategy The allocation strategy
+     */
+    public static void setAllocationStrategy(AllocationStrategy strategy) {
+        ENGINE.setAllocationStrategy(strategy);
+    }
 
     /**
      * Adds a new bike to the bikes collection
@@ -24,7 +137,7 @@ public abstract class RentalManager {
      * @param bike The new bike to be added to the collection
      */
     public static void addBike(Bike bike) {
-        bikes.add(bike);
+        ENGINE.addBike(bike);
     }
 
     /**
@@ -33,21 +146,72 @@ public abstract class RentalManager {
      * @param record The customer record to be added to the collection
      */
     public static void addCustomerRecord(CustomerRecord record) {
-        customerRecords.add(record);
+        ENGINE.addCustomerRecord(record);
+    }
+
+    /**
+     * Adds a bike read back from a journal, without journaling or publishing it
+     * again
+     *
+     * @param bike The bike to be added to the collection
+     *
+     * @return true if the bike was added
+     * @return false if the bike is in the collection already
+     */
+    public static boolean restoreBike(Bike bike) {
+        return ENGINE.restoreBike(bike);
+    }
+
+    /**
+     * Adds a customer record read back from a journal, without journaling or
+     * publishing it again
+     *
+     * @param record The customer record to be added to the collection
+     *
+     * @return true if the record was added
+     * @return false if the record is in the collection already
+     */
+    public static boolean restoreCustomerRecord(CustomerRecord record) {
+        return ENGINE.restoreCustomerRecord(record);
     }
 
     /**
-     * @return a list of all bikes in the collection
+     * Imports customer records from CSV input and adds them to the records
+     * collection, see {@link CustomerImporter} for the format
+     *
+     * @param in The CSV input
+     * 
+     * @return the number of customer records imported
+     * @throws IOException    if the input cannot be read
+     * @throws ParseException if a line is not a valid customer
+     */
+    public static int importCustomerRecords(Reader in) throws IOException, ParseException {
+        return ENGINE.importCustomerRecords(in);
+    }
+
+    /**
+     * @return an immutable snapshot of all bikes in the collection
      */
     public static Set<Bike> getAllBikes() {
-        return bikes;
+        return ENGINE.getAllBikes();
     }
 
     /**
-     * @return a list of all customer records
+     * @return an immutable snapshot of all customer records
      */
     public static Set<CustomerRecord> getAllCustomerRecords() {
-        return customerRecords;
+        return ENGINE.getAllCustomerRecords();
+    }
+
+    /**
+     * Returns a consistent, immutable view of the bikes, customer records and
+     * rentals at this point in time. Taking a snapshot only applies the changes
+     * made since the last one and does not copy the collections.
+     *
+     * @return the current snapshot
+     */
+    public static RentalSnapshot getSnapshot() {
+        return ENGINE.getSnapshot();
     }
 
     /**
@@ -58,45 +222,88 @@ public abstract class RentalManager {
      * @return the number of bikes of the specified type available to rent
      */
     public static int getNumOfAvailableBikes(String typeOfBike) {
-        int numberOfAvailableBikes = 0;
+        return ENGINE.getNumOfAvailableBikes(typeOfBike);
+    }
 
-        /*
-         * Set bikeClass to the class name of the bike type specified
-         */
-        String bikeClass = null;
-        if (typeOfBike.equals("road")) {
-            bikeClass = RoadBike.class.getName();
-        } else if (typeOfBike.equals("electric")) {
-            bikeClass = ElectricBike.class.getName();
-        }
+    /**
+     * @return a live, unmodifiable view of all bikes that are currently rented out
+     */
+    public static Set<Bike> getRentedBikes() {
+        return ENGINE.getRentedBikes();
+    }
 
-        /*
-         * If a class was found for the bike type specified, count number of available
-         * bikes for that type, otherwise print invalid bike type message
-         */
-        if (bikeClass != null) {
-            for (Bike bike : bikes) {
-                if (bike.getClass().getName().equals(bikeClass) && !bike.getIsRented()) {
-                    numberOfAvailableBikes++;
-                }
-            }
-        } else {
-            System.out.println("Invalid bike type.");
-        }
+    /**
+     * @return the per bike type counts of the fleet, kept up to date as bikes are
+     *         added, issued and returned
+     */
+    public static FleetStatistics getFleetStatistics() {
+        return ENGINE.getFleetStatistics();
+    }
 
-        return numberOfAvailableBikes;
+    /**
+     * @return the store of active and terminated rental contracts
+     */
+    public static ContractStore getContracts() {
+        return ENGINE.getContracts();
     }
 
     /**
-     * @return a list of all bikes that are currently rented out
+     * Returns the rental contract under which a bike was rented at a point in time
+     *
+     * @param serialNumber The bike's serial number
+     * @param time         The point in time
+     *
+     * @return the contract, or null if the bike was not rented at that time
      */
-    public static Set<Bike> getRentedBikes() {
-        Set<Bike> rentedBikes = new HashSet<Bike>();
-        for (Bike bike : bikes) {
-            if (bike.getIsRented())
-                rentedBikes.add(bike);
-        }
-        return rentedBikes;
+    public static RentalContract getContract(String serialNumber, Instant time) {
+        return ENGINE.getContract(serialNumber, time);
+    }
+
+    /**
+     * Returns the rental contracts that were active at any time from one point in
+     * time up to, but not including, another
+     *
+     * @param from The start of the time range
+     * @param to   The end of the time range
+     *
+     * @return the contracts overlapping the time range
+     */
+    public static List<RentalContract> getContracts(Instant from, Instant to) {
+        return ENGINE.getContracts(from, to);
+    }
+
+    /**
+     * Invoices a month from the charges added up as rentals were returned, and
+     * clears them. The month is journaled as invoiced, so its charges are not
+     * restored after a restart.
+     *
+     * @param month The month to invoice
+     *
+     * @return the invoices, ordered by customer number
+     */
+    public static List<Invoice> closeMonth(YearMonth month) {
+        return ENGINE.closeMonth(month);
+    }
+
+    /**
+     * Invoices a month in bulk from the rental contracts that ended in it,
+     * pricing them in parallel with the billing engine's current tariffs. The
+     * contracts must not have been evicted from the contract store.
+     *
+     * @param month The month to invoice
+     *
+     * @return the invoices, ordered by customer number
+     */
+    public static List<Invoice> runInvoices(YearMonth month) {
+        return ENGINE.runInvoices(month);
+    }
+
+    /**
+     * @return an immutable snapshot of the bikes currently rented out, keyed by
+     *         the number of the customer renting them
+     */
+    public static Map<String, Bike> getRentals() {
+        return ENGINE.getRentals();
     }
 
     /**
@@ -107,8 +314,7 @@ public abstract class RentalManager {
      * @return the bike rented by the specified customer
      */
     public static Bike getBike(String customerNumber) {
-        Bike bike = rentedBikes.get(customerNumber);
-        return bike;
+        return ENGINE.getBike(customerNumber);
     }
 
     /**
@@ -119,14 +325,66 @@ public abstract class RentalManager {
      * @return the customer record the specified customer
      */
     public static CustomerRecord getCustomerRecord(String customerNumber) {
-        CustomerRecord customerRecord = null;
-        for (CustomerRecord record : customerRecords) {
-            if (customerNumber.equals(record.getCustomerNumber().toString())) {
-                customerRecord = record;
-                break;
-            }
-        }
-        return customerRecord;
+        return ENGINE.getCustomerRecord(customerNumber);
+    }
+
+    /**
+     * Returns the customer record for the specified encoded customer number
+     *
+     * @param customerNumber The code of the customer number, see
+     *                       {@link CustomerNumber#longValue()}
+     * 
+     * @return the customer record the specified customer, or null if there is none
+     */
+    public static CustomerRecord getCustomerRecord(long customerNumber) {
+        return ENGINE.getCustomerRecord(customerNumber);
+    }
+
+    /**
+     * Returns the customer records with the specified initials and year of birth
+     *
+     * @param initials  The customer's first and last name initials, e.g. "JD"
+     * @param birthYear The customer's year of birth
+     * 
+     * @return the customer records matching the initials and year of birth
+     */
+    public static Set<CustomerRecord> getCustomerRecords(String initials, int birthYear) {
+        return ENGINE.getCustomerRecords(initials, birthYear);
+    }
+
+    /**
+     * Finds customer records by the beginning of the first or last name, or of
+     * both, e.g. "doe", "jan" or "jan do"; case is ignored
+     *
+     * @param query The beginning of the name
+     * @param limit The maximum number of records to return
+     *
+     * @return the matching customer records, ordered by name
+     */
+    public static List<CustomerRecord> findCustomerRecords(String query, int limit) {
+        return ENGINE.findCustomerRecords(query, limit);
+    }
+
+    /**
+     * Finds customer records whose first or last name is within a number of
+     * typing errors of a name, e.g. "jonh" finds John with one edit
+     *
+     * @param name     The name as typed
+     * @param maxEdits The maximum number of inserted, deleted or substituted
+     *                 characters
+     * @param limit    The maximum number of records to return
+     *
+     * @return the matching customer records, closest names first
+     */
+    public static List<CustomerRecord> findSimilarCustomerRecords(String name, int maxEdits, int limit) {
+        return ENGINE.findSimilarCustomerRecords(name, maxEdits, limit);
+    }
+
+    /**
+     * @return a list of all Gold Class customer records
+     */
+    public static Set<CustomerRecord> getGoldClassCustomerRecords() {
+        return ENGINE.getGoldClassCustomerRecords();
     }
 
     /**
@@ -134,72 +392,95 @@ public abstract class RentalManager {
      *
      * @param customerNumber The number of the customer to issue the bike to
      * @param typeOfBike     The type of bike to be issued
+     * 
+     * @return the outcome of the request, with the issued bike if successful
      */
-    public static void issueBike(String customerNumber, String typeOfBike) {
+    public static RentalResult issueBike(String customerNumber, String typeOfBike) {
+        return ENGINE.issueBike(customerNumber, typeOfBike);
+    }
 
-        /* Identify the customer record based on customer number */
-        CustomerRecord toIssueCustomerRecord = getCustomerRecord(customerNumber);
-        if (toIssueCustomerRecord == null) {
-            System.out.println("No customer record found for " + customerNumber);
-            return;
-        }
+    /**
+     * Issues a specific bike to the specified customer, for example the bike the
+     * customer picked at the counter
+     *
+     * @param customerNumber The number of the customer to issue the bike to
+     * @param bike           The bike to be issued
+     * 
+     * @return the outcome of the request, with the issued bike if successful
+     */
+    public static RentalResult issueBike(String customerNumber, Bike bike) {
+        return ENGINE.issueBike(customerNumber, bike);
+    }
 
-        /* Check if customer does not have a bike on loan already */
-        if (getBike(customerNumber) != null) {
-            System.out.println("Customer " + customerNumber + " already has a bike on loan");
-            return;
-        }
+    /**
+     * Issues bikes for a batch of rental requests. Customers are resolved once
+     * for the whole batch and requests are grouped by bike type, so bikes of
+     * each type are allocated in a single pass in request order.
+     *
+     * @param requests The rental requests to be handled
+     * @param parallel Whether the groups of different bike types may be handled
+     *                 in parallel
+     * 
+     * @return the outcome of each request, in the order of the requests
+     */
+    public static List<RentalResult> issueBikes(Collection<RentalRequest> requests, boolean parallel) {
+        return ENGINE.issueBikes(requests, parallel);
+    }
 
-        /* Validate bike type and determine eligbility */
-        String bikeClass = null;
-        boolean eligible = false;
-        if (typeOfBike.equals("road")) {
-            bikeClass = RoadBike.class.getName();
-            eligible = true;
-        } else if (typeOfBike.equals("electric")) {
-            bikeClass = ElectricBike.class.getName();
-            if (toIssueCustomerRecord.isGoldClass() && toIssueCustomerRecord.getAge() >= 21) {
-                eligible = true;
-            }
-        } else {
-            System.out.println("Invalid type of bike: " + typeOfBike);
-            return;
-        }
+    /**
+     * Issues a bike read back from a journal to the specified customer, with the
+     * rental starting at the recorded time. Only the rental is restored: it is
+     * not journaled, published or reported, and the waitlists are not served.
+     *
+     * @param customerNumber The number of the customer the bike was issued to
+     * @param bike           The bike that was issued
+     * @param startMillis    When the rental started, in epoch milliseconds
+     *
+     * @return the restored contract, or null if the customer is unknown, already
+     *         rents a bike or the bike is not free
+     */
+    public static RentalContract restoreIssue(String customerNumber, Bike bike, long startMillis) {
+        return ENGINE.restoreIssue(customerNumber, bike, startMillis);
+    }
 
-        /* Check if customer is eligbile to rent the bike type specified */
-        if (!eligible) {
-            System.out.println("Customer " + customerNumber + " is not eligible to rent a bike of type " + typeOfBike);
-            return;
-        }
+    /**
+     * Issues a bike of a given type to the specified customer, or puts the
+     * customer on the waitlist for the bike type if none is available. Waiting
+     * customers are served first come, first served as bikes are returned.
+     *
+     * @param customerNumber The number of the customer to issue the bike to
+     * @param typeOfBike     The type of bike to be issued
+     * @param timeoutMillis  How long the customer is willing to wait, in
+     *                       milliseconds
+     * 
+     * @return the reservation, which has already ended if a bike was issued
+     *         straight away or the request was rejected
+     *
+     * @throws IllegalArgumentException if timeoutMillis is not positive
+     */
+    public static Reservation reserveBike(String customerNumber, String typeOfBike, long timeoutMillis) {
+        return ENGINE.reserveBike(customerNumber, typeOfBike, timeoutMillis);
+    }
 
-        /* Select a bike to issue from available bikes */
-        Bike bikeToIssue = null;
-        for (Bike b : bikes) {
-            if (b.getClass().getName().equals(bikeClass) && !b.getIsRented()) {
-                bikeToIssue = b;
-                break;
-            }
-        }
+    /**
+     * Takes the specified customer off the waitlist
+     *
+     * @param customerNumber The number of the customer
+     * 
+     * @return <code>true</code> if the customer's reservation was cancelled
+     *         <code>false</code> if the customer was not waiting
+     */
+    public static boolean cancelReservation(String customerNumber) {
+        return ENGINE.cancelReservation(customerNumber);
+    }
 
-        /* If an available bike was found, issue bike to customer */
-        if (bikeToIssue != null) {
-            bikeToIssue.setRented();
-            rentedBikes.put(customerNumber, bikeToIssue);
-
-            /* If bike is electric, set battery to empty */
-            if (bikeToIssue instanceof ElectricBike) {
-                ElectricBike e = (ElectricBike) bikeToIssue;
-                e.setBatteryEmpty();
-            }
-
-            System.out.println("Bike " + bikeToIssue.getSerialNumber() + " of type " + typeOfBike
-                    + " successfully issued to customer " + toIssueCustomerRecord.getCustomerNumber()
-                    + ".");
-            return;
-        } else {
-            System.out.println("No bikes of type " + typeOfBike + " available");
-            return;
-        }
+    /**
+     * @param typeOfBike The type of bike
+     * 
+     * @return the number of customers waiting for a bike of the specified type
+     */
+    public static int getNumOfReservations(String typeOfBike) {
+        return ENGINE.getNumOfReservations(typeOfBike);
     }
 
     /**
@@ -207,34 +488,61 @@ public abstract class RentalManager {
      *
      * @param customerNumber The number of the customer to terminate the rental
      *                       contract for
+     * 
+     * @return the outcome of the request, with the returned bike if successful
      */
-    public static void terminateRental(String customerNumber) {
-        // System.out.println("Customer number: " + customerNumber);
-        // System.out.println("Bike to terminate: " + rentedBikes.get(customerNumber));
-
-        Bike b = rentedBikes.get(customerNumber);
-
-        if (b != null) {
-            b.setAvailable();
-
-            if (b instanceof ElectricBike) {
-                ElectricBike e = (ElectricBike) b;
-                e.setBatteryFull();
-            }
+    public static RentalResult terminateRental(String customerNumber) {
+        return ENGINE.terminateRental(customerNumber);
+    }
 
-            rentedBikes.remove(customerNumber);
-            System.out.println("Bike returned and contract succesfully terminated for customer " + customerNumber);
+    /**
+     * Terminates a rental contract read back from a journal, with the rental
+     * ending at the recorded time, and adds the fee charged for it to the
+     * customer's account unless the account has it already. The rental is not
+     * priced, journaled, published or reported again, and the waitlists are not
+     * served.
+     *
+     * @param customerNumber The number of the customer that returned the bike
+     * @param startMillis    When the rental started, in epoch milliseconds
+     * @param endMillis      When the rental ended, in epoch milliseconds
+     * @param fee            The fee charged, in cents, or -1 if the rental was
+     *                       not charged
+     *
+     * @return the terminated contract, or null if the customer has no rental
+     */
+    public static RentalContract restoreTermination(String customerNumber, long startMillis, long endMillis, long fee) {
+        return ENGINE.restoreTermination(customerNumber, startMillis, endMillis, fee);
+    }
 
-        } else {
-            System.out.println("No rental contract found for customer " + customerNumber);
-        }
+    /**
+     * Terminates the rental contracts of a batch of customers
+     *
+     * @param customerNumbers The numbers of the customers to terminate the rental
+     *                        contracts for
+     * @param parallel        Whether the returns may be handled in parallel
+     * 
+     * @return the outcome of each return, in the order of the customer numbers
+     */
+    public static List<RentalResult> terminateRentals(Collection<String> customerNumbers, boolean parallel) {
+        return ENGINE.terminateRentals(customerNumbers, parallel);
+    }
 
+    /**
+     * Removes all bikes, customer records and rental contracts. Reservations
+     * still waiting end as expired, without being reported. Must not be called
+     * while other operations are in progress.
+     */
+    public static void reset() {
+        ENGINE.reset();
     }
 
     /*
      * Method to debug and test the program
      */
     public static void debug() throws ParseException {
+        setEventSink(event -> System.out.println(event.getMessage()));
+        Metrics.enable();
+
         /*
          * Testing creation and adding of bikes
          */
@@ -314,6 +622,13 @@ public abstract class RentalManager {
         System.out.println("---- RENTED BIKES: ----");
         System.out.println(getRentedBikes());
 
+        /*
+         * Testing fleet statistics
+         */
+        FleetStatistics stats = getFleetStatistics();
+        System.out.println("Electric bikes: " + stats.getTotal("electric") + " total, " + stats.getRented("electric")
+                + " rented, " + stats.getEmptyBattery("electric") + " with empty battery"); // = 4, 1, 1
+
         /*
          * Testing returning of bike
          */
@@ -330,6 +645,22 @@ public abstract class RentalManager {
         System.out.println(
                 "Battery level after being returned: " + (rentedElectricBike.getBatteryFull() ? "full" : "empty"));
 
+        /*
+         * Testing batch issuing and returning of bikes
+         */
+        System.out.println(issueBikes(Arrays.asList(
+                new RentalRequest("JD-1993-1", "road"),
+                new RentalRequest("KM-1978-1", "electric"),
+                new RentalRequest("KM-1978-2", "electric"), // will not work due to not being Gold-class
+                new RentalRequest("JM-2008-1", "road")), true));
+        System.out.println("Num. of road bikes available to rent: " + getNumOfAvailableBikes("road")); // = 1
+        System.out.println(terminateRentals(Arrays.asList("JD-1993-1", "KM-1978-1", "JM-2008-1"), true));
+        System.out.println("Num. of road bikes available to rent: " + getNumOfAvailableBikes("road")); // = 3
+
+        /*
+         * Testing metrics
+         */
+        System.out.print(Metrics.snapshot());
     }
 
     public static void main(String[] args) throws ParseException {
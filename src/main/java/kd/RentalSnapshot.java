@@ -0,0 +1,222 @@
+package kd;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
+
+import kd.bike.Bike;
+import kd.customer.CustomerNumber;
+import kd.customer.CustomerRecord;
+import kd.util.PersistentMap;
+
+/**
+ * The RentalSnapshot class is responsible for giving reports a consistent,
+ * immutable view of a RentalEngine at one point in time: the fleet, the
+ * customer records and which customer rented which bike. A snapshot never
+ * changes, however many bikes are issued or returned after it was taken, so
+ * it can be iterated at leisure.
+ *
+ * The RentalEngine collects changes and publishes them as a new version when
+ * a snapshot is taken, or in batches. A version shares all unchanged parts
+ * with the one before it, so publishing a change only copies a few small nodes
+ * and taking a snapshot copies nothing but the changes since the last one.
+ *
+ * The bikes in a snapshot are the live bike objects; their battery level and
+ * rented flag are current, not as of the snapshot. Which bikes are rented as
+ * of the snapshot is given by {@link #getRentals()}.
+ */
+public final class RentalSnapshot {
+
+    static final RentalSnapshot EMPTY = new RentalSnapshot(0, PersistentMap.<String, Bike>empty(),
+            PersistentMap.<Long, CustomerRecord>empty(), PersistentMap.<Long, Bike>empty());
+
+    private final long version;
+    private final PersistentMap<String, Bike> bikes;
+    private final PersistentMap<Long, CustomerRecord> customerRecords;
+    private final PersistentMap<Long, Bike> rentals;
+
+    private RentalSnapshot(long version, PersistentMap<String, Bike> bikes,
+            PersistentMap<Long, CustomerRecord> customerRecords, PersistentMap<Long, Bike> rentals) {
+        this.version = version;
+        this.bikes = bikes;
+        this.customerRecords = customerRecords;
+        this.rentals = rentals;
+    }
+
+    /**
+     * @return the number of changes made to the RentalEngine before this
+     *         snapshot; a later snapshot has a higher version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return all bikes in the fleet
+     */
+    public Set<Bike> getBikes() {
+        return new ValueSet<Bike>(bikes) {
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof Bike && bikes.get(((Bike) o).getSerialNumber()) == o;
+            }
+        };
+    }
+
+    /**
+     * @return all customer records
+     */
+    public Set<CustomerRecord> getCustomerRecords() {
+        return new ValueSet<CustomerRecord>(customerRecords) {
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof CustomerRecord
+                        && customerRecords.get(((CustomerRecord) o).getCustomerNumber().longValue()) == o;
+            }
+        };
+    }
+
+    /**
+     * @return the bikes rented out, keyed by the number of the customer renting
+     *         them
+     */
+    public Map<String, Bike> getRentals() {
+        return new AbstractMap<String, Bike>() {
+
+            @Override
+            public Bike get(Object key) {
+                return key instanceof String ? getBike((String) key) : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return get(key) != null;
+            }
+
+            @Override
+            public int size() {
+                return rentals.size();
+            }
+
+            @Override
+            public Set<Map.Entry<String, Bike>> entrySet() {
+                return new AbstractSet<Map.Entry<String, Bike>>() {
+
+                    @Override
+                    public Iterator<Map.Entry<String, Bike>> iterator() {
+                        Iterator<Map.Entry<Long, Bike>> it = rentals.asMap().entrySet().iterator();
+                        return new Iterator<Map.Entry<String, Bike>>() {
+
+                            public boolean hasNext() {
+                                return it.hasNext();
+                            }
+
+                            public Map.Entry<String, Bike> next() {
+                                Map.Entry<Long, Bike> rental = it.next();
+                                return new AbstractMap.SimpleImmutableEntry<String, Bike>(
+                                        CustomerNumber.format(rental.getKey()), rental.getValue());
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return rentals.size();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return the bikes rented out
+     */
+    public Set<Bike> getRentedBikes() {
+        return new ValueSet<Bike>(rentals);
+    }
+
+    /**
+     * @param customerNumber The number of the customer
+     *
+     * @return the bike rented by the customer, or null if there is none
+     */
+    public Bike getBike(String customerNumber) {
+        long code = CustomerNumber.parse(customerNumber);
+        return code == CustomerNumber.INVALID ? null : rentals.get(code);
+    }
+
+    /**
+     * @param customerNumber The number of the customer
+     *
+     * @return the customer record, or null if there is none
+     */
+    public CustomerRecord getCustomerRecord(String customerNumber) {
+        long code = CustomerNumber.parse(customerNumber);
+        return code == CustomerNumber.INVALID ? null : customerRecords.get(code);
+    }
+
+    /*
+     * Returns the next version with the changed bikes added or removed as they
+     * are in the fleet now, customer records added and the rentals of customers
+     * set to the bike they rent now, null if none. The version grows by the
+     * number of entries that changed.
+     */
+    RentalSnapshot with(List<Bike> changedBikes, Predicate<Bike> inFleet, List<CustomerRecord> addedRecords,
+            long[] rentedBy, int numOfRentals, LongFunction<Bike> rentalOf) {
+
+        long changes = 0;
+        PersistentMap<String, Bike> b = bikes;
+        for (Bike bike : changedBikes) {
+            PersistentMap<String, Bike> changed = inFleet.test(bike) ? b.plus(bike.getSerialNumber(), bike)
+                    : b.minus(bike.getSerialNumber());
+            if (changed != b) {
+                b = changed;
+                changes++;
+            }
+        }
+        PersistentMap<Long, CustomerRecord> c = customerRecords;
+        for (CustomerRecord record : addedRecords) {
+            c = c.plus(record.getCustomerNumber().longValue(), record);
+            changes++;
+        }
+        PersistentMap<Long, Bike> r = rentals;
+        for (int i = 0; i < numOfRentals; i++) {
+            Bike bike = rentalOf.apply(rentedBy[i]);
+            PersistentMap<Long, Bike> changed = bike == null ? r.minus(rentedBy[i]) : r.plus(rentedBy[i], bike);
+            if (changed != r) {
+                r = changed;
+                changes++;
+            }
+        }
+        return changes == 0 ? this : new RentalSnapshot(version + changes, b, c, r);
+    }
+
+    /*
+     * An unmodifiable set of the values of a persistent map
+     */
+    private static class ValueSet<E> extends AbstractSet<E> {
+
+        private final PersistentMap<?, E> map;
+
+        ValueSet(PersistentMap<?, E> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return map.valueIterator();
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package kd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import kd.bike.Bike;
+import kd.customer.CustomerRecord;
+
+/**
+ * The SnapshotPublisher class is responsible for turning the changes made to
+ * a RentalEngine into versions of its {@link RentalSnapshot} without making
+ * every change compete for a single reference.
+ *
+ * Changes are collected in stripes, by serial number or customer number, each
+ * guarded by a lock of its own. A new version is only built when a snapshot is
+ * asked for, or when a stripe has collected a batch of changes: all stripes are
+ * locked, the collected changes are applied to the last version and the result
+ * is published. Bike changes are recorded by bike and rental changes by
+ * customer number only; both are looked up in the live fleet and rentals when
+ * the version is built. Rental changes run under the stripe lock together
+ * with the change to the live rentals, so the live rentals read while all
+ * stripes are locked are a consistent cut.
+ */
+final class SnapshotPublisher {
+
+    private static final int STRIPES = 16;
+    private static final int BATCH_SIZE = 1 << 12;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final Predicate<Bike> inFleet;
+    private final LongFunction<Bike> rentalOf;
+    private volatile RentalSnapshot current = RentalSnapshot.EMPTY;
+
+    /**
+     * Create a publisher starting from the empty snapshot
+     *
+     * @param inFleet  Tells whether a bike is in the fleet now
+     * @param rentalOf Returns the bike a customer rents now, or null if none
+     */
+    SnapshotPublisher(Predicate<Bike> inFleet, LongFunction<Bike> rentalOf) {
+        this.inFleet = inFleet;
+        this.rentalOf = rentalOf;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Records a bike added to or removed from the fleet
+     *
+     * @param bike The bike that was added or removed
+     */
+    void bikeChanged(Bike bike) {
+        Stripe stripe = stripeOf(bike.getSerialNumber().hashCode());
+        boolean full;
+        stripe.lock.lock();
+        try {
+            stripe.bikes.add(bike);
+            full = stripe.changed();
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (full) {
+            publish();
+        }
+    }
+
+    /**
+     * Records a customer record added
+     *
+     * @param record The new customer record
+     */
+    void customerRecordAdded(CustomerRecord record) {
+        Stripe stripe = stripeOf(Long.hashCode(record.getCustomerNumber().longValue()));
+        boolean full;
+        stripe.lock.lock();
+        try {
+            stripe.records.add(record);
+            full = stripe.changed();
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (full) {
+            publish();
+        }
+    }
+
+    /**
+     * Changes a customer's rental in the live rentals and records that it
+     * changed. The change must not call back into the publisher.
+     *
+     * @param customerNumber The code of the customer's number
+     * @param change         Changes the live rental of the customer
+     *
+     * @return the result of the change
+     */
+    <T> T rentalChanged(long customerNumber, Supplier<T> change) {
+        Stripe stripe = stripeOf(Long.hashCode(customerNumber));
+        T result;
+        boolean full;
+        stripe.lock.lock();
+        try {
+            result = change.get();
+            full = stripe.rentalChanged(customerNumber);
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (full) {
+            publish();
+        }
+        return result;
+    }
+
+    /**
+     * @return the snapshot including all changes recorded so far
+     */
+    RentalSnapshot get() {
+        for (Stripe stripe : stripes) {
+            if (stripe.pending != 0) {
+                return publish();
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Forgets all changes and starts over from the empty snapshot. Must not be
+     * called while changes are recorded.
+     */
+    synchronized void reset() {
+        lockAll();
+        try {
+            for (Stripe stripe : stripes) {
+                stripe.clear();
+            }
+            current = RentalSnapshot.EMPTY;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /*
+     * Apply the changes collected by all stripes and publish the new version
+     */
+    private synchronized RentalSnapshot publish() {
+        lockAll();
+        try {
+            RentalSnapshot snapshot = current;
+            for (Stripe stripe : stripes) {
+                if (stripe.pending != 0) {
+                    snapshot = snapshot.with(stripe.bikes, inFleet, stripe.records, stripe.rentals,
+                            stripe.numOfRentals, rentalOf);
+                    stripe.clear();
+                }
+            }
+            current = snapshot;
+            return snapshot;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    private void lockAll() {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = STRIPES - 1; i >= 0; i--) {
+            stripes[i].lock.unlock();
+        }
+    }
+
+    private Stripe stripeOf(int hash) {
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    /*
+     * The changes collected for a share of the keys since the last version
+     */
+    private static final class Stripe {
+
+        final ReentrantLock lock = new ReentrantLock();
+        final List<Bike> bikes = new ArrayList<Bike>();
+        final List<CustomerRecord> records = new ArrayList<CustomerRecord>();
+        long[] rentals = new long[16];
+        int numOfRentals;
+        volatile int pending;
+
+        boolean rentalChanged(long customerNumber) {
+            if (numOfRentals == rentals.length) {
+                rentals = Arrays.copyOf(rentals, numOfRentals * 2);
+            }
+            rentals[numOfRentals++] = customerNumber;
+            return changed();
+        }
+
+        /* Count a change and tell whether the stripe collected a full batch */
+        boolean changed() {
+            pending = pending + 1;
+            return pending >= BATCH_SIZE;
+        }
+
+        void clear() {
+            bikes.clear();
+            records.clear();
+            if (rentals.length > BATCH_SIZE) {
+                rentals = new long[16];
+            }
+            numOfRentals = 0;
+            pending = 0;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package kd.bike;
+
+/**
+ * This interface defines a contract for exposed behaviour of bikes with a
+ * battery. These methods must appear in the implementing classes' source code
+ * for it to succesfully compile.
+ */
+public interface BatteryPowered {
+
+    int getBatteryLevel();
+
+    void setBatteryLevel(int batteryLevel);
+
+    boolean getBatteryFull();
+
+    void setBatteryFull();
+
+    void setBatteryEmpty();
+}
@@ -9,9 +9,17 @@ public interface Bike {
 
     String getSerialNumber();
 
+    String getType();
+
+    BikeType getBikeType();
+
     boolean getIsRented();
 
     void setRented();
 
     void setAvailable();
+
+    boolean trySetRented();
+
+    boolean trySetAvailable();
 }
\ No newline at end of file
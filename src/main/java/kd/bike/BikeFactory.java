@@ -1,15 +1,23 @@
 package kd.bike;
 
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import kd.metrics.Metrics;
+import kd.metrics.OperationMetrics;
 
 /**
  * The BikeFactory class is responsible for returning an instance of one of its
- * subclasses; ElectricBike and RoadBike.
+ * subclasses; RoadBike for road bikes, ElectricBike for battery powered bike
+ * types and StandardBike for the other registered types. The type of a bike is
+ * looked up in the BikeType registry.
  */
 public abstract class BikeFactory implements Bike {
 
     // Bikes record
-    private static final HashMap<String, Bike> BIKES = new HashMap<String, Bike>();
+    private static final Map<String, Bike> BIKES = new ConcurrentHashMap<String, Bike>();
+    private static final OperationMetrics GET_INSTANCE_METRICS = Metrics.operation("BikeFactory.getInstance");
 
     // Bike types
     public static final String ROAD_BIKE = "road";
@@ -17,11 +25,14 @@ public abstract class BikeFactory implements Bike {
 
     // Bike properties
     private final String serialNumber;
-    private boolean rented;
+    private final BikeType type;
+    private final AtomicBoolean rented = new AtomicBoolean();
+    private volatile BikePool pool;
 
     // Bike constructor
-    BikeFactory(String serialNumber) {
+    BikeFactory(String serialNumber, BikeType type) {
         this.serialNumber = serialNumber;
+        this.type = type;
     }
 
     /**
@@ -36,7 +47,7 @@ public abstract class BikeFactory implements Bike {
      *         a new bike with the given serial number is returned)
      * 
      * @throws NullPointerException     if bikeType is null
-     * @throws IllegalArgumentException if bikeType is an invalid bike type
+     * @throws IllegalArgumentException if bikeType is not a registered bike type
      */
     public static Bike getInstance(String bikeType, String sNum) {
 
@@ -50,28 +61,36 @@ public abstract class BikeFactory implements Bike {
         /*
          * If bike already exists in records, return existing bike
          */
+        long start = Metrics.start();
         Bike bike = BIKES.get(sNum);
         if (bike != null) {
+            GET_INSTANCE_METRICS.record("EXISTING", start);
             return bike;
         }
 
         /*
-         * Create new bike of the specified bike type
+         * Create new bike of the specified bike type and add it to records. If
+         * another thread registers the same serial number first, its bike is
+         * returned instead, and counted as existing.
          */
-        if (bikeType.equals(ROAD_BIKE)) {
-            bike = new RoadBike(sNum);
-        } else if (bikeType.equals(ELECTRIC_BIKE)) {
-            bike = new ElectricBike(sNum);
-        } else {
+        Bike[] created = new Bike[1];
+        bike = BIKES.computeIfAbsent(sNum, s -> created[0] = newBike(bikeType, s));
+        GET_INSTANCE_METRICS.record(bike == created[0] ? "CREATED" : "EXISTING", start);
+        return bike;
+    }
+
+    /*
+     * Create new bike of the specified bike type
+     */
+    private static Bike newBike(String bikeType, String sNum) {
+        BikeType type = BikeType.of(bikeType);
+        if (type == null) {
             throw new IllegalArgumentException("Invalid bike type: " + bikeType);
         }
-
-        /*
-         * Add bike to records
-         */
-        BIKES.put(sNum, bike);
-
-        return bike;
+        if (type.isBatteryPowered()) {
+            return new ElectricBike(sNum, type);
+        }
+        return type == BikeType.ROAD ? new RoadBike(sNum) : new StandardBike(sNum, type);
     }
 
     /**
@@ -81,26 +100,97 @@ public abstract class BikeFactory implements Bike {
         return serialNumber;
     }
 
+    /**
+     * @return the name of the bike's type
+     */
+    public String getType() {
+        return type.getName();
+    }
+
+    /**
+     * @return the bike's type
+     */
+    public BikeType getBikeType() {
+        return type;
+    }
+
     /**
      * @return true if bike has been rented out
      * @return false if bike has not been rented out
      */
     public boolean getIsRented() {
-        return rented;
+        return rented.get();
     }
 
     /**
-     * Set the bike's rental status to rented
+     * Set the bike's rental status to rented, taking it out of the pool of free
+     * bikes it belongs to, if any
      */
     public void setRented() {
-        this.rented = true;
+        trySetRented();
     }
 
     /**
-     * Set the bike's rental status to available
+     * Set the bike's rental status to available, returning it to the pool of
+     * free bikes it belongs to, if any
      */
     public void setAvailable() {
-        this.rented = false;
+        trySetAvailable();
+    }
+
+    /**
+     * Atomically set the bike's rental status to rented if it is available,
+     * taking it out of the pool of free bikes it belongs to, if any
+     *
+     * @return true if the bike was available and is now rented
+     * @return false if the bike was already rented
+     */
+    public boolean trySetRented() {
+        if (!claimRented()) {
+            return false;
+        }
+        BikePool p = pool;
+        if (p != null) {
+            p.rentedOutside(this);
+        }
+        return true;
+    }
+
+    /**
+     * Atomically set the bike's rental status to available if it is rented,
+     * returning it to the pool of free bikes it belongs to, if any
+     *
+     * @return true if the bike was rented and is now available
+     * @return false if the bike was already available
+     */
+    public boolean trySetAvailable() {
+        if (!claimAvailable()) {
+            return false;
+        }
+        BikePool p = pool;
+        if (p != null) {
+            p.releasedOutside(this);
+        }
+        return true;
+    }
+
+    /*
+     * Set the pool that keeps the bike while it is free, which is told about
+     * rental status changes not made through it
+     */
+    void setPool(BikePool pool) {
+        this.pool = pool;
+    }
+
+    /*
+     * Change the rental status on behalf of the pool, without telling it
+     */
+    boolean claimRented() {
+        return rented.compareAndSet(false, true);
+    }
+
+    boolean claimAvailable() {
+        return rented.compareAndSet(true, false);
     }
 
     /**
@@ -114,7 +204,7 @@ public abstract class BikeFactory implements Bike {
         return "Bike {\n\t" +
                 "serial number: " + serialNumber + "\n\t" +
                 "type: " + this.getClass().getSimpleName() + "\n\t" +
-                "rented: " + (rented ? "yes" : "no") + "\n" +
+                "rented: " + (rented.get() ? "yes" : "no") + "\n" +
                 "}";
     }
 }
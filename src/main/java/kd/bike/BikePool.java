@@ -0,0 +1,246 @@
+package kd.bike;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import kd.bike.allocation.AllocationStrategy;
+import kd.bike.allocation.FreeBikes;
+import kd.bike.allocation.StandardAllocation;
+
+/**
+ * The BikePool class is responsible for keeping track of the bikes available
+ * to rent. It holds one index of free bikes per bike type, so that picking a
+ * free bike and counting free bikes does not require scanning the fleet. The
+ * order in which free bikes are picked is decided by an allocation strategy.
+ * The indexes are kept in an array by bike type id.
+ *
+ * The pool is safe for concurrent use. Each bike type has its own index, so
+ * issuing and returning bikes of different types never contend, and a bike
+ * only changes hands after winning the atomic transition of its rental status.
+ * Bikes added to the pool report the rental status changes made on them
+ * directly, e.g. through {@link Bike#setAvailable()}, so they enter and leave
+ * the pool however their status is changed.
+ */
+public final class BikePool {
+
+    private final AllocationStrategy strategy;
+    private final AtomicReferenceArray<FreeBikes> freeBikes = new AtomicReferenceArray<FreeBikes>(BikeType.MAX_TYPES);
+    private final AtomicReferenceArray<FreeBikes> replaced = new AtomicReferenceArray<FreeBikes>(BikeType.MAX_TYPES);
+
+    /**
+     * Create a pool issuing battery powered bikes highest charge first and other
+     * bikes longest idle first
+     */
+    public BikePool() {
+        this(StandardAllocation.HIGHEST_BATTERY);
+    }
+
+    /**
+     * Create a pool
+     *
+     * @param strategy The strategy deciding which free bike is issued next
+     *
+     * @throws IllegalArgumentException if strategy is null
+     */
+    public BikePool(AllocationStrategy strategy) {
+        if (strategy == null) {
+            throw new IllegalArgumentException("Empty allocation strategy");
+        }
+
+        this.strategy = strategy;
+    }
+
+    /**
+     * Create a pool replacing another one, for example to switch the allocation
+     * strategy. The new pool takes over what the indexes of the replaced pool
+     * learned about the bikes, such as how often each bike was issued; the bikes
+     * themselves still have to be added.
+     *
+     * @param strategy The strategy deciding which free bike is issued next
+     * @param previous The pool being replaced
+     *
+     * @throws IllegalArgumentException if strategy or previous is null
+     */
+    public BikePool(AllocationStrategy strategy, BikePool previous) {
+        this(strategy);
+        if (previous == null) {
+            throw new IllegalArgumentException("Empty bike pool");
+        }
+
+        for (int id = 0; id < BikeType.MAX_TYPES; id++) {
+            replaced.set(id, previous.freeBikes.get(id));
+        }
+    }
+
+    /**
+     * @return the strategy deciding which free bike is issued next
+     */
+    public AllocationStrategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Adds a bike to the pool. The bike is queued as free unless it is currently
+     * rented out.
+     *
+     * @param bike The bike to be added to the pool
+     */
+    public void add(Bike bike) {
+        if (bike instanceof BikeFactory) {
+            ((BikeFactory) bike).setPool(this);
+        }
+        if (!bike.getIsRented()) {
+            freeBikesOf(bike).offer(bike);
+        }
+    }
+
+    /**
+     * Takes a free bike of the specified type from the pool and sets its rental
+     * status to rented
+     *
+     * @param bikeType The type of bike to take
+     *
+     * @return the bike taken from the pool, or null if no bike of the specified
+     *         type is free
+     */
+    public Bike take(String bikeType) {
+        BikeType type = BikeType.of(bikeType);
+        return type == null ? null : take(type);
+    }
+
+    /**
+     * Takes a free bike of the specified type from the pool and sets its rental
+     * status to rented
+     *
+     * @param bikeType The type of bike to take
+     *
+     * @return the bike taken from the pool, or null if no bike of the specified
+     *         type is free
+     */
+    public Bike take(BikeType bikeType) {
+        FreeBikes free = freeBikes.get(bikeType.getId());
+        if (free == null) {
+            return null;
+        }
+
+        Bike bike;
+        while ((bike = free.poll()) != null) {
+
+            /* Skip bikes that were rented out without going through the pool */
+            if (claimRented(bike)) {
+                return bike;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Takes the specified bike from the pool if it is free and sets its rental
+     * status to rented. Finding the bike takes O(log n) in the number of free
+     * bikes of its type.
+     *
+     * @param bike The bike to take
+     *
+     * @return true if the bike was free and has been taken
+     * @return false if the bike is not free
+     */
+    public boolean take(Bike bike) {
+        FreeBikes free = freeBikes.get(bike.getBikeType().getId());
+        return free != null && free.remove(bike) && claimRented(bike);
+    }
+
+    /**
+     * Sets the bike's rental status to available and returns it to the pool. A
+     * bike that is already available is not queued a second time.
+     *
+     * @param bike The bike to be returned to the pool
+     *
+     * @return true if the bike was rented and has been returned to the pool
+     * @return false if the bike was already available
+     */
+    public boolean release(Bike bike) {
+        if (!claimAvailable(bike)) {
+            return false;
+        }
+        freeBikesOf(bike).offer(bike);
+        return true;
+    }
+
+    /**
+     * Updates the position of a free battery powered bike whose battery level
+     * changed. Bikes that are not free are ignored.
+     *
+     * @param bike The bike whose battery level changed
+     */
+    public void batteryLevelChanged(Bike bike) {
+        FreeBikes free = freeBikes.get(bike.getBikeType().getId());
+        if (free != null) {
+            free.reindex(bike);
+        }
+    }
+
+    /**
+     * @param bikeType The type of bike to count
+     *
+     * @return the number of free bikes of the specified type
+     */
+    public int getNumOfFreeBikes(String bikeType) {
+        BikeType type = BikeType.of(bikeType);
+        return type == null ? 0 : getNumOfFreeBikes(type);
+    }
+
+    /**
+     * @param bikeType The type of bike to count
+     *
+     * @return the number of free bikes of the specified type
+     */
+    public int getNumOfFreeBikes(BikeType bikeType) {
+        FreeBikes free = freeBikes.get(bikeType.getId());
+        return free == null ? 0 : free.size();
+    }
+
+    /*
+     * A bike of the pool was rented out by changing its status directly
+     */
+    void rentedOutside(Bike bike) {
+        FreeBikes free = freeBikes.get(bike.getBikeType().getId());
+        if (free != null) {
+            free.remove(bike);
+        }
+    }
+
+    /*
+     * A bike of the pool was made available by changing its status directly
+     */
+    void releasedOutside(Bike bike) {
+        freeBikesOf(bike).offer(bike);
+    }
+
+    /*
+     * Change the rental status of a bike without it reporting back to the pool
+     */
+    private static boolean claimRented(Bike bike) {
+        return bike instanceof BikeFactory ? ((BikeFactory) bike).claimRented() : bike.trySetRented();
+    }
+
+    private static boolean claimAvailable(Bike bike) {
+        return bike instanceof BikeFactory ? ((BikeFactory) bike).claimAvailable() : bike.trySetAvailable();
+    }
+
+    private FreeBikes freeBikesOf(Bike bike) {
+        int id = bike.getBikeType().getId();
+        FreeBikes free = freeBikes.get(id);
+        if (free == null) {
+            free = strategy.newFreeBikes(bike);
+            FreeBikes previous = replaced.get(id);
+            if (previous != null) {
+                free.inherit(previous);
+            }
+            if (freeBikes.compareAndSet(id, null, free)) {
+                replaced.set(id, null);
+            } else {
+                free = freeBikes.get(id);
+            }
+        }
+        return free;
+    }
+}
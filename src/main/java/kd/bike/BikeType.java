@@ -0,0 +1,264 @@
+package kd.bike;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The BikeType class is responsible for describing a type of bike and keeping
+ * the registry of all types. Each type has a small integer id, assigned in
+ * order of registration, which the bike pools and fleet statistics use as an
+ * array index. A type also carries its rental rules and allocation metadata:
+ * <ul>
+ * <li>the minimum age of a customer renting it</li>
+ * <li>whether only Gold Class customers can rent it</li>
+ * <li>whether its bikes are battery powered, so they are issued highest charge
+ * first and need charging after a rental</li>
+ * </ul>
+ *
+ * Road and electric bikes are registered by default. More types can be
+ * registered at runtime, or listed in a CSV file named by the system property
+ * <code>kd.bikeTypes</code>, one type per line:
+ *
+ * <pre>
+ * # name, minimum age, Gold Class only, battery powered
+ * cargo,18,false,false
+ * kids,0,false,false
+ * </pre>
+ *
+ * Callers resolve a type name once with {@link #of(String)} and pass the type
+ * on, so the rental paths compare ids instead of names.
+ */
+public final class BikeType {
+
+    // The number of bike types that can be registered
+    public static final int MAX_TYPES = 64;
+
+    private static final BikeType[] TYPES = new BikeType[MAX_TYPES];
+    private static final Map<String, BikeType> TYPES_BY_NAME = new ConcurrentHashMap<String, BikeType>();
+    private static volatile int count;
+
+    // Default bike types
+    public static final BikeType ROAD = register(BikeFactory.ROAD_BIKE, 0, false, false);
+    public static final BikeType ELECTRIC = register(BikeFactory.ELECTRIC_BIKE, 21, true, true);
+
+    static {
+        String file = System.getProperty("kd.bikeTypes");
+        if (file != null) {
+            try (Reader in = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+                load(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read bike types from " + file, e);
+            }
+        }
+    }
+
+    private final int id;
+    private final String name;
+    private final int minAge;
+    private final boolean goldClassOnly;
+    private final boolean batteryPowered;
+
+    /* The last day asked about and the latest date of birth old enough to rent on it */
+    private volatile long[] birthLimit = { Long.MIN_VALUE, 0 };
+
+    private BikeType(int id, String name, int minAge, boolean goldClassOnly, boolean batteryPowered) {
+        this.id = id;
+        this.name = name;
+        this.minAge = minAge;
+        this.goldClassOnly = goldClassOnly;
+        this.batteryPowered = batteryPowered;
+    }
+
+    /**
+     * Registers a new bike type
+     *
+     * @param name           The type name used in requests, e.g. "cargo"
+     * @param minAge         The minimum age of a customer renting the type
+     * @param goldClassOnly  Whether only Gold Class customers can rent the type
+     * @param batteryPowered Whether bikes of the type are battery powered
+     *
+     * @return the new bike type
+     *
+     * @throws IllegalArgumentException if the name is empty or already
+     *                                  registered, or minAge is negative
+     * @throws IllegalStateException    if MAX_TYPES types are registered already
+     */
+    public static synchronized BikeType register(String name, int minAge, boolean goldClassOnly,
+            boolean batteryPowered) {
+
+        if (name == null || name.isEmpty() || !name.equals(name.trim())) {
+            throw new IllegalArgumentException("Invalid bike type name: " + name);
+        }
+        if (minAge < 0) {
+            throw new IllegalArgumentException("Invalid minimum age: " + minAge);
+        }
+        if (TYPES_BY_NAME.containsKey(name)) {
+            throw new IllegalArgumentException("Bike type already registered: " + name);
+        }
+        if (count == MAX_TYPES) {
+            throw new IllegalStateException("Too many bike types");
+        }
+
+        /* Store the type before publishing the new count, readers of of(int) do not lock */
+        int id = count;
+        BikeType type = new BikeType(id, name, minAge, goldClassOnly, batteryPowered);
+        TYPES[id] = type;
+        count = id + 1;
+        TYPES_BY_NAME.put(name, type);
+        return type;
+    }
+
+    /**
+     * Registers the bike types listed in CSV format, one per line: name, minimum
+     * age, Gold Class only and battery powered. Empty lines and lines starting
+     * with # are skipped.
+     *
+     * @param in The reader to read the types from
+     *
+     * @return the types registered
+     *
+     * @throws IOException              if the types cannot be read
+     * @throws IllegalArgumentException if a line is malformed or a type cannot be
+     *                                  registered
+     */
+    public static List<BikeType> load(Reader in) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        List<BikeType> types = new ArrayList<BikeType>();
+
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] fields = line.split("\\s*,\\s*");
+            if (fields.length != 4) {
+                throw new IllegalArgumentException("Invalid bike type on line " + lineNumber + ": " + line);
+            }
+            int minAge;
+            try {
+                minAge = Integer.parseInt(fields[1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid minimum age on line " + lineNumber + ": " + line);
+            }
+            types.add(register(fields[0], minAge, parseFlag(fields[2], lineNumber), parseFlag(fields[3], lineNumber)));
+        }
+        return types;
+    }
+
+    /**
+     * @param name The type name, e.g. "road"
+     *
+     * @return the bike type with the specified name, or null if there is none
+     */
+    public static BikeType of(String name) {
+        return name == null ? null : TYPES_BY_NAME.get(name);
+    }
+
+    /**
+     * @param id The type id
+     *
+     * @return the bike type with the specified id, or null if there is none
+     */
+    public static BikeType of(int id) {
+        return id >= 0 && id < count ? TYPES[id] : null;
+    }
+
+    /**
+     * @return all registered bike types, in order of id
+     */
+    public static List<BikeType> values() {
+        int n = count;
+        List<BikeType> types = new ArrayList<BikeType>(n);
+        for (int i = 0; i < n; i++) {
+            types.add(TYPES[i]);
+        }
+        return Collections.unmodifiableList(types);
+    }
+
+    /**
+     * @return the type's id, from 0 to MAX_TYPES - 1
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return the type name used in requests
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the minimum age of a customer renting the type
+     */
+    public int getMinAge() {
+        return minAge;
+    }
+
+    /**
+     * @return true if only Gold Class customers can rent the type
+     */
+    public boolean isGoldClassOnly() {
+        return goldClassOnly;
+    }
+
+    /**
+     * @return true if bikes of the type are battery powered
+     */
+    public boolean isBatteryPowered() {
+        return batteryPowered;
+    }
+
+    /**
+     * Returns the latest date of birth of a customer old enough to rent the type
+     * on the specified day. The answer for the last day asked about is cached, so
+     * on most calls this is a single comparison.
+     *
+     * @param today The day as an epoch day
+     *
+     * @return the latest date of birth as an epoch day
+     */
+    public long getLatestDateOfBirth(long today) {
+        long[] limit = birthLimit;
+        if (limit[0] != today) {
+            limit = new long[] { today, LocalDate.ofEpochDay(today).minusYears(minAge).toEpochDay() };
+            birthLimit = limit;
+        }
+        return limit[1];
+    }
+
+    /**
+     * @return the type name
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static boolean parseFlag(String field, int lineNumber) {
+        if (field.equalsIgnoreCase("true")) {
+            return true;
+        } else if (field.equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw new IllegalArgumentException("Invalid flag on line " + lineNumber + ": " + field);
+    }
+}
@@ -0,0 +1,190 @@
+package kd.bike;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The ChargingScheduler class is responsible for simulating the charging of
+ * returned battery powered bikes.
+ *
+ * Returned bikes are plugged in to one of a limited number of docks, or wait
+ * for a free dock in the order they were returned. Docked bikes charge at a
+ * fixed rate until full, after which their dock is given to the next waiting
+ * bike. A bike issued while charging or waiting is unplugged with the charge
+ * it has reached.
+ *
+ * A single timer thread updates the battery levels of all docked bikes on
+ * every tick, so the work per tick is bounded by the number of docks rather
+ * than the size of the fleet. Every change of a battery level is reported to
+ * a listener.
+ */
+public final class ChargingScheduler implements AutoCloseable {
+
+    private final double percentPerMilli;
+    private final int dockCapacity;
+    private final ObjIntConsumer<Bike> listener;
+    private final ScheduledExecutorService timer;
+
+    private final Map<Bike, Charge> docked = new LinkedHashMap<Bike, Charge>();
+    private final Set<Bike> waiting = new LinkedHashSet<Bike>();
+
+    /**
+     * Create a charging scheduler and start its timer
+     *
+     * @param percentPerMinute The battery percentage charged per minute
+     * @param dockCapacity     The number of bikes that can charge at the same
+     *                         time
+     * @param tickMillis       The interval between battery level updates, in
+     *                         milliseconds
+     * @param listener         Receives each bike whose battery level changed and
+     *                         its new level
+     *
+     * @throws IllegalArgumentException if percentPerMinute, dockCapacity or
+     *                                  tickMillis is not positive
+     */
+    public ChargingScheduler(double percentPerMinute, int dockCapacity, long tickMillis,
+            ObjIntConsumer<Bike> listener) {
+
+        if (percentPerMinute <= 0 || dockCapacity <= 0 || tickMillis <= 0) {
+            throw new IllegalArgumentException("Charge rate, dock capacity and tick must be positive");
+        }
+
+        this.percentPerMilli = percentPerMinute / 60000;
+        this.dockCapacity = dockCapacity;
+        this.listener = listener;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "charging-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Plugs in a returned bike. The bike starts charging if a dock is free and
+     * otherwise waits for one. Bikes with a full battery are ignored.
+     *
+     * @param bike The returned bike
+     *
+     * @throws ClassCastException if the bike is not battery powered
+     */
+    public synchronized void plugIn(Bike bike) {
+        if (((BatteryPowered) bike).getBatteryFull() || docked.containsKey(bike)) {
+            return;
+        }
+
+        if (docked.size() < dockCapacity) {
+            dock(bike, System.nanoTime());
+        } else {
+            waiting.add(bike);
+        }
+    }
+
+    /**
+     * Unplugs a bike that is charging or waiting to charge, keeping the charge it
+     * has reached
+     *
+     * @param bike The bike to unplug
+     */
+    public synchronized void unplug(Bike bike) {
+        if (waiting.remove(bike)) {
+            return;
+        }
+
+        Charge charge = docked.remove(bike);
+        if (charge != null) {
+            long now = System.nanoTime();
+            update(bike, charge, now);
+            dockWaiting(now);
+        }
+    }
+
+    /**
+     * @return the number of bikes charging
+     */
+    public synchronized int getNumOfCharging() {
+        return docked.size();
+    }
+
+    /**
+     * @return the number of bikes waiting for a free dock
+     */
+    public synchronized int getNumOfWaiting() {
+        return waiting.size();
+    }
+
+    /**
+     * Stops the timer. Bikes keep the charge they have reached.
+     */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private synchronized void tick() {
+        long now = System.nanoTime();
+        boolean undocked = false;
+
+        Iterator<Map.Entry<Bike, Charge>> it = docked.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Bike, Charge> entry = it.next();
+            if (update(entry.getKey(), entry.getValue(), now) == 100) {
+                it.remove();
+                undocked = true;
+            }
+        }
+
+        if (undocked) {
+            dockWaiting(now);
+        }
+    }
+
+    private void dock(Bike bike, long now) {
+        docked.put(bike, new Charge(((BatteryPowered) bike).getBatteryLevel(), now));
+    }
+
+    private void dockWaiting(long now) {
+        Iterator<Bike> it = waiting.iterator();
+        while (docked.size() < dockCapacity && it.hasNext()) {
+            dock(it.next(), now);
+            it.remove();
+        }
+    }
+
+    /*
+     * Set the bike's battery level to the charge reached at the given time and
+     * return it
+     */
+    private int update(Bike bike, Charge charge, long now) {
+        double charged = (now - charge.startNanos) / 1e6 * percentPerMilli;
+        int level = (int) Math.min(100, charge.startLevel + charged);
+
+        BatteryPowered battery = (BatteryPowered) bike;
+        if (level > battery.getBatteryLevel()) {
+            battery.setBatteryLevel(level);
+            listener.accept(bike, level);
+        }
+        return level;
+    }
+
+    /*
+     * The battery level a bike was docked with and when
+     */
+    private static final class Charge {
+
+        final int startLevel;
+        final long startNanos;
+
+        Charge(int startLevel, long startNanos) {
+            this.startLevel = startLevel;
+            this.startNanos = startNanos;
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package kd.bike;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * The ColumnarFleet class is an optional, compact store for large fleets. It
+ * is an alternative to creating one RoadBike or ElectricBike object per bike.
+ *
+ * Bikes are stored column by column, one set of columns per registered bike
+ * type, indexed by the type's id: serial numbers, rental status bits and, for
+ * battery powered types, battery levels. Columns are split into fixed size
+ * pages, so growing a column only copies the small array of pages. A bike id
+ * holds the type id in its low bits and the bike's slot in the columns in the
+ * rest. The bikes handed out are lightweight views implementing the Bike
+ * interface (and BatteryPowered for battery powered types) that read and write
+ * those columns, so they can be added to the RentalManager like any other
+ * bike. Views are created on demand and two views of the same bike are equal.
+ *
+ * The store keeps its own serial number registry, separate from the one in
+ * BikeFactory: an open addressing table of bike ids, whose keys are the serial
+ * numbers in the columns. Adding bikes is guarded by a lock; looking bikes up
+ * and reading or updating the rental status and battery levels is lock free.
+ */
+public final class ColumnarFleet {
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int INITIAL_TABLE_SIZE = 1024;
+    private static final int EMPTY = -1;
+
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle BYTES = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    // The bike type id is kept in the low bits of a bike id, the slot in the rest
+    private static final int TYPE_BITS = Integer.numberOfTrailingZeros(BikeType.MAX_TYPES);
+    private static final int TYPE_MASK = (1 << TYPE_BITS) - 1;
+    private static final int MAX_SLOTS = 1 << (Integer.SIZE - 1 - TYPE_BITS);
+
+    private final AtomicReferenceArray<Column> columns = new AtomicReferenceArray<Column>(BikeType.MAX_TYPES);
+
+    /* Bike ids by serial number hash, EMPTY for free entries; replaced when full */
+    private volatile int[] table = newTable(INITIAL_TABLE_SIZE);
+    private int size;
+
+    /**
+     * Get a bike of the specified type with the specified serial number from the
+     * store
+     *
+     * @param bikeType     The type of bike
+     * @param serialNumber The bike's serial number
+     *
+     * @return a view of the bike (an existing bike is returned if the serial
+     *         number is already known, otherwise a new bike with the given serial
+     *         number is stored)
+     *
+     * @throws IllegalArgumentException if serialNumber is empty or bikeType is an
+     *                                  invalid bike type
+     */
+    public Bike getInstance(String bikeType, String serialNumber) {
+        if (serialNumber.length() == 0) {
+            throw new IllegalArgumentException("Empty serial number");
+        }
+
+        int id = find(table, serialNumber);
+        if (id == EMPTY) {
+            id = add(typeOf(bikeType), serialNumber);
+        }
+        return view(id);
+    }
+
+    /**
+     * @param serialNumber The serial number to look up
+     *
+     * @return a view of the bike with the specified serial number, or null if the
+     *         store holds no such bike
+     */
+    public Bike get(String serialNumber) {
+        int id = find(table, serialNumber);
+        return id == EMPTY ? null : view(id);
+    }
+
+    /**
+     * @return the number of bikes in the store
+     */
+    public int size() {
+        int size = 0;
+        for (int type = 0; type < BikeType.MAX_TYPES; type++) {
+            Column column = columns.get(type);
+            if (column != null) {
+                size += column.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @param bikeType The type of bike to count
+     *
+     * @return the number of bikes of the specified type in the store
+     * @throws IllegalArgumentException if bikeType is an invalid bike type
+     */
+    public int size(String bikeType) {
+        Column column = columns.get(typeOf(bikeType).getId());
+        return column == null ? 0 : column.size();
+    }
+
+    /**
+     * @param bikeType The type of bike to count
+     *
+     * @return the number of bikes of the specified type that are rented out
+     * @throws IllegalArgumentException if bikeType is an invalid bike type
+     */
+    public int getNumOfRentedBikes(String bikeType) {
+        Column column = columns.get(typeOf(bikeType).getId());
+        return column == null ? 0 : column.rentedCount();
+    }
+
+    /**
+     * Hands a view of every bike of the specified type to the consumer
+     *
+     * @param bikeType The type of bike
+     * @param consumer The consumer receiving the bikes, for example
+     *                 <code>RentalManager::addBike</code>
+     *
+     * @throws IllegalArgumentException if bikeType is an invalid bike type
+     */
+    public void forEach(String bikeType, Consumer<Bike> consumer) {
+        int type = typeOf(bikeType).getId();
+        Column column = columns.get(type);
+        int size = column == null ? 0 : column.size();
+        for (int slot = 0; slot < size; slot++) {
+            consumer.accept(view((slot << TYPE_BITS) | type));
+        }
+    }
+
+    private Bike view(int id) {
+        return columns.get(id & TYPE_MASK).battery ? new ElectricView(this, id) : new View(this, id);
+    }
+
+    /*
+     * Stores a new bike, unless another thread stored the serial number first,
+     * and returns its id
+     */
+    private synchronized int add(BikeType type, String serialNumber) {
+        int[] current = table;
+        int id = find(current, serialNumber);
+        if (id != EMPTY) {
+            return id;
+        }
+
+        Column column = columns.get(type.getId());
+        if (column == null) {
+            column = new Column(type.isBatteryPowered());
+            columns.set(type.getId(), column);
+        }
+        id = (column.add(serialNumber) << TYPE_BITS) | type.getId();
+
+        /* Keep the table at most half full, readers keep using the old table until the new one is published */
+        if (2 * (size + 1) > current.length) {
+            int[] grown = newTable(current.length * 2);
+            for (int i = 0; i < current.length; i++) {
+                int existing = (int) INTS.getVolatile(current, i);
+                if (existing != EMPTY) {
+                    insert(grown, serialNumber(existing), existing);
+                }
+            }
+            insert(grown, serialNumber, id);
+            table = grown;
+        } else {
+            insert(current, serialNumber, id);
+        }
+        size++;
+        return id;
+    }
+
+    private int find(int[] table, String serialNumber) {
+        int mask = table.length - 1;
+        for (int i = hash(serialNumber) & mask;; i = (i + 1) & mask) {
+            int id = (int) INTS.getVolatile(table, i);
+            if (id == EMPTY || serialNumber.equals(serialNumber(id))) {
+                return id;
+            }
+        }
+    }
+
+    private static void insert(int[] table, String serialNumber, int id) {
+        int mask = table.length - 1;
+        int i = hash(serialNumber) & mask;
+        while ((int) INTS.getVolatile(table, i) != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        INTS.setVolatile(table, i, id);
+    }
+
+    private String serialNumber(int id) {
+        return columns.get(id & TYPE_MASK).serialNumber(id >>> TYPE_BITS);
+    }
+
+    private static int hash(String serialNumber) {
+        int h = serialNumber.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int[] newTable(int length) {
+        int[] table = new int[length];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    private static BikeType typeOf(String bikeType) {
+        BikeType type = BikeType.of(bikeType);
+        if (type == null) {
+            throw new IllegalArgumentException("Invalid bike type: " + bikeType);
+        }
+        return type;
+    }
+
+    /*
+     * The columns of one bike type, indexed by slot. Only the fleet's add lock
+     * writes new slots; the element of a new slot is written before the size is
+     * published, and pages are never moved, so readers need no lock.
+     */
+    private static final class Column {
+
+        private final boolean battery;
+        private volatile String[][] serialNumbers = new String[0][];
+        private volatile long[][] rented = new long[0][];
+        private volatile byte[][] batteryLevels = new byte[0][];
+        private volatile int size;
+
+        Column(boolean battery) {
+            this.battery = battery;
+        }
+
+        int add(String serialNumber) {
+            int slot = size;
+            if (slot == MAX_SLOTS) {
+                throw new IllegalStateException("Too many bikes of one type");
+            }
+            int page = slot >>> PAGE_BITS;
+            if (page == serialNumbers.length) {
+                serialNumbers = addPage(serialNumbers, new String[PAGE_SIZE]);
+                rented = addPage(rented, new long[PAGE_SIZE / Long.SIZE]);
+                if (battery) {
+                    batteryLevels = addPage(batteryLevels, new byte[PAGE_SIZE]);
+                }
+            }
+            serialNumbers[page][slot & PAGE_MASK] = serialNumber;
+            if (battery) {
+                batteryLevels[page][slot & PAGE_MASK] = 100;
+            }
+            size = slot + 1;
+            return slot;
+        }
+
+        int size() {
+            return size;
+        }
+
+        String serialNumber(int slot) {
+            return serialNumbers[slot >>> PAGE_BITS][slot & PAGE_MASK];
+        }
+
+        boolean isRented(int slot) {
+            long word = (long) LONGS.getVolatile(rentedWords(slot), wordIndex(slot));
+            return (word & bit(slot)) != 0;
+        }
+
+        boolean compareAndSetRented(int slot, boolean expected, boolean value) {
+            long[] words = rentedWords(slot);
+            int index = wordIndex(slot);
+            long bit = bit(slot);
+            while (true) {
+                long word = (long) LONGS.getVolatile(words, index);
+                if (((word & bit) != 0) != expected) {
+                    return false;
+                }
+                if (LONGS.compareAndSet(words, index, word, value ? word | bit : word & ~bit)) {
+                    return true;
+                }
+            }
+        }
+
+        void setRented(int slot, boolean value) {
+            long[] words = rentedWords(slot);
+            int index = wordIndex(slot);
+            long bit = bit(slot);
+            long word;
+            do {
+                word = (long) LONGS.getVolatile(words, index);
+            } while (!LONGS.compareAndSet(words, index, word, value ? word | bit : word & ~bit));
+        }
+
+        int rentedCount() {
+            int count = 0;
+            for (long[] words : rented) {
+                for (int i = 0; i < words.length; i++) {
+                    count += Long.bitCount((long) LONGS.getVolatile(words, i));
+                }
+            }
+            return count;
+        }
+
+        int batteryLevel(int slot) {
+            return (byte) BYTES.getVolatile(batteryLevels[slot >>> PAGE_BITS], slot & PAGE_MASK);
+        }
+
+        void setBatteryLevel(int slot, int level) {
+            BYTES.setVolatile(batteryLevels[slot >>> PAGE_BITS], slot & PAGE_MASK, (byte) level);
+        }
+
+        private long[] rentedWords(int slot) {
+            return rented[slot >>> PAGE_BITS];
+        }
+
+        private static int wordIndex(int slot) {
+            return (slot & PAGE_MASK) >>> 6;
+        }
+
+        private static long bit(int slot) {
+            return 1L << slot;
+        }
+
+        private static <T> T[] addPage(T[] pages, T page) {
+            T[] grown = Arrays.copyOf(pages, pages.length + 1);
+            grown[pages.length] = page;
+            return grown;
+        }
+    }
+
+    /*
+     * A bike in the store
+     */
+    private static class View implements Bike {
+
+        final ColumnarFleet fleet;
+        final int id;
+
+        View(ColumnarFleet fleet, int id) {
+            this.fleet = fleet;
+            this.id = id;
+        }
+
+        Column column() {
+            return fleet.columns.get(id & TYPE_MASK);
+        }
+
+        int slot() {
+            return id >>> TYPE_BITS;
+        }
+
+        public String getSerialNumber() {
+            return column().serialNumber(slot());
+        }
+
+        public String getType() {
+            return getBikeType().getName();
+        }
+
+        public BikeType getBikeType() {
+            return BikeType.of(id & TYPE_MASK);
+        }
+
+        public boolean getIsRented() {
+            return column().isRented(slot());
+        }
+
+        public void setRented() {
+            column().setRented(slot(), true);
+        }
+
+        public void setAvailable() {
+            column().setRented(slot(), false);
+        }
+
+        public boolean trySetRented() {
+            return column().compareAndSetRented(slot(), false, true);
+        }
+
+        public boolean trySetAvailable() {
+            return column().compareAndSetRented(slot(), true, false);
+        }
+
+        /**
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+
+            if (!(obj instanceof View))
+                return false;
+
+            final View view = (View) obj;
+
+            return fleet == view.fleet && id == view.id;
+        }
+
+        /**
+         * @see java.lang.Object#hashCode()
+         */
+        @Override
+        public int hashCode() {
+            int hc = 17;
+            hc = 37 * hc + System.identityHashCode(fleet);
+            return 37 * hc + id;
+        }
+
+        /**
+         * @return a string representation of the bike containing the serial number,
+         *         type and rental status
+         *
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return "Bike {\n\t" +
+                    "serial number: " + getSerialNumber() + "\n\t" +
+                    "type: " + getType() + "\n\t" +
+                    "rented: " + (getIsRented() ? "yes" : "no") + "\n" +
+                    "}";
+        }
+    }
+
+    /*
+     * An electric bike in the store
+     */
+    private static final class ElectricView extends View implements BatteryPowered {
+
+        ElectricView(ColumnarFleet fleet, int id) {
+            super(fleet, id);
+        }
+
+        public int getBatteryLevel() {
+            return column().batteryLevel(slot());
+        }
+
+        public void setBatteryLevel(int batteryLevel) {
+            if (batteryLevel < 0 || batteryLevel > 100) {
+                throw new IllegalArgumentException("Invalid battery level: " + batteryLevel);
+            }
+            column().setBatteryLevel(slot(), batteryLevel);
+        }
+
+        public boolean getBatteryFull() {
+            return column().batteryLevel(slot()) == 100;
+        }
+
+        public void setBatteryFull() {
+            column().setBatteryLevel(slot(), 100);
+        }
+
+        public void setBatteryEmpty() {
+            column().setBatteryLevel(slot(), 0);
+        }
+
+        /**
+         * @return a string representation of the bike containing the serial number,
+         *         type, rental status and battery level
+         *
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return "Bike {\n\t" +
+                    "serial number: " + getSerialNumber() + "\n\t" +
+                    "type: " + getType() + "\n\t" +
+                    "rented: " + (getIsRented() ? "yes" : "no") + "\n\t" +
+                    "battery level: " + column().batteryLevel(slot()) + "%" + "\n" +
+                    "}";
+        }
+    }
+}
@@ -1,20 +1,50 @@
 package kd.bike;
 
 /**
- * The ElectricBike class is responsible for creating a electric bike object.
+ * The ElectricBike class is responsible for creating a electric bike object, or
+ * a bike of another registered battery powered type.
  */
-public final class ElectricBike extends BikeFactory {
+public final class ElectricBike extends BikeFactory implements BatteryPowered {
 
-    private int batteryLevel; // 0 is empty, 100 is full
+    private volatile int batteryLevel; // 0 is empty, 100 is full
 
     /**
-     * @see BikeFactory#BikeFactory(String)
+     * @see BikeFactory#BikeFactory(String, BikeType)
      */
     public ElectricBike(String serialNumber) {
-        super(serialNumber);
+        this(serialNumber, BikeType.ELECTRIC);
+    }
+
+    /*
+     * Create a bike of a registered battery powered type
+     */
+    ElectricBike(String serialNumber, BikeType type) {
+        super(serialNumber, type);
         this.batteryLevel = 100;
     }
 
+    /**
+     * @return the bike's battery level, from 0 (empty) to 100 (full)
+     */
+    public int getBatteryLevel() {
+        return batteryLevel;
+    }
+
+    /**
+     * Set the bike's battery level
+     *
+     * @param batteryLevel The battery level, from 0 (empty) to 100 (full)
+     * 
+     * @throws IllegalArgumentException if batteryLevel is not between 0 and 100
+     */
+    public void setBatteryLevel(int batteryLevel) {
+        if (batteryLevel < 0 || batteryLevel > 100) {
+            throw new IllegalArgumentException("Invalid battery level: " + batteryLevel);
+        }
+
+        this.batteryLevel = batteryLevel;
+    }
+
     /**
      * Returns whether or not the bike's battery is currently full
      *
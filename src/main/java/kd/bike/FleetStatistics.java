@@ -0,0 +1,159 @@
+package kd.bike;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The FleetStatistics class is responsible for keeping per bike type counts of
+ * the fleet: the total number of bikes, the number rented out and available,
+ * and the number of bikes whose battery is not full (empty or charging). The
+ * counts are updated on every transition instead of being recounted, so
+ * reading them is a lookup without scanning the fleet or allocating. Counts
+ * are kept in an array by bike type id.
+ *
+ * Each count is exact on its own; counts read one after the other may reflect
+ * transitions made in between.
+ */
+public final class FleetStatistics {
+
+    private final AtomicReferenceArray<Counts> counts = new AtomicReferenceArray<Counts>(BikeType.MAX_TYPES);
+
+    /**
+     * Counts a bike added to the fleet
+     *
+     * @param bike The bike that was added
+     */
+    public void bikeAdded(Bike bike) {
+        Counts c = countsOf(bike.getBikeType());
+        c.total.incrementAndGet();
+        if (bike.getIsRented()) {
+            c.rented.incrementAndGet();
+        }
+        if (bike instanceof BatteryPowered && !((BatteryPowered) bike).getBatteryFull()) {
+            c.emptyBattery.incrementAndGet();
+        }
+    }
+
+    /**
+     * Uncounts a bike removed from the fleet, for example when it moves to
+     * another depot
+     *
+     * @param bike The bike that was removed
+     */
+    public void bikeRemoved(Bike bike) {
+        Counts c = countsOf(bike.getBikeType());
+        c.total.decrementAndGet();
+        if (bike.getIsRented()) {
+            c.rented.decrementAndGet();
+        }
+        if (bike instanceof BatteryPowered && !((BatteryPowered) bike).getBatteryFull()) {
+            c.emptyBattery.decrementAndGet();
+        }
+    }
+
+    /**
+     * Counts a bike that was rented out
+     *
+     * @param bike The bike that was rented out
+     */
+    public void bikeRented(Bike bike) {
+        countsOf(bike.getBikeType()).rented.incrementAndGet();
+    }
+
+    /**
+     * Counts a bike that was returned
+     *
+     * @param bike The bike that was returned
+     */
+    public void bikeReturned(Bike bike) {
+        countsOf(bike.getBikeType()).rented.decrementAndGet();
+    }
+
+    /**
+     * Counts a bike whose battery went from full to not full
+     *
+     * @param bike The bike with the emptied battery
+     */
+    public void batteryEmptied(Bike bike) {
+        countsOf(bike.getBikeType()).emptyBattery.incrementAndGet();
+    }
+
+    /**
+     * Counts a bike whose battery went from not full to full
+     *
+     * @param bike The bike with the charged battery
+     */
+    public void batteryCharged(Bike bike) {
+        countsOf(bike.getBikeType()).emptyBattery.decrementAndGet();
+    }
+
+    /**
+     * @param bikeType The type of bike to count
+     *
+     * @return the number of bikes of the specified type in the fleet
+     */
+    public int getTotal(String bikeType) {
+        Counts c = countsOf(bikeType);
+        return c == null ? 0 : c.total.get();
+    }
+
+    /**
+     * @param bikeType The type of bike to count
+     *
+     * @return the number of bikes of the specified type that are rented out
+     */
+    public int getRented(String bikeType) {
+        Counts c = countsOf(bikeType);
+        return c == null ? 0 : c.rented.get();
+    }
+
+    /**
+     * @param bikeType The type of bike to count
+     *
+     * @return the number of bikes of the specified type that are not rented out
+     */
+    public int getAvailable(String bikeType) {
+        Counts c = countsOf(bikeType);
+        return c == null ? 0 : c.total.get() - c.rented.get();
+    }
+
+    /**
+     * @param bikeType The type of bike to count
+     *
+     * @return the number of bikes of the specified type whose battery is not full
+     */
+    public int getEmptyBattery(String bikeType) {
+        Counts c = countsOf(bikeType);
+        return c == null ? 0 : c.emptyBattery.get();
+    }
+
+    /*
+     * The counts of a bike type by name, null if nothing was counted
+     */
+    private Counts countsOf(String bikeType) {
+        BikeType type = BikeType.of(bikeType);
+        return type == null ? null : counts.get(type.getId());
+    }
+
+    private Counts countsOf(BikeType bikeType) {
+        int id = bikeType.getId();
+        Counts c = counts.get(id);
+        if (c == null) {
+            c = new Counts();
+            if (!counts.compareAndSet(id, null, c)) {
+                c = counts.get(id);
+            }
+        }
+        return c;
+    }
+
+    /*
+     * The counts of one bike type
+     */
+    private static final class Counts {
+
+        final AtomicInteger total = new AtomicInteger();
+        final AtomicInteger rented = new AtomicInteger();
+        final AtomicInteger emptyBattery = new AtomicInteger();
+    }
+}
@@ -6,10 +6,10 @@ package kd.bike;
 public final class RoadBike extends BikeFactory {
 
     /**
-     * @see BikeFactory#BikeFactory(String)
+     * @see BikeFactory#BikeFactory(String, BikeType)
      */
     public RoadBike(String serialNumber) {
-        super(serialNumber);
+        super(serialNumber, BikeType.ROAD);
     }
 
 }
@@ -0,0 +1,13 @@
+package kd.bike;
+
+/*
+ * The StandardBike class is responsible for creating a bike of a registered
+ * type without a battery, other than a road bike.
+ */
+final class StandardBike extends BikeFactory {
+
+    StandardBike(String serialNumber, BikeType type) {
+        super(serialNumber, type);
+    }
+
+}
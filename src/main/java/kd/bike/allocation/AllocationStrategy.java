@@ -0,0 +1,23 @@
+package kd.bike.allocation;
+
+import kd.bike.Bike;
+
+/**
+ * This interface defines a contract for strategies choosing which free bike
+ * of a type is issued next. A strategy creates one index of free bikes per
+ * bike type, which keeps the free bikes in the order they should be issued.
+ *
+ * @see StandardAllocation
+ */
+public interface AllocationStrategy {
+
+    /**
+     * Create an empty index for the free bikes of one bike type
+     *
+     * @param first The first bike of the type, which tells for example whether
+     *              bikes of the type are battery powered
+     *
+     * @return a new, empty index
+     */
+    FreeBikes newFreeBikes(Bike first);
+}
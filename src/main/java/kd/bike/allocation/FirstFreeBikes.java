@@ -0,0 +1,13 @@
+package kd.bike.allocation;
+
+import kd.bike.Bike;
+
+/*
+ * Free bikes ordered last in first out, the bike returned last is issued first
+ */
+final class FirstFreeBikes extends OrderedFreeBikes {
+
+    long key(Bike bike, long sequence) {
+        return -sequence;
+    }
+}
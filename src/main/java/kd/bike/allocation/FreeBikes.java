@@ -0,0 +1,61 @@
+package kd.bike.allocation;
+
+import kd.bike.Bike;
+
+/**
+ * This interface defines a contract for indexes of the free bikes of one bike
+ * type, ordered by an allocation strategy. Indexes only keep bikes in order;
+ * changing the rental status of the bikes is left to the caller. Indexes must
+ * be safe for concurrent use.
+ */
+public interface FreeBikes {
+
+    /**
+     * Adds a bike that became free
+     *
+     * @param bike The free bike
+     */
+    void offer(Bike bike);
+
+    /**
+     * Removes the bike that should be issued next
+     *
+     * @return the bike, or null if the index is empty
+     */
+    Bike poll();
+
+    /**
+     * Removes the specified bike
+     *
+     * @param bike The bike to remove
+     *
+     * @return true if the bike was in the index
+     * @return false if the bike was not in the index
+     */
+    boolean remove(Bike bike);
+
+    /**
+     * Updates the position of a bike whose properties changed while it is free,
+     * for example its battery level. Bikes not in the index are ignored.
+     *
+     * @param bike The bike that changed
+     */
+    default void reindex(Bike bike) {
+    }
+
+    /**
+     * Takes over what the index replaced by this one learned about the bikes,
+     * for example how often each bike was issued. Called once when the index is
+     * created, before any bike is offered. Indexes not keeping such history
+     * ignore this.
+     *
+     * @param previous The index of the same bike type this one replaces
+     */
+    default void inherit(FreeBikes previous) {
+    }
+
+    /**
+     * @return the number of bikes in the index
+     */
+    int size();
+}
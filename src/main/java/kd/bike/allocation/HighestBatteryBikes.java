@@ -0,0 +1,32 @@
+package kd.bike.allocation;
+
+import kd.bike.BatteryPowered;
+import kd.bike.Bike;
+
+/*
+ * Free battery powered bikes ordered highest battery level first and first in
+ * first out within a level. The level is kept in the top bits of the key, so a
+ * bike whose level changes is moved to the back of its new level and leaves
+ * nothing behind at the old one.
+ */
+final class HighestBatteryBikes extends OrderedFreeBikes {
+
+    private static final int LEVEL_SHIFT = 56;
+    private static final int MAX_LEVEL = 100;
+
+    long key(Bike bike, long sequence) {
+        return ((long) (MAX_LEVEL - levelOf(bike)) << LEVEL_SHIFT) | sequence;
+    }
+
+    public void reindex(Bike bike) {
+        Long current = keyOf(bike);
+        if (current != null && MAX_LEVEL - (current >>> LEVEL_SHIFT) != levelOf(bike)) {
+            move(bike, current);
+        }
+    }
+
+    private static int levelOf(Bike bike) {
+        int level = ((BatteryPowered) bike).getBatteryLevel();
+        return Math.max(0, Math.min(MAX_LEVEL, level));
+    }
+}
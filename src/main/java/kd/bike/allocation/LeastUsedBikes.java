@@ -0,0 +1,94 @@
+package kd.bike.allocation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import kd.bike.Bike;
+
+/*
+ * Free bikes ordered by the number of times they were issued, then by the
+ * order they became free. Every bike leaving the index counts as issued. The
+ * usage counts are carried over when the index replaces another least used
+ * index.
+ */
+final class LeastUsedBikes implements FreeBikes {
+
+    private final TreeSet<Entry> ordered = new TreeSet<Entry>();
+    private final Map<Bike, Entry> entries = new HashMap<Bike, Entry>();
+    private final Map<Bike, Integer> usage = new HashMap<Bike, Integer>();
+    private long sequence;
+
+    public synchronized void offer(Bike bike) {
+        if (entries.containsKey(bike)) {
+            return;
+        }
+        Entry entry = new Entry(bike, usage.getOrDefault(bike, 0), sequence++);
+        entries.put(bike, entry);
+        ordered.add(entry);
+    }
+
+    public synchronized Bike poll() {
+        Entry entry = ordered.pollFirst();
+        if (entry == null) {
+            return null;
+        }
+        entries.remove(entry.bike);
+        usage.put(entry.bike, entry.usage + 1);
+        return entry.bike;
+    }
+
+    public synchronized boolean remove(Bike bike) {
+        Entry entry = entries.remove(bike);
+        if (entry == null) {
+            return false;
+        }
+        ordered.remove(entry);
+        usage.put(bike, entry.usage + 1);
+        return true;
+    }
+
+    public void inherit(FreeBikes previous) {
+        if (previous instanceof LeastUsedBikes) {
+            Map<Bike, Integer> counts = ((LeastUsedBikes) previous).usageCounts();
+            synchronized (this) {
+                for (Map.Entry<Bike, Integer> count : counts.entrySet()) {
+                    usage.merge(count.getKey(), count.getValue(), Math::max);
+                }
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /*
+     * The usage counts of all bikes seen, free or not
+     */
+    private synchronized Map<Bike, Integer> usageCounts() {
+        Map<Bike, Integer> counts = new HashMap<Bike, Integer>(usage);
+        for (Entry entry : entries.values()) {
+            counts.put(entry.bike, entry.usage);
+        }
+        return counts;
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+
+        final Bike bike;
+        final int usage;
+        final long sequence;
+
+        Entry(Bike bike, int usage, long sequence) {
+            this.bike = bike;
+            this.usage = usage;
+            this.sequence = sequence;
+        }
+
+        public int compareTo(Entry other) {
+            int c = Integer.compare(usage, other.usage);
+            return c != 0 ? c : Long.compare(sequence, other.sequence);
+        }
+    }
+}
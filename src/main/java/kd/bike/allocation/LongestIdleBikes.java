@@ -0,0 +1,14 @@
+package kd.bike.allocation;
+
+import kd.bike.Bike;
+
+/*
+ * Free bikes ordered by the time they became free, so the bike that has been
+ * idle the longest is issued first
+ */
+final class LongestIdleBikes extends OrderedFreeBikes {
+
+    long key(Bike bike, long sequence) {
+        return sequence;
+    }
+}
@@ -0,0 +1,94 @@
+package kd.bike.allocation;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import kd.bike.Bike;
+
+/*
+ * Free bikes in a lock-free skip list, ordered by a key derived from the bike
+ * and the order in which it became free, and polled lowest key first. A map
+ * from each free bike to its key lets any bike be removed or moved in
+ * O(log n). A bike is in the index while the map holds its key; a skip list
+ * entry whose key is no longer mapped has lost a race and is dropped by
+ * whoever finds it.
+ */
+abstract class OrderedFreeBikes implements FreeBikes {
+
+    private final ConcurrentNavigableMap<Long, Bike> ordered = new ConcurrentSkipListMap<Long, Bike>();
+    private final ConcurrentMap<Bike, Long> keys = new ConcurrentHashMap<Bike, Long>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+
+    /*
+     * The key ordering a bike that became free as the specified sequence number
+     */
+    abstract long key(Bike bike, long sequence);
+
+    public void offer(Bike bike) {
+        Long key = key(bike, sequence.getAndIncrement());
+        if (keys.putIfAbsent(bike, key) == null) {
+            size.incrementAndGet();
+            insert(bike, key);
+        }
+    }
+
+    public Bike poll() {
+        Map.Entry<Long, Bike> first;
+        while ((first = ordered.pollFirstEntry()) != null) {
+            if (keys.remove(first.getValue(), first.getKey())) {
+                size.decrementAndGet();
+                return first.getValue();
+            }
+        }
+        return null;
+    }
+
+    public boolean remove(Bike bike) {
+        Long key = keys.remove(bike);
+        if (key == null) {
+            return false;
+        }
+        size.decrementAndGet();
+        ordered.remove(key, bike);
+        return true;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /*
+     * The key of a free bike, null if the bike is not free
+     */
+    final Long keyOf(Bike bike) {
+        return keys.get(bike);
+    }
+
+    /*
+     * Move a free bike from its current key to a key derived from a new
+     * sequence number, as if it became free again; nothing happens if the bike
+     * was taken or moved since its current key was read
+     */
+    final void move(Bike bike, Long current) {
+        Long key = key(bike, sequence.getAndIncrement());
+        if (keys.replace(bike, current, key)) {
+            insert(bike, key);
+            ordered.remove(current, bike);
+        }
+    }
+
+    private void insert(Bike bike, Long key) {
+        ordered.put(key, bike);
+
+        /* The bike may have been taken or moved before its entry was listed */
+        if (!key.equals(keys.get(bike))) {
+            ordered.remove(key, bike);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package kd.bike.allocation;
+
+import kd.bike.Bike;
+
+/**
+ * The StandardAllocation enum lists the built-in allocation strategies.
+ */
+public enum StandardAllocation implements AllocationStrategy {
+
+    /**
+     * Issue whichever free bike is cheapest to find: the one returned last
+     */
+    FIRST_FREE {
+        public FreeBikes newFreeBikes(Bike first) {
+            return new FirstFreeBikes();
+        }
+    },
+
+    /**
+     * Issue the free bike that has been rented out the fewest times, spreading
+     * wear over the fleet
+     */
+    LEAST_USED {
+        public FreeBikes newFreeBikes(Bike first) {
+            return new LeastUsedBikes();
+        }
+    },
+
+    /**
+     * Issue the bike that has been free the longest
+     */
+    LONGEST_IDLE {
+        public FreeBikes newFreeBikes(Bike first) {
+            return new LongestIdleBikes();
+        }
+    },
+
+    /**
+     * Issue the battery powered bike with the highest charge, or the bike that
+     * has been free the longest for bike types without a battery
+     */
+    HIGHEST_BATTERY {
+        public FreeBikes newFreeBikes(Bike first) {
+            return first.getBikeType().isBatteryPowered() ? new HighestBatteryBikes() : new LongestIdleBikes();
+        }
+    };
+}
@@ -0,0 +1,214 @@
+package kd.billing;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+import kd.customer.CustomerNumber;
+import kd.rental.RentalContract;
+
+/**
+ * The BillingEngine class is responsible for charging rentals. When a bike is
+ * returned, the fee of its contract is computed from the rental duration, bike
+ * type and Gold Class status using a tariff table, recorded on the contract
+ * and added to the customer's account for the month the rental ended. At the
+ * end of a month the accounts are turned into invoices.
+ *
+ * Invoices can also be run in bulk from the contracts themselves, e.g. to
+ * re-rate a month with new tariffs or to check the accounts: the contracts
+ * are priced and added up in parallel.
+ *
+ * Months follow the system time zone unless specified otherwise.
+ */
+public final class BillingEngine {
+
+    private final TariffTable tariffs;
+    private final ZoneId zone;
+    private final InvoiceStore invoices = new InvoiceStore();
+    private volatile Month current;
+
+    /**
+     * Create a billing engine with months in the system time zone
+     *
+     * @param tariffs The tariff table to price rentals with
+     */
+    public BillingEngine(TariffTable tariffs) {
+        this(tariffs, ZoneId.systemDefault());
+    }
+
+    /**
+     * Create a billing engine
+     *
+     * @param tariffs The tariff table to price rentals with
+     * @param zone    The time zone months are counted in
+     *
+     * @throws IllegalArgumentException if tariffs or zone is null
+     */
+    public BillingEngine(TariffTable tariffs, ZoneId zone) {
+        if (tariffs == null || zone == null) {
+            throw new IllegalArgumentException("Empty tariff table or time zone");
+        }
+
+        this.tariffs = tariffs;
+        this.zone = zone;
+        this.current = new Month(YearMonth.now(zone), zone);
+    }
+
+    /**
+     * Prices a terminated rental without charging it
+     *
+     * @param contract  The terminated rental contract
+     * @param goldClass Whether the customer is Gold Class
+     *
+     * @return the fee, in cents
+     *
+     * @throws IllegalStateException if the contract is active
+     */
+    public long price(RentalContract contract, boolean goldClass) {
+        if (contract.isActive()) {
+            throw new IllegalStateException("Contract " + contract.getId() + " is active");
+        }
+        return tariffs.fee(contract.getBike().getBikeType(), goldClass,
+                contract.getEndMillis() - contract.getStartMillis());
+    }
+
+    /**
+     * Charges a terminated rental: records the fee on the contract and adds it
+     * to the customer's account for the month the rental ended
+     *
+     * @param contract  The terminated rental contract
+     * @param goldClass Whether the customer is Gold Class
+     *
+     * @return the fee, in cents
+     *
+     * @throws IllegalStateException    if the contract is active or has been
+     *                                  billed already
+     * @throws IllegalArgumentException if the contract's customer number is
+     *                                  invalid
+     */
+    public long bill(RentalContract contract, boolean goldClass) {
+        long customerNumber = customerCodeOf(contract);
+        long fee = price(contract, goldClass);
+        contract.bill(fee);
+        invoices.charge(customerNumber, monthOf(contract.getEndMillis()), contract.getEndMillis(),
+                contract.getEndMillis() - contract.getStartMillis(), fee);
+        return fee;
+    }
+
+    /**
+     * Adds a rental charged earlier to the customer's account for the month the
+     * rental ended, for example when it is replayed from a journal. A charge
+     * that does not end after the last one of the account is skipped, so a
+     * charge is never added twice.
+     *
+     * @param customerNumber The encoded customer number
+     * @param startMillis    When the rental started, in epoch milliseconds
+     * @param endMillis      When the rental ended, in epoch milliseconds
+     * @param fee            The fee charged, in cents
+     *
+     * @return true if the charge was added
+     * @return false if the account has a later charge already
+     */
+    public boolean charge(long customerNumber, long startMillis, long endMillis, long fee) {
+        return invoices.charge(customerNumber, monthOf(endMillis), endMillis, endMillis - startMillis, fee);
+    }
+
+    /**
+     * Invoices a month from the charges added up as rentals were billed, and
+     * clears them
+     *
+     * @param month The month to invoice
+     *
+     * @return the invoices, ordered by customer number
+     */
+    public List<Invoice> closeMonth(YearMonth month) {
+        return invoices.close(month);
+    }
+
+    /**
+     * Invoices a month from rental contracts: every contract that ended in the
+     * month is priced and added to its customer's invoice, in parallel.
+     * Contracts that are active or ended in another month are skipped.
+     *
+     * @param contracts The rental contracts, e.g. those overlapping the month
+     * @param month     The month to invoice
+     * @param goldClass Tells whether the customer with an encoded customer number
+     *                  is Gold Class
+     *
+     * @return the invoices, ordered by customer number
+     */
+    public List<Invoice> runInvoices(Collection<RentalContract> contracts, YearMonth month, LongPredicate goldClass) {
+        Month m = new Month(month, zone);
+        InvoiceStore run = new InvoiceStore();
+
+        contracts.parallelStream()
+                .filter(c -> !c.isActive() && c.getEndMillis() >= m.start && c.getEndMillis() < m.end)
+                .forEach(c -> {
+                    long customerNumber = customerCodeOf(c);
+                    long duration = c.getEndMillis() - c.getStartMillis();
+                    long fee = tariffs.fee(c.getBike().getBikeType(), goldClass.test(customerNumber), duration);
+                    run.add(customerNumber, month, duration, fee);
+                });
+        return run.close(month);
+    }
+
+    /**
+     * @return the charges added up per customer and month, until invoiced
+     */
+    public InvoiceStore getInvoices() {
+        return invoices;
+    }
+
+    /**
+     * @return the tariff table rentals are priced with
+     */
+    public TariffTable getTariffs() {
+        return tariffs;
+    }
+
+    /**
+     * @return the time zone months are counted in
+     */
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /*
+     * The month of a point in time; the current month is cached
+     */
+    private YearMonth monthOf(long millis) {
+        Month m = current;
+        if (millis < m.start || millis >= m.end) {
+            m = new Month(YearMonth.from(Instant.ofEpochMilli(millis).atZone(zone)), zone);
+            current = m;
+        }
+        return m.month;
+    }
+
+    private static long customerCodeOf(RentalContract contract) {
+        long code = CustomerNumber.parse(contract.getCustomerNumber());
+        if (code == CustomerNumber.INVALID) {
+            throw new IllegalArgumentException("Invalid customer number: " + contract.getCustomerNumber());
+        }
+        return code;
+    }
+
+    /*
+     * A month and its bounds in epoch milliseconds, end exclusive
+     */
+    private static final class Month {
+
+        final YearMonth month;
+        final long start;
+        final long end;
+
+        Month(YearMonth month, ZoneId zone) {
+            this.month = month;
+            this.start = month.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            this.end = month.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package kd.billing;
+
+import java.time.YearMonth;
+
+import kd.customer.CustomerNumber;
+
+/**
+ * The Invoice class is responsible for recording what a customer is charged
+ * for a month: the number of rentals that ended in the month, their total
+ * duration and the total fee.
+ */
+public final class Invoice {
+
+    private final long customerNumber;
+    private final YearMonth month;
+    private final int rentals;
+    private final long rentedMillis;
+    private final long amount;
+    private final long lastEndMillis;
+
+    Invoice(long customerNumber, YearMonth month, int rentals, long rentedMillis, long amount, long lastEndMillis) {
+        this.customerNumber = customerNumber;
+        this.month = month;
+        this.rentals = rentals;
+        this.rentedMillis = rentedMillis;
+        this.amount = amount;
+        this.lastEndMillis = lastEndMillis;
+    }
+
+    /**
+     * @return the number of the customer invoiced, e.g. "JD-1993-1"
+     */
+    public String getCustomerNumber() {
+        return CustomerNumber.format(customerNumber);
+    }
+
+    /**
+     * @return the number of the customer invoiced, as encoded by
+     *         {@link CustomerNumber#parse(CharSequence)}
+     */
+    public long getCustomerCode() {
+        return customerNumber;
+    }
+
+    /**
+     * @return the month invoiced
+     */
+    public YearMonth getMonth() {
+        return month;
+    }
+
+    /**
+     * @return the number of rentals that ended in the month
+     */
+    public int getRentals() {
+        return rentals;
+    }
+
+    /**
+     * @return the total duration of the rentals, in milliseconds
+     */
+    public long getRentedMillis() {
+        return rentedMillis;
+    }
+
+    /**
+     * @return the total fee, in cents
+     */
+    public long getAmount() {
+        return amount;
+    }
+
+    /**
+     * @return when the last rental charged as it ended, in epoch milliseconds,
+     *         or Long.MIN_VALUE if the rentals were added up in bulk
+     */
+    public long getLastEndMillis() {
+        return lastEndMillis;
+    }
+
+    /**
+     * @return a string representation of the invoice containing the customer
+     *         number, month, number of rentals and amount
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "Invoice {\n\t" +
+                "customer number: " + getCustomerNumber() + "\n\t" +
+                "month: " + month + "\n\t" +
+                "rentals: " + rentals + "\n\t" +
+                "amount: " + amount / 100 + "." + String.format("%02d", amount % 100) + "\n" +
+                '}';
+    }
+}
@@ -0,0 +1,180 @@
+package kd.billing;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import kd.util.ConcurrentLongMap;
+
+/**
+ * The InvoiceStore class is responsible for adding up the charges of each
+ * customer per month until the month is invoiced. A customer's month is a
+ * single small account of three numbers, kept in a map keyed by the encoded
+ * customer number, so the store holds no contracts or other per rental data.
+ *
+ * Charges made as rentals end are recognised by the end of the rental: a
+ * customer's rentals end one after the other, so a charge that does not end
+ * after the last one of the account, for example one replayed from a journal,
+ * is not added twice.
+ *
+ * The store is safe for concurrent use. A month is meant to be closed once all
+ * its rentals have been charged, e.g. a few minutes after it ended; charges
+ * added to a month while it is being closed may be left out of its invoices.
+ */
+public final class InvoiceStore {
+
+    private final Map<YearMonth, ConcurrentLongMap<Account>> months =
+            new ConcurrentHashMap<YearMonth, ConcurrentLongMap<Account>>();
+
+    /**
+     * Adds a charge to a customer's account for a month
+     *
+     * @param customerNumber The encoded customer number, see
+     *                       {@link kd.customer.CustomerNumber#parse(CharSequence)}
+     * @param month          The month charged
+     * @param rentedMillis   The duration of the rental, in milliseconds
+     * @param amount         The fee, in cents
+     */
+    public void add(long customerNumber, YearMonth month, long rentedMillis, long amount) {
+        accountOf(customerNumber, month).add(rentedMillis, amount);
+    }
+
+    /**
+     * Adds the charge of a rental that just ended to a customer's account for a
+     * month, unless the account has a charge for a rental ending at the same
+     * time or later already
+     *
+     * @param customerNumber The encoded customer number
+     * @param month          The month charged
+     * @param endMillis      When the rental ended, in epoch milliseconds
+     * @param rentedMillis   The duration of the rental, in milliseconds
+     * @param amount         The fee, in cents
+     *
+     * @return true if the charge was added
+     * @return false if the account has a later charge already
+     */
+    public boolean charge(long customerNumber, YearMonth month, long endMillis, long rentedMillis, long amount) {
+        return accountOf(customerNumber, month).charge(endMillis, rentedMillis, amount);
+    }
+
+    /**
+     * Sets a customer's account for a month to totals saved earlier, see
+     * {@link #getInvoices(YearMonth)}
+     *
+     * @param customerNumber The encoded customer number
+     * @param month          The month charged
+     * @param rentals        The number of rentals charged
+     * @param rentedMillis   The total duration of the rentals, in milliseconds
+     * @param amount         The total fee, in cents
+     * @param lastEndMillis  When the last rental charged ended, in epoch
+     *                       milliseconds
+     */
+    public void restore(long customerNumber, YearMonth month, int rentals, long rentedMillis, long amount,
+            long lastEndMillis) {
+        accountOf(customerNumber, month).set(rentals, rentedMillis, amount, lastEndMillis);
+    }
+
+    /**
+     * @param customerNumber The encoded customer number
+     * @param month          The month
+     *
+     * @return the customer's charges so far for the month, or null if there are
+     *         none
+     */
+    public Invoice getInvoice(long customerNumber, YearMonth month) {
+        ConcurrentLongMap<Account> accounts = months.get(month);
+        Account account = accounts == null ? null : accounts.get(customerNumber);
+        return account == null ? null : account.toInvoice(customerNumber, month);
+    }
+
+    /**
+     * @param month The month
+     *
+     * @return the charges so far of all customers for the month, without
+     *         invoicing them, ordered by customer number
+     */
+    public List<Invoice> getInvoices(YearMonth month) {
+        ConcurrentLongMap<Account> accounts = months.get(month);
+        List<Invoice> invoices = new ArrayList<Invoice>();
+        if (accounts != null) {
+            accounts.forEach((customerNumber, account) -> invoices.add(account.toInvoice(customerNumber, month)));
+            invoices.sort(Comparator.comparingLong(Invoice::getCustomerCode));
+        }
+        return invoices;
+    }
+
+    /**
+     * @return the months with charges that have not been invoiced
+     */
+    public Set<YearMonth> getMonths() {
+        return Collections.unmodifiableSet(new TreeSet<YearMonth>(months.keySet()));
+    }
+
+    /**
+     * Invoices a month: turns the accounts of the month into invoices and
+     * removes them from the store
+     *
+     * @param month The month to invoice
+     *
+     * @return the invoices, ordered by customer number
+     */
+    public List<Invoice> close(YearMonth month) {
+        ConcurrentLongMap<Account> accounts = months.remove(month);
+        if (accounts == null) {
+            return new ArrayList<Invoice>();
+        }
+
+        List<Invoice> invoices = new ArrayList<Invoice>(accounts.size());
+        accounts.forEach((customerNumber, account) -> invoices.add(account.toInvoice(customerNumber, month)));
+        invoices.sort(Comparator.comparingLong(Invoice::getCustomerCode));
+        return invoices;
+    }
+
+    private Account accountOf(long customerNumber, YearMonth month) {
+        return months.computeIfAbsent(month, m -> new ConcurrentLongMap<Account>())
+                .computeIfAbsent(customerNumber, c -> new Account());
+    }
+
+    /*
+     * The charges of one customer in one month
+     */
+    private static final class Account {
+
+        private int rentals;
+        private long rentedMillis;
+        private long amount;
+        private long lastEndMillis = Long.MIN_VALUE;
+
+        synchronized void add(long millis, long cents) {
+            rentals++;
+            rentedMillis += millis;
+            amount += cents;
+        }
+
+        synchronized boolean charge(long endMillis, long millis, long cents) {
+            if (endMillis <= lastEndMillis) {
+                return false;
+            }
+            add(millis, cents);
+            lastEndMillis = endMillis;
+            return true;
+        }
+
+        synchronized void set(int rentals, long millis, long cents, long endMillis) {
+            this.rentals = rentals;
+            this.rentedMillis = millis;
+            this.amount = cents;
+            this.lastEndMillis = endMillis;
+        }
+
+        synchronized Invoice toInvoice(long customerNumber, YearMonth month) {
+            return new Invoice(customerNumber, month, rentals, rentedMillis, amount, lastEndMillis);
+        }
+    }
+}
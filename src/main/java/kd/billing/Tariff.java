@@ -0,0 +1,117 @@
+package kd.billing;
+
+/**
+ * The Tariff class is responsible for pricing a rental by its duration. A
+ * rental costs an unlock fee plus a rate per started quarter of an hour, and
+ * no more than a daily cap per started day. Amounts are in cents.
+ *
+ * The fee of every number of quarters in a day is computed once, when the
+ * tariff is created, so pricing a rental is a division and two table lookups.
+ */
+public final class Tariff {
+
+    private static final long QUARTER_MILLIS = 15 * 60 * 1000L;
+    private static final int QUARTERS_PER_DAY = 96;
+
+    private final long unlockFee;
+    private final long quarterRate;
+    private final long dailyCap;
+
+    /* Fees by started quarters of the first day, and of each further day */
+    private final long[] firstDay = new long[QUARTERS_PER_DAY + 1];
+    private final long[] nextDay = new long[QUARTERS_PER_DAY + 1];
+
+    /**
+     * Create a tariff
+     *
+     * @param unlockFee   The fee charged once per rental, in cents
+     * @param quarterRate The fee per started quarter of an hour, in cents
+     * @param dailyCap    The most charged per started day, in cents
+     *
+     * @throws IllegalArgumentException if an amount is negative, or the daily
+     *                                  cap is lower than the unlock fee
+     */
+    public Tariff(long unlockFee, long quarterRate, long dailyCap) {
+        if (unlockFee < 0 || quarterRate < 0 || dailyCap < unlockFee) {
+            throw new IllegalArgumentException(
+                    "Invalid tariff: " + unlockFee + " unlock, " + quarterRate + " per quarter, " + dailyCap + " cap");
+        }
+
+        this.unlockFee = unlockFee;
+        this.quarterRate = quarterRate;
+        this.dailyCap = dailyCap;
+
+        for (int q = 0; q <= QUARTERS_PER_DAY; q++) {
+            firstDay[q] = Math.min(unlockFee + q * quarterRate, dailyCap);
+            nextDay[q] = Math.min(q * quarterRate, dailyCap);
+        }
+    }
+
+    /**
+     * Prices a rental
+     *
+     * @param durationMillis The duration of the rental, in milliseconds
+     *
+     * @return the fee, in cents
+     */
+    public long fee(long durationMillis) {
+        long quarters = (Math.max(durationMillis, 0) + QUARTER_MILLIS - 1) / QUARTER_MILLIS;
+        if (quarters <= QUARTERS_PER_DAY) {
+            return firstDay[(int) quarters];
+        }
+
+        long days = (quarters - 1) / QUARTERS_PER_DAY;
+        return firstDay[QUARTERS_PER_DAY] + (days - 1) * nextDay[QUARTERS_PER_DAY]
+                + nextDay[(int) (quarters - days * QUARTERS_PER_DAY)];
+    }
+
+    /**
+     * @param percent The discount, from 0 to 100
+     *
+     * @return this tariff with all amounts reduced by the discount, rounded to
+     *         the nearest cent
+     *
+     * @throws IllegalArgumentException if percent is not between 0 and 100
+     */
+    public Tariff discounted(int percent) {
+        if (percent < 0 || percent > 100) {
+            throw new IllegalArgumentException("Invalid discount: " + percent);
+        }
+        return new Tariff(discount(unlockFee, percent), discount(quarterRate, percent), discount(dailyCap, percent));
+    }
+
+    /**
+     * @return the fee charged once per rental, in cents
+     */
+    public long getUnlockFee() {
+        return unlockFee;
+    }
+
+    /**
+     * @return the fee per started quarter of an hour, in cents
+     */
+    public long getQuarterRate() {
+        return quarterRate;
+    }
+
+    /**
+     * @return the most charged per started day, in cents
+     */
+    public long getDailyCap() {
+        return dailyCap;
+    }
+
+    private static long discount(long cents, int percent) {
+        return (cents * (100 - percent) + 50) / 100;
+    }
+
+    /**
+     * @return a string representation of the tariff
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "Tariff {unlock: " + unlockFee + ", per quarter: " + quarterRate + ", daily cap: " + dailyCap + "}";
+    }
+}
@@ -0,0 +1,110 @@
+package kd.billing;
+
+import kd.bike.BikeType;
+
+/**
+ * The TariffTable class is responsible for looking up the tariff of a rental
+ * by bike type and Gold Class status. Tariffs are kept in an array by bike
+ * type id, with the Gold Class discount already applied to a tariff of its
+ * own, so a lookup is one array access. Types without a tariff of their own
+ * use the default tariff.
+ */
+public final class TariffTable {
+
+    private final Tariff defaultTariff;
+    private final int goldClassDiscount;
+
+    /* Standard and Gold Class tariffs, at 2 * type id and 2 * type id + 1 */
+    private volatile Tariff[] tariffs = new Tariff[2 * BikeType.MAX_TYPES];
+
+    /**
+     * Create a table with only a default tariff
+     *
+     * @param defaultTariff     The tariff of bike types without one of their own
+     * @param goldClassDiscount The discount for Gold Class customers, in percent
+     *
+     * @throws IllegalArgumentException if defaultTariff is null or the discount
+     *                                  is not between 0 and 100
+     */
+    public TariffTable(Tariff defaultTariff, int goldClassDiscount) {
+        if (defaultTariff == null) {
+            throw new IllegalArgumentException("Empty default tariff");
+        }
+
+        this.defaultTariff = defaultTariff;
+        this.goldClassDiscount = goldClassDiscount;
+        for (int i = 0; i < BikeType.MAX_TYPES; i++) {
+            tariffs[2 * i] = defaultTariff;
+            tariffs[2 * i + 1] = defaultTariff.discounted(goldClassDiscount);
+        }
+    }
+
+    /**
+     * @return a table with the standard tariffs: road bikes 1.00 to unlock, 0.50
+     *         per quarter and at most 15.00 a day, electric bikes 1.00 to
+     *         unlock, 1.00 per quarter and at most 30.00 a day, and 20% off for
+     *         Gold Class customers
+     */
+    public static TariffTable standard() {
+        TariffTable table = new TariffTable(new Tariff(100, 50, 1500), 20);
+        table.set(BikeType.ELECTRIC, new Tariff(100, 100, 3000));
+        return table;
+    }
+
+    /**
+     * Sets the tariff of a bike type. Gold Class customers get the table's
+     * discount on it.
+     *
+     * @param bikeType The bike type
+     * @param tariff   The tariff of the bike type
+     *
+     * @throws IllegalArgumentException if tariff is null
+     */
+    public synchronized void set(BikeType bikeType, Tariff tariff) {
+        if (tariff == null) {
+            throw new IllegalArgumentException("Empty tariff");
+        }
+
+        Tariff[] copy = tariffs.clone();
+        copy[2 * bikeType.getId()] = tariff;
+        copy[2 * bikeType.getId() + 1] = tariff.discounted(goldClassDiscount);
+        tariffs = copy;
+    }
+
+    /**
+     * @param bikeType  The bike type
+     * @param goldClass Whether the customer is Gold Class
+     *
+     * @return the tariff for the bike type and customer
+     */
+    public Tariff get(BikeType bikeType, boolean goldClass) {
+        return tariffs[2 * bikeType.getId() + (goldClass ? 1 : 0)];
+    }
+
+    /**
+     * Prices a rental
+     *
+     * @param bikeType       The type of the rented bike
+     * @param goldClass      Whether the customer is Gold Class
+     * @param durationMillis The duration of the rental, in milliseconds
+     *
+     * @return the fee, in cents
+     */
+    public long fee(BikeType bikeType, boolean goldClass, long durationMillis) {
+        return get(bikeType, goldClass).fee(durationMillis);
+    }
+
+    /**
+     * @return the tariff of bike types without one of their own
+     */
+    public Tariff getDefaultTariff() {
+        return defaultTariff;
+    }
+
+    /**
+     * @return the discount for Gold Class customers, in percent
+     */
+    public int getGoldClassDiscount() {
+        return goldClassDiscount;
+    }
+}
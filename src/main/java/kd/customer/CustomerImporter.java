@@ -0,0 +1,183 @@
+package kd.customer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * The CustomerImporter class is responsible for creating customer records in
+ * bulk from CSV input. Each line holds a first name, last name, date of birth
+ * (<code>dd/MM/yyyy</code>) and Gold Class flag (<code>true</code> or
+ * <code>false</code>), separated by commas:
+ *
+ * <pre>
+ * Jane,Doe,01/02/1993,false
+ * </pre>
+ *
+ * Blank lines and lines starting with <code>#</code> are skipped. The input is
+ * read in chunks of lines; the lines of a chunk are parsed in parallel, after
+ * which customer numbers are assigned in input order, so the numbering is the
+ * same as when the records are created one by one.
+ */
+public final class CustomerImporter {
+
+    private static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    private final int chunkSize;
+    private final boolean parallel;
+
+    /**
+     * Create an importer parsing chunks of lines in parallel
+     */
+    public CustomerImporter() {
+        this(DEFAULT_CHUNK_SIZE, true);
+    }
+
+    /**
+     * Create an importer
+     *
+     * @param chunkSize The number of lines read and parsed at a time
+     * @param parallel  Whether the lines of a chunk are parsed in parallel
+     *
+     * @throws IllegalArgumentException if chunkSize is less than 1
+     */
+    public CustomerImporter(int chunkSize, boolean parallel) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+
+        this.chunkSize = chunkSize;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Reads customer records from CSV input and hands them to the specified
+     * consumer in input order. Records created before an invalid line is found
+     * have already been handed to the consumer.
+     *
+     * @param in       The CSV input
+     * @param consumer The consumer receiving each customer record, for example
+     *                 <code>RentalManager::addCustomerRecord</code>
+     *
+     * @return the number of customer records imported
+     * @throws IOException    if the input cannot be read
+     * @throws ParseException if a line is not a valid customer, with the error
+     *                        offset set to the line number
+     */
+    public int importRecords(Reader in, Consumer<CustomerRecord> consumer) throws IOException, ParseException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, 1 << 16);
+        Date issueDate = new Date();
+
+        String[] lines = new String[chunkSize];
+        Row[] rows = new Row[chunkSize];
+        int lineNumber = 0;
+        int imported = 0;
+
+        while (true) {
+            int firstLineNumber = lineNumber + 1;
+            int count = 0;
+            String line;
+            while (count < chunkSize && (line = reader.readLine()) != null) {
+                lines[count++] = line;
+            }
+            lineNumber += count;
+            if (count == 0) {
+                return imported;
+            }
+
+            /* Parse the chunk, possibly in parallel */
+            IntStream indexes = IntStream.range(0, count);
+            (parallel ? indexes.parallel() : indexes).forEach(i -> rows[i] = Row.parse(lines[i]));
+
+            /* Assign customer numbers in input order */
+            for (int i = 0; i < count; i++) {
+                Row row = rows[i];
+                if (row == Row.SKIPPED) {
+                    continue;
+                }
+                if (row.error != null) {
+                    throw new ParseException("Line " + (firstLineNumber + i) + ": " + row.error,
+                            firstLineNumber + i);
+                }
+
+                CustomerNumber customerNumber = CustomerNumber.getInstance(row.name,
+                        DateParser.yearOfEpochDay(row.dateOfBirthEpochDay));
+                consumer.accept(new CustomerRecord(row.name, row.dateOfBirthEpochDay, customerNumber, issueDate,
+                        row.goldClass));
+                imported++;
+            }
+        }
+    }
+
+    /*
+     * The parsed fields of a line, or the reason it could not be parsed
+     */
+    private static final class Row {
+
+        static final Row SKIPPED = new Row(null, 0, false, null);
+
+        final CustomerName name;
+        final long dateOfBirthEpochDay;
+        final boolean goldClass;
+        final String error;
+
+        private Row(CustomerName name, long dateOfBirthEpochDay, boolean goldClass, String error) {
+            this.name = name;
+            this.dateOfBirthEpochDay = dateOfBirthEpochDay;
+            this.goldClass = goldClass;
+            this.error = error;
+        }
+
+        static Row parse(String line) {
+            if (line.isBlank() || line.charAt(0) == '#') {
+                return SKIPPED;
+            }
+
+            int firstComma = line.indexOf(',');
+            int secondComma = firstComma < 0 ? -1 : line.indexOf(',', firstComma + 1);
+            int thirdComma = secondComma < 0 ? -1 : line.indexOf(',', secondComma + 1);
+            if (thirdComma < 0 || line.indexOf(',', thirdComma + 1) >= 0) {
+                return failed("expected 4 fields");
+            }
+
+            try {
+                CustomerName name = new CustomerName(line.substring(0, firstComma).strip(),
+                        line.substring(firstComma + 1, secondComma).strip());
+
+                long dateOfBirth = DateParser.parseEpochDay(line, skipSpaces(line, secondComma + 1, thirdComma),
+                        trimSpaces(line, secondComma + 1, thirdComma));
+
+                String goldClass = line.substring(thirdComma + 1).strip();
+                if (!goldClass.equalsIgnoreCase("true") && !goldClass.equalsIgnoreCase("false")) {
+                    return failed("invalid Gold Class flag: " + goldClass);
+                }
+
+                return new Row(name, dateOfBirth, goldClass.equalsIgnoreCase("true"), null);
+            } catch (ParseException | IllegalArgumentException e) {
+                return failed(e.getMessage());
+            }
+        }
+
+        private static Row failed(String error) {
+            return new Row(null, 0, false, error);
+        }
+
+        private static int skipSpaces(String line, int start, int end) {
+            while (start < end && line.charAt(start) == ' ') {
+                start++;
+            }
+            return start;
+        }
+
+        private static int trimSpaces(String line, int start, int end) {
+            while (end > start && line.charAt(end - 1) == ' ') {
+                end--;
+            }
+            return end;
+        }
+    }
+}
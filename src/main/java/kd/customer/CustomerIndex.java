@@ -0,0 +1,102 @@
+package kd.customer;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import kd.util.ConcurrentLongMap;
+
+/**
+ * The CustomerIndex class is responsible for keeping customer records
+ * searchable by customer number, by initials and birth year, and by Gold Class
+ * status without scanning every record. The index is safe for concurrent use.
+ */
+public final class CustomerIndex {
+
+    private final ConcurrentLongMap<CustomerRecord> byCustomerNumber = new ConcurrentLongMap<CustomerRecord>();
+    private final ConcurrentLongMap<Set<CustomerRecord>> byInitialsAndYear =
+            new ConcurrentLongMap<Set<CustomerRecord>>();
+    private final Set<CustomerRecord> goldClass = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Adds a customer record to all indexes
+     *
+     * @param record The customer record to be indexed
+     *
+     * @return <code>true</code> if the record was not indexed yet
+     *         <code>false</code> if a record with the same customer number was
+     *         already indexed
+     */
+    public boolean add(CustomerRecord record) {
+        long customerNumber = record.getCustomerNumber().longValue();
+        if (byCustomerNumber.putIfAbsent(customerNumber, record) != null) {
+            return false;
+        }
+
+        byInitialsAndYear.computeIfAbsent(CustomerNumber.prefixOf(customerNumber),
+                k -> ConcurrentHashMap.<CustomerRecord>newKeySet()).add(record);
+
+        if (record.isGoldClass()) {
+            goldClass.add(record);
+        }
+        return true;
+    }
+
+    /**
+     * @param customerNumber The customer number to look up
+     *
+     * @return the customer record with the specified customer number, or null if
+     *         there is none
+     */
+    public CustomerRecord get(String customerNumber) {
+        long code = CustomerNumber.parse(customerNumber);
+        return code == CustomerNumber.INVALID ? null : byCustomerNumber.get(code);
+    }
+
+    /**
+     * @param customerNumber The code of the customer number to look up, see
+     *                       {@link CustomerNumber#longValue()}
+     *
+     * @return the customer record with the specified customer number, or null if
+     *         there is none
+     */
+    public CustomerRecord get(long customerNumber) {
+        return byCustomerNumber.get(customerNumber);
+    }
+
+    /**
+     * Returns the customer records sharing the specified initials and birth year,
+     * for example "JD" and 1993 for every customer number starting with
+     * "JD-1993-"
+     *
+     * @param initials  The customer's first and last name initials
+     * @param birthYear The customer's year of birth
+     *
+     * @return an unmodifiable set of matching customer records
+     */
+    public Set<CustomerRecord> getByInitialsAndYear(String initials, int birthYear) {
+        if (initials.length() != 2) {
+            return Collections.emptySet();
+        }
+        Set<CustomerRecord> records = byInitialsAndYear
+                .get(CustomerNumber.prefixOf(initials.charAt(0), initials.charAt(1), birthYear));
+        if (records == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(records);
+    }
+
+    /**
+     * @return an unmodifiable set of all Gold Class customer records
+     */
+    public Set<CustomerRecord> getGoldClass() {
+        return Collections.unmodifiableSet(goldClass);
+    }
+
+    /**
+     * @return the number of indexed customer records
+     */
+    public int size() {
+        return byCustomerNumber.size();
+    }
+}
@@ -2,22 +2,49 @@ package kd.customer;
 
 import java.util.Calendar;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import kd.util.ConcurrentLongMap;
+
+/**
+ * The CustomerNumber class is responsible for unique customer numbers of the
+ * form "JD-1993-2": the customer's initials, a year and a serial number.
+ *
+ * Every customer number is also encoded in a single long, so customer numbers
+ * can key maps of primitive longs. From the most significant bit down the code
+ * holds the first initial (16 bits), the second initial (16 bits), the year
+ * (12 bits, 0 to 4095) and the serial number (20 bits, 1 to 1048574). Parsing
+ * and formatting convert between the two forms without intermediate objects.
+ */
 public final class CustomerNumber {
 
-    private static final Map<String, CustomerNumber> CUSTOMER_NUMBERS = new HashMap<String, CustomerNumber>();
+    /**
+     * The code returned for a string that is not a valid customer number
+     */
+    public static final long INVALID = -1L;
+
+    private static final int SERIAL_BITS = 20;
+    private static final int YEAR_BITS = 12;
+    private static final int INITIAL_BITS = 16;
+    private static final long MAX_SERIAL = (1L << SERIAL_BITS) - 2;
+    private static final int MAX_YEAR = (1 << YEAR_BITS) - 1;
+
+    private static final ConcurrentLongMap<CustomerNumber> CUSTOMER_NUMBERS = new ConcurrentLongMap<CustomerNumber>();
+    private static final ConcurrentLongMap<AtomicInteger> SERIAL_NUMBERS = new ConcurrentLongMap<AtomicInteger>();
+    private final long code;
     private final String strRep;
 
-    private CustomerNumber(String strRep) {
-        this.strRep = strRep;
+    private CustomerNumber(long code) {
+        this.code = code;
+        this.strRep = format(code);
     }
 
     /**
      * Return a CustomerNumber object of the customer number consisting of the
      * customer's initials, the year the record was issued and an arbitrary serial
-     * number which guarantees uniqueness.
+     * number which guarantees uniqueness. Serial numbers are handed out by one
+     * atomic counter per initials and year, so numbers can be generated
+     * concurrently.
      *
      * @param name            The customer name
      * @param recordIssueDate The issue date of the record
@@ -34,31 +61,180 @@ public final class CustomerNumber {
         if (recordIssueDate == null)
             throw new IllegalArgumentException("Empty record issue date");
 
-        String firstNameInitial = name.getFirstName().substring(0, 1);
-        String lastNameInitial = name.getLastName().substring(0, 1);
         Calendar calendar = Calendar.getInstance();
         calendar.setTime(recordIssueDate);
-        int recordIssueYear = calendar.get(Calendar.YEAR);
+        return getInstance(name, calendar.get(Calendar.YEAR));
+    }
 
-        String part1 = firstNameInitial + lastNameInitial + "-" + recordIssueYear + "-";
-        int part2 = 1;
+    /**
+     * Return a CustomerNumber object of the customer number consisting of the
+     * customer's initials, the specified year and an arbitrary serial number which
+     * guarantees uniqueness.
+     *
+     * @param name            The customer name
+     * @param recordIssueYear The year to include in the customer number
+     * 
+     * @return a unique customer number
+     * @throws IllegalArgumentException if name is null or the year is not between
+     *                                  0 and 4095
+     * @throws IllegalStateException    if all serial numbers of the initials and
+     *                                  year have been handed out
+     */
+    public static CustomerNumber getInstance(CustomerName name, int recordIssueYear) {
 
-        CustomerNumber n = null;
+        if (name == null)
+            throw new IllegalArgumentException("Empty customer name");
 
-        boolean newCNCreated = false;
+        char firstNameInitial = name.getFirstName().charAt(0);
+        char lastNameInitial = name.getLastName().charAt(0);
+        if (recordIssueYear < 0 || recordIssueYear > MAX_YEAR) {
+            throw new IllegalArgumentException("Invalid year: " + recordIssueYear);
+        }
 
-        while (!newCNCreated) {
-            n = CUSTOMER_NUMBERS.get(part1 + part2);
-            if (n == null) {
-                n = new CustomerNumber(part1 + part2); // unique instance
-                CUSTOMER_NUMBERS.put(part1 + part2, n); // add instance to HashMap
-                newCNCreated = true; // stop the while loop
-            }
-            part2++;
+        long prefix = prefixOf(firstNameInitial, lastNameInitial, recordIssueYear);
+        int serialNumber = SERIAL_NUMBERS.computeIfAbsent(prefix, k -> new AtomicInteger()).incrementAndGet();
+        if (serialNumber > MAX_SERIAL) {
+            throw new IllegalStateException("Serial numbers exhausted for " + format(prefix << SERIAL_BITS));
         }
+
+        CustomerNumber n = new CustomerNumber((prefix << SERIAL_BITS) | serialNumber); // unique instance
+        CUSTOMER_NUMBERS.put(n.code, n); // add instance to registry
         return n;
     }
 
+    /**
+     * Return the CustomerNumber object for a previously issued customer number,
+     * for example when restoring customer records. Numbers generated afterwards
+     * by {@link #getInstance(CustomerName, Date)} never repeat it.
+     *
+     * @param customerNumber The string representation of the customer number
+     * 
+     * @return the customer number
+     * @throws NullPointerException     if customerNumber is null
+     * @throws IllegalArgumentException if customerNumber is not a valid customer
+     *                                  number
+     */
+    public static CustomerNumber valueOf(String customerNumber) {
+        long code = parse(customerNumber);
+        if (code == INVALID) {
+            throw new IllegalArgumentException("Invalid customer number: " + customerNumber);
+        }
+
+        SERIAL_NUMBERS.computeIfAbsent(code >>> SERIAL_BITS, k -> new AtomicInteger())
+                .accumulateAndGet(serialOf(code), Math::max);
+
+        return CUSTOMER_NUMBERS.computeIfAbsent(code, CustomerNumber::new);
+    }
+
+    /**
+     * Encodes a customer number in a long without allocating
+     *
+     * @param customerNumber The string representation of a customer number
+     * 
+     * @return the code of the customer number, or {@link #INVALID} if the string
+     *         is not a customer number that can be encoded
+     */
+    public static long parse(CharSequence customerNumber) {
+        int length = customerNumber.length();
+        if (length < 6 || customerNumber.charAt(2) != '-') {
+            return INVALID;
+        }
+
+        int i = 3;
+        long year = 0;
+        int digits = 0;
+        char c;
+        while (i < length && (c = customerNumber.charAt(i)) != '-') {
+            if (c < '0' || c > '9'
+                    || (digits == 0 && c == '0' && (i + 1 >= length || customerNumber.charAt(i + 1) != '-'))
+                    || ++digits > 4) {
+                return INVALID;
+            }
+            year = year * 10 + (c - '0');
+            i++;
+        }
+        if (digits == 0 || i == length || year > MAX_YEAR) {
+            return INVALID;
+        }
+
+        i++;
+        long serial = 0;
+        digits = 0;
+        while (i < length) {
+            c = customerNumber.charAt(i++);
+            if (c < '0' || c > '9' || (digits == 0 && c == '0') || ++digits > 7) {
+                return INVALID;
+            }
+            serial = serial * 10 + (c - '0');
+        }
+        if (serial == 0 || serial > MAX_SERIAL) {
+            return INVALID;
+        }
+
+        return (prefixOf(customerNumber.charAt(0), customerNumber.charAt(1), (int) year) << SERIAL_BITS) | serial;
+    }
+
+    /**
+     * Decodes a customer number
+     *
+     * @param code The code of a customer number, see {@link #parse(CharSequence)}
+     * 
+     * @return the string representation of the customer number
+     */
+    public static String format(long code) {
+        StringBuilder sb = new StringBuilder(16)
+                .append((char) (code >>> (SERIAL_BITS + YEAR_BITS + INITIAL_BITS)))
+                .append((char) (code >>> (SERIAL_BITS + YEAR_BITS)))
+                .append('-')
+                .append((code >>> SERIAL_BITS) & MAX_YEAR)
+                .append('-');
+        long serial = serialOf(code);
+        if (serial != 0) {
+            sb.append(serial);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the customer number encoded in a long
+     */
+    public long longValue() {
+        return code;
+    }
+
+    /**
+     * Returns the code shared by all customer numbers with the specified initials
+     * and year, i.e. a customer number code without its serial number
+     *
+     * @param firstInitial The first initial
+     * @param lastInitial  The last initial
+     * @param year         The year
+     * 
+     * @return the code of the initials and year, or {@link #INVALID} if the year
+     *         is not between 0 and 4095
+     */
+    public static long prefixOf(char firstInitial, char lastInitial, int year) {
+        if (year < 0 || year > MAX_YEAR) {
+            return INVALID;
+        }
+        return ((long) firstInitial << (YEAR_BITS + INITIAL_BITS)) | ((long) lastInitial << YEAR_BITS)
+                | year;
+    }
+
+    /**
+     * @param code The code of a customer number
+     * 
+     * @return the code of its initials and year, see
+     *         {@link #prefixOf(char, char, int)}
+     */
+    public static long prefixOf(long code) {
+        return code >>> SERIAL_BITS;
+    }
+
+    private static int serialOf(long code) {
+        return (int) (code & ((1L << SERIAL_BITS) - 1));
+    }
+
     /**
      * @see java.lang.Object#equals(java.lang.Object)
      */
@@ -72,7 +248,7 @@ public final class CustomerNumber {
 
         final CustomerNumber customerNumber = (CustomerNumber) obj;
 
-        return strRep.equals(customerNumber.strRep);
+        return code == customerNumber.code;
     }
 
     /**
@@ -81,7 +257,7 @@ public final class CustomerNumber {
     @Override
     public int hashCode() {
         int hc = 17;
-        return 37 * hc + strRep.hashCode();
+        return 37 * hc + Long.hashCode(code);
     }
 
     /**
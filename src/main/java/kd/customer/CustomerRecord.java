@@ -1,17 +1,16 @@
 package kd.customer;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.time.Period;
-import java.time.ZoneId;
-import java.util.Calendar;
 import java.util.Date;
 
+import kd.bike.BikeType;
+
 public final class CustomerRecord implements Customer {
 
     private final CustomerName customerName;
-    private final Date dateOfBirth;
+    private final long dateOfBirthEpochDay;
     private final CustomerNumber customerNumber;
     private final Date issueDate;
     private boolean goldClass;
@@ -42,35 +41,109 @@ public final class CustomerRecord implements Customer {
 
         this.customerName = new CustomerName(firstName, lastName);
 
-        this.dateOfBirth = new SimpleDateFormat("dd/MM/yyyy").parse(dateOfBirth);
+        this.dateOfBirthEpochDay = DateParser.parseEpochDay(dateOfBirth);
+
+        this.customerNumber = CustomerNumber.getInstance(customerName,
+                DateParser.yearOfEpochDay(dateOfBirthEpochDay));
+
+        this.issueDate = new Date();
+
+        this.goldClass = goldClass;
+    }
+
+    /**
+     * Restore a customer record with a previously issued customer number and
+     * record issue date
+     *
+     * @param name           The customer's name
+     * @param dateOfBirth    The customer's date of birth
+     * @param customerNumber The customer's number
+     * @param issueDate      The date the record was issued
+     * @param goldClass      Whether the customer is Gold Class or not
+     * 
+     * @throws IllegalArgumentException if any argument is null
+     */
+    public CustomerRecord(CustomerName name, Date dateOfBirth, CustomerNumber customerNumber, Date issueDate,
+            boolean goldClass) {
 
-        this.customerNumber = CustomerNumber.getInstance(new CustomerName(firstName, lastName),
-                new SimpleDateFormat("dd/MM/yyyy").parse(dateOfBirth));
+        if (name == null || dateOfBirth == null || customerNumber == null || issueDate == null) {
+            throw new IllegalArgumentException("Customer record fields cannot be null");
+        }
 
-        this.issueDate = Calendar.getInstance().getTime();
+        this.customerName = name;
+        this.dateOfBirthEpochDay = Today.epochDayOf(dateOfBirth);
+        this.customerNumber = customerNumber;
+        this.issueDate = (Date) issueDate.clone();
+        this.goldClass = goldClass;
+    }
 
+    /*
+     * Create a customer record from already parsed fields. The issue date is not
+     * copied, so it may be shared by records created in bulk.
+     */
+    CustomerRecord(CustomerName name, long dateOfBirthEpochDay, CustomerNumber customerNumber, Date issueDate,
+            boolean goldClass) {
+        this.customerName = name;
+        this.dateOfBirthEpochDay = dateOfBirthEpochDay;
+        this.customerNumber = customerNumber;
+        this.issueDate = issueDate;
         this.goldClass = goldClass;
     }
 
     /**
-     * @return a CustomerName object with the full name of the customer
+     * @return a CustomerName object with the full name of the customer; names
+     *         cannot be changed, so the record's own instance is returned
      */
     public CustomerName getName() {
-        return new CustomerName(customerName.getFirstName(), customerName.getLastName());
+        return customerName;
+    }
+
+    /**
+     * @return the date of birth of the customer
+     */
+    public Date getDateOfBirth() {
+        return Today.toDate(dateOfBirthEpochDay);
     }
 
     /**
      * @return the age of the customer
      */
     public int getAge() {
-        int age = 0;
-        LocalDate today = LocalDate.now();
-        LocalDate dob = LocalDate.ofInstant(dateOfBirth.toInstant(), ZoneId.systemDefault());
+        LocalDate today = LocalDate.ofEpochDay(Today.epochDay());
+        LocalDate dob = LocalDate.ofEpochDay(dateOfBirthEpochDay);
+        return Period.between(dob, today).getYears();
+    }
 
-        if ((dob != null) && (today != null)) {
-            age = Period.between(dob, today).getYears();
-        }
-        return age;
+    /**
+     * Returns whether the customer is eligible to rent a bike of the specified
+     * type. All customers can rent road bikes, electric bikes can only be rented
+     * by Gold Class customers of at least 21 years old.
+     *
+     * @param bikeType The name of the bike type
+     * @param today    Today's date as an epoch day, see {@link Today#epochDay()}
+     * 
+     * @return <code>true</code> if the customer can rent the bike type
+     *         <code>false</code> if the customer cannot rent the bike type or the
+     *         bike type is unknown
+     */
+    public boolean isEligibleFor(String bikeType, long today) {
+        BikeType type = BikeType.of(bikeType);
+        return type != null && isEligibleFor(type, today);
+    }
+
+    /**
+     * Returns whether the customer is eligible to rent a bike of the specified
+     * type, by the type's minimum age and Gold Class rule
+     *
+     * @param bikeType The type of bike
+     * @param today    Today's date as an epoch day, see {@link Today#epochDay()}
+     * 
+     * @return <code>true</code> if the customer can rent the bike type
+     *         <code>false</code> if the customer cannot rent the bike type
+     */
+    public boolean isEligibleFor(BikeType bikeType, long today) {
+        return (goldClass || !bikeType.isGoldClassOnly())
+                && dateOfBirthEpochDay <= bikeType.getLatestDateOfBirth(today);
     }
 
     /**
@@ -104,7 +177,7 @@ public final class CustomerRecord implements Customer {
     public String toString() {
         return "Customer Record {\n\t" +
                 "customer name: " + customerName + "\n\t" +
-                "date of birth: " + dateOfBirth + "\n\t" +
+                "date of birth: " + getDateOfBirth() + "\n\t" +
                 "customer number: " + customerNumber + "\n\t" +
                 "record issue date: " + issueDate + "\n\t" +
                 "gold class: " + goldClass + "\n" +
@@ -0,0 +1,135 @@
+package kd.customer;
+
+import java.text.ParseException;
+
+/**
+ * The DateParser class is responsible for parsing dates in the
+ * <code>dd/MM/yyyy</code> format used for dates of birth straight into epoch
+ * days (days since 1 January 1970), without creating a date format or any
+ * intermediate objects. Day and month may have one or two digits.
+ */
+public final class DateParser {
+
+    private DateParser() {
+    }
+
+    /**
+     * Parses a date in the <code>dd/MM/yyyy</code> format
+     *
+     * @param text The date to parse
+     *
+     * @return the date as an epoch day
+     * @throws ParseException if the text is not a valid date
+     */
+    public static long parseEpochDay(CharSequence text) throws ParseException {
+        return parseEpochDay(text, 0, text.length());
+    }
+
+    /**
+     * Parses a date in the <code>dd/MM/yyyy</code> format from a part of a
+     * character sequence, for example a field of a CSV line
+     *
+     * @param text  The text holding the date
+     * @param start The index of the first character of the date
+     * @param end   The index after the last character of the date
+     *
+     * @return the date as an epoch day
+     * @throws ParseException if the text is not a valid date, with the error
+     *                        offset pointing at the offending character
+     */
+    public static long parseEpochDay(CharSequence text, int start, int end) throws ParseException {
+        int i = start;
+
+        int day = 0;
+        int digits = 0;
+        for (; i < end && text.charAt(i) != '/'; i++, digits++) {
+            day = day * 10 + digit(text, i);
+        }
+        if (digits < 1 || digits > 2 || i == end) {
+            throw invalid(text, start, end, i);
+        }
+        i++;
+
+        int month = 0;
+        digits = 0;
+        for (; i < end && text.charAt(i) != '/'; i++, digits++) {
+            month = month * 10 + digit(text, i);
+        }
+        if (digits < 1 || digits > 2 || i == end) {
+            throw invalid(text, start, end, i);
+        }
+        i++;
+
+        int year = 0;
+        digits = 0;
+        for (; i < end; i++, digits++) {
+            year = year * 10 + digit(text, i);
+        }
+        if (digits != 4) {
+            throw invalid(text, start, end, i);
+        }
+
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            throw invalid(text, start, end, start);
+        }
+
+        return toEpochDay(year, month, day);
+    }
+
+    /**
+     * @param epochDay A date as an epoch day
+     *
+     * @return the year of the date
+     */
+    public static int yearOfEpochDay(long epochDay) {
+        /* Inverse of toEpochDay, see there */
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        long year = yearOfEra + era * 400;
+        return (int) (monthIndex >= 10 ? year + 1 : year);
+    }
+
+    /*
+     * Days since 1 January 1970 for a proleptic Gregorian date, counting years
+     * from March so that the leap day is the last day of the year
+     */
+    private static long toEpochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static int digit(CharSequence text, int i) throws ParseException {
+        char c = text.charAt(i);
+        if (c < '0' || c > '9') {
+            throw new ParseException("Invalid digit in date: " + c, i);
+        }
+        return c - '0';
+    }
+
+    private static ParseException invalid(CharSequence text, int start, int end, int offset) {
+        return new ParseException("Unparseable date: \"" + text.subSequence(start, end) + "\"", offset);
+    }
+}
@@ -0,0 +1,207 @@
+package kd.customer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The NameIndex class is responsible for finding customer records by name:
+ * by the beginning of the first or last name, and by names within a number of
+ * typing errors (edit distance) of a given name. Names are compared ignoring
+ * case.
+ *
+ * First and last names share one sorted index, each name mapping to the
+ * records carrying it. A prefix query reads one contiguous range of the index.
+ * A fuzzy query walks the index in order like a trie: the edit distance rows
+ * of the prefix shared with the previous name are reused, and once every
+ * entry of a row exceeds the maximum distance all names with that prefix are
+ * skipped. Records can be added while queries run.
+ */
+public final class NameIndex {
+
+    private final NavigableMap<String, Set<CustomerRecord>> names =
+            new ConcurrentSkipListMap<String, Set<CustomerRecord>>();
+
+    /**
+     * Adds a customer record under its first and last name
+     *
+     * @param record The customer record to be indexed
+     */
+    public void add(CustomerRecord record) {
+        CustomerName name = record.getName();
+        recordsOf(normalize(name.getFirstName())).add(record);
+        recordsOf(normalize(name.getLastName())).add(record);
+    }
+
+    /**
+     * Finds customer records by the beginning of their names. A query of two
+     * words matches the beginning of both the first and last name, in either
+     * order, e.g. "jan do" finds Jane Doe.
+     *
+     * @param query The beginning of a first or last name, or of both
+     * @param limit The maximum number of records to return
+     *
+     * @return the matching customer records, ordered by the matching name
+     */
+    public List<CustomerRecord> findByPrefix(String query, int limit) {
+        String[] words = normalize(query).split("\\s+");
+        String prefix = words[0];
+        String other = words.length > 1 ? words[1] : null;
+
+        Set<CustomerRecord> found = new LinkedHashSet<CustomerRecord>();
+        for (Set<CustomerRecord> records : names.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values()) {
+            for (CustomerRecord record : records) {
+                if (other == null || matchesBoth(record, prefix, other)) {
+                    found.add(record);
+                    if (found.size() >= limit) {
+                        return new ArrayList<CustomerRecord>(found);
+                    }
+                }
+            }
+        }
+        return new ArrayList<CustomerRecord>(found);
+    }
+
+    /**
+     * Finds customer records whose first or last name is within a maximum edit
+     * distance of a name, counting each inserted, deleted or substituted
+     * character as one edit
+     *
+     * @param name     The name as typed
+     * @param maxEdits The maximum edit distance, e.g. 1 or 2
+     * @param limit    The maximum number of records to return
+     *
+     * @return the matching customer records, closest names first
+     *
+     * @throws IllegalArgumentException if maxEdits is negative
+     */
+    public List<CustomerRecord> findSimilar(String name, int maxEdits, int limit) {
+        if (maxEdits < 0) {
+            throw new IllegalArgumentException("Invalid edit distance: " + maxEdits);
+        }
+
+        String query = normalize(name);
+        int n = query.length();
+
+        /* rows[i] holds the edit distances between the first i characters of the current name and query prefixes */
+        int[][] rows = new int[n + maxEdits + 2][n + 1];
+        for (int j = 0; j <= n; j++) {
+            rows[0][j] = j;
+        }
+
+        List<List<String>> byDistance = new ArrayList<List<String>>();
+        for (int d = 0; d <= maxEdits; d++) {
+            byDistance.add(new ArrayList<String>());
+        }
+
+        String previous = "";
+        int valid = 0; // number of rows valid for the previous name
+        Iterator<String> it = names.keySet().iterator();
+        while (it.hasNext()) {
+            String key = it.next();
+
+            int depth = Math.min(valid, commonPrefixLength(previous, key));
+            int pruned = -1;
+            for (int i = depth + 1; i <= key.length(); i++) {
+                if (i >= rows.length) {
+                    pruned = i - 1;
+                    break;
+                }
+                if (nextRow(rows[i - 1], rows[i], key.charAt(i - 1), query) > maxEdits) {
+                    pruned = i;
+                    break;
+                }
+            }
+
+            if (pruned < 0) {
+                int distance = rows[key.length()][n];
+                if (distance <= maxEdits) {
+                    byDistance.get(distance).add(key);
+                }
+                previous = key;
+                valid = key.length();
+            } else {
+                /* No name starting with this prefix can be close enough */
+                String prefix = key.substring(0, pruned);
+                previous = prefix;
+                valid = pruned - 1;
+                it = names.tailMap(prefix + Character.MAX_VALUE, false).keySet().iterator();
+            }
+        }
+
+        Set<CustomerRecord> found = new LinkedHashSet<CustomerRecord>();
+        for (List<String> keys : byDistance) {
+            for (String key : keys) {
+                for (CustomerRecord record : names.getOrDefault(key, Collections.<CustomerRecord>emptySet())) {
+                    found.add(record);
+                    if (found.size() >= limit) {
+                        return new ArrayList<CustomerRecord>(found);
+                    }
+                }
+            }
+        }
+        return new ArrayList<CustomerRecord>(found);
+    }
+
+    /**
+     * @return the number of distinct first and last names
+     */
+    public int size() {
+        return names.size();
+    }
+
+    private Set<CustomerRecord> recordsOf(String name) {
+        Set<CustomerRecord> records = names.get(name);
+        if (records == null) {
+            Set<CustomerRecord> created = ConcurrentHashMap.newKeySet();
+            records = names.putIfAbsent(name, created);
+            if (records == null) {
+                records = created;
+            }
+        }
+        return records;
+    }
+
+    private static boolean matchesBoth(CustomerRecord record, String prefix, String other) {
+        CustomerName name = record.getName();
+        String first = normalize(name.getFirstName());
+        String last = normalize(name.getLastName());
+        return (first.startsWith(prefix) && last.startsWith(other))
+                || (last.startsWith(prefix) && first.startsWith(other));
+    }
+
+    /*
+     * Fill the next row of the edit distance matrix and return its minimum
+     */
+    private static int nextRow(int[] previous, int[] row, char c, String query) {
+        row[0] = previous[0] + 1;
+        int minimum = row[0];
+        for (int j = 1; j < row.length; j++) {
+            int substitute = previous[j - 1] + (query.charAt(j - 1) == c ? 0 : 1);
+            row[j] = Math.min(substitute, Math.min(previous[j], row[j - 1]) + 1);
+            minimum = Math.min(minimum, row[j]);
+        }
+        return minimum;
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,72 @@
+package kd.customer;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * The Today class is responsible for telling the current date as an epoch day
+ * (days since 1 January 1970) in the system time zone. The date is computed
+ * once per day and cached, so asking for it is a clock read and a comparison.
+ */
+public final class Today {
+
+    private static volatile Day current = new Day(ZoneId.systemDefault(), System.currentTimeMillis());
+
+    private Today() {
+    }
+
+    /**
+     * @return today's date as an epoch day
+     */
+    public static long epochDay() {
+        Day day = current;
+        long now = System.currentTimeMillis();
+        if (now >= day.nextMidnight || now < day.midnight) {
+            day = new Day(ZoneId.systemDefault(), now);
+            current = day;
+        }
+        return day.epochDay;
+    }
+
+    /**
+     * Converts a date to an epoch day in the system time zone
+     *
+     * @param date The date to convert
+     *
+     * @return the epoch day of the date
+     */
+    public static long epochDayOf(Date date) {
+        return LocalDate.ofInstant(date.toInstant(), ZoneId.systemDefault()).toEpochDay();
+    }
+
+    /**
+     * Converts an epoch day to a date at the start of that day in the system time
+     * zone
+     *
+     * @param epochDay The epoch day to convert
+     *
+     * @return the date
+     */
+    public static Date toDate(long epochDay) {
+        return Date.from(LocalDate.ofEpochDay(epochDay).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    /*
+     * A day and the instants it starts and ends at
+     */
+    private static final class Day {
+
+        final long epochDay;
+        final long midnight;
+        final long nextMidnight;
+
+        Day(ZoneId zone, long now) {
+            LocalDate date = LocalDate.ofInstant(Instant.ofEpochMilli(now), zone);
+            this.epochDay = date.toEpochDay();
+            this.midnight = date.atStartOfDay(zone).toInstant().toEpochMilli();
+            this.nextMidnight = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package kd.depot;
+
+import java.util.Set;
+
+import kd.RentalEngine;
+import kd.bike.Bike;
+import kd.bike.FleetStatistics;
+
+/**
+ * The Depot class is responsible for the bikes kept at one depot. Each depot
+ * runs a {@link RentalEngine} of its own, with its own pool of free bikes, fleet
+ * statistics, rental contracts, waitlists and billing. Bikes issued at a depot
+ * may be returned to another one, in which case they move to the depot they
+ * were returned to. A depot is safe for concurrent use.
+ */
+public final class Depot {
+
+    private final String id;
+    private final RentalEngine engine = new RentalEngine();
+
+    /**
+     * Create an empty depot
+     *
+     * @param id The depot's unique id
+     *
+     * @throws IllegalArgumentException if id is empty
+     */
+    Depot(String id) {
+        if (id == null || id.length() == 0) {
+            throw new IllegalArgumentException("Empty depot id");
+        }
+        this.id = id;
+    }
+
+    /**
+     * @return the depot's unique id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the engine managing the rentals of the depot
+     */
+    public RentalEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @return an immutable snapshot of the bikes kept at the depot, including
+     *         those rented out from it
+     */
+    public Set<Bike> getBikes() {
+        return engine.getAllBikes();
+    }
+
+    /**
+     * @param bikeType The type of bike to count
+     *
+     * @return the number of bikes of the specified type available to rent
+     */
+    public int getNumOfAvailableBikes(String bikeType) {
+        return engine.getNumOfAvailableBikes(bikeType);
+    }
+
+    /**
+     * @return the per bike type counts of the depot's bikes
+     */
+    public FleetStatistics getStatistics() {
+        return engine.getFleetStatistics();
+    }
+
+    /**
+     * @return a string representation of the depot containing its id and number
+     *         of bikes
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "Depot {\n\t" +
+                "id: " + id + "\n\t" +
+                "bikes: " + getBikes().size() + "\n" +
+                '}';
+    }
+}
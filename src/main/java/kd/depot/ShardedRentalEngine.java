@@ -0,0 +1,380 @@
+package kd.depot;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import kd.RentalEngine;
+import kd.bike.Bike;
+import kd.customer.CustomerIndex;
+import kd.customer.CustomerNumber;
+import kd.customer.CustomerRecord;
+import kd.rental.RentalContract;
+import kd.rental.RentalResult;
+import kd.rental.RentalStatus;
+import kd.rental.Reservation;
+import kd.util.ConcurrentLongMap;
+
+/**
+ * The ShardedRentalEngine class is responsible for managing the bike rentals
+ * of many depots. Unlike the RentalManager, which runs a single fleet behind
+ * static methods, any number of engines can be created, e.g. one per region or
+ * several in one process for testing.
+ *
+ * Bikes are partitioned by depot, each depot running a {@link RentalEngine} of
+ * its own, so issuing, returning, waitlists, billing and events work the same
+ * at every depot as they do in the RentalManager. Customer records are
+ * partitioned over a fixed number of customer shards by the hash of the
+ * customer number, together with the depot each customer rents from, so a
+ * customer holds one rental across all depots and every operation on a
+ * customer touches one shard and one depot only. Queries over all depots fan
+ * out to the depots in parallel and merge their answers.
+ *
+ * Bikes may be returned to another depot than the one they were issued at, in
+ * which case they move to that depot. The engine is safe for concurrent use.
+ */
+public final class ShardedRentalEngine {
+
+    private final Map<String, Depot> depots = new ConcurrentHashMap<String, Depot>();
+    private final Map<Bike, Depot> locations = new ConcurrentHashMap<Bike, Depot>();
+    private final CustomerShard[] shards;
+
+    /**
+     * Create an engine without depots
+     *
+     * @param customerShards The number of partitions of the customer records and
+     *                       rentals
+     *
+     * @throws IllegalArgumentException if customerShards is not positive
+     */
+    public ShardedRentalEngine(int customerShards) {
+        if (customerShards <= 0) {
+            throw new IllegalArgumentException("Number of customer shards must be positive");
+        }
+
+        shards = new CustomerShard[customerShards];
+        for (int i = 0; i < customerShards; i++) {
+            shards[i] = new CustomerShard();
+        }
+    }
+
+    /**
+     * Adds a depot to the engine
+     *
+     * @param depotId The depot's unique id
+     *
+     * @return the new depot, or the existing depot with the same id
+     *
+     * @throws IllegalArgumentException if depotId is empty
+     */
+    public Depot addDepot(String depotId) {
+        Depot depot = depots.get(depotId);
+        return depot != null ? depot : depots.computeIfAbsent(depotId, Depot::new);
+    }
+
+    /**
+     * @param depotId The depot's id
+     *
+     * @return the depot with the specified id, or null if there is none
+     */
+    public Depot getDepot(String depotId) {
+        return depots.get(depotId);
+    }
+
+    /**
+     * @return an unmodifiable view of all depots
+     */
+    public Collection<Depot> getDepots() {
+        return Collections.unmodifiableCollection(depots.values());
+    }
+
+    /**
+     * @return the number of partitions of the customer records and rentals
+     */
+    public int getNumOfCustomerShards() {
+        return shards.length;
+    }
+
+    /**
+     * Adds a bike to a depot. Bikes already kept at a depot are ignored.
+     *
+     * @param depotId The id of the depot keeping the bike
+     * @param bike    The bike to be added
+     *
+     * @throws IllegalArgumentException if there is no depot with the specified id
+     */
+    public void addBike(String depotId, Bike bike) {
+        Depot depot = depotOf(depotId);
+        if (locations.putIfAbsent(bike, depot) == null) {
+            depot.getEngine().addBike(bike);
+        }
+    }
+
+    /**
+     * Adds a customer record to the shard of its customer number
+     *
+     * @param record The customer record to be added
+     */
+    public void addCustomerRecord(CustomerRecord record) {
+        shardOf(record.getCustomerNumber().longValue()).customers.add(record);
+    }
+
+    /**
+     * @param customerNumber The number of the customer to get the record for
+     *
+     * @return the customer record of the specified customer, or null if there is
+     *         none
+     */
+    public CustomerRecord getCustomerRecord(String customerNumber) {
+        long code = CustomerNumber.parse(customerNumber);
+        return code == CustomerNumber.INVALID ? null : shardOf(code).customers.get(code);
+    }
+
+    /**
+     * @param customerNumber The number of the customer that has rented the bike
+     *
+     * @return the bike rented by the specified customer, or null if there is none
+     */
+    public Bike getBike(String customerNumber) {
+        Depot depot = depotOfCustomer(customerNumber);
+        return depot == null ? null : depot.getEngine().getBike(customerNumber);
+    }
+
+    /**
+     * @param customerNumber The number of the customer
+     *
+     * @return the depot the specified customer rents a bike from or waits for
+     *         one at, or null if there is none
+     */
+    public Depot getDepotOfCustomer(String customerNumber) {
+        return depotOfCustomer(customerNumber);
+    }
+
+    /**
+     * Returns the rental contracts of all depots that were active at any time
+     * from one point in time up to, but not including, another, asking the
+     * depots in parallel
+     *
+     * @param from The start of the time range
+     * @param to   The end of the time range
+     *
+     * @return the contracts overlapping the time range, ordered by start time
+     */
+    public List<RentalContract> getContracts(Instant from, Instant to) {
+        return depots.values().parallelStream().flatMap(d -> d.getEngine().getContracts(from, to).stream())
+                .sorted(Comparator.comparingLong(RentalContract::getStartMillis)).collect(Collectors.toList());
+    }
+
+    /**
+     * @param bike A bike of any depot
+     *
+     * @return the depot keeping the bike, or null if it is not kept at any depot
+     */
+    public Depot getDepotOf(Bike bike) {
+        return locations.get(bike);
+    }
+
+    /**
+     * Counts the bikes of a type available to rent at all depots, asking the
+     * depots in parallel
+     *
+     * @param typeOfBike The type of bike to check availability for
+     *
+     * @return the number of bikes of the specified type available to rent
+     */
+    public int getNumOfAvailableBikes(String typeOfBike) {
+        return depots.values().parallelStream().mapToInt(d -> d.getNumOfAvailableBikes(typeOfBike)).sum();
+    }
+
+    /**
+     * Counts the bikes of a type available to rent per depot, asking the depots
+     * in parallel
+     *
+     * @param typeOfBike The type of bike to check availability for
+     *
+     * @return the number of bikes of the specified type available to rent, keyed
+     *         by depot id in ascending order
+     */
+    public Map<String, Integer> getNumOfAvailableBikesByDepot(String typeOfBike) {
+        return depots.values().parallelStream().collect(Collectors.toMap(Depot::getId,
+                d -> d.getNumOfAvailableBikes(typeOfBike), Integer::sum, TreeMap::new));
+    }
+
+    /**
+     * Issues a bike of a given type at a depot to the specified customer. A
+     * customer rents from one depot at a time.
+     *
+     * @param customerNumber The number of the customer to issue the bike to
+     * @param depotId        The id of the depot issuing the bike
+     * @param typeOfBike     The type of bike to be issued
+     *
+     * @return the outcome of the request, with the rental contract if successful
+     *
+     * @throws IllegalArgumentException if there is no depot with the specified id
+     */
+    public RentalResult issueBike(String customerNumber, String depotId, String typeOfBike) {
+        Depot depot = depotOf(depotId);
+        RentalEngine engine = depot.getEngine();
+
+        /* Unknown customers are rejected by the depot */
+        long code = CustomerNumber.parse(customerNumber);
+        CustomerShard shard = code == CustomerNumber.INVALID ? null : shardOf(code);
+        CustomerRecord record = shard == null ? null : shard.customers.get(code);
+        if (record == null) {
+            return engine.issueBike(customerNumber, typeOfBike);
+        }
+
+        if (shard.depots.putIfAbsent(code, depot) != null) {
+            return RentalResult.of(RentalStatus.ALREADY_HAS_BIKE);
+        }
+        engine.addCustomerRecord(record);
+
+        RentalResult result = engine.issueBike(customerNumber, typeOfBike);
+        if (!result.isSuccess()) {
+            shard.depots.remove(code);
+        }
+        return result;
+    }
+
+    /**
+     * Issues a bike of a given type at a depot to the specified customer, or
+     * puts the customer on the depot's waitlist for the bike type if none is
+     * available there. A customer rents from, or waits at, one depot at a time.
+     *
+     * @param customerNumber The number of the customer to issue the bike to
+     * @param depotId        The id of the depot issuing the bike
+     * @param typeOfBike     The type of bike to be issued
+     * @param timeoutMillis  How long the customer is willing to wait, in
+     *                       milliseconds
+     *
+     * @return the reservation, which has already ended if a bike was issued
+     *         straight away or the request was rejected
+     *
+     * @throws IllegalArgumentException if there is no depot with the specified id
+     *                                  or timeoutMillis is not positive
+     */
+    public Reservation reserveBike(String customerNumber, String depotId, String typeOfBike, long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Reservation timeout must be positive");
+        }
+        Depot depot = depotOf(depotId);
+        RentalEngine engine = depot.getEngine();
+
+        long code = CustomerNumber.parse(customerNumber);
+        CustomerShard shard = code == CustomerNumber.INVALID ? null : shardOf(code);
+        CustomerRecord record = shard == null ? null : shard.customers.get(code);
+        if (record == null) {
+            return engine.reserveBike(customerNumber, typeOfBike, timeoutMillis);
+        }
+
+        if (shard.depots.putIfAbsent(code, depot) != null) {
+            return Reservation.ended(customerNumber, typeOfBike, RentalResult.of(RentalStatus.ALREADY_HAS_BIKE));
+        }
+        engine.addCustomerRecord(record);
+
+        /* The customer stays at the depot until the bike is returned, or no bike is issued */
+        Reservation reservation = engine.reserveBike(customerNumber, typeOfBike, timeoutMillis);
+        reservation.getResult().thenAccept(result -> {
+            if (!result.isSuccess()) {
+                shard.depots.remove(code, depot);
+            }
+        });
+        return reservation;
+    }
+
+    /**
+     * Takes the specified customer off the waitlist of the depot the customer
+     * waits at
+     *
+     * @param customerNumber The number of the customer
+     *
+     * @return <code>true</code> if the customer's reservation was cancelled
+     *         <code>false</code> if the customer was not waiting
+     */
+    public boolean cancelReservation(String customerNumber) {
+        Depot depot = depotOfCustomer(customerNumber);
+        return depot != null && depot.getEngine().cancelReservation(customerNumber);
+    }
+
+    /**
+     * Terminates the rental contract of the specified customer, returning the
+     * bike to the depot it was issued at
+     *
+     * @param customerNumber The number of the customer to terminate the rental
+     *                       contract for
+     *
+     * @return the outcome of the request, with the rental contract if successful
+     */
+    public RentalResult terminateRental(String customerNumber) {
+        return terminateRental(customerNumber, null);
+    }
+
+    /**
+     * Terminates the rental contract of the specified customer, returning the
+     * bike to the specified depot. The contract and its charge stay with the
+     * depot the bike was issued at.
+     *
+     * @param customerNumber The number of the customer to terminate the rental
+     *                       contract for
+     * @param depotId        The id of the depot the bike is returned to, or null
+     *                       for the depot it was issued at
+     *
+     * @return the outcome of the request, with the rental contract if successful
+     *
+     * @throws IllegalArgumentException if there is no depot with the specified id
+     */
+    public RentalResult terminateRental(String customerNumber, String depotId) {
+        Depot destination = depotId == null ? null : depotOf(depotId);
+        Depot origin = depotOfCustomer(customerNumber);
+        if (origin == null) {
+            return RentalResult.of(RentalStatus.NO_RENTAL_CONTRACT);
+        }
+        if (destination == null) {
+            destination = origin;
+        }
+
+        RentalResult result = origin.getEngine().terminateRental(customerNumber, destination.getEngine());
+        if (result.isSuccess()) {
+            locations.put(result.getBike(), destination);
+            long code = CustomerNumber.parse(customerNumber);
+            shardOf(code).depots.remove(code, origin);
+        }
+        return result;
+    }
+
+    /*
+     * The depot the customer rents from or waits at, null if none
+     */
+    private Depot depotOfCustomer(String customerNumber) {
+        long code = CustomerNumber.parse(customerNumber);
+        return code == CustomerNumber.INVALID ? null : shardOf(code).depots.get(code);
+    }
+
+    private Depot depotOf(String depotId) {
+        Depot depot = depots.get(depotId);
+        if (depot == null) {
+            throw new IllegalArgumentException("Unknown depot: " + depotId);
+        }
+        return depot;
+    }
+
+    private CustomerShard shardOf(long customerNumber) {
+        return shards[Math.floorMod(Long.hashCode(customerNumber), shards.length)];
+    }
+
+    /*
+     * The customer records of one shard, and the depot each of its customers
+     * rents from or waits at
+     */
+    private static final class CustomerShard {
+
+        final CustomerIndex customers = new CustomerIndex();
+        final ConcurrentLongMap<Depot> depots = new ConcurrentLongMap<Depot>();
+    }
+}
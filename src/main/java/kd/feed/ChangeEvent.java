@@ -0,0 +1,117 @@
+package kd.feed;
+
+import kd.bike.Bike;
+import kd.customer.CustomerNumber;
+import kd.customer.CustomerRecord;
+
+/**
+ * The ChangeEvent class is responsible for describing one change of the rental
+ * state published to the change feed: a bike or customer record added, or a
+ * bike issued or returned.
+ *
+ * Events are slots of the feed's ring buffer that are reused once every
+ * subscriber has consumed them, so an event is only valid during the call
+ * that hands it to a subscriber. Subscribers must copy what they want to keep.
+ */
+public final class ChangeEvent {
+
+    /**
+     * The ChangeEvent.Type enum lists the kinds of change
+     */
+    public enum Type {
+
+        /** A bike was added to the fleet */
+        BIKE_ADDED,
+
+        /** A customer record was added */
+        CUSTOMER_ADDED,
+
+        /** A bike was issued to a customer */
+        BIKE_ISSUED,
+
+        /** A customer returned a bike */
+        BIKE_RETURNED
+    }
+
+    private long sequence;
+    private long timestamp;
+    private Type type;
+    private long customerNumber;
+    private Bike bike;
+    private CustomerRecord customerRecord;
+
+    ChangeEvent() {
+    }
+
+    /*
+     * Fill the slot for a new event
+     */
+    void set(long sequence, long timestamp, Type type, long customerNumber, Bike bike,
+            CustomerRecord customerRecord) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.customerNumber = customerNumber;
+        this.bike = bike;
+        this.customerRecord = customerRecord;
+    }
+
+    /**
+     * @return the position of the event in the feed, starting at 0
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return when the change was made, in epoch milliseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the kind of change
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the code of the customer number the change concerns, see
+     *         {@link CustomerNumber#longValue()}, or
+     *         <code>CustomerNumber.INVALID</code> if the change concerns no
+     *         customer
+     */
+    public long getCustomerNumber() {
+        return customerNumber;
+    }
+
+    /**
+     * @return the bike added, issued or returned, or null for an added customer
+     *         record
+     */
+    public Bike getBike() {
+        return bike;
+    }
+
+    /**
+     * @return the customer record added, or null for other changes
+     */
+    public CustomerRecord getCustomerRecord() {
+        return customerRecord;
+    }
+
+    /**
+     * @return a string representation of the event containing its sequence, type,
+     *         customer number and bike serial number
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + type
+                + (customerNumber == CustomerNumber.INVALID ? "" : " " + CustomerNumber.format(customerNumber))
+                + (bike == null ? "" : " " + bike.getSerialNumber());
+    }
+}
@@ -0,0 +1,279 @@
+package kd.feed;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import kd.bike.Bike;
+import kd.customer.CustomerNumber;
+import kd.customer.CustomerRecord;
+
+/**
+ * The ChangeFeed class is responsible for publishing every change of the rental
+ * state to in-process subscribers, such as billing or dashboards.
+ *
+ * Events are written to a bounded ring buffer of preallocated slots, so
+ * publishing claims a sequence number with one atomic increment, fills a slot
+ * and marks it published, without locks or allocation. Each subscriber
+ * consumes the events in order on a thread of its own, in batches of all
+ * events published since its previous batch.
+ *
+ * The slowest subscriber applies backpressure: a publisher that would
+ * overwrite an event not yet consumed by every subscriber waits until it has
+ * been. Without subscribers events are not retained.
+ */
+public final class ChangeFeed implements AutoCloseable {
+
+    private static final long IDLE_PARK_NANOS = 50_000;
+    private static final long FULL_PARK_NANOS = 1_000;
+
+    private final ChangeEvent[] slots;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private volatile long gatingSequence = -1;
+    private volatile Subscription[] subscriptions = new Subscription[0];
+
+    /**
+     * Create a change feed
+     *
+     * @param capacity The number of events the ring buffer holds, a power of two
+     *
+     * @throws IllegalArgumentException if capacity is not a positive power of two
+     */
+    public ChangeFeed(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+
+        this.slots = new ChangeEvent[capacity];
+        this.published = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new ChangeEvent();
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * Publishes a bike added to the fleet
+     *
+     * @param bike The bike that was added
+     */
+    public void bikeAdded(Bike bike) {
+        publish(ChangeEvent.Type.BIKE_ADDED, CustomerNumber.INVALID, bike, null);
+    }
+
+    /**
+     * Publishes a customer record that was added
+     *
+     * @param record The customer record that was added
+     */
+    public void customerAdded(CustomerRecord record) {
+        publish(ChangeEvent.Type.CUSTOMER_ADDED, record.getCustomerNumber().longValue(), null, record);
+    }
+
+    /**
+     * Publishes a bike issued to a customer
+     *
+     * @param customerNumber The code of the customer's number
+     * @param bike           The bike that was issued
+     */
+    public void bikeIssued(long customerNumber, Bike bike) {
+        publish(ChangeEvent.Type.BIKE_ISSUED, customerNumber, bike, null);
+    }
+
+    /**
+     * Publishes a bike returned by a customer
+     *
+     * @param customerNumber The code of the customer's number
+     * @param bike           The bike that was returned
+     */
+    public void bikeReturned(long customerNumber, Bike bike) {
+        publish(ChangeEvent.Type.BIKE_RETURNED, customerNumber, bike, null);
+    }
+
+    /**
+     * Adds a subscriber receiving the events published from now on
+     *
+     * @param name       The subscriber's name, used for its thread
+     * @param subscriber The subscriber
+     *
+     * @return the subscription, to be closed to unsubscribe
+     */
+    public synchronized Subscription subscribe(String name, ChangeSubscriber subscriber) {
+        Subscription subscription = new Subscription(name, subscriber, cursor.get());
+        Subscription[] current = subscriptions;
+        Subscription[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = subscription;
+        subscriptions = updated;
+        subscription.thread.start();
+        return subscription;
+    }
+
+    /**
+     * @return the sequence number of the last event claimed by a publisher, or -1
+     *         if none was
+     */
+    public long getCursor() {
+        return cursor.get();
+    }
+
+    /**
+     * @return the number of events the ring buffer holds
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Closes all subscriptions after they consumed the events published so far
+     */
+    @Override
+    public void close() {
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+
+    private void publish(ChangeEvent.Type type, long customerNumber, Bike bike, CustomerRecord record) {
+        long sequence = cursor.incrementAndGet();
+
+        /* Wait until every subscriber consumed the event in the slot to be reused */
+        long wrapPoint = sequence - slots.length;
+        if (wrapPoint > gatingSequence) {
+            long minimum;
+            while (wrapPoint > (minimum = minimumSequence(sequence - 1))) {
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+            }
+            gatingSequence = minimum;
+        }
+
+        int slot = (int) sequence & mask;
+        slots[slot].set(sequence, System.currentTimeMillis(), type, customerNumber, bike, record);
+        published.lazySet(slot, sequence);
+    }
+
+    /*
+     * The sequence consumed by the slowest subscriber, or the given default
+     * without subscribers
+     */
+    private long minimumSequence(long defaultSequence) {
+        long minimum = defaultSequence;
+        for (Subscription subscription : subscriptions) {
+            minimum = Math.min(minimum, subscription.sequence.get());
+        }
+        return minimum;
+    }
+
+    /*
+     * The highest sequence from the given one on up to which all events are
+     * published, or one less than the given sequence if it is not published yet
+     */
+    private long highestPublished(long from, long claimed) {
+        for (long sequence = from; sequence <= claimed; sequence++) {
+            if (published.get((int) sequence & mask) != sequence) {
+                return sequence - 1;
+            }
+        }
+        return claimed;
+    }
+
+    private synchronized void unsubscribe(Subscription subscription) {
+        Subscription[] current = subscriptions;
+        Subscription[] updated = new Subscription[current.length - 1];
+        int i = 0;
+        for (Subscription s : current) {
+            if (s != subscription) {
+                updated[i++] = s;
+            }
+        }
+        subscriptions = updated;
+    }
+
+    /**
+     * The Subscription class is responsible for consuming the change feed for
+     * one subscriber on a thread of its own
+     */
+    public final class Subscription implements AutoCloseable {
+
+        private final ChangeSubscriber subscriber;
+        private final AtomicLong sequence;
+        private final AtomicLong failures = new AtomicLong();
+        private final Thread thread;
+        private volatile boolean closed;
+
+        private Subscription(String name, ChangeSubscriber subscriber, long sequence) {
+            this.subscriber = subscriber;
+            this.sequence = new AtomicLong(sequence);
+            this.thread = new Thread(this::consume, "change-feed-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * @return the number of events published but not yet consumed by the
+         *         subscriber
+         */
+        public long getLag() {
+            return Math.max(0, cursor.get() - sequence.get());
+        }
+
+        /**
+         * @return the number of events the subscriber failed on with an exception
+         */
+        public long getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * Unsubscribes after the events published so far have been consumed. If
+         * the calling thread is interrupted while waiting, the wait continues
+         * and the interrupt status is restored afterwards.
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+
+                boolean interrupted = false;
+                while (thread.isAlive()) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                unsubscribe(this);
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void consume() {
+            long next = sequence.get() + 1;
+            while (true) {
+                boolean stopping = closed;
+                long available = highestPublished(next, cursor.get());
+                if (available < next) {
+                    if (stopping) {
+                        return;
+                    }
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    continue;
+                }
+
+                for (long s = next; s <= available; s++) {
+                    try {
+                        subscriber.onEvent(slots[(int) s & mask], s == available);
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                    }
+                }
+                sequence.set(available);
+                next = available + 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package kd.feed;
+
+/**
+ * The ChangeSubscriber interface is implemented by consumers of the change
+ * feed. Events are handed over in batches on the subscriber's own thread, in
+ * the order they were published.
+ */
+@FunctionalInterface
+public interface ChangeSubscriber {
+
+    /**
+     * Consumes an event. The event is only valid during the call.
+     *
+     * @param event      The event
+     * @param endOfBatch Whether this is the last event currently available, e.g.
+     *                   to flush work accumulated over the batch
+     */
+    void onEvent(ChangeEvent event, boolean endOfBatch);
+}
@@ -0,0 +1,66 @@
+package kd.journal;
+
+/**
+ * The FlushPolicy class is responsible for deciding when the records appended
+ * to a RentalJournal are written from its buffer to the journal file.
+ *
+ * Records can be written every so many records, on the appending thread, and
+ * every so many milliseconds, on a background thread. Either can be turned off
+ * with 0; with both off records are written only when the buffer is full, on
+ * {@link RentalJournal#flush()} and on close. Records written by the policy are
+ * forced to disk as well if the policy says so, which survives a power failure
+ * rather than only a crash of the process, at the cost of a disk sync.
+ */
+public final class FlushPolicy {
+
+    /**
+     * Records are written only when the buffer is full, on flush and on close
+     */
+    public static final FlushPolicy WHEN_FULL = new FlushPolicy(0, 0, false);
+
+    private final int everyRecords;
+    private final long everyMillis;
+    private final boolean force;
+
+    /**
+     * Create a flush policy
+     *
+     * @param everyRecords The number of records after which the buffer is
+     *                     written, or 0 to not count records
+     * @param everyMillis  The interval in milliseconds at which the buffer is
+     *                     written, or 0 to not write it periodically
+     * @param force        Whether written records are forced to disk
+     *
+     * @throws IllegalArgumentException if a count or interval is negative
+     */
+    public FlushPolicy(int everyRecords, long everyMillis, boolean force) {
+        if (everyRecords < 0 || everyMillis < 0) {
+            throw new IllegalArgumentException("Flush record count and interval must not be negative");
+        }
+
+        this.everyRecords = everyRecords;
+        this.everyMillis = everyMillis;
+        this.force = force;
+    }
+
+    /**
+     * @return the number of records after which the buffer is written, or 0
+     */
+    public int getEveryRecords() {
+        return everyRecords;
+    }
+
+    /**
+     * @return the interval in milliseconds at which the buffer is written, or 0
+     */
+    public long getEveryMillis() {
+        return everyMillis;
+    }
+
+    /**
+     * @return whether written records are forced to disk
+     */
+    public boolean isForce() {
+        return force;
+    }
+}
@@ -0,0 +1,750 @@
+package kd.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.YearMonth;
+import java.util.Date;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import kd.RentalEngine;
+import kd.RentalManager;
+import kd.RentalSnapshot;
+import kd.bike.BatteryPowered;
+import kd.bike.Bike;
+import kd.bike.BikeFactory;
+import kd.billing.Invoice;
+import kd.billing.InvoiceStore;
+import kd.customer.CustomerName;
+import kd.customer.CustomerNumber;
+import kd.customer.CustomerRecord;
+import kd.rental.RentalContract;
+
+/**
+ * The RentalJournal class is responsible for persisting the state of a
+ * RentalEngine, by default the one behind the RentalManager, so that it
+ * survives a restart. A journal is bound to the engine it was opened for and
+ * can only be set on that engine.
+ *
+ * Every bike and customer record added and every bike issued or returned is
+ * appended to a binary journal file. When the records are written to the file
+ * is up to the {@link FlushPolicy}. Periodically the journal is compacted into
+ * a snapshot of the current state: the journal is switched to a new file and
+ * the snapshot is written in the background, after which the old journal and
+ * snapshot are deleted. On startup the last snapshot is loaded and only the
+ * journals written since are replayed. Snapshot and journal share the same record format. Issue and
+ * terminate records carry the time the rental started or ended, so replayed
+ * rental contracts keep their original times, and terminate records carry the
+ * fee charged. Snapshots also hold the charges of the months not invoiced yet,
+ * so invoices survive a restart. Replaying restores the state only: nothing is
+ * charged, published or reported again.
+ *
+ * Typical use:
+ *
+ * <pre>
+ * RentalJournal journal = RentalJournal.open(directory, 100000, new FlushPolicy(0, 50, false));
+ * RentalManager.setJournal(journal);
+ * </pre>
+ */
+public final class RentalJournal implements Closeable {
+
+    private static final int MAGIC = 0x4B44524A; // "KDRJ"
+    private static final byte VERSION = 3;
+    private static final int HEADER_SIZE = 5;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Record types
+    private static final byte ADD_BIKE = 1;
+    private static final byte ADD_CUSTOMER_RECORD = 2;
+    private static final byte ISSUE = 3;
+    private static final byte TERMINATE = 4;
+    private static final byte ACCOUNT = 5;
+    private static final byte CLOSE_MONTH = 6;
+
+    // File names, numbered by generation
+    private static final String JOURNAL_PREFIX = "journal.";
+    private static final String SNAPSHOT_PREFIX = "snapshot.";
+    private static final String FILE_SUFFIX = ".bin";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // File names used before generations
+    private static final String LEGACY_JOURNAL_FILE = "journal.bin";
+    private static final String LEGACY_SNAPSHOT_FILE = "snapshot.bin";
+
+    private final RentalEngine engine;
+    private final Path directory;
+    private final int snapshotEvery;
+    private final FlushPolicy flushPolicy;
+    private final ScheduledExecutorService background;
+    private final Object snapshotLock = new Object();
+
+    /* Guarded by this */
+    private RecordWriter journal;
+    private long generation;
+    private int recordsSinceSnapshot;
+    private int recordsSinceFlush;
+    private boolean snapshotPending;
+
+    private volatile RuntimeException failure;
+
+    private RentalJournal(RentalEngine engine, Path directory, FileChannel channel, long generation,
+            int snapshotEvery, FlushPolicy flushPolicy) {
+        this.engine = engine;
+        this.directory = directory;
+        this.journal = new RecordWriter(channel);
+        this.generation = generation;
+        this.snapshotEvery = snapshotEvery;
+        this.flushPolicy = flushPolicy;
+        this.background = Executors.newScheduledThreadPool(2, r -> {
+            Thread thread = new Thread(r, "rental-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (flushPolicy.getEveryMillis() > 0) {
+            background.scheduleWithFixedDelay(this::flushBuffered, flushPolicy.getEveryMillis(),
+                    flushPolicy.getEveryMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Restores the RentalManager from the snapshot and journal in the specified
+     * directory, if any, and opens the journal for appending. Records are
+     * written to the journal file when the buffer is full.
+     *
+     * @param directory     The directory holding the journal and snapshot files
+     * @param snapshotEvery The number of journal records after which a snapshot
+     *                      is taken automatically, or 0 to only take snapshots
+     *                      on request
+     *
+     * @return the journal, ready to be set on the RentalManager
+     * @throws IOException if the files cannot be read or written
+     * @see #open(Path, int, FlushPolicy)
+     */
+    public static RentalJournal open(Path directory, int snapshotEvery) throws IOException {
+        return open(directory, snapshotEvery, FlushPolicy.WHEN_FULL);
+    }
+
+    /**
+     * Restores the RentalManager from the snapshot and journal in the specified
+     * directory, if any, and opens the journal for appending. The journal must
+     * be opened before it is set on the RentalManager, otherwise replayed
+     * records are appended again.
+     *
+     * @param directory     The directory holding the journal and snapshot files
+     * @param snapshotEvery The number of journal records after which a snapshot
+     *                      is taken automatically, in the background, or 0 to
+     *                      only take snapshots on request
+     * @param flushPolicy   When appended records are written to the journal file
+     *
+     * @return the journal, ready to be set on the RentalManager
+     * @throws IOException if the files cannot be read or written
+     */
+    public static RentalJournal open(Path directory, int snapshotEvery, FlushPolicy flushPolicy)
+            throws IOException {
+        return open(RentalManager.getEngine(), directory, snapshotEvery, flushPolicy);
+    }
+
+    /**
+     * Restores the specified engine from the snapshot and journal in the
+     * specified directory, if any, and opens the journal for appending. The
+     * journal must be opened before it is set on the engine, otherwise replayed
+     * records are appended again.
+     *
+     * @param engine        The engine the journal persists
+     * @param directory     The directory holding the journal and snapshot files
+     * @param snapshotEvery The number of journal records after which a snapshot
+     *                      is taken automatically, in the background, or 0 to
+     *                      only take snapshots on request
+     * @param flushPolicy   When appended records are written to the journal file
+     *
+     * @return the journal, ready to be set on the engine
+     * @throws IOException if the files cannot be read or written
+     * @throws IllegalArgumentException if engine or flushPolicy is null
+     */
+    public static RentalJournal open(RentalEngine engine, Path directory, int snapshotEvery,
+            FlushPolicy flushPolicy) throws IOException {
+        if (engine == null) {
+            throw new IllegalArgumentException("Rental engine must not be null");
+        }
+        if (flushPolicy == null) {
+            throw new IllegalArgumentException("Flush policy must not be null");
+        }
+        Files.createDirectories(directory);
+        migrateLegacyFiles(directory);
+        try (DirectoryStream<Path> temps = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*" + TEMP_SUFFIX)) {
+            for (Path temp : temps) {
+                Files.delete(temp);
+            }
+        }
+
+        /*
+         * The newest snapshot holds the state up to the start of the journal of
+         * the same generation; journals of older generations are left over from
+         * a snapshot that completed, or was cut short by a crash, and newer ones
+         * from a snapshot that was cut short.
+         */
+        NavigableSet<Long> snapshots = generations(directory, SNAPSHOT_PREFIX);
+        long base = snapshots.isEmpty() ? 0 : snapshots.last();
+        if (!snapshots.isEmpty()) {
+            replay(engine, snapshotFile(directory, base));
+        }
+
+        NavigableSet<Long> journals = generations(directory, JOURNAL_PREFIX).tailSet(base, true);
+        long generation = journals.isEmpty() ? base : journals.last();
+        long end = 0;
+        for (long g : journals) {
+            end = replay(engine, journalFile(directory, g));
+        }
+
+        /* Append to the newest journal, cutting off a record torn by a crash, if any */
+        FileChannel channel = FileChannel.open(journalFile(directory, generation), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        RentalJournal rentalJournal = new RentalJournal(engine, directory, channel, generation, snapshotEvery,
+                flushPolicy);
+        if (end < HEADER_SIZE) {
+            rentalJournal.journal.reset();
+        } else {
+            channel.truncate(end);
+            channel.position(end);
+        }
+        rentalJournal.deleteBefore(base);
+        return rentalJournal;
+    }
+
+    /**
+     * @return the engine the journal persists
+     */
+    public RentalEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Appends a bike added to the engine
+     *
+     * @param bike The bike that was added
+     */
+    public synchronized void appendAddBike(Bike bike) {
+        journal.writeBike(bike);
+        appended();
+    }
+
+    /**
+     * Appends a customer record added to the engine
+     *
+     * @param record The customer record that was added
+     */
+    public synchronized void appendAddCustomerRecord(CustomerRecord record) {
+        journal.writeCustomerRecord(record);
+        appended();
+    }
+
+    /**
+     * Appends a bike issued to a customer
+     *
+     * @param customerNumber The number of the customer the bike was issued to
+     * @param bike           The bike that was issued
+     * @param startMillis    When the rental started, in epoch milliseconds
+     */
+    public synchronized void appendIssue(String customerNumber, Bike bike, long startMillis) {
+        journal.writeIssue(customerNumber, bike, startMillis);
+        appended();
+    }
+
+    /**
+     * Appends a rental contract that was terminated
+     *
+     * @param customerNumber The number of the customer that returned the bike
+     * @param startMillis    When the rental started, in epoch milliseconds
+     * @param endMillis      When the rental ended, in epoch milliseconds
+     * @param fee            The fee charged, in cents, or -1 if the rental was
+     *                       not charged
+     */
+    public synchronized void appendTerminate(String customerNumber, long startMillis, long endMillis, long fee) {
+        journal.writeTerminate(customerNumber, startMillis, endMillis, fee);
+        appended();
+    }
+
+    /**
+     * Appends a month that was invoiced
+     *
+     * @param month The month invoiced
+     */
+    public synchronized void appendCloseMonth(YearMonth month) {
+        journal.writeCloseMonth(month);
+        appended();
+    }
+
+    /**
+     * Writes the buffered records to the journal file and forces them to disk
+     */
+    public synchronized void flush() {
+        journal.flush(true);
+        recordsSinceFlush = 0;
+    }
+
+    /**
+     * Writes a snapshot of the current state of the engine and waits for
+     * it to be written. Records appended in the meantime go to a new journal,
+     * which is replayed after the snapshot, so the journal lock is only held to
+     * switch journals and the kiosks keep appending while the snapshot is
+     * written.
+     */
+    public void snapshot() {
+        synchronized (snapshotLock) {
+            long snapshotGeneration;
+            RentalSnapshot state;
+            synchronized (this) {
+                snapshotGeneration = rotate();
+                state = engine.getSnapshot();
+            }
+
+            /*
+             * Changes made after the state was taken are in the new journal as
+             * well; replaying them over the snapshot leaves the state unchanged,
+             * and charges already in the accounts are not charged again.
+             */
+            try {
+                Path temp = directory.resolve(SNAPSHOT_PREFIX + snapshotGeneration + TEMP_SUFFIX);
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    RecordWriter snapshot = new RecordWriter(channel);
+                    snapshot.reset();
+                    for (Bike bike : state.getBikes()) {
+                        snapshot.writeBike(bike);
+                    }
+                    for (CustomerRecord record : state.getCustomerRecords()) {
+                        snapshot.writeCustomerRecord(record);
+                    }
+                    for (Map.Entry<String, Bike> rental : state.getRentals().entrySet()) {
+                        RentalContract contract = engine.getContracts().getActiveContract(rental.getKey());
+                        long start = contract != null ? contract.getStartMillis() : System.currentTimeMillis();
+                        snapshot.writeIssue(rental.getKey(), rental.getValue(), start);
+                    }
+                    InvoiceStore invoices = engine.getBillingEngine().getInvoices();
+                    for (YearMonth month : invoices.getMonths()) {
+                        for (Invoice account : invoices.getInvoices(month)) {
+                            snapshot.writeAccount(account);
+                        }
+                    }
+                    snapshot.flush(true);
+                }
+                Files.move(temp, snapshotFile(directory, snapshotGeneration), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                deleteBefore(snapshotGeneration);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Stops the background snapshots and flushes, waiting for a snapshot being
+     * written, and flushes and closes the journal file
+     *
+     * @throws IOException if the journal cannot be written, or the last
+     *                     background snapshot or flush failed
+     */
+    @Override
+    public void close() throws IOException {
+        background.shutdown();
+        boolean interrupted = false;
+        while (!background.isTerminated()) {
+            try {
+                background.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            journal.flush(true);
+            journal.channel.close();
+        }
+
+        RuntimeException e = failure;
+        if (e != null) {
+            throw new IOException("Background journal write failed", e);
+        }
+    }
+
+    /**
+     * @return the failure of the last background snapshot or flush that failed,
+     *         or null if none failed
+     */
+    public RuntimeException getBackgroundFailure() {
+        return failure;
+    }
+
+    private void appended() {
+        recordsSinceSnapshot++;
+        recordsSinceFlush++;
+        if (flushPolicy.getEveryRecords() > 0 && recordsSinceFlush >= flushPolicy.getEveryRecords()) {
+            journal.flush(flushPolicy.isForce());
+            recordsSinceFlush = 0;
+        }
+        if (snapshotEvery > 0 && recordsSinceSnapshot >= snapshotEvery && !snapshotPending) {
+            snapshotPending = true;
+            background.execute(this::backgroundSnapshot);
+        }
+    }
+
+    private void backgroundSnapshot() {
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            synchronized (this) {
+                snapshotPending = false;
+            }
+        }
+    }
+
+    private synchronized void flushBuffered() {
+        try {
+            if (recordsSinceFlush > 0) {
+                journal.flush(flushPolicy.isForce());
+                recordsSinceFlush = 0;
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    /*
+     * Close the current journal and continue in the journal of the next
+     * generation; return that generation, which the snapshot taken now is of
+     */
+    private long rotate() {
+        try {
+            journal.flush(true);
+            journal.channel.close();
+
+            generation++;
+            journal = new RecordWriter(FileChannel.open(journalFile(directory, generation),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+            journal.reset();
+            recordsSinceSnapshot = 0;
+            recordsSinceFlush = 0;
+            return generation;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+     * Delete the snapshots and journals older than the specified generation,
+     * which a complete snapshot has made obsolete
+     */
+    private void deleteBefore(long base) throws IOException {
+        for (long g : generations(directory, SNAPSHOT_PREFIX).headSet(base, false)) {
+            Files.deleteIfExists(snapshotFile(directory, g));
+        }
+        for (long g : generations(directory, JOURNAL_PREFIX).headSet(base, false)) {
+            Files.deleteIfExists(journalFile(directory, g));
+        }
+    }
+
+    /*
+     * Rename the journal and snapshot written before files were numbered to
+     * generation 0
+     */
+    private static void migrateLegacyFiles(Path directory) throws IOException {
+        Path journal = directory.resolve(LEGACY_JOURNAL_FILE);
+        if (Files.exists(journal) && !Files.exists(journalFile(directory, 0))) {
+            Files.move(journal, journalFile(directory, 0));
+        }
+        Path snapshot = directory.resolve(LEGACY_SNAPSHOT_FILE);
+        if (Files.exists(snapshot) && !Files.exists(snapshotFile(directory, 0))) {
+            Files.move(snapshot, snapshotFile(directory, 0));
+        }
+    }
+
+    private static NavigableSet<Long> generations(Path directory, String prefix) throws IOException {
+        NavigableSet<Long> generations = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String number = name.substring(prefix.length(), name.length() - FILE_SUFFIX.length());
+                try {
+                    generations.add(Long.parseLong(number));
+                } catch (NumberFormatException e) {
+                    /* Not a numbered file, ignore it */
+                }
+            }
+        }
+        return generations;
+    }
+
+    private static Path journalFile(Path directory, long generation) {
+        return directory.resolve(JOURNAL_PREFIX + generation + FILE_SUFFIX);
+    }
+
+    private static Path snapshotFile(Path directory, long generation) {
+        return directory.resolve(SNAPSHOT_PREFIX + generation + FILE_SUFFIX);
+    }
+
+    /*
+     * Apply the records in the file to the engine and return the position after
+     * the last complete record
+     */
+    private static long replay(RentalEngine engine, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return 0;
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a rental journal: " + file);
+            }
+            byte version = buffer.get();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported rental journal version " + version + ": " + file);
+            }
+
+            int end = buffer.position();
+            try {
+                while (buffer.hasRemaining()) {
+                    replayRecord(engine, buffer, version);
+                    end = buffer.position();
+                }
+            } catch (BufferUnderflowException e) {
+                /* Torn record at the end of the file, ignore it */
+            }
+            return end;
+        }
+    }
+
+    /*
+     * Apply one record; records of version 1 have no timestamps, the rentals
+     * they restore start and end at the time of the replay
+     */
+    private static void replayRecord(RentalEngine engine, ByteBuffer buffer, byte version) throws IOException {
+        byte type = buffer.get();
+        switch (type) {
+            case ADD_BIKE: {
+                String bikeType = readString(buffer);
+                String serialNumber = readString(buffer);
+                boolean batteryFull = buffer.get() != 0;
+                Bike bike = BikeFactory.getInstance(bikeType, serialNumber);
+                if (bike instanceof BatteryPowered && !batteryFull) {
+                    ((BatteryPowered) bike).setBatteryEmpty();
+                }
+                engine.restoreBike(bike);
+                break;
+            }
+            case ADD_CUSTOMER_RECORD: {
+                String customerNumber = readString(buffer);
+                CustomerName name = new CustomerName(readString(buffer), readString(buffer));
+                Date dateOfBirth = new Date(buffer.getLong());
+                Date issueDate = new Date(buffer.getLong());
+                boolean goldClass = buffer.get() != 0;
+                if (engine.getCustomerRecord(customerNumber) == null) {
+                    engine.restoreCustomerRecord(new CustomerRecord(name, dateOfBirth,
+                            CustomerNumber.valueOf(customerNumber), issueDate, goldClass));
+                }
+                break;
+            }
+            case ISSUE: {
+                String customerNumber = readString(buffer);
+                String bikeType = readString(buffer);
+                String serialNumber = readString(buffer);
+                long startMillis = version >= 2 ? buffer.getLong() : System.currentTimeMillis();
+                engine.restoreIssue(customerNumber, BikeFactory.getInstance(bikeType, serialNumber),
+                        startMillis);
+                break;
+            }
+            case TERMINATE: {
+                String customerNumber = readString(buffer);
+                long startMillis = version >= 3 ? buffer.getLong() : -1;
+                long endMillis = version >= 2 ? buffer.getLong() : System.currentTimeMillis();
+                long fee = version >= 3 ? buffer.getLong() : -1;
+                engine.restoreTermination(customerNumber, startMillis, endMillis, fee);
+                break;
+            }
+            case ACCOUNT: {
+                long customerNumber = CustomerNumber.parse(readString(buffer));
+                YearMonth month = monthOf(buffer.getInt());
+                int rentals = buffer.getInt();
+                long rentedMillis = buffer.getLong();
+                long amount = buffer.getLong();
+                long lastEndMillis = buffer.getLong();
+                engine.getBillingEngine().getInvoices().restore(customerNumber, month, rentals, rentedMillis,
+                        amount, lastEndMillis);
+                break;
+            }
+            case CLOSE_MONTH: {
+                engine.getBillingEngine().closeMonth(monthOf(buffer.getInt()));
+                break;
+            }
+            default:
+                throw new IOException("Unknown journal record type: " + type);
+        }
+    }
+
+    private static YearMonth monthOf(int epochMonth) {
+        return YearMonth.of(Math.floorDiv(epochMonth, 12), Math.floorMod(epochMonth, 12) + 1);
+    }
+
+    private static int epochMonthOf(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Buffered writer of journal records to a file channel
+     */
+    private static final class RecordWriter {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        RecordWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /* Empty the file and write the header */
+        void reset() {
+            try {
+                buffer.clear();
+                channel.truncate(0);
+                channel.position(0);
+                buffer.putInt(MAGIC).put(VERSION);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void writeBike(Bike bike) {
+            byte[] type = bytes(bike.getType());
+            byte[] serialNumber = bytes(bike.getSerialNumber());
+            boolean batteryFull = !(bike instanceof BatteryPowered) || ((BatteryPowered) bike).getBatteryFull();
+
+            ensure(1 + 2 + type.length + 2 + serialNumber.length + 1);
+            buffer.put(ADD_BIKE);
+            putString(type);
+            putString(serialNumber);
+            buffer.put((byte) (batteryFull ? 1 : 0));
+        }
+
+        void writeCustomerRecord(CustomerRecord record) {
+            CustomerName name = record.getName();
+            byte[] customerNumber = bytes(record.getCustomerNumber().toString());
+            byte[] firstName = bytes(name.getFirstName());
+            byte[] lastName = bytes(name.getLastName());
+
+            ensure(1 + 2 + customerNumber.length + 2 + firstName.length + 2 + lastName.length + 8 + 8 + 1);
+            buffer.put(ADD_CUSTOMER_RECORD);
+            putString(customerNumber);
+            putString(firstName);
+            putString(lastName);
+            buffer.putLong(record.getDateOfBirth().getTime());
+            buffer.putLong(record.getRecordIssueDate().getTime());
+            buffer.put((byte) (record.isGoldClass() ? 1 : 0));
+        }
+
+        void writeIssue(String customerNumber, Bike bike, long startMillis) {
+            byte[] number = bytes(customerNumber);
+            byte[] type = bytes(bike.getType());
+            byte[] serialNumber = bytes(bike.getSerialNumber());
+
+            ensure(1 + 2 + number.length + 2 + type.length + 2 + serialNumber.length + 8);
+            buffer.put(ISSUE);
+            putString(number);
+            putString(type);
+            putString(serialNumber);
+            buffer.putLong(startMillis);
+        }
+
+        void writeTerminate(String customerNumber, long startMillis, long endMillis, long fee) {
+            byte[] number = bytes(customerNumber);
+
+            ensure(1 + 2 + number.length + 8 + 8 + 8);
+            buffer.put(TERMINATE);
+            putString(number);
+            buffer.putLong(startMillis);
+            buffer.putLong(endMillis);
+            buffer.putLong(fee);
+        }
+
+        void writeAccount(Invoice account) {
+            byte[] number = bytes(account.getCustomerNumber());
+
+            ensure(1 + 2 + number.length + 4 + 4 + 8 + 8 + 8);
+            buffer.put(ACCOUNT);
+            putString(number);
+            buffer.putInt(epochMonthOf(account.getMonth()));
+            buffer.putInt(account.getRentals());
+            buffer.putLong(account.getRentedMillis());
+            buffer.putLong(account.getAmount());
+            buffer.putLong(account.getLastEndMillis());
+        }
+
+        void writeCloseMonth(YearMonth month) {
+            ensure(1 + 4);
+            buffer.put(CLOSE_MONTH);
+            buffer.putInt(epochMonthOf(month));
+        }
+
+        void flush(boolean force) {
+            try {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+                if (force) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void ensure(int bytes) {
+            if (bytes > BUFFER_SIZE) {
+                throw new IllegalArgumentException("Journal record too large: " + bytes + " bytes");
+            }
+            if (buffer.remaining() < bytes) {
+                flush(false);
+            }
+        }
+
+        private void putString(byte[] bytes) {
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+
+        private static byte[] bytes(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IllegalArgumentException("String too long for journal: " + s.length() + " characters");
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package kd.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The Metrics class is responsible for the registry of operation metrics and
+ * for switching instrumentation on and off. Metrics are disabled by default.
+ *
+ * An instrumented operation brackets its work as follows:
+ *
+ * <pre>
+ * long start = Metrics.start();
+ * ... // the operation
+ * OPERATION_METRICS.record(outcome, start);
+ * </pre>
+ *
+ * While disabled, {@link #start()} is a single volatile read and
+ * <code>record</code> returns immediately, so no clock is read and nothing is
+ * recorded or allocated.
+ */
+public final class Metrics {
+
+    /**
+     * The start value handed out while metrics are disabled
+     */
+    public static final long OFF = Long.MIN_VALUE;
+
+    private static final Map<String, OperationMetrics> OPERATIONS = new ConcurrentHashMap<String, OperationMetrics>();
+    private static volatile boolean enabled;
+
+    private Metrics() {
+    }
+
+    /**
+     * Starts recording metrics
+     */
+    public static void enable() {
+        enabled = true;
+    }
+
+    /**
+     * Stops recording metrics. Recorded values are kept.
+     */
+    public static void disable() {
+        enabled = false;
+    }
+
+    /**
+     * @return true if metrics are being recorded
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the current time in nanoseconds to pass to
+     *         <code>OperationMetrics.record</code> at the end of the operation,
+     *         or {@link #OFF} if metrics are disabled
+     */
+    public static long start() {
+        if (!enabled) {
+            return OFF;
+        }
+        long now = System.nanoTime();
+        return now == OFF ? OFF + 1 : now;
+    }
+
+    /**
+     * @param name The name of the operation, e.g. "RentalManager.issueBike"
+     *
+     * @return the metrics of the operation, created on first use
+     */
+    public static OperationMetrics operation(String name) {
+        return OPERATIONS.computeIfAbsent(name, OperationMetrics::new);
+    }
+
+    /**
+     * Clears the recorded values of all operations
+     */
+    public static void reset() {
+        for (OperationMetrics operation : OPERATIONS.values()) {
+            operation.reset();
+        }
+    }
+
+    /**
+     * Returns a text snapshot of the recorded metrics, one line per operation
+     * followed by one line per outcome, with latencies in microseconds, e.g.
+     *
+     * <pre>
+     * RentalManager.issueBike count=1200 mean=1.4 p50=1.1 p90=2.0 p99=6.3 p99.9=20.4 max=88.0
+     * RentalManager.issueBike.ISSUED count=1000 mean=1.5 p50=1.2 p90=2.1 p99=6.3 p99.9=20.4 max=88.0
+     * </pre>
+     *
+     * Operations without calls are left out.
+     *
+     * @return the snapshot
+     */
+    public static String snapshot() {
+        StringBuilder sb = new StringBuilder();
+        for (OperationMetrics operation : new TreeMap<String, OperationMetrics>(OPERATIONS).values()) {
+            if (operation.getLatency().getCount() == 0) {
+                continue;
+            }
+            append(sb, operation.getName(), operation.getLatency());
+            for (String outcome : new TreeSet<String>(operation.getOutcomes())) {
+                LatencyHistogram histogram = operation.getLatency(outcome);
+                if (histogram.getCount() > 0) {
+                    append(sb, operation.getName() + "." + outcome, histogram);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String name, LatencyHistogram histogram) {
+        sb.append(name)
+                .append(" count=").append(histogram.getCount())
+                .append(" mean=").append(micros(histogram.getMean()))
+                .append(" p50=").append(micros(histogram.getValueAtPercentile(50)))
+                .append(" p90=").append(micros(histogram.getValueAtPercentile(90)))
+                .append(" p99=").append(micros(histogram.getValueAtPercentile(99)))
+                .append(" p99.9=").append(micros(histogram.getValueAtPercentile(99.9)))
+                .append(" max=").append(micros(histogram.getMax()))
+                .append('\n');
+    }
+
+    private static String micros(double nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1e3);
+    }
+}
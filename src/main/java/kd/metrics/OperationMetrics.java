@@ -0,0 +1,104 @@
+package kd.metrics;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The OperationMetrics class is responsible for counting the calls of one
+ * operation and recording their latency, overall and per outcome, e.g. per
+ * rental status. Instances are obtained from {@link Metrics#operation(String)}
+ * and are meant to be kept in a constant by the instrumented class.
+ */
+public final class OperationMetrics {
+
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final Map<String, LatencyHistogram> outcomes = new ConcurrentHashMap<String, LatencyHistogram>();
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records a call of the operation that ended now
+     *
+     * @param outcome The outcome of the call
+     * @param start   The value returned by {@link Metrics#start()} when the call
+     *                began; nothing is recorded if metrics were disabled then
+     */
+    public void record(String outcome, long start) {
+        if (start == Metrics.OFF) {
+            return;
+        }
+
+        long elapsed = System.nanoTime() - start;
+        latency.record(elapsed);
+        LatencyHistogram histogram = outcomes.get(outcome);
+        if (histogram == null) {
+            histogram = outcomes.computeIfAbsent(outcome, k -> new LatencyHistogram());
+        }
+        histogram.record(elapsed);
+    }
+
+    /**
+     * Records a call of the operation that ended now
+     *
+     * @param outcome The outcome of the call, recorded by name
+     * @param start   The value returned by {@link Metrics#start()} when the call
+     *                began; nothing is recorded if metrics were disabled then
+     */
+    public void record(Enum<?> outcome, long start) {
+        if (start != Metrics.OFF) {
+            record(outcome.name(), start);
+        }
+    }
+
+    /**
+     * @return the name of the operation
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the latency of all calls, in nanoseconds
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @param outcome The outcome
+     *
+     * @return the latency of the calls with the specified outcome, in
+     *         nanoseconds, or null if there were none
+     */
+    public LatencyHistogram getLatency(String outcome) {
+        return outcomes.get(outcome);
+    }
+
+    /**
+     * @param outcome The outcome
+     *
+     * @return the number of calls with the specified outcome
+     */
+    public long getCount(String outcome) {
+        LatencyHistogram histogram = outcomes.get(outcome);
+        return histogram == null ? 0 : histogram.getCount();
+    }
+
+    /**
+     * @return the outcomes recorded so far
+     */
+    public Set<String> getOutcomes() {
+        return outcomes.keySet();
+    }
+
+    void reset() {
+        latency.reset();
+        for (LatencyHistogram histogram : outcomes.values()) {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package kd.rental;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The AsyncRentalEventSink class is responsible for handing rental events to
+ * another sink on a background thread, so that formatting and printing
+ * messages stays off the thread issuing or returning bikes.
+ *
+ * Events are buffered in a bounded queue. When the queue is full new events
+ * are dropped rather than blocking the caller; the number of dropped events is
+ * available from {@link #getDroppedEvents()}. An exception thrown by the
+ * delegate is counted in {@link #getFailedEvents()} and does not stop the
+ * background thread.
+ */
+public final class AsyncRentalEventSink implements RentalEventSink, AutoCloseable {
+
+    private final RentalEventSink delegate;
+    private final BlockingQueue<RentalEvent> queue;
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong failedEvents = new AtomicLong();
+    private final Thread worker;
+    private volatile boolean closed;
+
+    /**
+     * Create an asynchronous sink
+     *
+     * @param delegate The sink to hand events to on the background thread
+     * @param capacity The maximum number of buffered events
+     *
+     * @throws IllegalArgumentException if capacity is less than 1
+     */
+    public AsyncRentalEventSink(RentalEventSink delegate, int capacity) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Empty event sink");
+        }
+
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<RentalEvent>(capacity);
+        this.worker = new Thread(this::drain, "rental-event-sink");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * @return an asynchronous sink printing event messages to the console
+     */
+    public static AsyncRentalEventSink console() {
+        return new AsyncRentalEventSink(event -> System.out.println(event.getMessage()), 8192);
+    }
+
+    /**
+     * Queues the event for the background thread, or drops it if the queue is
+     * full or the sink is closed
+     *
+     * @param event The event to be reported
+     */
+    public void accept(RentalEvent event) {
+        if (closed || !queue.offer(event)) {
+            droppedEvents.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of events dropped because the queue was full or the
+     *         sink was closed
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * @return the number of events the delegate failed on with an exception
+     */
+    public long getFailedEvents() {
+        return failedEvents.get();
+    }
+
+    /**
+     * Stops accepting events and waits for the queued events to be handed to the
+     * delegate. If the calling thread is interrupted while waiting, the wait
+     * continues and the interrupt status is restored afterwards.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+
+        boolean interrupted = false;
+        while (worker.isAlive()) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        try {
+            while (!closed) {
+                RentalEvent event = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (event != null) {
+                    deliver(event);
+                }
+            }
+        } catch (InterruptedException e) {
+            /* Closed while waiting, deliver what is left below */
+        }
+
+        RentalEvent event;
+        while ((event = queue.poll()) != null) {
+            deliver(event);
+        }
+    }
+
+    private void deliver(RentalEvent event) {
+        try {
+            delegate.accept(event);
+        } catch (RuntimeException e) {
+            failedEvents.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package kd.rental;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import kd.bike.Bike;
+
+/**
+ * The ContractStore class is responsible for keeping the history of rental
+ * contracts and answering questions about it:
+ * <ul>
+ * <li>which contract, and so which customer, had a bike at a point in time</li>
+ * <li>which contracts were active at any time between two points in time</li>
+ * </ul>
+ *
+ * Active contracts are only kept in hash maps by customer and by bike. When a
+ * contract is terminated it is appended to the history of its bike and queued
+ * in the time partition of the day it ended; a partition orders its contracts
+ * by start the first time a query visits it after contracts were queued, so
+ * issuing and returning bikes never maintain an ordered index.
+ *
+ * A time range query visits the partitions from the day the range starts, and
+ * within each only the contracts that started before the range ends; all of
+ * those are in the range, except those of the first partition that ended
+ * before it. Active contracts are checked one by one, as there are at most as
+ * many as there are bikes. As the rentals of a bike never overlap, the history
+ * of a bike is ordered by start and the contract holding a bike at a point in
+ * time is its active one or the last one in its history that started before
+ * it, found by binary search.
+ *
+ * History is retained for a limited time: when a new partition starts, the
+ * partitions that ended longer than the retention period before it are
+ * evicted, and the histories of the bikes drop evicted contracts as the bikes
+ * are returned.
+ *
+ * The store is safe for concurrent use. Queries are weakly consistent with
+ * contracts being opened and terminated at the same time.
+ */
+public final class ContractStore {
+
+    /**
+     * How long terminated contracts are kept by default
+     */
+    public static final Duration DEFAULT_RETENTION = Duration.ofDays(400);
+
+    private static final long PARTITION_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final Comparator<RentalContract> BY_START = Comparator.comparingLong(RentalContract::getStartMillis)
+            .thenComparingLong(RentalContract::getId);
+
+    private final long retentionMillis;
+    private final AtomicLong ids = new AtomicLong();
+    private final Map<String, RentalContract> active = new ConcurrentHashMap<String, RentalContract>();
+    private final Map<String, RentalContract> activeByBike = new ConcurrentHashMap<String, RentalContract>();
+    private final NavigableMap<Long, Partition> partitions = new ConcurrentSkipListMap<Long, Partition>();
+    private final Map<String, BikeHistory> byBike = new ConcurrentHashMap<String, BikeHistory>();
+
+    /* Contracts that ended before this time have been evicted */
+    private volatile long evictedBefore = Long.MIN_VALUE;
+
+    /**
+     * Create an empty store keeping terminated contracts for
+     * {@link #DEFAULT_RETENTION}
+     */
+    public ContractStore() {
+        this(DEFAULT_RETENTION);
+    }
+
+    /**
+     * Create an empty store
+     *
+     * @param retention How long terminated contracts are kept after they ended;
+     *                  contracts are evicted a day at a time
+     *
+     * @throws IllegalArgumentException if retention is shorter than a day
+     */
+    public ContractStore(Duration retention) {
+        if (retention == null || retention.toMillis() < PARTITION_MILLIS) {
+            throw new IllegalArgumentException("Contract retention must be at least a day");
+        }
+
+        this.retentionMillis = retention.toMillis();
+    }
+
+    /**
+     * Opens a contract for a bike issued to a customer, unless the customer
+     * holds an active contract already
+     *
+     * @param customerNumber The number of the customer renting the bike
+     * @param bike           The rented bike
+     * @param millis         When the rental started, in epoch milliseconds
+     *
+     * @return the new, active contract, or null if the customer has an active
+     *         contract
+     */
+    public RentalContract open(String customerNumber, Bike bike, long millis) {
+        RentalContract contract = new RentalContract(ids.incrementAndGet(), customerNumber, bike, millis);
+        if (active.putIfAbsent(customerNumber, contract) != null) {
+            return null;
+        }
+        activeByBike.put(bike.getSerialNumber(), contract);
+        return contract;
+    }
+
+    /**
+     * Terminates the active contract of a customer
+     *
+     * @param customerNumber The number of the customer that returned the bike
+     * @param millis         When the rental ended, in epoch milliseconds
+     *
+     * @return the terminated contract, or null if the customer has no active
+     *         contract
+     */
+    public RentalContract terminate(String customerNumber, long millis) {
+        RentalContract contract = active.remove(customerNumber);
+        if (contract == null) {
+            return null;
+        }
+
+        contract.terminate(millis);
+        String serialNumber = contract.getBike().getSerialNumber();
+        Partition partition = partitionOf(contract.getEndMillis());
+        if (partition != null) {
+            byBike.computeIfAbsent(serialNumber, k -> new BikeHistory()).add(contract, evictedBefore);
+            partition.add(contract);
+        }
+        activeByBike.remove(serialNumber, contract);
+        return contract;
+    }
+
+    /**
+     * @param customerNumber The number of the customer
+     *
+     * @return the customer's active contract, or null if there is none
+     */
+    public RentalContract getActiveContract(String customerNumber) {
+        return active.get(customerNumber);
+    }
+
+    /**
+     * Returns the contract under which a bike was rented at a point in time
+     *
+     * @param serialNumber The bike's serial number
+     * @param time         The point in time
+     *
+     * @return the contract, or null if the bike was not rented at that time
+     */
+    public RentalContract getContract(String serialNumber, Instant time) {
+        long millis = time.toEpochMilli();
+        RentalContract current = activeByBike.get(serialNumber);
+        if (current != null && current.isActiveAt(millis)) {
+            return current;
+        }
+
+        BikeHistory history = byBike.get(serialNumber);
+        if (history == null) {
+            return null;
+        }
+        RentalContract contract = history.at(millis);
+        if (contract == null || contract.getEndMillis() < evictedBefore) {
+            return null;
+        }
+        return contract;
+    }
+
+    /**
+     * Returns the contracts that were active at any time from one point in time
+     * up to, but not including, another
+     *
+     * @param from The start of the time range
+     * @param to   The end of the time range
+     *
+     * @return the contracts overlapping the time range, the terminated ones
+     *         ordered by start followed by the active ones ordered by start
+     */
+    public List<RentalContract> getContracts(Instant from, Instant to) {
+        long a = from.toEpochMilli();
+        long b = to.toEpochMilli();
+        List<RentalContract> contracts = new ArrayList<RentalContract>();
+        if (a >= b) {
+            return contracts;
+        }
+
+        /* Contracts that ended before the day the range starts are in older partitions */
+        Key highest = new Key(b, Long.MIN_VALUE);
+        for (Partition partition : partitions.tailMap(partitionStartOf(a), true).values()) {
+            for (RentalContract contract : partition.byStart().headMap(highest).values()) {
+                if (contract.getEndMillis() > a) {
+                    contracts.add(contract);
+                }
+            }
+        }
+        contracts.sort(BY_START);
+
+        List<RentalContract> current = new ArrayList<RentalContract>();
+        for (RentalContract contract : active.values()) {
+            if (contract.getStartMillis() < b && contract.isActive()) {
+                current.add(contract);
+            }
+        }
+        current.sort(BY_START);
+        contracts.addAll(current);
+        return contracts;
+    }
+
+    /**
+     * @return the active contracts
+     */
+    public Collection<RentalContract> getActiveContracts() {
+        return active.values();
+    }
+
+    /**
+     * Drops the terminated contracts that ended before the specified time, for
+     * example after they were archived
+     *
+     * @param time The point in time; contracts that ended on whole days before
+     *             it are dropped
+     *
+     * @return the number of contracts dropped
+     */
+    public int evictBefore(Instant time) {
+        return evictBefore(time.toEpochMilli());
+    }
+
+    private int evictBefore(long millis) {
+        long cutoff = partitionStartOf(millis);
+        synchronized (partitions) {
+            if (cutoff > evictedBefore) {
+                evictedBefore = cutoff;
+            }
+        }
+
+        int evicted = 0;
+        NavigableMap<Long, Partition> old = partitions.headMap(cutoff, false);
+        for (Map.Entry<Long, Partition> partition : old.entrySet()) {
+            if (partitions.remove(partition.getKey(), partition.getValue())) {
+                evicted += partition.getValue().size.get();
+            }
+        }
+        return evicted;
+    }
+
+    /*
+     * The partition of contracts that ended at the specified time, or null if
+     * it is past the retention period already; starting a new partition evicts
+     * those past the retention period
+     */
+    private Partition partitionOf(long end) {
+        long start = partitionStartOf(end);
+        Partition partition = partitions.get(start);
+        if (partition == null) {
+            Map.Entry<Long, Partition> newest = partitions.lastEntry();
+            if (start < evictedBefore || newest != null && start < newest.getKey() - retentionMillis) {
+                return null;
+            }
+
+            Partition created = new Partition();
+            partition = partitions.putIfAbsent(start, created);
+            if (partition == null) {
+                partition = created;
+                evictBefore(partitions.lastKey() - retentionMillis);
+            }
+        }
+        return partition;
+    }
+
+    private static long partitionStartOf(long millis) {
+        return Math.floorDiv(millis, PARTITION_MILLIS) * PARTITION_MILLIS;
+    }
+
+    /*
+     * The terminated contracts that ended on one day. Contracts are queued as
+     * they are terminated and ordered by start when the partition is queried.
+     */
+    private static final class Partition {
+
+        private final Queue<RentalContract> queued = new ConcurrentLinkedQueue<RentalContract>();
+        private final NavigableMap<Key, RentalContract> byStart = new ConcurrentSkipListMap<Key, RentalContract>();
+        final AtomicInteger size = new AtomicInteger();
+
+        void add(RentalContract contract) {
+            queued.offer(contract);
+            size.incrementAndGet();
+        }
+
+        /* The contracts ordered by start, including those queued so far */
+        synchronized NavigableMap<Key, RentalContract> byStart() {
+            RentalContract contract;
+            while ((contract = queued.poll()) != null) {
+                byStart.put(new Key(contract), contract);
+            }
+            return byStart;
+        }
+    }
+
+    /*
+     * The terminated contracts of one bike, ordered by start
+     */
+    private static final class BikeHistory {
+
+        private final List<RentalContract> contracts = new ArrayList<RentalContract>();
+
+        /* Append a contract, dropping those that ended before the eviction cutoff */
+        synchronized void add(RentalContract contract, long evictedBefore) {
+            int evicted = 0;
+            while (evicted < contracts.size() && contracts.get(evicted).getEndMillis() < evictedBefore) {
+                evicted++;
+            }
+            contracts.subList(0, evicted).clear();
+
+            /* The rentals of a bike never overlap, so contracts arrive in order of start */
+            int i = contracts.size();
+            while (i > 0 && BY_START.compare(contracts.get(i - 1), contract) > 0) {
+                i--;
+            }
+            contracts.add(i, contract);
+        }
+
+        /* The last contract that started at or before the specified time, if still active then */
+        synchronized RentalContract at(long millis) {
+            int low = 0;
+            int high = contracts.size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (contracts.get(mid).getStartMillis() <= millis) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (high < 0 || !contracts.get(high).isActiveAt(millis)) {
+                return null;
+            }
+            return contracts.get(high);
+        }
+    }
+
+    /*
+     * Orders contracts by start, then by id
+     */
+    private static final class Key implements Comparable<Key> {
+
+        final long start;
+        final long id;
+
+        Key(RentalContract contract) {
+            this(contract.getStartMillis(), contract.getId());
+        }
+
+        Key(long start, long id) {
+            this.start = start;
+            this.id = id;
+        }
+
+        public int compareTo(Key other) {
+            int c = Long.compare(start, other.start);
+            return c != 0 ? c : Long.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+
+            if (!(obj instanceof Key))
+                return false;
+
+            final Key key = (Key) obj;
+
+            return start == key.start && id == key.id;
+        }
+
+        @Override
+        public int hashCode() {
+            int hc = 17;
+            hc = 37 * hc + Long.hashCode(start);
+            return 37 * hc + Long.hashCode(id);
+        }
+    }
+}
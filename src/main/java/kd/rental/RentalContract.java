@@ -0,0 +1,167 @@
+package kd.rental;
+
+import java.time.Instant;
+
+import kd.bike.Bike;
+
+/**
+ * The RentalContract class is responsible for recording a bike rented by a
+ * customer: who rented which bike of which type, and from when until when. A
+ * contract is active until it is terminated.
+ */
+public final class RentalContract {
+
+    private final long id;
+    private final String customerNumber;
+    private final Bike bike;
+    private final String bikeType;
+    private final long start;
+    private volatile long end = Long.MAX_VALUE;
+    private volatile long fee = -1;
+
+    /**
+     * Create an active rental contract
+     *
+     * @param id             The contract's unique id
+     * @param customerNumber The number of the customer renting the bike
+     * @param bike           The rented bike
+     * @param start          When the rental started, in epoch milliseconds
+     */
+    RentalContract(long id, String customerNumber, Bike bike, long start) {
+        this.id = id;
+        this.customerNumber = customerNumber;
+        this.bike = bike;
+        this.bikeType = bike.getType();
+        this.start = start;
+    }
+
+    /**
+     * @return the contract's unique id
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return the number of the customer renting the bike
+     */
+    public String getCustomerNumber() {
+        return customerNumber;
+    }
+
+    /**
+     * @return the rented bike
+     */
+    public Bike getBike() {
+        return bike;
+    }
+
+    /**
+     * @return the type of the rented bike
+     */
+    public String getBikeType() {
+        return bikeType;
+    }
+
+    /**
+     * @return when the rental started
+     */
+    public Instant getStart() {
+        return Instant.ofEpochMilli(start);
+    }
+
+    /**
+     * @return when the rental ended, or null if the contract is active
+     */
+    public Instant getEnd() {
+        long e = end;
+        return e == Long.MAX_VALUE ? null : Instant.ofEpochMilli(e);
+    }
+
+    /**
+     * @return when the rental started, in epoch milliseconds
+     */
+    public long getStartMillis() {
+        return start;
+    }
+
+    /**
+     * @return when the rental ended, in epoch milliseconds, or
+     *         <code>Long.MAX_VALUE</code> if the contract is active
+     */
+    public long getEndMillis() {
+        return end;
+    }
+
+    /**
+     * @return the fee charged for the rental, in cents, or -1 if it has not been
+     *         billed
+     */
+    public long getFee() {
+        return fee;
+    }
+
+    /**
+     * Records the fee charged for a terminated rental
+     *
+     * @param cents The fee, in cents
+     *
+     * @throws IllegalArgumentException if cents is negative
+     * @throws IllegalStateException    if the contract is active or has been
+     *                                  billed already
+     */
+    public synchronized void bill(long cents) {
+        if (cents < 0) {
+            throw new IllegalArgumentException("Invalid fee: " + cents);
+        }
+        if (isActive()) {
+            throw new IllegalStateException("Contract " + id + " is active");
+        }
+        if (fee >= 0) {
+            throw new IllegalStateException("Contract " + id + " has been billed");
+        }
+        this.fee = cents;
+    }
+
+    /**
+     * @return <code>true</code> if the contract has not been terminated
+     *         <code>false</code> if the contract has been terminated
+     */
+    public boolean isActive() {
+        return end == Long.MAX_VALUE;
+    }
+
+    /**
+     * @param millis A point in time, in epoch milliseconds
+     *
+     * @return <code>true</code> if the bike was rented at the specified time
+     *         <code>false</code> otherwise
+     */
+    public boolean isActiveAt(long millis) {
+        return start <= millis && millis < end;
+    }
+
+    /*
+     * Terminate the contract at the given time
+     */
+    void terminate(long millis) {
+        this.end = Math.max(millis, start);
+    }
+
+    /**
+     * @return a string representation of the contract containing the customer
+     *         number, bike, start and end
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "Rental Contract {\n\t" +
+                "id: " + id + "\n\t" +
+                "customer number: " + customerNumber + "\n\t" +
+                "bike: " + bike.getSerialNumber() + " (" + bikeType + ")\n\t" +
+                "start: " + getStart() + "\n\t" +
+                "end: " + (isActive() ? "active" : getEnd()) + "\n" +
+                '}';
+    }
+}
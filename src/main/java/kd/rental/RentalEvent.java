@@ -0,0 +1,105 @@
+package kd.rental;
+
+import kd.bike.Bike;
+
+/**
+ * The RentalEvent class is responsible for describing a request handled by the
+ * RentalManager so that it can be reported to a {@link RentalEventSink}. The
+ * human readable message is only built when asked for.
+ */
+public final class RentalEvent {
+
+    private final RentalStatus status;
+    private final String customerNumber;
+    private final String bikeType;
+    private final Bike bike;
+
+    /**
+     * Create a rental event
+     *
+     * @param status         The outcome of the request
+     * @param customerNumber The number of the customer, or null if the request
+     *                       was not made for a customer
+     * @param bikeType       The requested type of bike, or null if the request
+     *                       was not made for a bike type
+     * @param bike           The bike that was issued or returned, or null
+     */
+    public RentalEvent(RentalStatus status, String customerNumber, String bikeType, Bike bike) {
+        this.status = status;
+        this.customerNumber = customerNumber;
+        this.bikeType = bikeType;
+        this.bike = bike;
+    }
+
+    /**
+     * @return the outcome of the request
+     */
+    public RentalStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the number of the customer, or null
+     */
+    public String getCustomerNumber() {
+        return customerNumber;
+    }
+
+    /**
+     * @return the requested type of bike, or null
+     */
+    public String getBikeType() {
+        return bikeType;
+    }
+
+    /**
+     * @return the bike that was issued or returned, or null
+     */
+    public Bike getBike() {
+        return bike;
+    }
+
+    /**
+     * @return a human readable description of the event
+     */
+    public String getMessage() {
+        switch (status) {
+            case ISSUED:
+                return "Bike " + bike.getSerialNumber() + " of type " + bikeType
+                        + " successfully issued to customer " + customerNumber + ".";
+            case RETURNED:
+                return "Bike returned and contract succesfully terminated for customer " + customerNumber;
+            case NO_CUSTOMER_RECORD:
+                return "No customer record found for " + customerNumber;
+            case ALREADY_HAS_BIKE:
+                return "Customer " + customerNumber + " already has a bike on loan";
+            case INVALID_BIKE_TYPE:
+                return "Invalid type of bike: " + bikeType;
+            case NOT_ELIGIBLE:
+                return "Customer " + customerNumber + " is not eligible to rent a bike of type " + bikeType;
+            case NO_BIKES_AVAILABLE:
+                return "No bikes of type " + bikeType + " available";
+            case NO_RENTAL_CONTRACT:
+                return "No rental contract found for customer " + customerNumber;
+            case RESERVED:
+                return "Customer " + customerNumber + " is on the waitlist for a bike of type " + bikeType;
+            case RESERVATION_EXPIRED:
+                return "Reservation of customer " + customerNumber + " for a bike of type " + bikeType + " expired";
+            case RESERVATION_CANCELLED:
+                return "Reservation of customer " + customerNumber + " for a bike of type " + bikeType
+                        + " cancelled";
+            default:
+                return status.toString();
+        }
+    }
+
+    /**
+     * @return the human readable description of the event
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return getMessage();
+    }
+}
@@ -0,0 +1,12 @@
+package kd.rental;
+
+/**
+ * This interface defines a contract for receivers of the events reported by
+ * the RentalManager. Sinks are called on the thread handling the request, so
+ * slow sinks should be wrapped in an {@link AsyncRentalEventSink}.
+ */
+@FunctionalInterface
+public interface RentalEventSink {
+
+    void accept(RentalEvent event);
+}
@@ -0,0 +1,56 @@
+package kd.rental;
+
+/**
+ * The RentalRequest class is responsible for describing a request to issue a
+ * bike of a given type to a customer, as submitted in a batch.
+ */
+public final class RentalRequest {
+
+    private final String customerNumber;
+    private final String bikeType;
+
+    /**
+     * Create a rental request
+     *
+     * @param customerNumber The number of the customer to issue the bike to
+     * @param bikeType       The type of bike to be issued
+     *
+     * @throws IllegalArgumentException if customerNumber or bikeType is null
+     */
+    public RentalRequest(String customerNumber, String bikeType) {
+        if (customerNumber == null) {
+            throw new IllegalArgumentException("Customer number cannot be null");
+        }
+
+        if (bikeType == null) {
+            throw new IllegalArgumentException("Bike type cannot be null");
+        }
+
+        this.customerNumber = customerNumber;
+        this.bikeType = bikeType;
+    }
+
+    /**
+     * @return the number of the customer to issue the bike to
+     */
+    public String getCustomerNumber() {
+        return customerNumber;
+    }
+
+    /**
+     * @return the type of bike to be issued
+     */
+    public String getBikeType() {
+        return bikeType;
+    }
+
+    /**
+     * @return a string representation of the request
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return customerNumber + " " + bikeType;
+    }
+}
@@ -0,0 +1,100 @@
+package kd.rental;
+
+import kd.bike.Bike;
+
+/**
+ * The RentalResult class is responsible for describing the outcome of issuing a
+ * bike or terminating a rental contract. Results without a bike are shared
+ * constants, so rejections do not allocate.
+ */
+public final class RentalResult {
+
+    private static final RentalResult[] REJECTIONS = new RentalResult[RentalStatus.values().length];
+
+    static {
+        for (RentalStatus status : RentalStatus.values()) {
+            REJECTIONS[status.ordinal()] = new RentalResult(status, null, null);
+        }
+    }
+
+    private final RentalStatus status;
+    private final Bike bike;
+    private final RentalContract contract;
+
+    private RentalResult(RentalStatus status, Bike bike, RentalContract contract) {
+        this.status = status;
+        this.bike = bike;
+        this.contract = contract;
+    }
+
+    /**
+     * @param status The outcome of the request
+     *
+     * @return the shared result for the specified status, without a bike
+     */
+    public static RentalResult of(RentalStatus status) {
+        return REJECTIONS[status.ordinal()];
+    }
+
+    /**
+     * @param status The outcome of the request
+     * @param bike   The bike that was issued or returned
+     *
+     * @return a result for the specified status and bike
+     */
+    public static RentalResult of(RentalStatus status, Bike bike) {
+        return new RentalResult(status, bike, null);
+    }
+
+    /**
+     * @param status   The outcome of the request
+     * @param contract The rental contract that was opened or terminated
+     *
+     * @return a result for the specified status, contract and its bike
+     */
+    public static RentalResult of(RentalStatus status, RentalContract contract) {
+        return new RentalResult(status, contract.getBike(), contract);
+    }
+
+    /**
+     * @return the outcome of the request
+     */
+    public RentalStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the bike that was issued or returned, or null if the request was
+     *         rejected
+     */
+    public Bike getBike() {
+        return bike;
+    }
+
+    /**
+     * @return the rental contract that was opened or terminated, or null if the
+     *         request was rejected
+     */
+    public RentalContract getContract() {
+        return contract;
+    }
+
+    /**
+     * @return true if a bike was issued or returned
+     * @return false if the request was rejected
+     */
+    public boolean isSuccess() {
+        return status.isSuccess();
+    }
+
+    /**
+     * @return a string representation of the result containing the status and
+     *         the bike's serial number
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return status + (bike == null ? "" : " " + bike.getSerialNumber());
+    }
+}
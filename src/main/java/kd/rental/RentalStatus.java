@@ -0,0 +1,49 @@
+package kd.rental;
+
+/**
+ * The RentalStatus enum lists the possible outcomes of issuing a bike or
+ * terminating a rental contract.
+ */
+public enum RentalStatus {
+
+    /** A bike was issued to the customer */
+    ISSUED,
+
+    /** The customer returned their bike and the contract was terminated */
+    RETURNED,
+
+    /** No customer record exists for the customer number */
+    NO_CUSTOMER_RECORD,
+
+    /** The customer already has a bike on loan */
+    ALREADY_HAS_BIKE,
+
+    /** The bike type is not a known type of bike */
+    INVALID_BIKE_TYPE,
+
+    /** The customer is not eligible to rent the bike type */
+    NOT_ELIGIBLE,
+
+    /** No bike of the requested type is available */
+    NO_BIKES_AVAILABLE,
+
+    /** The customer has no rental contract to terminate */
+    NO_RENTAL_CONTRACT,
+
+    /** No bike was available and the customer joined the waitlist */
+    RESERVED,
+
+    /** No bike became available before the reservation timed out */
+    RESERVATION_EXPIRED,
+
+    /** The customer cancelled the reservation */
+    RESERVATION_CANCELLED;
+
+    /**
+     * @return true if the status is the outcome of a successful issue or return
+     * @return false if the request was rejected
+     */
+    public boolean isSuccess() {
+        return this == ISSUED || this == RETURNED;
+    }
+}
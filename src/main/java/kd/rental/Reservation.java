@@ -0,0 +1,165 @@
+package kd.rental;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Reservation class is responsible for representing a customer's place on
+ * the waitlist for a type of bike. A reservation ends exactly once: with the
+ * bike issued when it reaches the head of the waitlist, or when it is rejected,
+ * expires or is cancelled. Its result completes at that moment.
+ */
+public final class Reservation {
+
+    private static final int WAITING = 0;
+    private static final int SERVING = 1;
+    private static final int DONE = 2;
+
+    private final String customerNumber;
+    private final String bikeType;
+    private final long deadline;
+    private final AtomicInteger state;
+    private final CompletableFuture<RentalResult> result = new CompletableFuture<RentalResult>();
+    private volatile Future<?> expiry;
+
+    /**
+     * Create a waiting reservation
+     *
+     * @param customerNumber The number of the customer waiting for a bike
+     * @param bikeType       The type of bike the customer waits for
+     * @param deadline       When the reservation expires, in epoch milliseconds
+     */
+    Reservation(String customerNumber, String bikeType, long deadline) {
+        this.customerNumber = customerNumber;
+        this.bikeType = bikeType;
+        this.deadline = deadline;
+        this.state = new AtomicInteger(WAITING);
+    }
+
+    /**
+     * Create a reservation that ended immediately, because a bike could be issued
+     * straight away or the request was rejected
+     *
+     * @param customerNumber The number of the customer
+     * @param bikeType       The requested type of bike
+     * @param outcome        The outcome of the request
+     *
+     * @return the ended reservation
+     */
+    public static Reservation ended(String customerNumber, String bikeType, RentalResult outcome) {
+        Reservation reservation = new Reservation(customerNumber, bikeType, System.currentTimeMillis());
+        reservation.state.set(DONE);
+        reservation.result.complete(outcome);
+        return reservation;
+    }
+
+    /**
+     * @return the number of the customer waiting for a bike
+     */
+    public String getCustomerNumber() {
+        return customerNumber;
+    }
+
+    /**
+     * @return the type of bike the customer waits for
+     */
+    public String getBikeType() {
+        return bikeType;
+    }
+
+    /**
+     * @return when the reservation expires, in epoch milliseconds
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @return <code>true</code> if the customer is still on the waitlist
+     *         <code>false</code> if the reservation has ended
+     */
+    public boolean isWaiting() {
+        return state.get() != DONE;
+    }
+
+    /**
+     * @return a future completed with the outcome of the reservation: the issued
+     *         bike, a rejection, expiry or cancellation
+     */
+    public CompletableFuture<RentalResult> getResult() {
+        return result.copy();
+    }
+
+    /*
+     * The timer task expiring the reservation, null until it is scheduled
+     */
+    Future<?> getExpiry() {
+        return expiry;
+    }
+
+    void setExpiry(Future<?> expiry) {
+        this.expiry = expiry;
+    }
+
+    /*
+     * Take the reservation off the waitlist to serve it, returns false if it has
+     * already ended
+     */
+    boolean claim() {
+        return state.compareAndSet(WAITING, SERVING);
+    }
+
+    /*
+     * Put a claimed reservation back to waiting, returns false if it should
+     * have expired meanwhile
+     */
+    boolean unclaim() {
+        state.set(WAITING);
+        return System.currentTimeMillis() < deadline;
+    }
+
+    /*
+     * End a reservation, either claimed for serving or still waiting; the
+     * caller completes its result once the reservation left the waitlist
+     */
+    boolean end() {
+        int s = state.get();
+        while (s != DONE) {
+            if (state.compareAndSet(s, DONE)) {
+                return true;
+            }
+            s = state.get();
+        }
+        return false;
+    }
+
+    /*
+     * End a reservation that is still waiting, i.e. not being served
+     */
+    boolean endWaiting() {
+        return state.compareAndSet(WAITING, DONE);
+    }
+
+    /*
+     * Complete the result of an ended reservation
+     */
+    void complete(RentalResult outcome) {
+        result.complete(outcome);
+    }
+
+    /**
+     * @return a string representation of the reservation containing the customer
+     *         number, bike type and state
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "Reservation {\n\t" +
+                "customer number: " + customerNumber + "\n\t" +
+                "bike type: " + bikeType + "\n\t" +
+                "waiting: " + (isWaiting() ? "yes" : "no") + "\n" +
+                '}';
+    }
+}
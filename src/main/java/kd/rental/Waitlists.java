@@ -0,0 +1,248 @@
+package kd.rental;
+
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The Waitlists class is responsible for keeping one first come, first served
+ * waitlist of reservations per bike type. Each customer holds at most one
+ * reservation at a time.
+ *
+ * The waitlists are lock-free deques: joining appends to the tail and serving
+ * claims from the head, so customers joining never block bikes being returned
+ * and vice versa. A reservation that could not be served after all, because
+ * another counter took the bike first, is put back at the head so it keeps its
+ * place. Reservations expire after their timeout without a thread of their
+ * own waiting for them: a shared timer expires them, and its task is cancelled
+ * when a reservation ends earlier.
+ */
+public final class Waitlists {
+
+    private static final RentalResult EXPIRED = RentalResult.of(RentalStatus.RESERVATION_EXPIRED);
+    private static final RentalResult CANCELLED = RentalResult.of(RentalStatus.RESERVATION_CANCELLED);
+    private static final ScheduledThreadPoolExecutor TIMER = newTimer();
+
+    private final Map<String, Line> lines = new ConcurrentHashMap<String, Line>();
+    private final Map<String, Reservation> byCustomer = new ConcurrentHashMap<String, Reservation>();
+    private final Consumer<Reservation> onLeave;
+    private volatile boolean closed;
+
+    /**
+     * Create empty waitlists
+     */
+    public Waitlists() {
+        this(reservation -> {
+        });
+    }
+
+    /**
+     * Create empty waitlists
+     *
+     * @param onLeave Receives every reservation that expired or was cancelled
+     */
+    public Waitlists(Consumer<Reservation> onLeave) {
+        this.onLeave = onLeave;
+    }
+
+    /**
+     * Puts a customer on the waitlist for a bike type
+     *
+     * @param customerNumber The number of the customer
+     * @param bikeType       The type of bike the customer waits for
+     * @param timeoutMillis  How long the customer is willing to wait, in
+     *                       milliseconds
+     *
+     * @return the new reservation, or the customer's existing reservation if the
+     *         customer is already waiting
+     *
+     * @throws IllegalArgumentException if timeoutMillis is not positive
+     * @throws IllegalStateException    if the waitlists are closed
+     */
+    public Reservation add(String customerNumber, String bikeType, long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Reservation timeout must be positive");
+        }
+        if (closed) {
+            throw new IllegalStateException("Waitlists are closed");
+        }
+
+        Reservation reservation = new Reservation(customerNumber, bikeType,
+                System.currentTimeMillis() + timeoutMillis);
+        Reservation existing = byCustomer.putIfAbsent(customerNumber, reservation);
+        if (existing != null) {
+            return existing;
+        }
+
+        Line line = lineOf(bikeType);
+        line.waiting.incrementAndGet();
+        line.queue.offerLast(reservation);
+        reservation.setExpiry(TIMER.schedule(() -> expire(reservation), timeoutMillis, TimeUnit.MILLISECONDS));
+        return reservation;
+    }
+
+    /**
+     * Serves the waitlist for a bike type from the head, until a reservation
+     * cannot be served because no bike is available or the waitlist is empty.
+     * Reservations the issuer rejects for another reason end with that
+     * rejection.
+     *
+     * @param bikeType The type of bike
+     * @param issuer   Tries to issue a bike for a reservation
+     *
+     * @return the number of reservations served with a bike
+     */
+    public int serve(String bikeType, Function<Reservation, RentalResult> issuer) {
+        Line line = lines.get(bikeType);
+        if (line == null) {
+            return 0;
+        }
+
+        int served = 0;
+        Reservation reservation;
+        while ((reservation = claimNext(line)) != null) {
+            RentalResult result = issuer.apply(reservation);
+            if (result.getStatus() == RentalStatus.NO_BIKES_AVAILABLE) {
+                requeue(line, reservation);
+                break;
+            }
+            if (reservation.end()) {
+                left(line, reservation);
+                reservation.complete(result);
+            }
+            if (result.isSuccess()) {
+                served++;
+            }
+        }
+        return served;
+    }
+
+    /**
+     * Takes a customer off the waitlist
+     *
+     * @param customerNumber The number of the customer
+     *
+     * @return <code>true</code> if the customer's reservation was cancelled
+     *         <code>false</code> if the customer was not waiting or is being
+     *         served
+     */
+    public boolean cancel(String customerNumber) {
+        Reservation reservation = byCustomer.get(customerNumber);
+        if (reservation == null || !reservation.endWaiting()) {
+            return false;
+        }
+
+        Line line = lineOf(reservation.getBikeType());
+        line.queue.remove(reservation);
+        left(line, reservation);
+        reservation.complete(CANCELLED);
+        onLeave.accept(reservation);
+        return true;
+    }
+
+    /**
+     * Ends every reservation still waiting as expired and rejects new ones. The
+     * reservations ended are not passed to the onLeave consumer, as the
+     * waitlists are closed when their owner discards them. Must not be called
+     * while reservations are being served.
+     */
+    public void close() {
+        closed = true;
+        for (Reservation reservation : byCustomer.values()) {
+            if (reservation.endWaiting()) {
+                Line line = lineOf(reservation.getBikeType());
+                line.queue.remove(reservation);
+                left(line, reservation);
+                reservation.complete(EXPIRED);
+            }
+        }
+    }
+
+    /**
+     * @param customerNumber The number of the customer
+     *
+     * @return the customer's reservation, or null if the customer is not waiting
+     */
+    public Reservation getReservation(String customerNumber) {
+        return byCustomer.get(customerNumber);
+    }
+
+    /**
+     * @param bikeType The type of bike
+     *
+     * @return the number of customers waiting for a bike of the specified type
+     */
+    public int getNumOfWaiting(String bikeType) {
+        Line line = lines.get(bikeType);
+        return line == null ? 0 : line.waiting.get();
+    }
+
+    private Reservation claimNext(Line line) {
+        Reservation reservation;
+        while ((reservation = line.queue.pollFirst()) != null) {
+
+            /* Skip reservations that expired or were cancelled */
+            if (reservation.claim()) {
+                return reservation;
+            }
+        }
+        return null;
+    }
+
+    private void requeue(Line line, Reservation reservation) {
+        if (reservation.unclaim()) {
+            line.queue.offerFirst(reservation);
+        } else {
+            expire(reservation);
+        }
+    }
+
+    private void expire(Reservation reservation) {
+        if (reservation.endWaiting()) {
+            Line line = lineOf(reservation.getBikeType());
+            line.queue.remove(reservation);
+            left(line, reservation);
+            reservation.complete(EXPIRED);
+            onLeave.accept(reservation);
+        }
+    }
+
+    private void left(Line line, Reservation reservation) {
+        byCustomer.remove(reservation.getCustomerNumber(), reservation);
+        line.waiting.decrementAndGet();
+        Future<?> expiry = reservation.getExpiry();
+        if (expiry != null) {
+            expiry.cancel(false);
+        }
+    }
+
+    private Line lineOf(String bikeType) {
+        return lines.computeIfAbsent(bikeType, k -> new Line());
+    }
+
+    private static ScheduledThreadPoolExecutor newTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "reservation-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    /*
+     * The waitlist of one bike type
+     */
+    private static final class Line {
+
+        final Deque<Reservation> queue = new ConcurrentLinkedDeque<Reservation>();
+        final AtomicInteger waiting = new AtomicInteger();
+    }
+}
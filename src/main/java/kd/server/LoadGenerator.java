@@ -0,0 +1,159 @@
+package kd.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import kd.RentalManager;
+import kd.metrics.Metrics;
+
+/**
+ * The LoadGenerator class is responsible for measuring the throughput and
+ * latency of the RentalServer locally. It starts a server seeded with
+ * synthetic data on a free port and opens a number of kiosk connections, each
+ * for a customer of its own. Every connection repeatedly issues a road bike,
+ * checks availability, looks up its customer record and returns the bike,
+ * waiting for each response before sending the next command.
+ *
+ * Usage: <code>LoadGenerator [connections] [requests per connection]</code>.
+ * With <code>-Dkd.metrics=true</code> the server side latencies per operation
+ * are printed as well.
+ */
+public final class LoadGenerator {
+
+    private static final String[] COMMANDS = { "ISSUE %s road", "AVAILABLE road", "CUSTOMER %s", "RETURN %s" };
+
+    private LoadGenerator() {
+    }
+
+    /**
+     * Runs a load test and prints the throughput and latency percentiles
+     *
+     * @param args The number of connections (default 64) and the number of
+     *             requests per connection (default 10000)
+     */
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        if (Boolean.getBoolean("kd.metrics")) {
+            Metrics.enable();
+        }
+
+        List<String> customerNumbers = RentalServer.seed(connections, connections);
+        try (RentalServer server = new RentalServer(0)) {
+            server.start();
+
+            /* Warm up, then measure */
+            run(server.getPort(), customerNumbers, Math.max(requests / 10, COMMANDS.length));
+            Metrics.reset();
+            long start = System.nanoTime();
+            long[] latencies = run(server.getPort(), customerNumbers, requests);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            Arrays.sort(latencies);
+            System.out.printf("%d connections (%s threads), %d requests in %.2f s: %.0f requests/s%n",
+                    connections, ThreadPerTask.isVirtual() ? "virtual" : "platform", latencies.length, seconds,
+                    latencies.length / seconds);
+            System.out.printf("latency p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                    percentile(latencies, 50) / 1e3, percentile(latencies, 99) / 1e3,
+                    percentile(latencies, 99.9) / 1e3, latencies[latencies.length - 1] / 1e3);
+            if (Metrics.isEnabled()) {
+                System.out.print(Metrics.snapshot());
+            }
+        } finally {
+            RentalManager.reset();
+        }
+    }
+
+    /**
+     * Sends requests over one connection per customer, all connections at the
+     * same time
+     *
+     * @param port            The port of a server on the loopback address
+     * @param customerNumbers The customers, one per connection
+     * @param requests        The number of requests per connection
+     *
+     * @return the latency of every request, in nanoseconds
+     */
+    public static long[] run(int port, List<String> customerNumbers, int requests) throws Exception {
+        CountDownLatch ready = new CountDownLatch(customerNumbers.size());
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+
+        ExecutorService kiosks = ThreadPerTask.newExecutor("load-kiosk");
+        try {
+            for (String customerNumber : customerNumbers) {
+                results.add(kiosks.submit(() -> kiosk(port, customerNumber, requests, ready, go)));
+            }
+            ready.await();
+            go.countDown();
+
+            long[] latencies = new long[customerNumbers.size() * requests];
+            int i = 0;
+            for (Future<long[]> result : results) {
+                long[] kioskLatencies = result.get();
+                System.arraycopy(kioskLatencies, 0, latencies, i, kioskLatencies.length);
+                i += kioskLatencies.length;
+            }
+            return latencies;
+        } finally {
+            kiosks.shutdownNow();
+        }
+    }
+
+    private static long[] kiosk(int port, String customerNumber, int requests, CountDownLatch ready,
+            CountDownLatch go) throws IOException, InterruptedException {
+
+        long[] latencies = new long[requests];
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            BufferedWriter out = new BufferedWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII));
+
+            String[] commands = new String[COMMANDS.length];
+            for (int c = 0; c < commands.length; c++) {
+                commands[c] = String.format(COMMANDS[c], customerNumber) + "\n";
+            }
+
+            ready.countDown();
+            go.await();
+
+            for (int i = 0; i < requests; i++) {
+                long start = System.nanoTime();
+                out.write(commands[i % commands.length]);
+                out.flush();
+                String response = in.readLine();
+                latencies[i] = System.nanoTime() - start;
+
+                if (response == null || response.startsWith("ERROR")) {
+                    throw new IOException("Unexpected response to " + commands[i % commands.length].trim()
+                            + ": " + response);
+                }
+            }
+
+            /* Leave no rental behind for the next run */
+            out.write("RETURN " + customerNumber + "\nQUIT\n");
+            out.flush();
+            in.readLine();
+        }
+        return latencies;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
@@ -0,0 +1,296 @@
+package kd.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import kd.RentalManager;
+import kd.bike.BikeFactory;
+import kd.bike.BikeType;
+import kd.customer.CustomerRecord;
+import kd.customer.Today;
+import kd.rental.RentalResult;
+import kd.rental.RentalStatus;
+
+/**
+ * The RentalServer class is responsible for serving kiosks over a local
+ * socket. Each connection is handled in a thread of its own, a virtual thread
+ * where the runtime supports them, and sends one command per line:
+ *
+ * <pre>
+ * ISSUE &lt;customer number&gt; &lt;bike type&gt;   ISSUED &lt;serial number&gt; | &lt;rejection status&gt;
+ * RETURN &lt;customer number&gt;              RETURNED &lt;serial number&gt; | NO_RENTAL_CONTRACT
+ * AVAILABLE &lt;bike type&gt;                  OK &lt;count&gt; | INVALID_BIKE_TYPE
+ * CUSTOMER &lt;customer number&gt;            OK &lt;first name&gt; &lt;last name&gt; &lt;dd/MM/yyyy&gt; GOLD|STANDARD | NO_CUSTOMER_RECORD
+ * QUIT                                   closes the connection
+ * </pre>
+ *
+ * Every command is answered with exactly one line. Malformed commands are
+ * answered with a line starting with ERROR. A line longer than
+ * {@link #MAX_LINE_LENGTH} characters is answered with an ERROR line and the
+ * connection is closed. The server only listens on the loopback address.
+ */
+public final class RentalServer implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 7878;
+
+    // The longest command line accepted, without line terminator
+    public static final int MAX_LINE_LENGTH = 256;
+
+    // How long to wait before accepting again after a failed accept
+    private static final long ACCEPT_BACKOFF_MILLIS = 100;
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+
+    /**
+     * Create a server listening on the loopback address. Connections are accepted
+     * once the server is started.
+     *
+     * @param port The port to listen on, or 0 for any free port
+     *
+     * @throws IOException if the port cannot be bound
+     */
+    public RentalServer(int port) throws IOException {
+        this.serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        this.connections = ThreadPerTask.newExecutor("rental-connection");
+        this.acceptor = new Thread(this::accept, "rental-server");
+    }
+
+    /**
+     * Starts accepting connections
+     */
+    public void start() {
+        acceptor.start();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : openSockets) {
+            socket.close();
+        }
+        connections.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                /*
+                 * Closed while waiting for a connection, or out of resources such
+                 * as file descriptors; back off instead of failing again at once
+                 */
+                if (serverSocket.isClosed() || !backOff()) {
+                    return;
+                }
+                continue;
+            }
+
+            openSockets.add(socket);
+            try {
+                connections.execute(() -> serve(socket));
+            } catch (RejectedExecutionException e) {
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            BufferedWriter out = new BufferedWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII));
+
+            StringBuilder line = new StringBuilder();
+            while (readLine(in, line) && !line.toString().trim().equalsIgnoreCase("QUIT")) {
+                out.write(line.length() > MAX_LINE_LENGTH ? "ERROR line too long" : handle(line.toString()));
+                out.write('\n');
+                out.flush();
+                if (line.length() > MAX_LINE_LENGTH) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            /* The kiosk disconnected */
+        } finally {
+            openSockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    /*
+     * Read a line into the buffer, without line terminator. Reading stops once
+     * the line is longer than MAX_LINE_LENGTH, so a kiosk cannot make the server
+     * buffer an unbounded line. Returns false at the end of the stream.
+     */
+    private static boolean readLine(BufferedReader in, StringBuilder line) throws IOException {
+        line.setLength(0);
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (c != '\r') {
+                line.append((char) c);
+                if (line.length() > MAX_LINE_LENGTH) {
+                    return true;
+                }
+            }
+        }
+        return c != -1 || line.length() > 0;
+    }
+
+    /*
+     * Wait before the next accept; returns false if interrupted
+     */
+    private static boolean backOff() {
+        try {
+            Thread.sleep(ACCEPT_BACKOFF_MILLIS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Executes one command against the RentalManager
+     *
+     * @param line The command line
+     *
+     * @return the response line, without line terminator
+     */
+    static String handle(String line) {
+        String[] args = line.trim().split("\\s+");
+        String command = args[0].toUpperCase(Locale.ROOT);
+
+        switch (command) {
+            case "ISSUE":
+                if (args.length != 3) {
+                    return "ERROR usage: ISSUE <customer number> <bike type>";
+                }
+                return describe(RentalManager.issueBike(args[1], args[2]));
+
+            case "RETURN":
+                if (args.length != 2) {
+                    return "ERROR usage: RETURN <customer number>";
+                }
+                return describe(RentalManager.terminateRental(args[1]));
+
+            case "AVAILABLE":
+                if (args.length != 2) {
+                    return "ERROR usage: AVAILABLE <bike type>";
+                }
+                if (BikeType.of(args[1]) == null) {
+                    return RentalStatus.INVALID_BIKE_TYPE.name();
+                }
+                return "OK " + RentalManager.getNumOfAvailableBikes(args[1]);
+
+            case "CUSTOMER":
+                if (args.length != 2) {
+                    return "ERROR usage: CUSTOMER <customer number>";
+                }
+                CustomerRecord record = RentalManager.getCustomerRecord(args[1]);
+                if (record == null) {
+                    return RentalStatus.NO_CUSTOMER_RECORD.name();
+                }
+                return "OK " + record.getName().getFirstName() + " " + record.getName().getLastName() + " "
+                        + LocalDate.ofEpochDay(Today.epochDayOf(record.getDateOfBirth())).format(DATE_FORMAT) + " "
+                        + (record.isGoldClass() ? "GOLD" : "STANDARD");
+
+            default:
+                return "ERROR unknown command: " + args[0];
+        }
+    }
+
+    private static String describe(RentalResult result) {
+        if (!result.isSuccess()) {
+            return result.getStatus().name();
+        }
+        return result.getStatus().name() + " " + result.getBike().getSerialNumber();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            /* Nothing left to release */
+        }
+    }
+
+    /**
+     * Adds a synthetic fleet and Gold Class customers old enough to rent electric
+     * bikes to the RentalManager, for trying out the server and for load tests
+     *
+     * @param customers    The number of customer records to add
+     * @param bikesPerType The number of road bikes and of electric bikes to add
+     *
+     * @return the numbers of the customers added
+     */
+    public static List<String> seed(int customers, int bikesPerType) throws ParseException {
+        for (int i = 0; i < bikesPerType; i++) {
+            RentalManager.addBike(BikeFactory.getInstance(BikeFactory.ROAD_BIKE, "load-r" + i));
+            RentalManager.addBike(BikeFactory.getInstance(BikeFactory.ELECTRIC_BIKE, "load-e" + i));
+        }
+
+        List<String> customerNumbers = new ArrayList<String>(customers);
+        for (int i = 0; i < customers; i++) {
+            CustomerRecord record = new CustomerRecord("Load", "Tester", "01/01/1980", true);
+            RentalManager.addCustomerRecord(record);
+            customerNumbers.add(record.getCustomerNumber().toString());
+        }
+        return customerNumbers;
+    }
+
+    /**
+     * Starts a server
+     *
+     * @param args The port to listen on (default 7878), optionally followed by
+     *             the number of synthetic customers and bikes per type to seed
+     */
+    public static void main(String[] args) throws IOException, ParseException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        if (args.length > 2) {
+            List<String> customerNumbers = seed(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            System.out.println("Seeded customers " + customerNumbers.get(0) + " to "
+                    + customerNumbers.get(customerNumbers.size() - 1));
+        }
+
+        RentalServer server = new RentalServer(port);
+        server.start();
+        System.out.println("Listening on port " + server.getPort()
+                + (ThreadPerTask.isVirtual() ? " with virtual threads" : " with platform threads"));
+    }
+}
@@ -0,0 +1,64 @@
+package kd.server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The ThreadPerTask class is responsible for creating executors that run
+ * every task in a thread of its own. Virtual threads are used when the
+ * runtime provides them (Java 21 and later), otherwise daemon platform threads
+ * from a cached pool.
+ */
+final class ThreadPerTask {
+
+    // Looked up at runtime, the project is compiled for Java 17
+    private static final Method VIRTUAL_EXECUTOR = virtualExecutor();
+
+    private ThreadPerTask() {
+    }
+
+    /**
+     * @param name The name prefix for platform threads
+     *
+     * @return an executor starting a thread per task
+     */
+    static ExecutorService newExecutor(String name) {
+        if (VIRTUAL_EXECUTOR != null) {
+            try {
+                return (ExecutorService) VIRTUAL_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                /* Fall back to platform threads */
+            }
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return true if tasks run in virtual threads
+     */
+    static boolean isVirtual() {
+        return VIRTUAL_EXECUTOR != null;
+    }
+
+    /*
+     * The factory method for virtual thread executors, or null if virtual
+     * threads are missing or disabled preview features
+     */
+    private static Method virtualExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ((ExecutorService) method.invoke(null)).shutdown();
+            return method;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
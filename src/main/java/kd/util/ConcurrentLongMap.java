@@ -0,0 +1,370 @@
+package kd.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongFunction;
+
+/**
+ * The ConcurrentLongMap class is responsible for mapping primitive long keys to
+ * values without boxing the keys, so lookups neither hash objects nor
+ * allocate.
+ *
+ * The map is split in segments by key hash. Each segment is an open addressing
+ * table with linear probing. Lookups are lock-free: they read the current
+ * table of a segment and probe it without locking. Updates lock their segment
+ * only. Removed entries keep their key as a tombstone until the segment is
+ * rebuilt, so a probe sequence never changes under a reader.
+ *
+ * <code>Long.MIN_VALUE</code> is reserved and cannot be used as a key. Null
+ * values are not allowed.
+ *
+ * @param <V> The type of the values
+ */
+public final class ConcurrentLongMap<V> {
+
+    private static final long FREE = Long.MIN_VALUE;
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int INITIAL_CAPACITY = 16;
+
+    @SuppressWarnings("unchecked")
+    private final Segment<V>[] segments = (Segment<V>[]) new Segment<?>[SEGMENTS];
+
+    /**
+     * Create an empty map
+     */
+    public ConcurrentLongMap() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<V>();
+        }
+    }
+
+    /**
+     * @param key The key to look up
+     *
+     * @return the value mapped to the key, or null if there is none
+     */
+    public V get(long key) {
+        long hash = mix(key);
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))].get(key, hash);
+    }
+
+    /**
+     * @param key The key to look up
+     *
+     * @return true if a value is mapped to the key
+     */
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Maps a value to a key
+     *
+     * @param key   The key
+     * @param value The value
+     *
+     * @return the value previously mapped to the key, or null if there was none
+     *
+     * @throws IllegalArgumentException if key is <code>Long.MIN_VALUE</code> or
+     *                                  value is null
+     */
+    public V put(long key, V value) {
+        check(key, value);
+        long hash = mix(key);
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))].put(key, hash, value, false);
+    }
+
+    /**
+     * Maps a value to a key unless a value is already mapped to it
+     *
+     * @param key   The key
+     * @param value The value
+     *
+     * @return the value already mapped to the key, or null if the value was
+     *         mapped
+     *
+     * @throws IllegalArgumentException if key is <code>Long.MIN_VALUE</code> or
+     *                                  value is null
+     */
+    public V putIfAbsent(long key, V value) {
+        check(key, value);
+        long hash = mix(key);
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))].put(key, hash, value, true);
+    }
+
+    /**
+     * Returns the value mapped to a key, mapping a computed value first if there
+     * is none. The value is computed at most once per key, while holding the
+     * lock of the key's segment.
+     *
+     * @param key             The key
+     * @param mappingFunction Computes the value of a key without a value
+     *
+     * @return the value mapped to the key
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+
+        long hash = mix(key);
+        Segment<V> segment = segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+        synchronized (segment) {
+            value = segment.get(key, hash);
+            if (value == null) {
+                value = mappingFunction.apply(key);
+                check(key, value);
+                segment.put(key, hash, value, true);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Removes the value mapped to a key
+     *
+     * @param key The key
+     *
+     * @return the value that was mapped to the key, or null if there was none
+     */
+    public V remove(long key) {
+        long hash = mix(key);
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))].remove(key, hash, null);
+    }
+
+    /**
+     * Removes the value mapped to a key if it is the specified value
+     *
+     * @param key   The key
+     * @param value The value expected to be mapped to the key
+     *
+     * @return true if the value was removed
+     */
+    public boolean remove(long key, V value) {
+        long hash = mix(key);
+        return value != null && segments[(int) (hash >>> (64 - SEGMENT_BITS))].remove(key, hash, value) != null;
+    }
+
+    /**
+     * @return the number of keys mapped to a value
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * @return true if no key is mapped to a value
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Removes all mappings
+     */
+    public void clear() {
+        for (Segment<V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Hands every mapping to the consumer. Mappings made or removed while
+     * iterating may or may not be seen.
+     *
+     * @param consumer Receives each key and its value
+     */
+    public void forEach(LongObjConsumer<? super V> consumer) {
+        for (Segment<V> segment : segments) {
+            segment.forEach(consumer);
+        }
+    }
+
+    /**
+     * @return a snapshot of the values
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<V>(size());
+        forEach((key, value) -> values.add(value));
+        return values;
+    }
+
+    private static void check(long key, Object value) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Reserved key: " + key);
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Empty value");
+        }
+    }
+
+    /*
+     * Spread the key bits over the whole hash (the finalizer of MurmurHash3)
+     */
+    private static long mix(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * The LongObjConsumer interface is a consumer of a primitive long key and
+     * its value
+     *
+     * @param <V> The type of the values
+     */
+    @FunctionalInterface
+    public interface LongObjConsumer<V> {
+
+        /**
+         * @param key   The key
+         * @param value The value mapped to the key
+         */
+        void accept(long key, V value);
+    }
+
+    /*
+     * An open addressing table, replaced as a whole when it grows
+     */
+    private static final class Table<V> {
+
+        final AtomicLongArray keys;
+        final AtomicReferenceArray<V> values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new AtomicLongArray(capacity);
+            values = new AtomicReferenceArray<V>(capacity);
+            mask = capacity - 1;
+            for (int i = 0; i < capacity; i++) {
+                keys.set(i, FREE);
+            }
+        }
+    }
+
+    /*
+     * One segment of the map. Slots are claimed by writing the key first and the
+     * value second, so a reader that sees a key without value treats the slot as
+     * not mapped yet.
+     */
+    private static final class Segment<V> {
+
+        private volatile Table<V> table = new Table<V>(INITIAL_CAPACITY);
+        private volatile int size;
+        private int used; // slots with a key, including tombstones
+
+        V get(long key, long hash) {
+            Table<V> t = table;
+            int i = (int) hash & t.mask;
+            long k;
+            while ((k = t.keys.get(i)) != FREE) {
+                if (k == key) {
+                    return t.values.get(i);
+                }
+                i = (i + 1) & t.mask;
+            }
+            return null;
+        }
+
+        synchronized V put(long key, long hash, V value, boolean onlyIfAbsent) {
+            Table<V> t = table;
+            int i = (int) hash & t.mask;
+            long k;
+            while ((k = t.keys.get(i)) != FREE) {
+                if (k == key) {
+                    V previous = t.values.get(i);
+                    if (previous == null) {
+                        size++;
+                    }
+                    if (previous == null || !onlyIfAbsent) {
+                        t.values.set(i, value);
+                    }
+                    return previous;
+                }
+                i = (i + 1) & t.mask;
+            }
+
+            t.keys.set(i, key);
+            t.values.set(i, value);
+            size++;
+            if (++used > (t.mask + 1) * 3 / 4) {
+                rebuild();
+            }
+            return null;
+        }
+
+        synchronized V remove(long key, long hash, V expected) {
+            Table<V> t = table;
+            int i = (int) hash & t.mask;
+            long k;
+            while ((k = t.keys.get(i)) != FREE) {
+                if (k == key) {
+                    V previous = t.values.get(i);
+                    if (previous == null || (expected != null && previous != expected && !previous.equals(expected))) {
+                        return null;
+                    }
+                    t.values.set(i, null);
+                    size--;
+                    return previous;
+                }
+                i = (i + 1) & t.mask;
+            }
+            return null;
+        }
+
+        synchronized void clear() {
+            table = new Table<V>(INITIAL_CAPACITY);
+            size = 0;
+            used = 0;
+        }
+
+        void forEach(LongObjConsumer<? super V> consumer) {
+            Table<V> t = table;
+            for (int i = 0; i <= t.mask; i++) {
+                V value = t.values.get(i);
+                if (value != null) {
+                    consumer.accept(t.keys.get(i), value);
+                }
+            }
+        }
+
+        /*
+         * Copy the live entries to a new table, doubling its capacity unless most
+         * used slots are tombstones
+         */
+        private void rebuild() {
+            Table<V> old = table;
+            int capacity = old.mask + 1;
+            if (size > capacity / 4) {
+                capacity *= 2;
+            }
+
+            Table<V> t = new Table<V>(capacity);
+            for (int i = 0; i <= old.mask; i++) {
+                V value = old.values.get(i);
+                if (value != null) {
+                    long key = old.keys.get(i);
+                    int j = (int) mix(key) & t.mask;
+                    while (t.keys.get(j) != FREE) {
+                        j = (j + 1) & t.mask;
+                    }
+                    t.keys.set(j, key);
+                    t.values.set(j, value);
+                }
+            }
+            used = size;
+            table = t;
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package kd.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * The PersistentMap class is responsible for mapping keys to values in an
+ * immutable map that is cheap to change: adding or removing an entry returns a
+ * new map that shares all but a few nodes with the old one, and the old map
+ * stays valid and unchanged.
+ *
+ * The map is a hash array mapped trie. Each node covers 5 bits of the key
+ * hash and stores its entries and child nodes in an array that only has room
+ * for the ones present, so a change copies at most one small array per level,
+ * about log32(n) levels. Keys with equal hashes share a collision node.
+ *
+ * Null keys and values are not allowed.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+public final class PersistentMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int MAX_DEPTH = 32 / BITS + 2;
+
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<Object, Object>(BitmapNode.EMPTY, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * @param key The key to look up
+     *
+     * @return the value mapped to the key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        return (V) root.find(0, hash(key), key);
+    }
+
+    /**
+     * @param key The key to look up
+     *
+     * @return true if a value is mapped to the key
+     */
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @param key   The key
+     * @param value The value to map to the key
+     *
+     * @return a map with the key mapped to the value, this map if it already
+     *         was
+     */
+    public PersistentMap<K, V> plus(K key, V value) {
+        Objects.requireNonNull(value);
+        boolean[] added = new boolean[1];
+        Node node = root.assoc(0, hash(key), key, value, added);
+        return node == root ? this : new PersistentMap<K, V>(node, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @param key The key
+     *
+     * @return a map without the key, this map if it did not contain the key
+     */
+    public PersistentMap<K, V> minus(Object key) {
+        Node node = root.without(0, hash(key), key);
+        if (node == root) {
+            return this;
+        }
+        return node == null ? empty() : new PersistentMap<K, V>(node, size - 1);
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the map has no entries
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Performs an action for every entry, in no particular order
+     *
+     * @param action The action to perform
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        EntryIterator it = new EntryIterator(root);
+        while (it.hasNext()) {
+            Object[] array = it.next();
+            action.accept((K) array[it.index], (V) array[it.index + 1]);
+        }
+    }
+
+    /**
+     * @return an unmodifiable <code>java.util.Map</code> view of this map
+     */
+    public Map<K, V> asMap() {
+        return new AbstractMap<K, V>() {
+
+            @Override
+            public V get(Object key) {
+                return PersistentMap.this.get(key);
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return PersistentMap.this.containsKey(key);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Set<Map.Entry<K, V>> entrySet() {
+                return new AbstractSet<Map.Entry<K, V>>() {
+
+                    @Override
+                    public Iterator<Map.Entry<K, V>> iterator() {
+                        return entryIterator();
+                    }
+
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return an iterator over the values, in no particular order
+     */
+    public Iterator<V> valueIterator() {
+        EntryIterator it = new EntryIterator(root);
+        return new Iterator<V>() {
+
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @SuppressWarnings("unchecked")
+            public V next() {
+                Object[] array = it.next();
+                return (V) array[it.index + 1];
+            }
+        };
+    }
+
+    private Iterator<Map.Entry<K, V>> entryIterator() {
+        EntryIterator it = new EntryIterator(root);
+        return new Iterator<Map.Entry<K, V>>() {
+
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @SuppressWarnings("unchecked")
+            public Map.Entry<K, V> next() {
+                Object[] array = it.next();
+                return new AbstractMap.SimpleImmutableEntry<K, V>((K) array[it.index], (V) array[it.index + 1]);
+            }
+        };
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private interface Node {
+
+        Object find(int shift, int hash, Object key);
+
+        Node assoc(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /* Returns null when the node becomes empty */
+        Node without(int shift, int hash, Object key);
+    }
+
+    /*
+     * A node with up to 32 slots, one per 5 bit hash fragment. Each slot present
+     * takes two array elements: a key and its value, or null and a child node.
+     */
+    private static final class BitmapNode implements Node {
+
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        public Object find(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object k = array[i];
+            if (k == null) {
+                return ((Node) array[i + 1]).find(shift + BITS, hash, key);
+            }
+            return key.equals(k) ? array[i + 1] : null;
+        }
+
+        public Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+
+            if ((bitmap & bit) == 0) {
+                Object[] copy = new Object[array.length + 2];
+                System.arraycopy(array, 0, copy, 0, i);
+                copy[i] = key;
+                copy[i + 1] = value;
+                System.arraycopy(array, i, copy, i + 2, array.length - i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, copy);
+            }
+
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Node child = ((Node) v).assoc(shift + BITS, hash, key, value, added);
+                return child == v ? this : with(i, null, child);
+            }
+            if (key.equals(k)) {
+                return v == value ? this : with(i, k, value);
+            }
+
+            /* Two keys share this slot: push both down a level */
+            added[0] = true;
+            return with(i, null, pair(shift + BITS, k, v, hash, key, value));
+        }
+
+        public Node without(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object k = array[i];
+            if (k == null) {
+                Node child = (Node) array[i + 1];
+                Node changed = child.without(shift + BITS, hash, key);
+                if (changed == child) {
+                    return this;
+                }
+                if (changed != null) {
+                    return with(i, null, changed);
+                }
+            } else if (!key.equals(k)) {
+                return this;
+            }
+
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, i);
+            System.arraycopy(array, i + 2, copy, i, array.length - i - 2);
+            return new BitmapNode(bitmap & ~bit, copy);
+        }
+
+        private BitmapNode with(int i, Object key, Object value) {
+            Object[] copy = array.clone();
+            copy[i] = key;
+            copy[i + 1] = value;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        private static Node pair(int shift, Object k1, Object v1, int h2, Object k2, Object v2) {
+            int h1 = hash(k1);
+            if (h1 == h2) {
+                return new CollisionNode(h1, new Object[] { k1, v1, k2, v2 });
+            }
+            boolean[] added = new boolean[1];
+            return EMPTY.assoc(shift, h1, k1, v1, added).assoc(shift, h2, k2, v2, added);
+        }
+    }
+
+    /*
+     * A node holding keys whose hashes are equal, searched linearly
+     */
+    private static final class CollisionNode implements Node {
+
+        final int hash;
+        final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        public Object find(int shift, int hash, Object key) {
+            int i = indexOf(hash, key);
+            return i < 0 ? null : array[i + 1];
+        }
+
+        public Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                /* Nest this node in a bitmap node that can tell the hashes apart */
+                BitmapNode parent = new BitmapNode(1 << ((this.hash >>> shift) & MASK), new Object[] { null, this });
+                return parent.assoc(shift, hash, key, value, added);
+            }
+
+            int i = indexOf(hash, key);
+            if (i >= 0) {
+                if (array[i + 1] == value) {
+                    return this;
+                }
+                Object[] copy = array.clone();
+                copy[i + 1] = value;
+                return new CollisionNode(hash, copy);
+            }
+
+            Object[] copy = new Object[array.length + 2];
+            System.arraycopy(array, 0, copy, 0, array.length);
+            copy[array.length] = key;
+            copy[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, copy);
+        }
+
+        public Node without(int shift, int hash, Object key) {
+            int i = indexOf(hash, key);
+            if (i < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, i);
+            System.arraycopy(array, i + 2, copy, i, array.length - i - 2);
+            return new CollisionNode(hash, copy);
+        }
+
+        private int indexOf(int hash, Object key) {
+            if (hash != this.hash) {
+                return -1;
+            }
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /*
+     * Walks the trie depth first. next() returns the array holding the entry,
+     * which is at index and index + 1.
+     */
+    private static final class EntryIterator implements Iterator<Object[]> {
+
+        private final Object[][] arrays = new Object[MAX_DEPTH + 1][];
+        private final int[] positions = new int[MAX_DEPTH + 1];
+        private int depth;
+        private Object[] nextArray;
+        int index;
+        private int nextIndex;
+
+        EntryIterator(Node root) {
+            arrays[0] = arrayOf(root);
+            advance();
+        }
+
+        public boolean hasNext() {
+            return nextArray != null;
+        }
+
+        public Object[] next() {
+            if (nextArray == null) {
+                throw new NoSuchElementException();
+            }
+            Object[] array = nextArray;
+            index = nextIndex;
+            advance();
+            return array;
+        }
+
+        private void advance() {
+            while (depth >= 0) {
+                Object[] array = arrays[depth];
+                int i = positions[depth];
+                if (i >= array.length) {
+                    depth--;
+                    continue;
+                }
+                positions[depth] = i + 2;
+
+                if (array[i] != null) {
+                    nextArray = array;
+                    nextIndex = i;
+                    return;
+                }
+                depth++;
+                arrays[depth] = arrayOf((Node) array[i + 1]);
+                positions[depth] = 0;
+            }
+            nextArray = null;
+        }
+
+        private static Object[] arrayOf(Node node) {
+            return node instanceof BitmapNode ? ((BitmapNode) node).array : ((CollisionNode) node).array;
+        }
+    }
+}
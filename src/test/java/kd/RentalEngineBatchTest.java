@@ -0,0 +1,130 @@
+package kd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import kd.bike.Bike;
+import kd.bike.BikeFactory;
+import kd.customer.CustomerRecord;
+import kd.rental.RentalRequest;
+import kd.rental.RentalResult;
+import kd.rental.RentalStatus;
+
+/**
+ * The RentalEngineBatchTest class is responsible for testing that batches of
+ * requests are answered in request order, with bikes of each type allocated in
+ * request order
+ */
+public class RentalEngineBatchTest {
+
+    private static int engines;
+
+    private RentalEngine engine;
+    private String prefix;
+    private List<String> gold;
+    private List<String> standard;
+
+    @Before
+    public void createEngine() throws ParseException {
+        engine = new RentalEngine();
+        prefix = "batch-" + engines++ + "-";
+        addBikes(BikeFactory.ROAD_BIKE, 2);
+        addBikes(BikeFactory.ELECTRIC_BIKE, 2);
+        gold = addCustomers(3, true);
+        standard = addCustomers(3, false);
+    }
+
+    @After
+    public void reset() {
+        engine.reset();
+    }
+
+    @Test
+    public void answersRequestsInRequestOrder() {
+        for (boolean parallel : new boolean[] { false, true }) {
+            List<RentalRequest> batch = new ArrayList<RentalRequest>();
+            batch.add(new RentalRequest(standard.get(0), "road"));
+            batch.add(new RentalRequest(gold.get(0), "electric"));
+            batch.add(new RentalRequest(standard.get(1), "electric"));
+            batch.add(new RentalRequest("XX-1900-1", "road"));
+            batch.add(new RentalRequest(standard.get(1), "unicycle"));
+            batch.add(new RentalRequest(gold.get(1), "road"));
+            batch.add(new RentalRequest(standard.get(2), "road"));
+            batch.add(new RentalRequest(gold.get(2), "electric"));
+            batch.add(new RentalRequest(standard.get(0), "road"));
+
+            List<RentalResult> results = engine.issueBikes(batch, parallel);
+            assertStatuses(results, RentalStatus.ISSUED, RentalStatus.ISSUED, RentalStatus.NOT_ELIGIBLE,
+                    RentalStatus.NO_CUSTOMER_RECORD, RentalStatus.INVALID_BIKE_TYPE, RentalStatus.ISSUED,
+                    RentalStatus.NO_BIKES_AVAILABLE, RentalStatus.ISSUED, RentalStatus.ALREADY_HAS_BIKE);
+            assertEquals(BikeFactory.ELECTRIC_BIKE, results.get(7).getBike().getType());
+
+            List<String> customers = List.of(standard.get(0), gold.get(0), gold.get(1), gold.get(2), standard.get(1));
+            assertStatuses(engine.terminateRentals(customers, parallel), RentalStatus.RETURNED,
+                    RentalStatus.RETURNED, RentalStatus.RETURNED, RentalStatus.RETURNED,
+                    RentalStatus.NO_RENTAL_CONTRACT);
+            assertEquals(2, engine.getNumOfAvailableBikes(BikeFactory.ROAD_BIKE));
+            assertEquals(2, engine.getNumOfAvailableBikes(BikeFactory.ELECTRIC_BIKE));
+        }
+    }
+
+    @Test
+    public void issuesDistinctBikesToTheFirstRequests() {
+        List<RentalRequest> batch = new ArrayList<RentalRequest>();
+        for (String customer : standard) {
+            batch.add(new RentalRequest(customer, "road"));
+        }
+
+        List<RentalResult> results = engine.issueBikes(batch, true);
+        assertStatuses(results, RentalStatus.ISSUED, RentalStatus.ISSUED, RentalStatus.NO_BIKES_AVAILABLE);
+        Set<Bike> issued = new HashSet<Bike>();
+        for (RentalResult result : results.subList(0, 2)) {
+            assertNotNull(result.getContract());
+            assertTrue(issued.add(result.getBike()));
+            assertEquals(result.getBike(), engine.getBike(result.getContract().getCustomerNumber()));
+        }
+        assertEquals(0, engine.getNumOfAvailableBikes(BikeFactory.ROAD_BIKE));
+    }
+
+    @Test
+    public void emptyBatchesHaveNoResults() {
+        assertTrue(engine.issueBikes(new ArrayList<RentalRequest>(), true).isEmpty());
+        assertTrue(engine.terminateRentals(new ArrayList<String>(), false).isEmpty());
+    }
+
+    private static void assertStatuses(List<RentalResult> results, RentalStatus... statuses) {
+        assertEquals(statuses.length, results.size());
+        for (int i = 0; i < statuses.length; i++) {
+            assertEquals("Result " + i, statuses[i], results.get(i).getStatus());
+        }
+    }
+
+    private void addBikes(String type, int count) {
+        for (int i = 0; i < count; i++) {
+            Bike bike = BikeFactory.getInstance(type, prefix + type + "-" + i);
+            bike.trySetAvailable();
+            engine.addBike(bike);
+        }
+    }
+
+    private List<String> addCustomers(int count, boolean goldClass) throws ParseException {
+        List<String> customers = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            CustomerRecord record = new CustomerRecord("Bat", "Ch", "01/01/1980", goldClass);
+            engine.addCustomerRecord(record);
+            customers.add(record.getCustomerNumber().toString());
+        }
+        return customers;
+    }
+}
@@ -0,0 +1,215 @@
+package kd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import kd.bike.Bike;
+import kd.bike.BikeFactory;
+import kd.bike.FleetStatistics;
+import kd.customer.CustomerRecord;
+import kd.rental.RentalRequest;
+import kd.rental.RentalResult;
+import kd.rental.RentalStatus;
+
+/**
+ * The RentalEngineConcurrencyTest class is responsible for testing that bikes
+ * issued and returned from many threads at once are never issued twice and
+ * that the counts of the engine stay consistent
+ */
+public class RentalEngineConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int BIKES = 40;
+    private static final int CUSTOMERS = 200;
+
+    private static int engines;
+
+    private RentalEngine engine;
+    private List<Bike> bikes;
+    private List<String> customers;
+    private ExecutorService pool;
+
+    @Before
+    public void createEngine() throws ParseException {
+        engine = new RentalEngine();
+        String prefix = "concurrency-" + engines++ + "-";
+        bikes = new ArrayList<Bike>();
+        for (int i = 0; i < BIKES; i++) {
+            Bike bike = BikeFactory.getInstance("road", prefix + i);
+            bike.trySetAvailable();
+            engine.addBike(bike);
+            bikes.add(bike);
+        }
+        customers = new ArrayList<String>();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            CustomerRecord record = new CustomerRecord("Con", "Current", "01/01/1980", false);
+            engine.addCustomerRecord(record);
+            customers.add(record.getCustomerNumber().toString());
+        }
+        pool = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void shutdown() throws InterruptedException {
+        pool.shutdownNow();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+        engine.reset();
+    }
+
+    @Test
+    public void bikesAreNeverIssuedTwice() throws Exception {
+        ConcurrentMap<Bike, String> holders = new ConcurrentHashMap<Bike, String>();
+        List<Future<?>> workers = new ArrayList<Future<?>>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            workers.add(pool.submit(() -> {
+                /* Each thread owns its own customers, so holders of a customer are only changed by its thread */
+                List<String> own = new ArrayList<String>();
+                for (int i = thread; i < CUSTOMERS; i += THREADS) {
+                    own.add(customers.get(i));
+                }
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int n = 0; n < 5000; n++) {
+                    String customer = own.get(random.nextInt(own.size()));
+                    Bike held = engine.getBike(customer);
+                    if (held == null) {
+                        RentalResult result = engine.issueBike(customer, "road");
+                        if (result.isSuccess()) {
+                            assertNull("Issued twice: " + result.getBike(),
+                                    holders.putIfAbsent(result.getBike(), customer));
+                        } else {
+                            assertEquals(RentalStatus.NO_BIKES_AVAILABLE, result.getStatus());
+                        }
+                    } else {
+                        /* Release the holder first, the bike may be issued again as soon as it is returned */
+                        assertTrue(holders.remove(held, customer));
+                        RentalResult result = engine.terminateRental(customer);
+                        assertEquals(RentalStatus.RETURNED, result.getStatus());
+                        assertSame(held, result.getBike());
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+
+        FleetStatistics statistics = engine.getFleetStatistics();
+        assertEquals(holders.size(), engine.getRentals().size());
+        assertEquals(holders.size(), engine.getRentedBikes().size());
+        assertEquals(holders.size(), statistics.getRented("road"));
+        assertEquals(BIKES - holders.size(), engine.getNumOfAvailableBikes("road"));
+        assertEquals(BIKES, statistics.getTotal("road"));
+
+        for (String customer : new ArrayList<String>(holders.values())) {
+            assertTrue(engine.terminateRental(customer).isSuccess());
+        }
+        assertEquals(0, engine.getRentals().size());
+        assertEquals(0, statistics.getRented("road"));
+        assertEquals(BIKES, statistics.getAvailable("road"));
+        assertEquals(BIKES, engine.getNumOfAvailableBikes("road"));
+    }
+
+    @Test
+    public void customerGetsOneBikeFromConcurrentRequests() throws Exception {
+        String customer = customers.get(0);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<RentalResult>> requests = new ArrayList<Future<RentalResult>>();
+        for (int t = 0; t < THREADS; t++) {
+            requests.add(pool.submit(() -> {
+                start.await();
+                return engine.issueBike(customer, "road");
+            }));
+        }
+        start.countDown();
+
+        int issued = 0;
+        for (Future<RentalResult> request : requests) {
+            RentalResult result = request.get();
+            if (result.isSuccess()) {
+                issued++;
+            } else {
+                assertEquals(RentalStatus.ALREADY_HAS_BIKE, result.getStatus());
+            }
+        }
+        assertEquals(1, issued);
+        assertEquals(1, engine.getFleetStatistics().getRented("road"));
+        assertEquals(BIKES - 1, engine.getNumOfAvailableBikes("road"));
+    }
+
+    @Test
+    public void returnsRacingTheIssueFindTheContract() throws Exception {
+        for (int n = 0; n < 500; n++) {
+            String customer = customers.get(n % CUSTOMERS);
+            CountDownLatch start = new CountDownLatch(1);
+            Future<RentalResult> issue = pool.submit(() -> {
+                start.await();
+                return engine.issueBike(customer, "road");
+            });
+            Future<RentalResult> terminate = pool.submit(() -> {
+                start.await();
+                RentalResult result;
+                while ((result = engine.terminateRental(customer)).getStatus() != RentalStatus.RETURNED) {
+                    Thread.yield();
+                }
+                return result;
+            });
+            start.countDown();
+
+            assertTrue(issue.get().isSuccess());
+            RentalResult returned = terminate.get();
+            assertSame(issue.get().getContract(), returned.getContract());
+            assertFalse(returned.getContract().isActive());
+        }
+        assertEquals(0, engine.getRentals().size());
+        assertEquals(BIKES, engine.getNumOfAvailableBikes("road"));
+    }
+
+    @Test
+    public void batchesIssueDistinctBikes() throws Exception {
+        List<Future<List<RentalResult>>> batches = new ArrayList<Future<List<RentalResult>>>();
+        for (int t = 0; t < THREADS; t++) {
+            List<RentalRequest> batch = new ArrayList<RentalRequest>();
+            for (int i = t; i < CUSTOMERS; i += THREADS) {
+                batch.add(new RentalRequest(customers.get(i), "road"));
+            }
+            batches.add(pool.submit(() -> engine.issueBikes(batch, true)));
+        }
+
+        Set<Bike> issued = new HashSet<Bike>();
+        for (Future<List<RentalResult>> batch : batches) {
+            for (RentalResult result : batch.get()) {
+                if (result.isSuccess()) {
+                    assertTrue("Issued twice: " + result.getBike(), issued.add(result.getBike()));
+                } else {
+                    assertEquals(RentalStatus.NO_BIKES_AVAILABLE, result.getStatus());
+                }
+            }
+        }
+        assertEquals(BIKES, issued.size());
+        assertEquals(BIKES, engine.getFleetStatistics().getRented("road"));
+        assertEquals(0, engine.getNumOfAvailableBikes("road"));
+    }
+}
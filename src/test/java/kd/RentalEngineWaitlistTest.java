@@ -0,0 +1,118 @@
+package kd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import kd.bike.Bike;
+import kd.bike.BikeFactory;
+import kd.customer.CustomerRecord;
+import kd.rental.RentalResult;
+import kd.rental.RentalStatus;
+import kd.rental.Reservation;
+
+/**
+ * The RentalEngineWaitlistTest class is responsible for testing that customers
+ * waiting for a bike are served before walk-ins as bikes are returned
+ */
+public class RentalEngineWaitlistTest {
+
+    private static final long LONG_TIMEOUT = 60000;
+
+    private static int engines;
+
+    private final RentalEngine engine = new RentalEngine();
+    private Bike bike;
+    private String ann;
+    private String bob;
+    private String cat;
+
+    @Before
+    public void createEngine() throws ParseException {
+        bike = BikeFactory.getInstance(BikeFactory.ROAD_BIKE, "waitlist-" + engines++);
+        bike.trySetAvailable();
+        engine.addBike(bike);
+        ann = addCustomer();
+        bob = addCustomer();
+        cat = addCustomer();
+    }
+
+    @Test
+    public void freeBikeIsIssuedStraightAway() throws Exception {
+        Reservation reservation = engine.reserveBike(ann, "road", LONG_TIMEOUT);
+        assertFalse(reservation.isWaiting());
+        assertEquals(RentalStatus.ISSUED, reservation.getResult().get().getStatus());
+        assertSame(bike, engine.getBike(ann));
+    }
+
+    @Test
+    public void returnedBikeGoesToTheFirstWaitingCustomer() throws Exception {
+        engine.issueBike(ann, "road");
+        Reservation bobs = engine.reserveBike(bob, "road", LONG_TIMEOUT);
+        Reservation cats = engine.reserveBike(cat, "road", LONG_TIMEOUT);
+        assertTrue(bobs.isWaiting());
+        assertEquals(2, engine.getNumOfReservations("road"));
+
+        assertEquals(RentalStatus.RETURNED, engine.terminateRental(ann).getStatus());
+        RentalResult result = bobs.getResult().get(5, TimeUnit.SECONDS);
+        assertEquals(RentalStatus.ISSUED, result.getStatus());
+        assertSame(bike, engine.getBike(bob));
+        assertTrue(cats.isWaiting());
+        assertEquals(0, engine.getNumOfAvailableBikes("road"));
+
+        /* A walk-in does not jump the queue */
+        engine.terminateRental(bob);
+        assertSame(bike, engine.getBike(cat));
+        assertEquals(RentalStatus.NO_BIKES_AVAILABLE, engine.issueBike(ann, "road").getStatus());
+    }
+
+    @Test
+    public void walkInsWaitWhileCustomersAreWaiting() throws Exception {
+        engine.issueBike(ann, "road");
+        Reservation bobs = engine.reserveBike(bob, "road", LONG_TIMEOUT);
+        Bike second = BikeFactory.getInstance(BikeFactory.ROAD_BIKE, "waitlist-" + engines++);
+        second.trySetAvailable();
+        engine.addBike(second);
+
+        assertEquals(RentalStatus.NO_BIKES_AVAILABLE, engine.issueBike(cat, "road").getStatus());
+        engine.terminateRental(ann);
+        assertEquals(RentalStatus.ISSUED, bobs.getResult().get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(RentalStatus.ISSUED, engine.issueBike(cat, "road").getStatus());
+    }
+
+    @Test
+    public void expiredReservationDoesNotGetTheBike() throws Exception {
+        engine.issueBike(ann, "road");
+        Reservation bobs = engine.reserveBike(bob, "road", 50);
+        assertEquals(RentalStatus.RESERVATION_EXPIRED, bobs.getResult().get(5, TimeUnit.SECONDS).getStatus());
+
+        engine.terminateRental(ann);
+        assertEquals(null, engine.getBike(bob));
+        assertEquals(1, engine.getNumOfAvailableBikes("road"));
+        assertEquals(0, engine.getNumOfReservations("road"));
+    }
+
+    @Test
+    public void resetExpiresWaitingReservations() throws Exception {
+        engine.issueBike(ann, "road");
+        Reservation bobs = engine.reserveBike(bob, "road", 50);
+        engine.reset();
+
+        assertEquals(RentalStatus.RESERVATION_EXPIRED, bobs.getResult().get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(0, engine.getNumOfReservations("road"));
+        assertTrue(engine.getAllBikes().isEmpty());
+    }
+
+    private String addCustomer() throws ParseException {
+        CustomerRecord record = new CustomerRecord("Wait", "List", "01/01/1980", false);
+        engine.addCustomerRecord(record);
+        return record.getCustomerNumber().toString();
+    }
+}
@@ -0,0 +1,97 @@
+package kd.bike;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import kd.metrics.Metrics;
+import kd.metrics.OperationMetrics;
+
+/**
+ * The BikeFactoryTest class is responsible for testing that the factory keeps
+ * one bike per serial number and counts how it got it
+ */
+public class BikeFactoryTest {
+
+    private static final int THREADS = 8;
+
+    private static int bikes;
+
+    private final OperationMetrics metrics = Metrics.operation("BikeFactory.getInstance");
+
+    @After
+    public void disableMetrics() {
+        Metrics.disable();
+    }
+
+    @Test
+    public void returnsTheBikeRegisteredForASerialNumber() {
+        String serialNumber = serialNumber();
+        Bike bike = BikeFactory.getInstance(BikeFactory.ROAD_BIKE, serialNumber);
+        assertSame(bike, BikeFactory.getInstance(BikeFactory.ELECTRIC_BIKE, serialNumber));
+        assertEquals(serialNumber, bike.getSerialNumber());
+        assertEquals(BikeFactory.ROAD_BIKE, bike.getType());
+    }
+
+    @Test
+    public void rejectsInvalidBikes() {
+        try {
+            BikeFactory.getInstance(BikeFactory.ROAD_BIKE, "");
+            fail("Created a bike without a serial number");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Empty serial number", e.getMessage());
+        }
+        try {
+            BikeFactory.getInstance("unicycle", serialNumber());
+            fail("Created a bike of an unknown type");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid bike type: unicycle", e.getMessage());
+        }
+    }
+
+    @Test
+    public void countsABikeCreatedByConcurrentCallsOnce() throws Exception {
+        Metrics.enable();
+        long created = metrics.getCount("CREATED");
+        long existing = metrics.getCount("EXISTING");
+
+        String serialNumber = serialNumber();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Bike>> calls = new ArrayList<Future<Bike>>();
+            for (int t = 0; t < THREADS; t++) {
+                calls.add(pool.submit(() -> {
+                    start.await();
+                    return BikeFactory.getInstance(BikeFactory.ROAD_BIKE, serialNumber);
+                }));
+            }
+            start.countDown();
+
+            Bike bike = calls.get(0).get();
+            for (Future<Bike> call : calls) {
+                assertSame(bike, call.get());
+            }
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        assertEquals(created + 1, metrics.getCount("CREATED"));
+        assertEquals(existing + THREADS - 1, metrics.getCount("EXISTING"));
+    }
+
+    private static String serialNumber() {
+        return "factory-test-" + bikes++;
+    }
+}
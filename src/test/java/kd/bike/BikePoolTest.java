@@ -0,0 +1,109 @@
+package kd.bike;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import kd.bike.allocation.StandardAllocation;
+
+/**
+ * The BikePoolTest class is responsible for testing that the pool issues free
+ * bikes by type and keeps its counts as bikes are rented and returned
+ */
+public class BikePoolTest {
+
+    private static int bikes;
+
+    private final BikePool pool = new BikePool(StandardAllocation.LONGEST_IDLE);
+
+    @Test
+    public void issuesFreeBikesOfTheRequestedType() {
+        Bike road = add(BikeFactory.ROAD_BIKE);
+        Bike electric = add(BikeFactory.ELECTRIC_BIKE);
+        assertEquals(1, pool.getNumOfFreeBikes(BikeFactory.ROAD_BIKE));
+        assertEquals(1, pool.getNumOfFreeBikes(BikeType.ELECTRIC));
+
+        assertSame(road, pool.take(BikeFactory.ROAD_BIKE));
+        assertTrue(road.getIsRented());
+        assertNull(pool.take(BikeFactory.ROAD_BIKE));
+        assertNull(pool.take("unicycle"));
+        assertEquals(0, pool.getNumOfFreeBikes("unicycle"));
+        assertEquals(0, pool.getNumOfFreeBikes(BikeFactory.ROAD_BIKE));
+        assertEquals(1, pool.getNumOfFreeBikes(BikeFactory.ELECTRIC_BIKE));
+        assertFalse(electric.getIsRented());
+    }
+
+    @Test
+    public void releasedBikesAreIssuedAgainOnce() {
+        Bike bike = add(BikeFactory.ROAD_BIKE);
+        assertSame(bike, pool.take(BikeFactory.ROAD_BIKE));
+        assertTrue(pool.release(bike));
+        assertFalse(pool.release(bike));
+        assertFalse(bike.getIsRented());
+        assertEquals(1, pool.getNumOfFreeBikes(BikeFactory.ROAD_BIKE));
+        assertSame(bike, pool.take(BikeFactory.ROAD_BIKE));
+        assertNull(pool.take(BikeFactory.ROAD_BIKE));
+    }
+
+    @Test
+    public void takesASpecificBike() {
+        Bike a = add(BikeFactory.ROAD_BIKE);
+        Bike b = add(BikeFactory.ROAD_BIKE);
+        assertTrue(pool.take(b));
+        assertFalse(pool.take(b));
+        assertTrue(b.getIsRented());
+        assertSame(a, pool.take(BikeFactory.ROAD_BIKE));
+    }
+
+    @Test
+    public void rentedBikesAreNotQueued() {
+        Bike bike = BikeFactory.getInstance(BikeFactory.ROAD_BIKE, "pool-" + bikes++);
+        bike.setRented();
+        pool.add(bike);
+        assertEquals(0, pool.getNumOfFreeBikes(BikeFactory.ROAD_BIKE));
+        assertTrue(pool.release(bike));
+        assertEquals(1, pool.getNumOfFreeBikes(BikeFactory.ROAD_BIKE));
+    }
+
+    @Test
+    public void directStatusChangesFeedThePool() {
+        Bike bike = add(BikeFactory.ROAD_BIKE);
+        bike.setRented();
+        assertEquals(0, pool.getNumOfFreeBikes(BikeFactory.ROAD_BIKE));
+        assertNull(pool.take(BikeFactory.ROAD_BIKE));
+
+        bike.setAvailable();
+        assertEquals(1, pool.getNumOfFreeBikes(BikeFactory.ROAD_BIKE));
+        assertSame(bike, pool.take(BikeFactory.ROAD_BIKE));
+
+        assertTrue(bike.trySetAvailable());
+        assertFalse(bike.trySetAvailable());
+        assertEquals(1, pool.getNumOfFreeBikes(BikeFactory.ROAD_BIKE));
+        assertTrue(bike.trySetRented());
+        assertEquals(0, pool.getNumOfFreeBikes(BikeFactory.ROAD_BIKE));
+    }
+
+    @Test
+    public void replacingPoolTakesOverTheBikesAdded() {
+        Bike bike = add(BikeFactory.ROAD_BIKE);
+        BikePool next = new BikePool(StandardAllocation.FIRST_FREE, pool);
+        next.add(bike);
+        assertSame(bike, next.take(BikeFactory.ROAD_BIKE));
+        next.release(bike);
+
+        bike.setRented();
+        bike.setAvailable();
+        assertEquals(1, next.getNumOfFreeBikes(BikeFactory.ROAD_BIKE));
+        assertSame(StandardAllocation.FIRST_FREE, next.getStrategy());
+    }
+
+    private Bike add(String bikeType) {
+        Bike bike = BikeFactory.getInstance(bikeType, "pool-" + bikes++);
+        pool.add(bike);
+        return bike;
+    }
+}
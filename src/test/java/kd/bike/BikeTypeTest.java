@@ -0,0 +1,117 @@
+package kd.bike;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * The BikeTypeTest class is responsible for testing the bike type registry and
+ * the bikes the factory creates for registered types
+ */
+public class BikeTypeTest {
+
+    private static int types;
+
+    @Test
+    public void defaultTypesAreRegistered() {
+        assertSame(BikeType.ROAD, BikeType.of(BikeFactory.ROAD_BIKE));
+        assertSame(BikeType.ELECTRIC, BikeType.of(BikeFactory.ELECTRIC_BIKE));
+        assertSame(BikeType.ROAD, BikeType.of(BikeType.ROAD.getId()));
+        assertTrue(BikeType.ELECTRIC.isBatteryPowered());
+        assertTrue(BikeType.ELECTRIC.isGoldClassOnly());
+        assertEquals(21, BikeType.ELECTRIC.getMinAge());
+        assertFalse(BikeType.ROAD.isBatteryPowered());
+        assertNull(BikeType.of("unicycle"));
+        assertNull(BikeType.of((String) null));
+        assertNull(BikeType.of(-1));
+        assertNull(BikeType.of(BikeType.MAX_TYPES));
+    }
+
+    @Test
+    public void registeredTypesAreFoundByNameAndId() {
+        BikeType type = BikeType.register(name(), 12, false, false);
+        assertSame(type, BikeType.of(type.getName()));
+        assertSame(type, BikeType.of(type.getId()));
+        assertSame(type, BikeType.values().get(type.getId()));
+        assertEquals(12, type.getMinAge());
+    }
+
+    @Test
+    public void rejectsInvalidTypes() {
+        String name = name();
+        BikeType.register(name, 0, false, false);
+        assertRejected(name, 0);
+        assertRejected(BikeFactory.ROAD_BIKE, 0);
+        assertRejected("", 0);
+        assertRejected(" " + name(), 0);
+        assertRejected(name(), -1);
+    }
+
+    @Test
+    public void loadsTypesSkippingCommentsAndEmptyLines() throws IOException {
+        String cargo = name();
+        String kids = name();
+        List<BikeType> loaded = BikeType.load(new StringReader("# name, minimum age, Gold Class only, battery powered\n"
+                + cargo + ",18,false,false\n\n" + kids + ", 0, FALSE, true\n"));
+        assertEquals(2, loaded.size());
+        assertSame(loaded.get(0), BikeType.of(cargo));
+        assertEquals(18, loaded.get(0).getMinAge());
+        assertTrue(loaded.get(1).isBatteryPowered());
+        assertFalse(loaded.get(1).isGoldClassOnly());
+    }
+
+    @Test
+    public void reportsTheLineOfAMalformedType() throws IOException {
+        try {
+            BikeType.load(new StringReader("# types\n" + name() + ",18,false,false\n" + name() + ",old,false,false\n"));
+            fail("Loaded a malformed type");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid minimum age on line 3"));
+        }
+        try {
+            BikeType.load(new StringReader(name() + ",18,false,maybe\n"));
+            fail("Loaded a malformed type");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid flag on line 1: maybe", e.getMessage());
+        }
+    }
+
+    @Test
+    public void createsBikesOfRegisteredTypes() {
+        BikeType cargo = BikeType.register(name(), 18, false, false);
+        BikeType scooter = BikeType.register(name(), 16, false, true);
+        Bike road = BikeFactory.getInstance(BikeFactory.ROAD_BIKE, name());
+        Bike standard = BikeFactory.getInstance(cargo.getName(), name());
+        Bike electric = BikeFactory.getInstance(scooter.getName(), name());
+
+        assertEquals(RoadBike.class, road.getClass());
+        assertEquals(StandardBike.class, standard.getClass());
+        assertEquals(ElectricBike.class, electric.getClass());
+        assertSame(cargo, standard.getBikeType());
+        assertEquals(scooter.getName(), electric.getType());
+        assertTrue(road.toString().contains("type: RoadBike"));
+    }
+
+    private static void assertRejected(String name, int minAge) {
+        try {
+            BikeType.register(name, minAge, false, false);
+            fail("Registered " + name);
+        } catch (IllegalArgumentException e) {
+            /* expected */
+        }
+    }
+
+    /* The registry is global, so each test registers types under new names */
+    private static String name() {
+        return "type-test-" + types++;
+    }
+}
@@ -0,0 +1,115 @@
+package kd.bike;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * The ChargingSchedulerTest class is responsible for testing that returned
+ * bikes charge no more than the docks allow, in the order they were returned
+ */
+public class ChargingSchedulerTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private static int bikes;
+
+    private final List<Bike> charged = new CopyOnWriteArrayList<Bike>();
+    private ChargingScheduler scheduler;
+
+    @After
+    public void close() {
+        if (scheduler != null) {
+            scheduler.close();
+        }
+    }
+
+    @Test
+    public void bikesWaitForAFreeDock() {
+        scheduler = new ChargingScheduler(0.001, 2, 60000, (bike, level) -> charged.add(bike));
+        ElectricBike a = empty();
+        ElectricBike b = empty();
+        ElectricBike c = empty();
+        scheduler.plugIn(a);
+        scheduler.plugIn(b);
+        scheduler.plugIn(c);
+        scheduler.plugIn(a);
+        assertEquals(2, scheduler.getNumOfCharging());
+        assertEquals(1, scheduler.getNumOfWaiting());
+
+        scheduler.unplug(a);
+        assertEquals(2, scheduler.getNumOfCharging());
+        assertEquals(0, scheduler.getNumOfWaiting());
+        scheduler.unplug(b);
+        scheduler.unplug(c);
+        assertEquals(0, scheduler.getNumOfCharging());
+        assertTrue(charged.isEmpty());
+    }
+
+    @Test
+    public void fullBikesAreNotPluggedIn() {
+        scheduler = new ChargingScheduler(0.001, 1, 60000, (bike, level) -> charged.add(bike));
+        scheduler.plugIn(new ElectricBike(serialNumber()));
+        assertEquals(0, scheduler.getNumOfCharging());
+        assertEquals(0, scheduler.getNumOfWaiting());
+    }
+
+    @Test
+    public void unpluggedWaitingBikesKeepTheirCharge() {
+        scheduler = new ChargingScheduler(0.001, 1, 60000, (bike, level) -> charged.add(bike));
+        ElectricBike a = empty();
+        ElectricBike b = empty();
+        b.setBatteryLevel(40);
+        scheduler.plugIn(a);
+        scheduler.plugIn(b);
+        scheduler.unplug(b);
+        assertEquals(40, b.getBatteryLevel());
+        assertEquals(0, scheduler.getNumOfWaiting());
+        assertEquals(1, scheduler.getNumOfCharging());
+    }
+
+    @Test
+    public void chargedBikesGiveTheirDockToTheNextInLine() throws InterruptedException {
+        /* Full after about 10ms of charging */
+        scheduler = new ChargingScheduler(600000, 1, 1, (bike, level) -> {
+            if (level == 100) {
+                charged.add(bike);
+            }
+        });
+        ElectricBike a = empty();
+        ElectricBike b = empty();
+        ElectricBike c = empty();
+        scheduler.plugIn(a);
+        scheduler.plugIn(b);
+        scheduler.plugIn(c);
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (charged.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(List.of(a, b, c), charged);
+        assertTrue(c.getBatteryFull());
+        assertEquals(0, scheduler.getNumOfCharging());
+        assertEquals(0, scheduler.getNumOfWaiting());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsANonPositiveDockCapacity() {
+        new ChargingScheduler(1, 0, 1000, (bike, level) -> { }).close();
+    }
+
+    private static ElectricBike empty() {
+        ElectricBike bike = new ElectricBike(serialNumber());
+        bike.setBatteryEmpty();
+        return bike;
+    }
+
+    private static String serialNumber() {
+        return "charging-test-" + bikes++;
+    }
+}
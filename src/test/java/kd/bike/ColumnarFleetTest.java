@@ -0,0 +1,113 @@
+package kd.bike;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * The ColumnarFleetTest class is responsible for testing that bikes stored
+ * column by column behave like bike objects across pages and table growth
+ */
+public class ColumnarFleetTest {
+
+    /* More than two pages of a column, and several growths of the serial number table */
+    private static final int BIKES = 10000;
+
+    private final ColumnarFleet fleet = new ColumnarFleet();
+
+    @Test
+    public void findsEveryBikeBySerialNumber() {
+        for (int i = 0; i < BIKES; i++) {
+            fleet.getInstance(i % 3 == 0 ? BikeFactory.ELECTRIC_BIKE : BikeFactory.ROAD_BIKE, "c" + i);
+        }
+        assertEquals(BIKES, fleet.size());
+        assertEquals(BIKES / 3 + 1, fleet.size(BikeFactory.ELECTRIC_BIKE));
+
+        for (int i = 0; i < BIKES; i++) {
+            Bike bike = fleet.get("c" + i);
+            assertEquals("c" + i, bike.getSerialNumber());
+            assertEquals(i % 3 == 0, bike instanceof BatteryPowered);
+            assertEquals(bike, fleet.getInstance(BikeFactory.ROAD_BIKE, "c" + i));
+            assertEquals(bike.hashCode(), fleet.get("c" + i).hashCode());
+        }
+        assertNull(fleet.get("c" + BIKES));
+        assertEquals(BIKES, fleet.size());
+    }
+
+    @Test
+    public void viewsShareTheRentalStatus() {
+        Bike bike = fleet.getInstance(BikeFactory.ROAD_BIKE, "status");
+        Bike other = fleet.get("status");
+        assertFalse(bike.getIsRented());
+        assertTrue(bike.trySetRented());
+        assertFalse(other.trySetRented());
+        assertTrue(other.getIsRented());
+        assertEquals(1, fleet.getNumOfRentedBikes(BikeFactory.ROAD_BIKE));
+
+        assertTrue(other.trySetAvailable());
+        assertFalse(bike.trySetAvailable());
+        assertEquals(0, fleet.getNumOfRentedBikes(BikeFactory.ROAD_BIKE));
+    }
+
+    @Test
+    public void electricBikesKeepTheirBatteryLevel() {
+        BatteryPowered bike = (BatteryPowered) fleet.getInstance(BikeFactory.ELECTRIC_BIKE, "battery");
+        assertTrue(bike.getBatteryFull());
+        bike.setBatteryLevel(37);
+        assertEquals(37, ((BatteryPowered) fleet.get("battery")).getBatteryLevel());
+        bike.setBatteryEmpty();
+        assertEquals(0, bike.getBatteryLevel());
+        try {
+            bike.setBatteryLevel(101);
+            fail("Set an invalid battery level");
+        } catch (IllegalArgumentException e) {
+            assertEquals(0, bike.getBatteryLevel());
+        }
+    }
+
+    @Test
+    public void visitsTheBikesOfATypeInOrderOfAddition() {
+        for (int i = 0; i < 5000; i++) {
+            fleet.getInstance(i % 2 == 0 ? BikeFactory.ROAD_BIKE : BikeFactory.ELECTRIC_BIKE, "v" + i);
+        }
+        List<String> visited = new ArrayList<String>();
+        fleet.forEach(BikeFactory.ELECTRIC_BIKE, bike -> visited.add(bike.getSerialNumber()));
+        assertEquals(2500, visited.size());
+        for (int i = 0; i < visited.size(); i++) {
+            assertEquals("v" + (2 * i + 1), visited.get(i));
+        }
+    }
+
+    @Test
+    public void storesBikesOfRegisteredTypes() {
+        BikeType tandem = BikeType.register("columnar-test-tandem", 16, false, false);
+        Bike bike = fleet.getInstance(tandem.getName(), "tandem");
+        assertEquals(tandem, bike.getBikeType());
+        assertFalse(bike instanceof BatteryPowered);
+        assertEquals(1, fleet.size(tandem.getName()));
+        assertEquals(0, fleet.size(BikeFactory.ROAD_BIKE));
+    }
+
+    @Test
+    public void rejectsInvalidBikes() {
+        try {
+            fleet.getInstance("unicycle", "u1");
+            fail("Stored a bike of an unknown type");
+        } catch (IllegalArgumentException e) {
+            assertEquals(0, fleet.size());
+        }
+        try {
+            fleet.getInstance(BikeFactory.ROAD_BIKE, "");
+            fail("Stored a bike without a serial number");
+        } catch (IllegalArgumentException e) {
+            assertEquals(0, fleet.size());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package kd.bike;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.ParseException;
+
+import org.junit.Test;
+
+import kd.RentalEngine;
+import kd.customer.CustomerRecord;
+
+/**
+ * The FleetStatisticsTest class is responsible for testing that the per bike
+ * type counts follow the bikes as they are added, rented, returned, charged
+ * and removed
+ */
+public class FleetStatisticsTest {
+
+    private static int bikes;
+
+    private final FleetStatistics statistics = new FleetStatistics();
+
+    @Test
+    public void countsBikesPerType() {
+        Bike road = bike(BikeFactory.ROAD_BIKE);
+        Bike rented = bike(BikeFactory.ROAD_BIKE);
+        rented.trySetRented();
+        ElectricBike electric = (ElectricBike) bike(BikeFactory.ELECTRIC_BIKE);
+        electric.setBatteryLevel(50);
+        statistics.bikeAdded(road);
+        statistics.bikeAdded(rented);
+        statistics.bikeAdded(electric);
+
+        assertEquals(2, statistics.getTotal(BikeFactory.ROAD_BIKE));
+        assertEquals(1, statistics.getRented(BikeFactory.ROAD_BIKE));
+        assertEquals(1, statistics.getAvailable(BikeFactory.ROAD_BIKE));
+        assertEquals(1, statistics.getEmptyBattery(BikeFactory.ELECTRIC_BIKE));
+        assertEquals(0, statistics.getEmptyBattery(BikeFactory.ROAD_BIKE));
+        assertEquals(0, statistics.getTotal("unicycle"));
+
+        statistics.bikeRemoved(rented);
+        statistics.bikeRemoved(electric);
+        assertEquals(1, statistics.getTotal(BikeFactory.ROAD_BIKE));
+        assertEquals(0, statistics.getRented(BikeFactory.ROAD_BIKE));
+        assertEquals(0, statistics.getTotal(BikeFactory.ELECTRIC_BIKE));
+        assertEquals(0, statistics.getEmptyBattery(BikeFactory.ELECTRIC_BIKE));
+    }
+
+    @Test
+    public void followsRentalsAndCharging() {
+        Bike bike = bike(BikeFactory.ELECTRIC_BIKE);
+        statistics.bikeAdded(bike);
+        statistics.bikeRented(bike);
+        statistics.batteryEmptied(bike);
+        assertEquals(1, statistics.getRented(BikeFactory.ELECTRIC_BIKE));
+        assertEquals(0, statistics.getAvailable(BikeFactory.ELECTRIC_BIKE));
+        assertEquals(1, statistics.getEmptyBattery(BikeFactory.ELECTRIC_BIKE));
+
+        statistics.bikeReturned(bike);
+        statistics.batteryCharged(bike);
+        assertEquals(0, statistics.getRented(BikeFactory.ELECTRIC_BIKE));
+        assertEquals(1, statistics.getAvailable(BikeFactory.ELECTRIC_BIKE));
+        assertEquals(0, statistics.getEmptyBattery(BikeFactory.ELECTRIC_BIKE));
+    }
+
+    @Test
+    public void theEngineKeepsItsCountsUpToDate() throws ParseException {
+        RentalEngine engine = new RentalEngine();
+        try {
+            for (int i = 0; i < 3; i++) {
+                engine.addBike(bike(BikeFactory.ROAD_BIKE));
+                engine.addBike(bike(BikeFactory.ELECTRIC_BIKE));
+            }
+            CustomerRecord record = new CustomerRecord("Stat", "Istic", "01/01/1980", true);
+            engine.addCustomerRecord(record);
+            String customer = record.getCustomerNumber().toString();
+
+            FleetStatistics counts = engine.getFleetStatistics();
+            engine.issueBike(customer, BikeFactory.ELECTRIC_BIKE);
+            assertEquals(3, counts.getTotal(BikeFactory.ELECTRIC_BIKE));
+            assertEquals(1, counts.getRented(BikeFactory.ELECTRIC_BIKE));
+            assertEquals(1, counts.getEmptyBattery(BikeFactory.ELECTRIC_BIKE));
+            assertEquals(3, counts.getAvailable(BikeFactory.ROAD_BIKE));
+
+            /* Without a charging scheduler returned bikes are charged at once */
+            engine.terminateRental(customer);
+            assertEquals(0, counts.getRented(BikeFactory.ELECTRIC_BIKE));
+            assertEquals(0, counts.getEmptyBattery(BikeFactory.ELECTRIC_BIKE));
+            assertEquals(3, counts.getAvailable(BikeFactory.ELECTRIC_BIKE));
+        } finally {
+            engine.reset();
+        }
+    }
+
+    private static Bike bike(String type) {
+        Bike bike = BikeFactory.getInstance(type, "statistics-test-" + bikes++);
+        bike.trySetAvailable();
+        return bike;
+    }
+}
@@ -0,0 +1,195 @@
+package kd.bike.allocation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import kd.bike.Bike;
+import kd.bike.BikeFactory;
+import kd.bike.ElectricBike;
+
+/**
+ * The StandardAllocationTest class is responsible for testing the order in
+ * which the built-in allocation strategies issue free bikes
+ */
+public class StandardAllocationTest {
+
+    private static int bikes;
+
+    @Test
+    public void firstFreeIssuesTheBikeReturnedLast() {
+        FreeBikes free = StandardAllocation.FIRST_FREE.newFreeBikes(road());
+        Bike a = road(), b = road(), c = road();
+        offer(free, a, b, c);
+        assertPolled(free, c, b, a);
+    }
+
+    @Test
+    public void longestIdleIssuesTheBikeReturnedFirst() {
+        FreeBikes free = StandardAllocation.LONGEST_IDLE.newFreeBikes(road());
+        Bike a = road(), b = road(), c = road();
+        offer(free, a, b, c);
+        assertPolled(free, a, b, c);
+    }
+
+    @Test
+    public void leastUsedIssuesTheBikeIssuedFewestTimes() {
+        FreeBikes free = StandardAllocation.LEAST_USED.newFreeBikes(road());
+        Bike a = road(), b = road();
+        offer(free, a, b);
+        assertSame(a, free.poll());
+        free.offer(a);
+        assertPolled(free, b, a);
+
+        /* Usage counts survive a switch of strategy */
+        FreeBikes next = StandardAllocation.LEAST_USED.newFreeBikes(road());
+        next.inherit(free);
+        offer(next, a, b);
+        assertPolled(next, b, a);
+    }
+
+    @Test
+    public void highestBatteryIssuesTheHighestChargeFirst() {
+        FreeBikes free = StandardAllocation.HIGHEST_BATTERY.newFreeBikes(electric(100));
+        Bike low = electric(30), high = electric(80), alsoHigh = electric(80), full = electric(100);
+        offer(free, low, high, alsoHigh, full);
+        assertPolled(free, full, high, alsoHigh, low);
+    }
+
+    @Test
+    public void highestBatteryMovesChargingBikes() {
+        FreeBikes free = StandardAllocation.HIGHEST_BATTERY.newFreeBikes(electric(100));
+        ElectricBike charging = electric(0);
+        Bike high = electric(90), mid = electric(50);
+        offer(free, charging, high, mid);
+
+        for (int level = 1; level <= 100; level++) {
+            charging.setBatteryLevel(level);
+            free.reindex(charging);
+        }
+        assertEquals(3, free.size());
+        assertPolled(free, charging, high, mid);
+    }
+
+    @Test
+    public void highestBatteryForgetsLevelsLeftWhileCharging() {
+        FreeBikes free = StandardAllocation.HIGHEST_BATTERY.newFreeBikes(electric(100));
+        ElectricBike charging = electric(0);
+        Bike high = electric(100);
+        offer(free, high, charging);
+        for (int level = 1; level <= 60; level++) {
+            charging.setBatteryLevel(level);
+            free.reindex(charging);
+        }
+        assertTrue(free.remove(charging));
+        assertFalse(free.remove(charging));
+
+        /* The levels the bike passed through hold nothing that could be issued */
+        assertSame(high, free.poll());
+        assertNull(free.poll());
+        assertEquals(0, free.size());
+    }
+
+    @Test
+    public void removeTakesABikeFromAnyPosition() {
+        for (StandardAllocation strategy : StandardAllocation.values()) {
+            FreeBikes free = strategy.newFreeBikes(road());
+            Bike a = road(), b = road(), c = road();
+            offer(free, a, b, c);
+            assertTrue(strategy.name(), free.remove(b));
+            assertFalse(strategy.name(), free.remove(b));
+            assertEquals(strategy.name(), 2, free.size());
+            Set<Bike> rest = new HashSet<Bike>();
+            rest.add(free.poll());
+            rest.add(free.poll());
+            assertEquals(strategy.name(), new HashSet<Bike>(Arrays.asList(a, c)), rest);
+            assertNull(strategy.name(), free.poll());
+        }
+    }
+
+    @Test
+    public void concurrentPollsAndRemovesTakeEachBikeOnce() throws Exception {
+        for (StandardAllocation strategy : StandardAllocation.values()) {
+            FreeBikes free = strategy.newFreeBikes(electric(100));
+            List<Bike> fleet = new ArrayList<Bike>();
+            for (int i = 0; i < 2000; i++) {
+                Bike bike = electric(i % 101);
+                fleet.add(bike);
+                free.offer(bike);
+            }
+
+            Set<Bike> taken = ConcurrentHashMap.newKeySet();
+            ExecutorService pool = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<?>> workers = new ArrayList<Future<?>>();
+                for (int t = 0; t < 4; t++) {
+                    int thread = t;
+                    workers.add(pool.submit(() -> {
+                        for (int i = thread; i < fleet.size(); i += 4) {
+                            Bike bike = fleet.get(i);
+                            if (thread % 2 == 0) {
+                                bike = free.poll();
+                            } else if (!free.remove(bike)) {
+                                bike = null;
+                            }
+                            if (bike != null) {
+                                assertTrue("Taken twice: " + bike, taken.add(bike));
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> worker : workers) {
+                    worker.get();
+                }
+            } finally {
+                pool.shutdown();
+            }
+
+            Bike bike;
+            while ((bike = free.poll()) != null) {
+                assertTrue("Taken twice: " + bike, taken.add(bike));
+            }
+            assertEquals(strategy.name(), fleet.size(), taken.size());
+            assertEquals(strategy.name(), 0, free.size());
+        }
+    }
+
+    private static void offer(FreeBikes free, Bike... bikes) {
+        for (Bike bike : bikes) {
+            free.offer(bike);
+        }
+    }
+
+    private static void assertPolled(FreeBikes free, Bike... bikes) {
+        for (Bike bike : bikes) {
+            assertSame(bike, free.poll());
+        }
+        assertNull(free.poll());
+        assertEquals(0, free.size());
+    }
+
+    private static Bike road() {
+        return BikeFactory.getInstance(BikeFactory.ROAD_BIKE, "allocation-" + bikes++);
+    }
+
+    private static ElectricBike electric(int level) {
+        ElectricBike bike = (ElectricBike) BikeFactory.getInstance(BikeFactory.ELECTRIC_BIKE, "allocation-" + bikes++);
+        bike.setBatteryLevel(level);
+        return bike;
+    }
+}
@@ -0,0 +1,70 @@
+package kd.billing;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import kd.bike.BikeType;
+
+/**
+ * The TariffTest class is responsible for testing the pricing of rentals by
+ * started quarters, daily caps and the Gold Class discount
+ */
+public class TariffTest {
+
+    private static final long MINUTE = 60 * 1000L;
+    private static final long QUARTER = 15 * MINUTE;
+    private static final long DAY = 24 * 60 * MINUTE;
+
+    private final Tariff tariff = new Tariff(100, 50, 1500);
+
+    @Test
+    public void chargesPerStartedQuarter() {
+        assertEquals(100, tariff.fee(0));
+        assertEquals(100, tariff.fee(-5));
+        assertEquals(150, tariff.fee(1));
+        assertEquals(150, tariff.fee(QUARTER));
+        assertEquals(200, tariff.fee(QUARTER + 1));
+        assertEquals(100 + 8 * 50, tariff.fee(2 * 60 * MINUTE));
+    }
+
+    @Test
+    public void capsEveryStartedDay() {
+        assertEquals(1500, tariff.fee(10 * 60 * MINUTE));
+        assertEquals(1500, tariff.fee(DAY));
+        assertEquals(1550, tariff.fee(DAY + 1));
+        assertEquals(3000, tariff.fee(2 * DAY));
+        assertEquals(4550, tariff.fee(3 * DAY + 1));
+    }
+
+    @Test
+    public void discountRoundsToNearestCent() {
+        Tariff gold = tariff.discounted(20);
+        assertEquals(80, gold.getUnlockFee());
+        assertEquals(40, gold.getQuarterRate());
+        assertEquals(1200, gold.getDailyCap());
+
+        assertEquals(34, tariff.discounted(33).getQuarterRate());
+        assertEquals(0, tariff.discounted(100).fee(DAY));
+    }
+
+    @Test
+    public void tableHasTariffsPerBikeTypeAndClass() {
+        TariffTable table = TariffTable.standard();
+        assertEquals(200, table.fee(BikeType.ROAD, false, 30 * MINUTE));
+        assertEquals(160, table.fee(BikeType.ROAD, true, 30 * MINUTE));
+        assertEquals(300, table.fee(BikeType.ELECTRIC, false, 30 * MINUTE));
+        assertEquals(240, table.fee(BikeType.ELECTRIC, true, 30 * MINUTE));
+        assertEquals(3000, table.fee(BikeType.ELECTRIC, false, DAY));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capBelowUnlockFeeIsRejected() {
+        new Tariff(100, 50, 99);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void discountAboveAllIsRejected() {
+        tariff.discounted(101);
+    }
+}
@@ -0,0 +1,119 @@
+package kd.customer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * The CustomerImporterTest class is responsible for testing that customers are
+ * imported in input order and that invalid lines are reported by line number
+ */
+public class CustomerImporterTest {
+
+    @Test
+    public void importsRecordsInInputOrder() throws IOException, ParseException {
+        StringBuilder csv = new StringBuilder("# first name, last name, date of birth, Gold Class\n");
+        for (int i = 1; i <= 50; i++) {
+            csv.append("Imp").append(i).append(", Orter ,").append(i % 28 + 1).append("/3/1985, ")
+                    .append(i % 2 == 0 ? "TRUE" : "false").append('\n');
+            if (i % 10 == 0) {
+                csv.append("\n");
+            }
+        }
+
+        List<CustomerRecord> records = new ArrayList<CustomerRecord>();
+        assertEquals(50, new CustomerImporter(7, true).importRecords(new StringReader(csv.toString()), records::add));
+        assertEquals(50, records.size());
+        for (int i = 1; i <= 50; i++) {
+            CustomerRecord record = records.get(i - 1);
+            assertEquals("Imp" + i, record.getName().getFirstName());
+            assertEquals("Orter", record.getName().getLastName());
+            assertEquals(LocalDate.of(1985, 3, i % 28 + 1).toEpochDay(), Today.epochDayOf(record.getDateOfBirth()));
+            assertEquals(i % 2 == 0, record.isGoldClass());
+            if (i > 1) {
+                assertTrue(records.get(i - 2).getCustomerNumber().longValue() < record.getCustomerNumber().longValue());
+            }
+        }
+    }
+
+    @Test
+    public void reportsTheLineNumberOfAnInvalidLine() throws IOException {
+        assertInvalid("Ann,Bee,01/01/1990,true\n# comment\n\nCid,Dee,31/02/1990,false\n", 4, "Unparseable date");
+        assertInvalid("Ann,Bee,01/01/1990\n", 1, "expected 4 fields");
+        assertInvalid("Ann,Bee,01/01/1990,true,extra\n", 1, "expected 4 fields");
+        assertInvalid("Ann,Bee,01/01/1990,true\nCid,Dee,01/01/1990,yes\n", 2, "invalid Gold Class flag: yes");
+        assertInvalid("Ann, ,01/01/1990,true\n", 1, "Empty last name");
+    }
+
+    @Test
+    public void reportsTheLineNumberAcrossChunks() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            csv.append("Chu,Nk,01/01/1990,false\n");
+        }
+        csv.append("Chu,Nk,1/1/90,false\n");
+
+        for (boolean parallel : new boolean[] { false, true }) {
+            List<CustomerRecord> records = new ArrayList<CustomerRecord>();
+            try {
+                new CustomerImporter(3, parallel).importRecords(new StringReader(csv.toString()), records::add);
+                fail("Imported an invalid line");
+            } catch (ParseException e) {
+                assertEquals(21, e.getErrorOffset());
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Line 21: "));
+            }
+            /* Records before the invalid line have been handed over */
+            assertEquals(20, records.size());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnEmptyChunk() {
+        new CustomerImporter(0, false);
+    }
+
+    @Test
+    public void parsesDatesStraightToEpochDays() throws ParseException {
+        assertEquals(LocalDate.of(1993, 2, 1).toEpochDay(), DateParser.parseEpochDay("01/02/1993"));
+        assertEquals(LocalDate.of(2000, 2, 29).toEpochDay(), DateParser.parseEpochDay("29/2/2000"));
+        assertEquals(LocalDate.of(1969, 12, 31).toEpochDay(), DateParser.parseEpochDay("31/12/1969"));
+        assertEquals(LocalDate.of(1900, 1, 1).toEpochDay(), DateParser.parseEpochDay("x1/1/1900;", 1, 9));
+        for (int year : new int[] { 1900, 1969, 1970, 2000, 2024 }) {
+            assertEquals(year, DateParser.yearOfEpochDay(LocalDate.of(year, 1, 1).toEpochDay()));
+            assertEquals(year, DateParser.yearOfEpochDay(LocalDate.of(year, 12, 31).toEpochDay()));
+        }
+    }
+
+    @Test
+    public void rejectsInvalidDates() {
+        for (String date : new String[] { "29/02/1900", "31/04/2000", "00/01/2000", "1/13/2000", "1/1/20000",
+                "001/1/2000", "1-1-2000", "1/1/", "" }) {
+            try {
+                DateParser.parseEpochDay(date);
+                fail("Parsed " + date);
+            } catch (ParseException e) {
+                assertFalse(e.getMessage().isEmpty());
+            }
+        }
+    }
+
+    private static void assertInvalid(String csv, int lineNumber, String error) throws IOException {
+        try {
+            new CustomerImporter().importRecords(new StringReader(csv), record -> { });
+            fail("Imported an invalid line");
+        } catch (ParseException e) {
+            assertEquals(lineNumber, e.getErrorOffset());
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line " + lineNumber + ": " + error));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package kd.customer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * The CustomerIndexTest class is responsible for testing that customer records
+ * are found by customer number, by initials and birth year and by Gold Class
+ * status
+ */
+public class CustomerIndexTest {
+
+    private final CustomerIndex index = new CustomerIndex();
+
+    @Test
+    public void findsRecordsByCustomerNumber() throws ParseException {
+        CustomerRecord record = add("Jane", "Doe", "01/02/1993", false);
+        String customerNumber = record.getCustomerNumber().toString();
+        assertSame(record, index.get(customerNumber));
+        assertSame(record, index.get(record.getCustomerNumber().longValue()));
+        assertNull(index.get("JD-1993-999999"));
+        assertNull(index.get("not a number"));
+        assertNull(index.get(CustomerNumber.INVALID));
+    }
+
+    @Test
+    public void indexesACustomerNumberOnce() throws ParseException {
+        CustomerRecord record = add("Jane", "Doe", "01/02/1993", true);
+        assertFalse(index.add(record));
+        assertEquals(1, index.size());
+        assertEquals(1, index.getGoldClass().size());
+        assertEquals(1, index.getByInitialsAndYear("JD", 1993).size());
+    }
+
+    @Test
+    public void findsRecordsByInitialsAndBirthYear() throws ParseException {
+        CustomerRecord jane = add("Jane", "Doe", "01/02/1993", false);
+        CustomerRecord john = add("John", "Dee", "31/12/1993", false);
+        add("Jane", "Doe", "01/01/1994", false);
+        add("Dora", "Jones", "01/02/1993", false);
+
+        Set<CustomerRecord> records = index.getByInitialsAndYear("JD", 1993);
+        assertEquals(Set.of(jane, john), records);
+        assertTrue(index.getByInitialsAndYear("JD", 1992).isEmpty());
+        assertTrue(index.getByInitialsAndYear("JDX", 1993).isEmpty());
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    public void findsGoldClassRecords() throws ParseException {
+        CustomerRecord gold = add("Gold", "Member", "05/05/1975", true);
+        add("Plain", "Member", "05/05/1975", false);
+        assertEquals(Set.of(gold), index.getGoldClass());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void resultsCannotBeChanged() throws ParseException {
+        add("Jane", "Doe", "01/02/1993", true);
+        index.getGoldClass().clear();
+    }
+
+    private CustomerRecord add(String firstName, String lastName, String dateOfBirth, boolean goldClass)
+            throws ParseException {
+        CustomerRecord record = new CustomerRecord(firstName, lastName, dateOfBirth, goldClass);
+        assertTrue(index.add(record));
+        return record;
+    }
+}
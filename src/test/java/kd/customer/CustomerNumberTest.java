@@ -0,0 +1,58 @@
+package kd.customer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * The CustomerNumberTest class is responsible for testing the encoding of
+ * customer numbers in a long and back
+ */
+public class CustomerNumberTest {
+
+    @Test
+    public void parseAndFormatRoundTrip() {
+        String[] numbers = { "JD-1993-1", "KM-1978-12", "AB-0-1", "ZZ-4095-1048574", "ÉØ-2001-77" };
+        for (String number : numbers) {
+            long code = CustomerNumber.parse(number);
+            assertNotEquals(number, CustomerNumber.INVALID, code);
+            assertEquals(number, CustomerNumber.format(code));
+        }
+    }
+
+    @Test
+    public void invalidNumbersAreRejected() {
+        String[] numbers = { "", "JD", "JD1993-1", "JD-1993", "JD-1993-", "JD--1", "JD-1993-0", "JD-1993-01",
+                "JD-01993-1", "JD-0199-1", "JD-4096-1", "JD-19x3-1", "JD-1993-1048575", "JD-1993-12345678" };
+        for (String number : numbers) {
+            assertEquals(number, CustomerNumber.INVALID, CustomerNumber.parse(number));
+        }
+    }
+
+    @Test
+    public void codeOrdersByInitialsYearAndSerial() {
+        long code = CustomerNumber.parse("JD-1993-2");
+        assertEquals(CustomerNumber.prefixOf('J', 'D', 1993), CustomerNumber.prefixOf(code));
+        assertEquals(CustomerNumber.INVALID, CustomerNumber.prefixOf('J', 'D', 4096));
+        assertEquals(code + 1, CustomerNumber.parse("JD-1993-3"));
+        assertNotEquals(code, CustomerNumber.parse("DJ-1993-2"));
+    }
+
+    @Test
+    public void generatedNumbersFollowRestoredOnes() {
+        CustomerNumber restored = CustomerNumber.valueOf("QX-2001-7");
+        assertSame(restored, CustomerNumber.valueOf("QX-2001-7"));
+        assertEquals(CustomerNumber.parse("QX-2001-7"), restored.longValue());
+
+        CustomerNumber next = CustomerNumber.getInstance(new CustomerName("Quinn", "Xu"), 2001);
+        assertEquals("QX-2001-8", next.toString());
+        assertEquals(next.longValue(), CustomerNumber.parse(next.toString()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidNumberHasNoInstance() {
+        CustomerNumber.valueOf("JD-1993-0");
+    }
+}
@@ -0,0 +1,52 @@
+package kd.customer;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+import kd.bike.BikeFactory;
+import kd.bike.BikeType;
+
+/**
+ * The CustomerRecordTest class is responsible for testing which bike types a
+ * customer is eligible to rent
+ */
+public class CustomerRecordTest {
+
+    private static final long TODAY = LocalDate.of(2024, 6, 15).toEpochDay();
+
+    @Test
+    public void anyoneCanRentARoadBike() throws ParseException {
+        assertTrue(customer("15/06/2020", false).isEligibleFor(BikeType.ROAD, TODAY));
+        assertTrue(customer("15/06/2020", false).isEligibleFor(BikeFactory.ROAD_BIKE, TODAY));
+    }
+
+    @Test
+    public void electricBikesNeedGoldClassCustomersOfTwentyOne() throws ParseException {
+        assertTrue(customer("15/06/2003", true).isEligibleFor(BikeType.ELECTRIC, TODAY));
+        assertFalse(customer("16/06/2003", true).isEligibleFor(BikeType.ELECTRIC, TODAY));
+        assertFalse(customer("01/01/1970", false).isEligibleFor(BikeType.ELECTRIC, TODAY));
+        assertTrue(customer("16/06/2003", true).isEligibleFor(BikeFactory.ELECTRIC_BIKE, TODAY + 1));
+    }
+
+    @Test
+    public void registeredTypesApplyTheirOwnRules() throws ParseException {
+        BikeType cargo = BikeType.register("eligibility-test-cargo", 18, false, false);
+        assertTrue(customer("15/06/2006", false).isEligibleFor(cargo, TODAY));
+        assertFalse(customer("16/06/2006", true).isEligibleFor(cargo, TODAY));
+    }
+
+    @Test
+    public void unknownTypesAreNotEligible() throws ParseException {
+        assertFalse(customer("01/01/1970", true).isEligibleFor("unicycle", TODAY));
+        assertFalse(customer("01/01/1970", true).isEligibleFor((String) null, TODAY));
+    }
+
+    private static CustomerRecord customer(String dateOfBirth, boolean goldClass) throws ParseException {
+        return new CustomerRecord("Eli", "Gible", dateOfBirth, goldClass);
+    }
+}
@@ -0,0 +1,77 @@
+package kd.customer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The NameIndexTest class is responsible for testing prefix and fuzzy lookups
+ * of customer records by name
+ */
+public class NameIndexTest {
+
+    private final NameIndex index = new NameIndex();
+    private CustomerRecord janeDoe;
+    private CustomerRecord johnDoe;
+    private CustomerRecord janMarvel;
+    private CustomerRecord donnaJones;
+
+    @Before
+    public void addRecords() throws ParseException {
+        janeDoe = new CustomerRecord("Jane", "Doe", "01/02/1993", false);
+        johnDoe = new CustomerRecord("John", "Doe", "12/08/1980", true);
+        janMarvel = new CustomerRecord("Jan", "Marvel", "05/10/1978", false);
+        donnaJones = new CustomerRecord("Donna", "Jones", "07/07/1990", false);
+        for (CustomerRecord record : Arrays.asList(janeDoe, johnDoe, janMarvel, donnaJones)) {
+            index.add(record);
+        }
+    }
+
+    @Test
+    public void findsByPrefixOfEitherName() {
+        List<CustomerRecord> jan = index.findByPrefix("jan", 10);
+        assertEquals(Arrays.asList(janMarvel, janeDoe), jan);
+
+        List<CustomerRecord> doe = index.findByPrefix("DOE", 10);
+        assertEquals(2, doe.size());
+        assertTrue(doe.containsAll(Arrays.asList(janeDoe, johnDoe)));
+
+        List<CustomerRecord> jo = index.findByPrefix("jo", 10);
+        assertEquals(Arrays.asList(johnDoe, donnaJones), jo);
+    }
+
+    @Test
+    public void twoWordsMatchBothNamesInEitherOrder() {
+        assertEquals(Arrays.asList(janeDoe), index.findByPrefix("jan do", 10));
+        assertEquals(Arrays.asList(janeDoe), index.findByPrefix("do jan", 10));
+        assertTrue(index.findByPrefix("jan jo", 10).isEmpty());
+    }
+
+    @Test
+    public void limitsResults() {
+        assertEquals(1, index.findByPrefix("j", 1).size());
+        assertEquals(4, index.findByPrefix("", 10).size());
+    }
+
+    @Test
+    public void findsSimilarNamesClosestFirst() {
+        assertEquals(Arrays.asList(johnDoe), index.findSimilar("jonn", 1, 10));
+        assertTrue(index.findSimilar("jonh", 1, 10).isEmpty());
+        assertTrue(index.findSimilar("jonh", 2, 10).containsAll(Arrays.asList(johnDoe, donnaJones)));
+
+        assertEquals(Arrays.asList(janeDoe, janMarvel), index.findSimilar("jane", 1, 10));
+        assertEquals(Arrays.asList(janeDoe), index.findSimilar("jane", 1, 1));
+        assertTrue(index.findSimilar("smith", 1, 10).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeEditDistanceIsRejected() {
+        index.findSimilar("jane", -1, 10);
+    }
+}
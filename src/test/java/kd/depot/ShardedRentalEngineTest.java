@@ -0,0 +1,101 @@
+package kd.depot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import kd.bike.Bike;
+import kd.bike.BikeFactory;
+import kd.customer.CustomerRecord;
+import kd.rental.RentalResult;
+import kd.rental.RentalStatus;
+
+/**
+ * The ShardedRentalEngineTest class is responsible for testing rentals across
+ * the depots of a ShardedRentalEngine
+ */
+public class ShardedRentalEngineTest {
+
+    private static int engines;
+
+    private ShardedRentalEngine engine;
+    private Depot north;
+    private Depot south;
+    private String customer;
+
+    @Before
+    public void createEngine() throws ParseException {
+        engine = new ShardedRentalEngine(4);
+        north = engine.addDepot("north");
+        south = engine.addDepot("south");
+        String prefix = "sharded-" + engines++ + "-";
+        for (int i = 0; i < 3; i++) {
+            engine.addBike("north", available(BikeFactory.getInstance("road", prefix + "n" + i)));
+            engine.addBike("south", available(BikeFactory.getInstance("road", prefix + "s" + i)));
+        }
+        CustomerRecord record = new CustomerRecord("Shar", "Ded", "01/01/1980", false);
+        engine.addCustomerRecord(record);
+        customer = record.getCustomerNumber().toString();
+    }
+
+    @Test
+    public void customerRentsOneBikeAcrossDepots() {
+        RentalResult issued = engine.issueBike(customer, "north", "road");
+        assertTrue(issued.isSuccess());
+        assertSame(north, engine.getDepotOfCustomer(customer));
+        assertSame(issued.getBike(), engine.getBike(customer));
+
+        assertEquals(RentalStatus.ALREADY_HAS_BIKE, engine.issueBike(customer, "south", "road").getStatus());
+        assertEquals(3, south.getNumOfAvailableBikes("road"));
+        assertEquals(5, engine.getNumOfAvailableBikes("road"));
+    }
+
+    @Test
+    public void bikeReturnedElsewhereMovesToThatDepot() {
+        Bike bike = engine.issueBike(customer, "north", "road").getBike();
+
+        RentalResult returned = engine.terminateRental(customer, "south");
+        assertEquals(RentalStatus.RETURNED, returned.getStatus());
+        assertSame(bike, returned.getBike());
+        assertNull(engine.getBike(customer));
+        assertNull(engine.getDepotOfCustomer(customer));
+
+        assertSame(south, engine.getDepotOf(bike));
+        assertFalse(north.getBikes().contains(bike));
+        assertTrue(south.getBikes().contains(bike));
+        assertEquals(2, north.getStatistics().getTotal("road"));
+        assertEquals(0, north.getStatistics().getRented("road"));
+        assertEquals(4, south.getStatistics().getTotal("road"));
+        assertEquals(4, south.getNumOfAvailableBikes("road"));
+        assertEquals(6, engine.getNumOfAvailableBikes("road"));
+
+        /* The contract stays with the depot the bike was issued at */
+        Instant from = returned.getContract().getStart().minusSeconds(1);
+        Instant to = returned.getContract().getEnd().plusSeconds(1);
+        assertEquals(Collections.singletonList(returned.getContract()), north.getEngine().getContracts(from, to));
+        assertTrue(south.getEngine().getContracts(from, to).isEmpty());
+
+        /* The bike can be rented again from its new depot */
+        assertTrue(engine.issueBike(customer, "south", "road").isSuccess());
+        assertSame(south, engine.getDepotOfCustomer(customer));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownDepotIsRejected() {
+        engine.issueBike(customer, "east", "road");
+    }
+
+    private static Bike available(Bike bike) {
+        bike.trySetAvailable();
+        return bike;
+    }
+}
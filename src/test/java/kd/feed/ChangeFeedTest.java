@@ -0,0 +1,97 @@
+package kd.feed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import kd.bike.Bike;
+import kd.bike.BikeFactory;
+
+/**
+ * The ChangeFeedTest class is responsible for testing that subscribers of the
+ * change feed receive every event in order, also when they fall behind
+ */
+public class ChangeFeedTest {
+
+    @Test
+    public void subscribersReceiveEventsInOrder() {
+        Bike bike = BikeFactory.getInstance("road", "feed-test-1");
+        List<String> received = Collections.synchronizedList(new ArrayList<String>());
+
+        ChangeFeed feed = new ChangeFeed(8);
+        feed.subscribe("test", (event, endOfBatch) -> received.add(event.getSequence() + " " + event.getType()));
+        feed.bikeAdded(bike);
+        feed.bikeIssued(42, bike);
+        feed.bikeReturned(42, bike);
+        feed.close();
+
+        assertEquals(3, received.size());
+        assertEquals("0 BIKE_ADDED", received.get(0));
+        assertEquals("1 BIKE_ISSUED", received.get(1));
+        assertEquals("2 BIKE_RETURNED", received.get(2));
+        assertEquals(2, feed.getCursor());
+    }
+
+    @Test
+    public void slowSubscriberHoldsBackPublishers() throws InterruptedException {
+        Bike bike = BikeFactory.getInstance("road", "feed-test-2");
+        int events = 2000;
+        long[] sequences = new long[events];
+        long[] customers = new long[events];
+        int[] count = { 0 };
+
+        ChangeFeed feed = new ChangeFeed(4);
+        feed.subscribe("slow", (event, endOfBatch) -> {
+            if (event.getSequence() % 100 == 0) {
+                Thread.yield();
+            }
+            sequences[count[0]] = event.getSequence();
+            customers[count[0]] = event.getCustomerNumber();
+            count[0]++;
+        });
+
+        Thread[] publishers = new Thread[4];
+        for (int p = 0; p < publishers.length; p++) {
+            publishers[p] = new Thread(() -> {
+                for (int i = 0; i < events / publishers.length; i++) {
+                    feed.bikeIssued(i, bike);
+                }
+            });
+            publishers[p].start();
+        }
+        for (Thread publisher : publishers) {
+            publisher.join();
+        }
+        feed.close();
+
+        assertEquals(events, count[0]);
+        for (int i = 0; i < events; i++) {
+            assertEquals(i, sequences[i]);
+            assertTrue(customers[i] < events / publishers.length);
+        }
+    }
+
+    @Test
+    public void failingSubscriberKeepsConsuming() {
+        Bike bike = BikeFactory.getInstance("road", "feed-test-3");
+        int[] count = { 0 };
+
+        ChangeFeed feed = new ChangeFeed(4);
+        ChangeFeed.Subscription subscription = feed.subscribe("failing", (event, endOfBatch) -> {
+            count[0]++;
+            throw new IllegalStateException("subscriber failure");
+        });
+        for (int i = 0; i < 10; i++) {
+            feed.bikeAdded(bike);
+        }
+        feed.close();
+
+        assertEquals(10, count[0]);
+        assertEquals(10, subscription.getFailures());
+    }
+}
@@ -0,0 +1,271 @@
+package kd.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import kd.RentalEngine;
+import kd.RentalManager;
+import kd.bike.BatteryPowered;
+import kd.bike.Bike;
+import kd.bike.BikeFactory;
+import kd.billing.Invoice;
+import kd.billing.InvoiceStore;
+import kd.customer.CustomerRecord;
+import kd.rental.RentalContract;
+import kd.rental.RentalResult;
+
+/**
+ * The RentalJournalTest class is responsible for testing that the state of the
+ * RentalManager survives a restart through the journal and its snapshots
+ */
+public class RentalJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private RentalJournal journal;
+    private boolean closed;
+
+    @Before
+    public void openJournal() throws IOException {
+        RentalManager.reset();
+        directory = folder.getRoot().toPath();
+        journal = RentalJournal.open(directory, 0);
+        RentalManager.setJournal(journal);
+    }
+
+    @After
+    public void closeJournal() throws IOException {
+        RentalManager.setJournal(null);
+        close();
+        RentalManager.reset();
+    }
+
+    @Test
+    public void restoresBikesCustomersRentalsAndCharges() throws IOException, ParseException {
+        addBikes("journal-a", 3);
+        String ann = addCustomer("Ann");
+        String bob = addCustomer("Bob");
+        Bike annsBike = RentalManager.issueBike(ann, "road").getBike();
+        RentalContract bobsRental = RentalManager.issueBike(bob, "road").getContract();
+        long annsFee = RentalManager.terminateRental(ann).getContract().getFee();
+
+        restart(0);
+
+        assertEquals(3, RentalManager.getAllBikes().size());
+        assertEquals(2, RentalManager.getAllCustomerRecords().size());
+        assertNull(RentalManager.getBike(ann));
+        assertSame(bobsRental.getBike(), RentalManager.getBike(bob));
+        assertEquals(2, RentalManager.getNumOfAvailableBikes("road"));
+        assertEquals(bobsRental.getStartMillis(),
+                RentalManager.getContracts().getActiveContract(bob).getStartMillis());
+        assertTrue(RentalManager.getAllBikes().contains(annsBike));
+
+        /* The replayed return is not charged again */
+        assertEquals(annsFee, amountCharged());
+        assertEquals(1, rentalsCharged());
+
+        long bobsFee = RentalManager.terminateRental(bob).getContract().getFee();
+        assertEquals(annsFee + bobsFee, amountCharged());
+        assertEquals(2, rentalsCharged());
+    }
+
+    @Test
+    public void restoresSnapshotAndJournalWrittenSince() throws IOException, ParseException {
+        addBikes("journal-b", 4);
+        String ann = addCustomer("Ann");
+        String bob = addCustomer("Bob");
+        RentalManager.issueBike(ann, "road");
+        RentalManager.terminateRental(ann);
+        RentalManager.issueBike(bob, "road");
+        journal.snapshot();
+
+        String cat = addCustomer("Cat");
+        Bike catsBike = RentalManager.issueBike(cat, "road").getBike();
+        RentalManager.terminateRental(bob);
+        long charged = amountCharged();
+
+        restart(0);
+
+        assertEquals(4, RentalManager.getAllBikes().size());
+        assertEquals(3, RentalManager.getAllCustomerRecords().size());
+        assertNull(RentalManager.getBike(bob));
+        assertSame(catsBike, RentalManager.getBike(cat));
+        assertEquals(3, RentalManager.getNumOfAvailableBikes("road"));
+        assertEquals(charged, amountCharged());
+        assertEquals(2, rentalsCharged());
+
+        /* Only the files of the last snapshot are left */
+        assertEquals(new TreeSet<String>(Arrays.asList("journal.1.bin", "snapshot.1.bin")), files());
+    }
+
+    @Test
+    public void invoicedMonthsAreNotRestored() throws IOException, ParseException {
+        addBikes("journal-c", 1);
+        String ann = addCustomer("Ann");
+        RentalManager.issueBike(ann, "road");
+        RentalManager.terminateRental(ann);
+        YearMonth month = RentalManager.getBillingEngine().getInvoices().getMonths().iterator().next();
+        assertEquals(1, RentalManager.closeMonth(month).size());
+
+        restart(0);
+
+        assertEquals(0, rentalsCharged());
+    }
+
+    @Test
+    public void recordTornByCrashIsCutOff() throws IOException, ParseException {
+        addBikes("journal-d", 2);
+        String ann = addCustomer("Ann");
+        Bike bike = RentalManager.issueBike(ann, "road").getBike();
+        close();
+        Files.write(directory.resolve("journal.0.bin"), new byte[] { 3, 0 }, StandardOpenOption.APPEND);
+
+        restart(0);
+        assertSame(bike, RentalManager.getBike(ann));
+
+        /* Records appended after the cut are replayed as well */
+        RentalManager.terminateRental(ann);
+        restart(0);
+        assertNull(RentalManager.getBike(ann));
+        assertEquals(2, RentalManager.getNumOfAvailableBikes("road"));
+    }
+
+    @Test
+    public void takesSnapshotsInTheBackground() throws IOException {
+        RentalManager.setJournal(null);
+        close();
+        journal = RentalJournal.open(directory, 10, new FlushPolicy(1, 10, false));
+        closed = false;
+        RentalManager.setJournal(journal);
+
+        addBikes("journal-e", 55);
+        close();
+        assertNull(journal.getBackgroundFailure());
+        long snapshots = files().stream().filter(name -> name.startsWith("snapshot.")).count();
+        assertEquals(1, snapshots);
+
+        restart(10);
+        assertEquals(55, RentalManager.getAllBikes().size());
+        assertEquals(55, RentalManager.getNumOfAvailableBikes("road"));
+    }
+
+    @Test
+    public void persistsTheEngineItWasOpenedFor() throws IOException {
+        Path depot = folder.newFolder("depot").toPath();
+        RentalEngine engine = new RentalEngine();
+        try (RentalJournal depotJournal = RentalJournal.open(engine, depot, 0, FlushPolicy.WHEN_FULL)) {
+            engine.setJournal(depotJournal);
+            Bike bike = BikeFactory.getInstance("road", "journal-f-0");
+            bike.trySetAvailable();
+            engine.addBike(bike);
+            depotJournal.snapshot();
+            engine.setJournal(null);
+        }
+        assertTrue(RentalManager.getAllBikes().isEmpty());
+
+        RentalEngine restored = new RentalEngine();
+        try (RentalJournal depotJournal = RentalJournal.open(restored, depot, 0, FlushPolicy.WHEN_FULL)) {
+            assertSame(restored, depotJournal.getEngine());
+            assertEquals(1, restored.getAllBikes().size());
+            assertTrue(RentalManager.getAllBikes().isEmpty());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cannotBeSetOnAnotherEngine() {
+        new RentalEngine().setJournal(journal);
+    }
+
+    private void addBikes(String prefix, int count) {
+        for (int i = 0; i < count; i++) {
+            RentalManager.addBike(BikeFactory.getInstance("road", prefix + "-" + i));
+        }
+    }
+
+    private static String addCustomer(String firstName) throws ParseException {
+        CustomerRecord record = new CustomerRecord(firstName, "Journal", "01/01/1980", false);
+        RentalManager.addCustomerRecord(record);
+        return record.getCustomerNumber().toString();
+    }
+
+    /*
+     * Close the journal, forget the state and restore it from the journal, as
+     * after a restart of the process
+     */
+    private void restart(int snapshotEvery) throws IOException {
+        RentalManager.setJournal(null);
+        close();
+        Set<Bike> bikes = RentalManager.getAllBikes();
+        RentalManager.reset();
+
+        /* Bike objects outlive the reset in this process, a new process starts with fresh ones */
+        for (Bike bike : bikes) {
+            bike.trySetAvailable();
+            if (bike instanceof BatteryPowered) {
+                ((BatteryPowered) bike).setBatteryFull();
+            }
+        }
+
+        journal = RentalJournal.open(directory, snapshotEvery);
+        closed = false;
+        RentalManager.setJournal(journal);
+    }
+
+    private void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            journal.close();
+        }
+    }
+
+    private static long amountCharged() {
+        InvoiceStore invoices = RentalManager.getBillingEngine().getInvoices();
+        long amount = 0;
+        for (YearMonth month : invoices.getMonths()) {
+            for (Invoice invoice : invoices.getInvoices(month)) {
+                amount += invoice.getAmount();
+            }
+        }
+        return amount;
+    }
+
+    private static int rentalsCharged() {
+        InvoiceStore invoices = RentalManager.getBillingEngine().getInvoices();
+        int rentals = 0;
+        for (YearMonth month : invoices.getMonths()) {
+            for (Invoice invoice : invoices.getInvoices(month)) {
+                rentals += invoice.getRentals();
+            }
+        }
+        return rentals;
+    }
+
+    private Set<String> files() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            Set<String> names = new TreeSet<String>();
+            files.forEach(file -> names.add(file.getFileName().toString()));
+            return names;
+        }
+    }
+}
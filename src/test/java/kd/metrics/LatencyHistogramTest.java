@@ -0,0 +1,110 @@
+package kd.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * The LatencyHistogramTest class is responsible for testing the percentiles
+ * reported by the histogram and the recording of operation metrics
+ */
+public class LatencyHistogramTest {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @After
+    public void disableMetrics() {
+        Metrics.disable();
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        for (int v = 1; v <= 20; v++) {
+            histogram.record(v);
+        }
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        assertEquals(10, histogram.getValueAtPercentile(50));
+        assertEquals(19, histogram.getValueAtPercentile(95));
+        assertEquals(20, histogram.getValueAtPercentile(100));
+        assertEquals(10.5, histogram.getMean(), 1e-9);
+        assertEquals(20, histogram.getCount());
+    }
+
+    @Test
+    public void percentilesAreWithinTheRelativeError() {
+        for (int v = 1; v <= 100000; v++) {
+            histogram.record(v);
+        }
+        assertWithinError(50000, histogram.getValueAtPercentile(50));
+        assertWithinError(90000, histogram.getValueAtPercentile(90));
+        assertWithinError(99000, histogram.getValueAtPercentile(99));
+        assertWithinError(99900, histogram.getValueAtPercentile(99.9));
+        assertEquals(100000, histogram.getValueAtPercentile(100));
+        assertEquals(100000, histogram.getMax());
+    }
+
+    @Test
+    public void bucketsCoverEveryValue() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextLong() >>> 1 + random.nextInt(63);
+            long highest = LatencyHistogram.highestEquivalentValue(LatencyHistogram.indexOf(value));
+            assertTrue(value + " > " + highest, highest >= value);
+            assertTrue(value + " reported as " + highest, highest - value <= value / 16);
+        }
+        assertEquals(0, LatencyHistogram.indexOf(0));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestEquivalentValue(LatencyHistogram.indexOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void outliersOnlyMoveTheHighPercentiles() {
+        for (int i = 0; i < 999; i++) {
+            histogram.record(1000);
+        }
+        histogram.record(5000000);
+        assertWithinError(1000, histogram.getValueAtPercentile(99.9));
+        assertEquals(5000000, histogram.getValueAtPercentile(99.99));
+    }
+
+    @Test
+    public void emptyAndResetHistogramsReportZero() {
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMean(), 0);
+        histogram.record(-5);
+        assertEquals(0, histogram.getMax());
+        assertEquals(1, histogram.getCount());
+        histogram.record(700);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPercentilesAbove100() {
+        histogram.getValueAtPercentile(100.5);
+    }
+
+    @Test
+    public void operationsRecordOutcomesOnlyWhileEnabled() {
+        OperationMetrics operation = Metrics.operation("LatencyHistogramTest.operation");
+        operation.record("IGNORED", Metrics.start());
+        assertEquals(0, operation.getCount("IGNORED"));
+
+        Metrics.enable();
+        operation.record("OK", Metrics.start());
+        operation.record(Thread.State.NEW, Metrics.start());
+        assertEquals(1, operation.getCount("OK"));
+        assertEquals(1, operation.getCount("NEW"));
+        assertEquals(2, operation.getLatency().getCount());
+        assertTrue(Metrics.snapshot(), Metrics.snapshot().contains("LatencyHistogramTest.operation.OK count=1 "));
+    }
+
+    private static void assertWithinError(long expected, long actual) {
+        assertTrue(actual + " is not about " + expected, actual >= expected && actual - expected <= expected / 16);
+    }
+}
@@ -0,0 +1,103 @@
+package kd.rental;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * The AsyncRentalEventSinkTest class is responsible for testing that events are
+ * handed to the delegate in order off the calling thread, and dropped rather
+ * than blocking the caller when the queue is full
+ */
+public class AsyncRentalEventSinkTest {
+
+    @Test
+    public void deliversQueuedEventsInOrderBeforeClosing() {
+        List<RentalEvent> delivered = new CopyOnWriteArrayList<RentalEvent>();
+        List<RentalEvent> sent = new ArrayList<RentalEvent>();
+        AsyncRentalEventSink sink = new AsyncRentalEventSink(delivered::add, 1000);
+        for (int i = 0; i < 500; i++) {
+            RentalEvent event = event(i);
+            sent.add(event);
+            sink.accept(event);
+        }
+        sink.close();
+        assertEquals(sent, delivered);
+        assertEquals(0, sink.getDroppedEvents());
+    }
+
+    @Test
+    public void dropsEventsWhenTheQueueIsFull() throws InterruptedException {
+        CountDownLatch delivering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<RentalEvent> delivered = new CopyOnWriteArrayList<RentalEvent>();
+        AsyncRentalEventSink sink = new AsyncRentalEventSink(event -> {
+            delivering.countDown();
+            awaitQuietly(release);
+            delivered.add(event);
+        }, 2);
+
+        /* The first event is taken by the background thread, which then blocks */
+        sink.accept(event(0));
+        assertTrue(delivering.await(10, TimeUnit.SECONDS));
+        sink.accept(event(1));
+        sink.accept(event(2));
+        sink.accept(event(3));
+        assertEquals(1, sink.getDroppedEvents());
+
+        release.countDown();
+        sink.close();
+        assertEquals(3, delivered.size());
+        sink.accept(event(4));
+        assertEquals(2, sink.getDroppedEvents());
+    }
+
+    @Test
+    public void keepsDeliveringAfterTheDelegateFails() {
+        List<RentalEvent> delivered = new CopyOnWriteArrayList<RentalEvent>();
+        AsyncRentalEventSink sink = new AsyncRentalEventSink(event -> {
+            if (event.getStatus() == RentalStatus.NO_BIKES_AVAILABLE) {
+                throw new IllegalStateException("Printer out of paper");
+            }
+            delivered.add(event);
+        }, 10);
+        sink.accept(new RentalEvent(RentalStatus.NO_BIKES_AVAILABLE, "AB-1990-1", "road", null));
+        sink.accept(event(1));
+        sink.close();
+        assertEquals(1, sink.getFailedEvents());
+        assertEquals(1, delivered.size());
+    }
+
+    @Test
+    public void closeKeepsTheInterruptStatus() {
+        AsyncRentalEventSink sink = new AsyncRentalEventSink(event -> { }, 10);
+        sink.accept(event(0));
+        Thread.currentThread().interrupt();
+        sink.close();
+        assertTrue(Thread.interrupted());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAMissingDelegate() {
+        new AsyncRentalEventSink(null, 10);
+    }
+
+    private static RentalEvent event(int i) {
+        return new RentalEvent(RentalStatus.NO_CUSTOMER_RECORD, "AB-1990-" + (i + 1), "road", null);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
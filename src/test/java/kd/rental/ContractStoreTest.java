@@ -0,0 +1,129 @@
+package kd.rental;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import kd.bike.Bike;
+import kd.bike.BikeFactory;
+
+/**
+ * The ContractStoreTest class is responsible for testing the queries and the
+ * retention of the rental contract history
+ */
+public class ContractStoreTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long DAY = 24 * HOUR;
+
+    private static int bikes;
+
+    private final ContractStore store = new ContractStore();
+
+    @Test
+    public void findsWhoHadABikeAtAPointInTime() {
+        Bike bike = bike();
+        RentalContract first = rent("A", bike, 10 * HOUR, 12 * HOUR);
+        RentalContract second = rent("B", bike, 13 * HOUR, 15 * HOUR);
+        RentalContract current = store.open("C", bike, 16 * HOUR);
+
+        assertNull(store.getContract(bike.getSerialNumber(), at(9 * HOUR)));
+        assertSame(first, store.getContract(bike.getSerialNumber(), at(10 * HOUR)));
+        assertSame(first, store.getContract(bike.getSerialNumber(), at(12 * HOUR - 1)));
+        assertNull(store.getContract(bike.getSerialNumber(), at(12 * HOUR)));
+        assertSame(second, store.getContract(bike.getSerialNumber(), at(14 * HOUR)));
+        assertSame(current, store.getContract(bike.getSerialNumber(), at(100 * HOUR)));
+        assertNull(store.getContract("unknown", at(14 * HOUR)));
+    }
+
+    @Test
+    public void findsContractsOverlappingARange() {
+        RentalContract before = rent("A", bike(), 0, 5 * HOUR);
+        RentalContract longRental = rent("B", bike(), 2 * HOUR, 5 * DAY);
+        RentalContract inside = rent("C", bike(), 3 * DAY, 3 * DAY + HOUR);
+        RentalContract touching = rent("D", bike(), 4 * DAY, 5 * DAY);
+        RentalContract active = store.open("E", bike(), 2 * DAY);
+        store.open("F", bike(), 4 * DAY);
+
+        List<RentalContract> contracts = store.getContracts(at(DAY), at(4 * DAY));
+        assertEquals(Arrays.asList(longRental, inside, active), contracts);
+        assertTrue(store.getContracts(at(DAY), at(DAY)).isEmpty());
+        assertEquals(Arrays.asList(before, longRental), store.getContracts(at(HOUR), at(2 * HOUR + 1)));
+        List<RentalContract> ending = store.getContracts(at(5 * DAY - 1), at(5 * DAY));
+        assertEquals(Arrays.asList(longRental, touching), ending.subList(0, 2));
+    }
+
+    @Test
+    public void terminateMovesTheContractToTheHistory() {
+        Bike bike = bike();
+        RentalContract contract = store.open("A", bike, HOUR);
+        assertSame(contract, store.getActiveContract("A"));
+        assertSame(contract, store.terminate("A", 2 * HOUR));
+        assertNull(store.terminate("A", 3 * HOUR));
+        assertNull(store.getActiveContract("A"));
+        assertTrue(store.getActiveContracts().isEmpty());
+        assertEquals(2 * HOUR, contract.getEndMillis());
+        assertSame(contract, store.getContract(bike.getSerialNumber(), at(HOUR)));
+    }
+
+    @Test
+    public void evictsWholeDaysBeforeATime() {
+        Bike bike = bike();
+        rent("A", bike, 0, HOUR);
+        RentalContract kept = rent("B", bike, DAY + HOUR, DAY + 2 * HOUR);
+
+        assertEquals(0, store.evictBefore(at(DAY - 1)));
+        assertEquals(1, store.evictBefore(at(DAY + 3 * HOUR)));
+        assertNull(store.getContract(bike.getSerialNumber(), at(HOUR / 2)));
+        assertSame(kept, store.getContract(bike.getSerialNumber(), at(DAY + HOUR)));
+        assertEquals(Arrays.asList(kept), store.getContracts(at(0), at(2 * DAY)));
+    }
+
+    @Test
+    public void retainsHistoryForTheRetentionPeriod() {
+        ContractStore store = new ContractStore(Duration.ofDays(2));
+        Bike bike = bike();
+        RentalContract old = store.open("A", bike, 0);
+        store.terminate("A", HOUR);
+        RentalContract recent = store.open("A", bike, 2 * DAY);
+        store.terminate("A", 2 * DAY + HOUR);
+        assertSame(old, store.getContract(bike.getSerialNumber(), at(0)));
+
+        /* Starting the partition of day 3 evicts day 0 */
+        store.open("A", bike, 3 * DAY);
+        store.terminate("A", 3 * DAY + HOUR);
+        assertNull(store.getContract(bike.getSerialNumber(), at(0)));
+        assertSame(recent, store.getContract(bike.getSerialNumber(), at(2 * DAY)));
+
+        /* Contracts ending past the retention period are not kept at all */
+        RentalContract late = store.open("B", bike(), 0);
+        assertSame(late, store.terminate("B", HOUR));
+        assertTrue(store.getContracts(at(0), at(DAY)).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void retentionMustCoverADay() {
+        new ContractStore(Duration.ofHours(1));
+    }
+
+    private RentalContract rent(String customerNumber, Bike bike, long start, long end) {
+        store.open(customerNumber, bike, start);
+        return store.terminate(customerNumber, end);
+    }
+
+    private static Instant at(long millis) {
+        return Instant.ofEpochMilli(millis);
+    }
+
+    private static Bike bike() {
+        return BikeFactory.getInstance(BikeFactory.ROAD_BIKE, "contract-" + bikes++);
+    }
+}
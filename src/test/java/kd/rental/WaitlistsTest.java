@@ -0,0 +1,154 @@
+package kd.rental;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * The WaitlistsTest class is responsible for testing that waitlists serve
+ * reservations first come, first served and end them exactly once
+ */
+public class WaitlistsTest {
+
+    private static final long LONG_TIMEOUT = 60000;
+
+    private final List<Reservation> left = new CopyOnWriteArrayList<Reservation>();
+    private final Waitlists waitlists = new Waitlists(left::add);
+
+    @Test
+    public void servesReservationsInOrderOfArrival() {
+        Reservation first = waitlists.add("A", "road", LONG_TIMEOUT);
+        Reservation second = waitlists.add("B", "road", LONG_TIMEOUT);
+        Reservation third = waitlists.add("C", "road", LONG_TIMEOUT);
+        waitlists.add("D", "electric", LONG_TIMEOUT);
+
+        List<String> served = new ArrayList<String>();
+        int[] bikes = { 2 };
+        assertEquals(2, waitlists.serve("road", r -> {
+            if (bikes[0] == 0) {
+                return RentalResult.of(RentalStatus.NO_BIKES_AVAILABLE);
+            }
+            bikes[0]--;
+            served.add(r.getCustomerNumber());
+            return RentalResult.of(RentalStatus.ISSUED);
+        }));
+
+        assertEquals(List.of("A", "B"), served);
+        assertEquals(RentalStatus.ISSUED, first.getResult().join().getStatus());
+        assertEquals(RentalStatus.ISSUED, second.getResult().join().getStatus());
+        assertTrue(third.isWaiting());
+        assertEquals(1, waitlists.getNumOfWaiting("road"));
+        assertEquals(1, waitlists.getNumOfWaiting("electric"));
+        assertNull(waitlists.getReservation("A"));
+        assertSame(third, waitlists.getReservation("C"));
+    }
+
+    @Test
+    public void unservedReservationKeepsItsPlace() {
+        waitlists.add("A", "road", LONG_TIMEOUT);
+        waitlists.add("B", "road", LONG_TIMEOUT);
+        assertEquals(0, waitlists.serve("road", r -> RentalResult.of(RentalStatus.NO_BIKES_AVAILABLE)));
+
+        List<String> served = new ArrayList<String>();
+        waitlists.serve("road", r -> {
+            served.add(r.getCustomerNumber());
+            return RentalResult.of(RentalStatus.ISSUED);
+        });
+        assertEquals(List.of("A", "B"), served);
+    }
+
+    @Test
+    public void rejectedReservationEndsWithTheRejection() {
+        Reservation rejected = waitlists.add("A", "road", LONG_TIMEOUT);
+        Reservation next = waitlists.add("B", "road", LONG_TIMEOUT);
+        waitlists.serve("road", r -> RentalResult.of(r == rejected ? RentalStatus.NOT_ELIGIBLE : RentalStatus.ISSUED));
+
+        assertEquals(RentalStatus.NOT_ELIGIBLE, rejected.getResult().join().getStatus());
+        assertEquals(RentalStatus.ISSUED, next.getResult().join().getStatus());
+        assertEquals(0, waitlists.getNumOfWaiting("road"));
+    }
+
+    @Test
+    public void customerHoldsOneReservation() {
+        Reservation reservation = waitlists.add("A", "road", LONG_TIMEOUT);
+        assertSame(reservation, waitlists.add("A", "electric", LONG_TIMEOUT));
+        assertEquals(1, waitlists.getNumOfWaiting("road"));
+        assertEquals(0, waitlists.getNumOfWaiting("electric"));
+    }
+
+    @Test
+    public void reservationsExpireAfterTheirTimeout() throws Exception {
+        Reservation expiring = waitlists.add("A", "road", 50);
+        Reservation waiting = waitlists.add("B", "road", LONG_TIMEOUT);
+
+        RentalResult result = expiring.getResult().get(5, TimeUnit.SECONDS);
+        assertEquals(RentalStatus.RESERVATION_EXPIRED, result.getStatus());
+        assertFalse(expiring.isWaiting());
+        assertTrue(waiting.isWaiting());
+        awaitLeft(1);
+        assertSame(expiring, left.get(0));
+        assertEquals(1, waitlists.getNumOfWaiting("road"));
+
+        /* The expired reservation is skipped */
+        List<String> served = new ArrayList<String>();
+        waitlists.serve("road", r -> {
+            served.add(r.getCustomerNumber());
+            return RentalResult.of(RentalStatus.ISSUED);
+        });
+        assertEquals(List.of("B"), served);
+    }
+
+    @Test
+    public void cancelledReservationEndsOnce() {
+        Reservation reservation = waitlists.add("A", "road", LONG_TIMEOUT);
+        assertTrue(waitlists.cancel("A"));
+        assertFalse(waitlists.cancel("A"));
+        assertEquals(RentalStatus.RESERVATION_CANCELLED, reservation.getResult().join().getStatus());
+        assertEquals(List.of(reservation), left);
+        assertEquals(0, waitlists.getNumOfWaiting("road"));
+        assertEquals(0, waitlists.serve("road", r -> RentalResult.of(RentalStatus.ISSUED)));
+    }
+
+    @Test
+    public void closeExpiresWaitingReservationsWithoutReportingThem() throws InterruptedException {
+        Reservation a = waitlists.add("A", "road", LONG_TIMEOUT);
+        Reservation b = waitlists.add("B", "electric", 50);
+        waitlists.close();
+
+        assertEquals(RentalStatus.RESERVATION_EXPIRED, a.getResult().join().getStatus());
+        assertEquals(RentalStatus.RESERVATION_EXPIRED, b.getResult().join().getStatus());
+        assertEquals(0, waitlists.getNumOfWaiting("road"));
+        assertEquals(0, waitlists.getNumOfWaiting("electric"));
+
+        /* The timer of the short reservation does not fire into the closed waitlists */
+        Thread.sleep(150);
+        assertTrue(left.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedWaitlistsRejectReservations() {
+        waitlists.close();
+        waitlists.add("A", "road", LONG_TIMEOUT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void timeoutMustBePositive() {
+        waitlists.add("A", "road", 0);
+    }
+
+    private void awaitLeft(int count) throws InterruptedException {
+        for (int i = 0; i < 500 && left.size() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, left.size());
+    }
+}
@@ -0,0 +1,129 @@
+package kd.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import kd.RentalManager;
+import kd.bike.Bike;
+import kd.bike.BikeFactory;
+import kd.customer.CustomerRecord;
+
+/**
+ * The RentalServerTest class is responsible for testing the kiosk protocol
+ * over a socket and the load generator that drives it
+ */
+public class RentalServerTest {
+
+    private static final int BIKES = 4;
+
+    private static int servers;
+
+    private RentalServer server;
+    private List<String> customers;
+    private Socket socket;
+    private BufferedReader in;
+    private Writer out;
+
+    @Before
+    public void start() throws IOException, ParseException {
+        RentalManager.reset();
+        String prefix = "server-test-" + servers++ + "-";
+        for (int i = 0; i < BIKES; i++) {
+            Bike bike = BikeFactory.getInstance(BikeFactory.ROAD_BIKE, prefix + i);
+            bike.trySetAvailable();
+            RentalManager.addBike(bike);
+        }
+        customers = new ArrayList<String>();
+        for (int i = 0; i < BIKES; i++) {
+            CustomerRecord record = new CustomerRecord("Kiosk", "User", "02/03/1990", i == 0);
+            RentalManager.addCustomerRecord(record);
+            customers.add(record.getCustomerNumber().toString());
+        }
+
+        server = new RentalServer(0);
+        server.start();
+        socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+    }
+
+    @After
+    public void stop() throws IOException {
+        socket.close();
+        server.close();
+        RentalManager.reset();
+    }
+
+    @Test
+    public void issuesAndReturnsBikes() throws IOException {
+        String customer = customers.get(0);
+        assertEquals("OK " + BIKES, send("AVAILABLE road"));
+        String issued = send("ISSUE " + customer + " road");
+        assertTrue(issued, issued.startsWith("ISSUED server-test-"));
+        assertEquals("ALREADY_HAS_BIKE", send("issue " + customer + " road"));
+        assertEquals("OK " + (BIKES - 1), send("AVAILABLE road"));
+        assertEquals("RETURNED" + issued.substring("ISSUED".length()), send("  RETURN   " + customer + "  "));
+        assertEquals("NO_RENTAL_CONTRACT", send("RETURN " + customer));
+    }
+
+    @Test
+    public void answersQueriesAndRejections() throws IOException {
+        assertEquals("OK Kiosk User 02/03/1990 GOLD", send("CUSTOMER " + customers.get(0)));
+        assertEquals("OK Kiosk User 02/03/1990 STANDARD", send("CUSTOMER " + customers.get(1)));
+        assertEquals("NO_CUSTOMER_RECORD", send("CUSTOMER XX-1990-1"));
+        assertEquals("NOT_ELIGIBLE", send("ISSUE " + customers.get(1) + " electric"));
+        assertEquals("INVALID_BIKE_TYPE", send("AVAILABLE unicycle"));
+    }
+
+    @Test
+    public void answersMalformedCommandsWithErrors() throws IOException {
+        assertEquals("ERROR usage: ISSUE <customer number> <bike type>", send("ISSUE " + customers.get(0)));
+        assertEquals("ERROR usage: RETURN <customer number>", send("RETURN"));
+        assertEquals("ERROR unknown command: FLY", send("FLY away"));
+    }
+
+    @Test
+    public void closesConnectionsSendingOverlongLines() throws IOException {
+        String line = String.join("", Collections.nCopies(RentalServer.MAX_LINE_LENGTH + 1, "A"));
+        assertEquals("ERROR line too long", send(line));
+        assertNull(in.readLine());
+    }
+
+    @Test
+    public void closesTheConnectionOnQuit() throws IOException {
+        out.write("QUIT\n");
+        out.flush();
+        assertNull(in.readLine());
+    }
+
+    @Test
+    public void loadGeneratorLeavesNoRentalsBehind() throws Exception {
+        long[] latencies = LoadGenerator.run(server.getPort(), customers, 20);
+        assertEquals(customers.size() * 20, latencies.length);
+        assertEquals(BIKES, RentalManager.getNumOfAvailableBikes(BikeFactory.ROAD_BIKE));
+    }
+
+    private String send(String command) throws IOException {
+        out.write(command + "\r\n");
+        out.flush();
+        return in.readLine();
+    }
+}
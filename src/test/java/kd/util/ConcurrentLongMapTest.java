@@ -0,0 +1,123 @@
+package kd.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * The ConcurrentLongMapTest class is responsible for testing the map of
+ * primitive long keys, alone and under concurrent updates
+ */
+public class ConcurrentLongMapTest {
+
+    @Test
+    public void putGetAndRemove() {
+        ConcurrentLongMap<String> map = new ConcurrentLongMap<String>();
+        assertTrue(map.isEmpty());
+        assertNull(map.put(42, "a"));
+        assertEquals("a", map.put(42, "b"));
+        assertEquals("b", map.get(42));
+        assertTrue(map.containsKey(42));
+        assertEquals(1, map.size());
+
+        assertFalse(map.remove(42, "a"));
+        assertTrue(map.remove(42, "b"));
+        assertNull(map.get(42));
+        assertNull(map.remove(42));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void zeroAndNegativeKeys() {
+        ConcurrentLongMap<String> map = new ConcurrentLongMap<String>();
+        map.put(0, "zero");
+        map.put(-1, "minus one");
+        map.put(Long.MAX_VALUE, "max");
+        assertEquals("zero", map.get(0));
+        assertEquals("minus one", map.get(-1));
+        assertEquals("max", map.get(Long.MAX_VALUE));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void putIfAbsentKeepsFirstValue() {
+        ConcurrentLongMap<String> map = new ConcurrentLongMap<String>();
+        assertNull(map.putIfAbsent(7, "first"));
+        assertEquals("first", map.putIfAbsent(7, "second"));
+        assertEquals("first", map.computeIfAbsent(7, k -> "third"));
+        assertEquals("8", map.computeIfAbsent(8, Long::toString));
+    }
+
+    @Test
+    public void matchesHashMapThroughGrowthAndTombstones() {
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<Long>();
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        Random random = new Random(1);
+        for (int i = 0; i < 200000; i++) {
+            long key = random.nextInt(5000) * 0x9E3779B97F4A7C15L;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+
+        Map<Long, Long> visited = new HashMap<Long, Long>();
+        map.forEach(visited::put);
+        assertEquals(expected, visited);
+        assertEquals(expected.size(), map.values().size());
+
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void onePutIfAbsentWinsPerKey() throws InterruptedException {
+        ConcurrentLongMap<Integer> map = new ConcurrentLongMap<Integer>();
+        int threads = 8;
+        int keys = 20000;
+        AtomicInteger wins = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int k = 0; k < keys; k++) {
+                    if (map.putIfAbsent(k, id) == null) {
+                        wins.incrementAndGet();
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(keys, wins.get());
+        assertEquals(keys, map.size());
+        Integer winner = map.get(0);
+        assertSame(winner, map.putIfAbsent(0, -1));
+    }
+}
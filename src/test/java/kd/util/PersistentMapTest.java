@@ -0,0 +1,94 @@
+package kd.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The PersistentMapTest class is responsible for testing that the persistent
+ * map never changes a version and shares what did not change
+ */
+public class PersistentMapTest {
+
+    @Test
+    public void versionsDoNotChange() {
+        PersistentMap<String, Integer> empty = PersistentMap.empty();
+        PersistentMap<String, Integer> one = empty.plus("a", 1);
+        PersistentMap<String, Integer> two = one.plus("b", 2);
+        PersistentMap<String, Integer> changed = two.plus("a", 3);
+        PersistentMap<String, Integer> removed = changed.minus("b");
+
+        assertTrue(empty.isEmpty());
+        assertEquals(1, one.size());
+        assertEquals(Integer.valueOf(1), one.get("a"));
+        assertNull(one.get("b"));
+        assertEquals(Integer.valueOf(1), two.get("a"));
+        assertEquals(Integer.valueOf(3), changed.get("a"));
+        assertEquals(2, changed.size());
+        assertFalse(removed.containsKey("b"));
+        assertTrue(two.containsKey("b"));
+        assertEquals(1, removed.size());
+    }
+
+    @Test
+    public void unchangedMapIsReturnedAsIs() {
+        Integer value = 1000;
+        PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty().plus("a", value);
+        assertSame(map, map.plus("a", value));
+        assertSame(map, map.minus("missing"));
+        assertSame(PersistentMap.empty(), map.minus("a"));
+    }
+
+    @Test
+    public void keysWithEqualHashesAreKeptApart() {
+        /* "Aa" and "BB" have the same hash code */
+        PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty().plus("Aa", 1).plus("BB", 2);
+        assertEquals(2, map.size());
+        assertEquals(Integer.valueOf(1), map.get("Aa"));
+        assertEquals(Integer.valueOf(2), map.get("BB"));
+
+        PersistentMap<String, Integer> removed = map.minus("Aa");
+        assertNull(removed.get("Aa"));
+        assertEquals(Integer.valueOf(2), removed.get("BB"));
+        assertEquals(1, removed.size());
+    }
+
+    @Test
+    public void matchesHashMap() {
+        PersistentMap<Integer, Integer> map = PersistentMap.empty();
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        Random random = new Random(7);
+        for (int i = 0; i < 100000; i++) {
+            Integer key = random.nextInt(20000);
+            if (random.nextInt(4) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                expected.put(key, i);
+                map = map.plus(key, i);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected, map.asMap());
+
+        Map<Integer, Integer> visited = new HashMap<Integer, Integer>();
+        map.forEach(visited::put);
+        assertEquals(expected, visited);
+
+        int values = 0;
+        for (Iterator<Integer> it = map.valueIterator(); it.hasNext(); it.next()) {
+            values++;
+        }
+        assertEquals(expected.size(), values);
+    }
+}